@@ -35,18 +35,24 @@ import javax.crypto.SecretKey;
 
 import org.jmrtd.cert.CVCPrincipal;
 import org.jmrtd.cert.CardVerifiableCertificate;
+import org.jmrtd.crypto.CryptoBackend;
+import org.jmrtd.crypto.JCACryptoBackend;
 import org.jmrtd.protocol.AAAPDUSender;
 import org.jmrtd.protocol.AAProtocol;
 import org.jmrtd.protocol.AAResult;
 import org.jmrtd.protocol.BACAPDUSender;
 import org.jmrtd.protocol.BACProtocol;
 import org.jmrtd.protocol.BACResult;
+import org.jmrtd.protocol.DefaultEACTASigner;
 import org.jmrtd.protocol.EACCAAPDUSender;
 import org.jmrtd.protocol.EACCAProtocol;
 import org.jmrtd.protocol.EACCAResult;
 import org.jmrtd.protocol.EACTAAPDUSender;
+import org.jmrtd.protocol.EACTAPreparedChain;
 import org.jmrtd.protocol.EACTAProtocol;
 import org.jmrtd.protocol.EACTAResult;
+import org.jmrtd.protocol.EACTASigner;
+import org.jmrtd.protocol.EphemeralKeyPairPool;
 import org.jmrtd.protocol.PACEAPDUSender;
 import org.jmrtd.protocol.PACEProtocol;
 import org.jmrtd.protocol.PACEResult;
@@ -265,6 +271,12 @@ public class PassportService extends AbstractMRTDCardService {
 
   private CardService service;
 
+  private EphemeralKeyPairPool ephemeralKeyPairPool;
+
+  private EACTASigner eacTASigner;
+
+  private CryptoBackend cryptoBackend;
+
   /**
    * Creates a new passport service for accessing the passport.
    *
@@ -299,6 +311,8 @@ public class PassportService extends AbstractMRTDCardService {
     this.eacCASender = new EACCAAPDUSender(service);
     this.eacTASender = new EACTAAPDUSender(service);
     this.readBinarySender = new ReadBinaryAPDUSender(service);
+    this.eacTASigner = new DefaultEACTASigner();
+    this.cryptoBackend = new JCACryptoBackend();
 
     this.maxTranceiveLengthForPACEProtocol = maxTranceiveLengthForPACEProtocol;
     this.maxTranceiveLengthForSecureMessaging = maxTranceiveLengthForSecureMessaging;
@@ -390,7 +404,7 @@ public class PassportService extends AbstractMRTDCardService {
     if (!(bacKey instanceof BACKeySpec)) {
       throw new IllegalArgumentException("Unsupported key type");
     }
-    BACResult bacResult = (new BACProtocol(bacSender, maxTranceiveLengthForSecureMessaging, shouldCheckMAC)).doBAC(bacKey);
+    BACResult bacResult = (new BACProtocol(bacSender, maxTranceiveLengthForSecureMessaging, shouldCheckMAC, cryptoBackend)).doBAC(bacKey);
     wrapper = bacResult.getWrapper();
     appletFileSystem.setWrapper(wrapper);
     return bacResult;
@@ -414,7 +428,7 @@ public class PassportService extends AbstractMRTDCardService {
    */
   @Override
   public synchronized BACResult doBAC(SecretKey kEnc, SecretKey kMac) throws CardServiceException, GeneralSecurityException {
-    BACResult bacResult = (new BACProtocol(bacSender, maxTranceiveLengthForSecureMessaging, shouldCheckMAC)).doBAC(kEnc, kMac);
+    BACResult bacResult = (new BACProtocol(bacSender, maxTranceiveLengthForSecureMessaging, shouldCheckMAC, cryptoBackend)).doBAC(kEnc, kMac);
     wrapper = bacResult.getWrapper();
     appletFileSystem.setWrapper(wrapper);
     return bacResult;
@@ -435,7 +449,7 @@ public class PassportService extends AbstractMRTDCardService {
    */
   @Override
   public synchronized PACEResult doPACE(AccessKeySpec keySpec, String oid, AlgorithmParameterSpec params, BigInteger parameterId) throws CardServiceException {
-    PACEResult paceResult = (new PACEProtocol(paceSender, wrapper, maxTranceiveLengthForPACEProtocol, maxTranceiveLengthForSecureMessaging, shouldCheckMAC)).doPACE(keySpec, oid, params, parameterId);
+    PACEResult paceResult = (new PACEProtocol(paceSender, wrapper, maxTranceiveLengthForPACEProtocol, maxTranceiveLengthForSecureMessaging, shouldCheckMAC, ephemeralKeyPairPool, cryptoBackend)).doPACE(keySpec, oid, params, parameterId);
     wrapper = paceResult.getWrapper();
     appletFileSystem.setWrapper(wrapper);
     return paceResult;
@@ -458,7 +472,7 @@ public class PassportService extends AbstractMRTDCardService {
    */
   @Override
   public synchronized EACCAResult doEACCA(BigInteger keyId, String oid, String publicKeyOID, PublicKey publicKey) throws CardServiceException {
-    EACCAResult caResult = (new EACCAProtocol(eacCASender, getWrapper(), maxTranceiveLengthForSecureMessaging, shouldCheckMAC)).doCA(keyId, oid, publicKeyOID, publicKey);
+    EACCAResult caResult = (new EACCAProtocol(eacCASender, getWrapper(), maxTranceiveLengthForSecureMessaging, shouldCheckMAC, ephemeralKeyPairPool, cryptoBackend)).doCA(keyId, oid, publicKeyOID, publicKey);
     wrapper = caResult.getWrapper();
     appletFileSystem.setWrapper(wrapper);
     return caResult;
@@ -498,7 +512,7 @@ public class PassportService extends AbstractMRTDCardService {
    */
   public synchronized EACTAResult doEACTA(CVCPrincipal caReference, List<CardVerifiableCertificate> terminalCertificates,
       PrivateKey terminalKey, String taAlg, EACCAResult chipAuthenticationResult, String documentNumber) throws CardServiceException {
-    return (new EACTAProtocol(eacTASender, getWrapper())).doEACTA(caReference, terminalCertificates, terminalKey, taAlg, chipAuthenticationResult, documentNumber);
+    return (new EACTAProtocol(eacTASender, getWrapper(), eacTASigner)).doEACTA(caReference, terminalCertificates, terminalKey, taAlg, chipAuthenticationResult, documentNumber);
   }
 
   /**
@@ -522,7 +536,47 @@ public class PassportService extends AbstractMRTDCardService {
    */
   public synchronized EACTAResult doEACTA(CVCPrincipal caReference, List<CardVerifiableCertificate> terminalCertificates,
       PrivateKey terminalKey, String taAlg, EACCAResult chipAuthenticationResult, PACEResult paceResult) throws CardServiceException {
-    return (new EACTAProtocol(eacTASender, getWrapper())).doTA(caReference, terminalCertificates, terminalKey, taAlg, chipAuthenticationResult, paceResult);
+    return (new EACTAProtocol(eacTASender, getWrapper(), eacTASigner)).doTA(caReference, terminalCertificates, terminalKey, taAlg, chipAuthenticationResult, paceResult);
+  }
+
+  /**
+   * Performs <i>Terminal Authentication</i> (TA) part of EAC (version 1) with a terminal
+   * certificate chain that was prepared before. For details see TR-03110 ver. 1.11.
+   *
+   * @param preparedChain the prepared terminal certificate chain
+   * @param terminalKey terminal private key
+   * @param chipAuthenticationResult the chip authentication result
+   * @param documentNumber the document number
+   *
+   * @return the Terminal Authentication result
+   *
+   * @throws CardServiceException on error
+   *
+   * @since 0.8.4
+   */
+  public synchronized EACTAResult doEACTA(EACTAPreparedChain preparedChain, PrivateKey terminalKey,
+      EACCAResult chipAuthenticationResult, String documentNumber) throws CardServiceException {
+    return (new EACTAProtocol(eacTASender, getWrapper(), eacTASigner)).doTA(preparedChain, terminalKey, chipAuthenticationResult, EACTAProtocol.deriveIdentifier(documentNumber));
+  }
+
+  /**
+   * Performs <i>Terminal Authentication</i> (TA) part of EAC (version 1) with a terminal
+   * certificate chain that was prepared before. For details see TR-03110 ver. 1.11.
+   *
+   * @param preparedChain the prepared terminal certificate chain
+   * @param terminalKey terminal private key
+   * @param chipAuthenticationResult the chip authentication result
+   * @param paceResult the PACE result
+   *
+   * @return the Terminal Authentication result
+   *
+   * @throws CardServiceException on error
+   *
+   * @since 0.8.4
+   */
+  public synchronized EACTAResult doEACTA(EACTAPreparedChain preparedChain, PrivateKey terminalKey,
+      EACCAResult chipAuthenticationResult, PACEResult paceResult) throws CardServiceException {
+    return (new EACTAProtocol(eacTASender, getWrapper(), eacTASigner)).doTA(preparedChain, terminalKey, chipAuthenticationResult, paceResult);
   }
 
   /**
@@ -554,6 +608,85 @@ public class PassportService extends AbstractMRTDCardService {
     }
   }
 
+  /**
+   * Sets the pool from which PACE and Chip Authentication take their PCD side key pairs.
+   * Callers should register the domain parameters found in {@code EF.CardAccess} and
+   * {@code DG14} with the pool well before executing the protocols.
+   *
+   * @param ephemeralKeyPairPool the pool, or {@code null} to generate key pairs on demand
+   *
+   * @since 0.8.4
+   */
+  public void setEphemeralKeyPairPool(EphemeralKeyPairPool ephemeralKeyPairPool) {
+    this.ephemeralKeyPairPool = ephemeralKeyPairPool;
+  }
+
+  /**
+   * Returns the pool from which PACE and Chip Authentication take their PCD side key pairs.
+   *
+   * @return the pool, or {@code null} if key pairs are generated on demand
+   *
+   * @since 0.8.4
+   */
+  public EphemeralKeyPairPool getEphemeralKeyPairPool() {
+    return ephemeralKeyPairPool;
+  }
+
+  /**
+   * Sets the crypto backend used by BAC, PACE, and Chip Authentication, and by the
+   * secure messaging channels resulting from these protocols.
+   * The backend of an already established secure messaging channel does not change.
+   * To also use the backend in Terminal Authentication, set a
+   * {@link DefaultEACTASigner#DefaultEACTASigner(CryptoBackend)} as signer.
+   *
+   * @param cryptoBackend the crypto backend
+   *
+   * @since 0.8.4
+   */
+  public void setCryptoBackend(CryptoBackend cryptoBackend) {
+    if (cryptoBackend == null) {
+      throw new IllegalArgumentException("Crypto backend cannot be null");
+    }
+    this.cryptoBackend = cryptoBackend;
+  }
+
+  /**
+   * Returns the crypto backend used by BAC, PACE, and Chip Authentication.
+   *
+   * @return the crypto backend
+   *
+   * @since 0.8.4
+   */
+  public CryptoBackend getCryptoBackend() {
+    return cryptoBackend;
+  }
+
+  /**
+   * Sets the signer used for signing the challenge in Terminal Authentication.
+   * The signer is shared by all Terminal Authentication executions using this service.
+   *
+   * @param eacTASigner the signer
+   *
+   * @since 0.8.4
+   */
+  public void setEACTASigner(EACTASigner eacTASigner) {
+    if (eacTASigner == null) {
+      throw new IllegalArgumentException("Signer cannot be null");
+    }
+    this.eacTASigner = eacTASigner;
+  }
+
+  /**
+   * Returns the signer used for signing the challenge in Terminal Authentication.
+   *
+   * @return the signer
+   *
+   * @since 0.8.4
+   */
+  public EACTASigner getEACTASigner() {
+    return eacTASigner;
+  }
+
   /**
    * Returns the maximum tranceive length of (protected) APDUs.
    *
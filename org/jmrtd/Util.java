@@ -96,6 +96,8 @@ import org.bouncycastle.jce.spec.ECNamedCurveParameterSpec;
 import org.bouncycastle.jce.spec.ECNamedCurveSpec;
 import org.bouncycastle.math.ec.ECCurve;
 import org.bouncycastle.math.ec.ECFieldElement;
+import org.jmrtd.crypto.CryptoBackend;
+import org.jmrtd.crypto.JCACryptoBackend;
 import org.jmrtd.lds.PACEInfo;
 import org.jmrtd.lds.SecurityInfo;
 import org.jmrtd.lds.icao.MRZInfo;
@@ -199,15 +201,36 @@ public final class Util {
    * @throws GeneralSecurityException if something went wrong
    */
   public static SecretKey deriveKey(byte[] keySeed, String cipherAlg, int keyLength, byte[] nonce, int mode, byte paceKeyReference) throws GeneralSecurityException {
+    return deriveKey(keySeed, cipherAlg, keyLength, nonce, mode, paceKeyReference, new JCACryptoBackend());
+  }
+
+  /**
+   * Derives a shared key, using the given crypto backend to compute the hash.
+   *
+   * @param keySeed the shared secret, as octets
+   * @param cipherAlg in Java mnemonic notation (for example "DESede", "AES")
+   * @param keyLength length in bits
+   * @param nonce optional nonce or <code>null</code>
+   * @param mode the mode either {@code ENC}, {@code MAC}, or {@code PACE} mode
+   * @param paceKeyReference Key Reference For Pace Protocol
+   * @param cryptoBackend the crypto backend
+   *
+   * @return the derived key
+   *
+   * @throws GeneralSecurityException if something went wrong
+   *
+   * @since 0.8.4
+   */
+  public static SecretKey deriveKey(byte[] keySeed, String cipherAlg, int keyLength, byte[] nonce, int mode, byte paceKeyReference, CryptoBackend cryptoBackend) throws GeneralSecurityException {
     String digestAlg = inferDigestAlgorithmFromCipherAlgorithmForKeyDerivation(cipherAlg, keyLength);
-    MessageDigest digest = getMessageDigest(digestAlg);
-    digest.reset();
-    digest.update(keySeed);
+    int nonceLength = nonce == null ? 0 : nonce.length;
+    byte[] digestInput = new byte[keySeed.length + nonceLength + 4];
+    System.arraycopy(keySeed, 0, digestInput, 0, keySeed.length);
     if (nonce != null) {
-      digest.update(nonce);
+      System.arraycopy(nonce, 0, digestInput, keySeed.length, nonceLength);
     }
-    digest.update(new byte[] { 0x00, 0x00, 0x00, (byte)mode });
-    byte[] hashResult = digest.digest();
+    digestInput[digestInput.length - 1] = (byte)mode;
+    byte[] hashResult = cryptoBackend.digest(digestAlg, digestInput);
     byte[] keyBytes = null;
     if ("DESede".equalsIgnoreCase(cipherAlg) || "3DES".equalsIgnoreCase(cipherAlg)) {
       /* TR-SAC 1.01, 4.2.1. */
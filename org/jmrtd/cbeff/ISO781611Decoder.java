@@ -25,10 +25,19 @@ package org.jmrtd.cbeff;
 import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.FutureTask;
 import java.util.logging.Logger;
 
+import org.jmrtd.io.TLVCursor;
+
 import net.sf.scuba.tlv.TLVInputStream;
 import net.sf.scuba.tlv.TLVUtil;
 
@@ -76,6 +85,54 @@ public class ISO781611Decoder<B extends BiometricDataBlock> implements ISO781611
     return readBITGroup(inputStream);
   }
 
+  /**
+   * Reads a BIT group from a range of a byte array.
+   * The biometric data blocks are decoded from streams over the array,
+   * without first copying them.
+   *
+   * @param bytes the array
+   * @param offset the offset of the BIT group
+   * @param length the length of the encoded BIT group
+   *
+   * @return a complex CBEFF info representing the BIT group
+   *
+   * @throws IOException if parsing fails
+   *
+   * @since 0.8.4
+   */
+  public ComplexCBEFFInfo<B> decode(byte[] bytes, int offset, int length) throws IOException {
+    return readBITGroup(new TLVCursor(bytes, offset, length));
+  }
+
+  /**
+   * Reads a BIT group from a range of a byte array, decoding the BITs concurrently.
+   * The BITs are located by their encoded lengths, and each BIT is then decoded
+   * by a task on the given executor. Tasks that have not been started by the executor
+   * when their result is needed are run by the calling thread, so that a busy (or
+   * even the caller's own) executor does not cause a deadlock.
+   * The records in the result are in the order of the BITs in the BIT group.
+   *
+   * The BDB decoders should be safe for use by multiple threads.
+   *
+   * @param bytes the array
+   * @param offset the offset of the BIT group
+   * @param length the length of the encoded BIT group
+   * @param executor the executor on which the BITs are decoded
+   *
+   * @return a complex CBEFF info representing the BIT group
+   *
+   * @throws IOException if parsing fails
+   *
+   * @since 0.8.4
+   */
+  public ComplexCBEFFInfo<B> decode(byte[] bytes, int offset, int length, Executor executor) throws IOException {
+    if (executor == null) {
+      throw new IllegalArgumentException("Executor cannot be null");
+    }
+
+    return readBITGroup(new TLVCursor(bytes, offset, length), executor);
+  }
+
   public BiometricEncodingType getEncodingType() {
     return encodingType;
   }
@@ -315,6 +372,213 @@ public class ISO781611Decoder<B extends BiometricDataBlock> implements ISO781611
     return bdbDecoder.decode(inputStream, sbh, index, length);
   }
 
+  /**
+   * Reads a BIT group using a cursor positioned before the BIT group.
+   *
+   * @param cursor the cursor
+   *
+   * @return CBEFF info representing the BIT group that was read
+   *
+   * @throws IOException on error parsing
+   */
+  private ComplexCBEFFInfo<B> readBITGroup(TLVCursor cursor) throws IOException {
+    if (!cursor.next() || cursor.getTag() != BIOMETRIC_INFORMATION_GROUP_TEMPLATE_TAG) { /* 7F61 */
+      throw new IllegalArgumentException("Expected tag " + Integer.toHexString(BIOMETRIC_INFORMATION_GROUP_TEMPLATE_TAG));
+    }
+    cursor.descend();
+    if (!cursor.next() || cursor.getTag() != BIOMETRIC_INFO_COUNT_TAG) { /* 02 */
+      throw new IllegalArgumentException("Expected tag BIOMETRIC_INFO_COUNT_TAG (" + Integer.toHexString(BIOMETRIC_INFO_COUNT_TAG) + ") in CBEFF structure");
+    }
+    if (cursor.getLength() != 1) {
+      throw new IllegalArgumentException("BIOMETRIC_INFO_COUNT should have length 1, found length " + cursor.getLength());
+    }
+    int bitCount = cursor.getValueAsInt();
+    ComplexCBEFFInfo<B> result = new ComplexCBEFFInfo<B>();
+    for (int i = 0; i < bitCount; i++) {
+      result.add(readBIT(cursor, i));
+    }
+    cursor.ascend();
+
+    return result;
+  }
+
+  /**
+   * Reads a BIT group using a cursor positioned before the BIT group,
+   * decoding the BITs on an executor.
+   *
+   * @param cursor the cursor
+   * @param executor the executor
+   *
+   * @return CBEFF info representing the BIT group that was read
+   *
+   * @throws IOException on error parsing
+   */
+  private ComplexCBEFFInfo<B> readBITGroup(TLVCursor cursor, Executor executor) throws IOException {
+    if (!cursor.next() || cursor.getTag() != BIOMETRIC_INFORMATION_GROUP_TEMPLATE_TAG) { /* 7F61 */
+      throw new IllegalArgumentException("Expected tag " + Integer.toHexString(BIOMETRIC_INFORMATION_GROUP_TEMPLATE_TAG));
+    }
+    cursor.descend();
+    if (!cursor.next() || cursor.getTag() != BIOMETRIC_INFO_COUNT_TAG) { /* 02 */
+      throw new IllegalArgumentException("Expected tag BIOMETRIC_INFO_COUNT_TAG (" + Integer.toHexString(BIOMETRIC_INFO_COUNT_TAG) + ") in CBEFF structure");
+    }
+    if (cursor.getLength() != 1) {
+      throw new IllegalArgumentException("BIOMETRIC_INFO_COUNT should have length 1, found length " + cursor.getLength());
+    }
+    int bitCount = cursor.getValueAsInt();
+
+    /* Locate the BITs. A missing BIT is decoded from an empty range, which fails like the sequential decoder. */
+    final byte[] bytes = cursor.getBytes();
+    List<FutureTask<CBEFFInfo<B>>> tasks = new ArrayList<FutureTask<CBEFFInfo<B>>>(bitCount);
+    List<ISO781611Decoder<B>> taskDecoders = new ArrayList<ISO781611Decoder<B>>(bitCount);
+    for (int i = 0; i < bitCount; i++) {
+      final int index = i;
+      boolean isPresent = cursor.next();
+      final int bitOffset = isPresent ? cursor.getOffset() : 0;
+      final int bitLength = isPresent ? cursor.getEncodedLength() : 0;
+
+      /* Each task records the encoding type in a decoder of its own, this decoder may be shared. */
+      final ISO781611Decoder<B> taskDecoder = new ISO781611Decoder<B>(bdbDecoders);
+      taskDecoders.add(taskDecoder);
+      tasks.add(new FutureTask<CBEFFInfo<B>>(new Callable<CBEFFInfo<B>>() {
+        @Override
+        public CBEFFInfo<B> call() throws IOException {
+          return taskDecoder.readBIT(new TLVCursor(bytes, bitOffset, bitLength), index);
+        }
+      }));
+    }
+    cursor.ascend();
+
+    ComplexCBEFFInfo<B> result = new ComplexCBEFFInfo<B>();
+    try {
+      for (int i = 1; i < tasks.size(); i++) {
+        executor.execute(tasks.get(i));
+      }
+      for (FutureTask<CBEFFInfo<B>> task: tasks) {
+        task.run(); /* NOTE: Does nothing if the executor already started the task. */
+        result.add(task.get());
+      }
+    } catch (InterruptedException ie) {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException("Interrupted while decoding BITs");
+    } catch (ExecutionException ee) {
+      Throwable cause = ee.getCause();
+      if (cause instanceof IOException) {
+        throw (IOException)cause;
+      } else if (cause instanceof RuntimeException) {
+        throw (RuntimeException)cause;
+      } else if (cause instanceof Error) {
+        throw (Error)cause;
+      }
+      throw new IOException("Could not decode BIT", cause);
+    } finally {
+      for (FutureTask<CBEFFInfo<B>> task: tasks) {
+        task.cancel(false);
+      }
+    }
+
+    /* As in the sequential decoder, the last biometric data block determines the encoding type. */
+    for (ISO781611Decoder<B> taskDecoder: taskDecoders) {
+      if (taskDecoder.encodingType != null) {
+        encodingType = taskDecoder.encodingType;
+      }
+    }
+
+    return result;
+  }
+
+  /**
+   * Reads a single BIT using a cursor positioned before the BIT.
+   *
+   * @param cursor the cursor
+   * @param index the index of the BIT within the BIT group
+   *
+   * @return a CBEFF info representing the BIT, or {@code null} if the BIT is statically protected
+   *
+   * @throws IOException on error parsing
+   */
+  private CBEFFInfo<B> readBIT(TLVCursor cursor, int index) throws IOException {
+    if (!cursor.next() || cursor.getTag() != BIOMETRIC_INFORMATION_TEMPLATE_TAG /* 7F60 */) {
+      throw new IllegalArgumentException("Expected tag BIOMETRIC_INFORMATION_TEMPLATE_TAG (" + Integer.toHexString(BIOMETRIC_INFORMATION_TEMPLATE_TAG) + "), index is " + index);
+    }
+    cursor.descend();
+    if (!cursor.next()) {
+      throw new IllegalArgumentException("Empty BIT, index is " + index);
+    }
+
+    CBEFFInfo<B> result = null;
+    int bhtTag = cursor.getTag();
+    if (bhtTag == SMT_TAG) {
+      /* The BIT is protected... */
+      readStaticallyProtectedBIT(cursor.getValueAsInputStream(), bhtTag, cursor.getLength(), index);
+    } else if ((bhtTag & 0xA0) == 0xA0) {
+      StandardBiometricHeader sbh = readBHT(cursor, index);
+      B bdb = readBiometricDataBlock(cursor, sbh, index);
+      result = new SimpleCBEFFInfo<B>(bdb);
+    } else {
+      throw new IllegalArgumentException("Unsupported template tag: " + Integer.toHexString(bhtTag));
+    }
+    cursor.ascend();
+
+    /*
+     * NOTE: A statically protected BIT is read, so that a malformed one is rejected,
+     * but is not represented in the result. Like the stream based decoder, this returns
+     * null for it, so that both decoders give the same result for the same bytes.
+     */
+    return result;
+  }
+
+  /**
+   * Reads the biometric header template the cursor is positioned at.
+   *
+   * @param cursor the cursor
+   * @param index the index
+   *
+   * @return the standard biometric header
+   *
+   * @throws IOException on error parsing
+   */
+  private StandardBiometricHeader readBHT(TLVCursor cursor, int index) throws IOException {
+    int bhtTag = cursor.getTag();
+    int expectedBHTTag = (BIOMETRIC_HEADER_TEMPLATE_BASE_TAG /* + index */) & 0xFF;
+    if (bhtTag != expectedBHTTag) {
+      LOGGER.warning("Expected tag " + Integer.toHexString(expectedBHTTag) + ", found " + Integer.toHexString(bhtTag));
+    }
+    Map<Integer, byte[]> elements = new HashMap<Integer, byte[]>();
+    cursor.descend();
+    while (cursor.next()) {
+      elements.put(cursor.getTag(), cursor.getValue());
+    }
+    cursor.ascend();
+    return new StandardBiometricHeader(elements);
+  }
+
+  /**
+   * Reads a biometric data block using a cursor positioned before the biometric data block.
+   *
+   * @param cursor the cursor
+   * @param sbh the biometric header that was already read
+   * @param index the index of the biometric data block within the BIT group
+   *
+   * @return the biometric data block
+   *
+   * @throws IOException on error parsing
+   */
+  private B readBiometricDataBlock(TLVCursor cursor, StandardBiometricHeader sbh, int index) throws IOException {
+    int bioDataBlockTag = cursor.next() ? cursor.getTag() : -1;
+    if (bioDataBlockTag != BIOMETRIC_DATA_BLOCK_TAG /* 5F2E */ &&
+        bioDataBlockTag != BIOMETRIC_DATA_BLOCK_CONSTRUCTED_TAG /* 7F2E */) {
+      throw new IllegalArgumentException("Expected tag BIOMETRIC_DATA_BLOCK_TAG (" + Integer.toHexString(BIOMETRIC_DATA_BLOCK_TAG)
+      + ") or BIOMETRIC_DATA_BLOCK_CONSTRUCTED_ALT (" + Integer.toHexString(BIOMETRIC_DATA_BLOCK_CONSTRUCTED_TAG)
+      + "), found " + Integer.toHexString(bioDataBlockTag));
+    }
+    encodingType = BiometricEncodingType.fromBDBTag(bioDataBlockTag);
+    BiometricDataBlockDecoder<B> bdbDecoder = bdbDecoders.get(bioDataBlockTag);
+    if (bdbDecoder == null) {
+      throw new IllegalArgumentException("No decoder for biometric data block tag " + Integer.toHexString(bioDataBlockTag));
+    }
+    return bdbDecoder.decode(cursor.getValueAsInputStream(), sbh, index, cursor.getLength());
+  }
+
   private static <R extends BiometricDataBlock> Map<Integer, BiometricDataBlockDecoder<R>> toMap(BiometricDataBlockDecoder<R> bdbDecoder) {
     Map<Integer, BiometricDataBlockDecoder<R>> bdbDecoders = new HashMap<Integer, BiometricDataBlockDecoder<R>>();
     bdbDecoders.put(BIOMETRIC_DATA_BLOCK_TAG, bdbDecoder); /* 5F2E */
@@ -24,15 +24,22 @@ package org.jmrtd.cbeff;
 
 import java.io.IOException;
 import java.io.OutputStream;
-import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
 import java.util.SortedMap;
 
+import org.jmrtd.io.CountingOutputStream;
+
 import net.sf.scuba.tlv.TLVOutputStream;
+import net.sf.scuba.tlv.TLVUtil;
 
 /**
  * ISO 7816-11 encoder for BIR.
  *
+ * If the BDB encoder is a {@link StreamingBiometricDataBlockEncoder} the lengths of
+ * the nested templates are computed first, so that the templates and the BDBs can be
+ * written directly to the target stream. Otherwise the templates are buffered.
+ *
  * @param <B> the biometric data block type to use
  *
  * @author The JMRTD team (info@jmrtd.org)
@@ -63,12 +70,175 @@ public class ISO781611Encoder<B extends BiometricDataBlock> implements ISO781611
    *
    * @throws IOException if something goes wrong
    */
-  public void encode(CBEFFInfo cbeffInfo, OutputStream outputStream) throws IOException {
-    if (cbeffInfo instanceof SimpleCBEFFInfo) {
-      writeBITGroup(Arrays.asList(new CBEFFInfo[] { cbeffInfo }), outputStream);
-    } else if (cbeffInfo instanceof ComplexCBEFFInfo) {
-      ComplexCBEFFInfo complexCBEFFInfo = (ComplexCBEFFInfo)cbeffInfo;
-      writeBITGroup(complexCBEFFInfo.getSubRecords(), outputStream);
+  public void encode(CBEFFInfo<B> cbeffInfo, OutputStream outputStream) throws IOException {
+    List<CBEFFInfo<B>> records = getRecords(cbeffInfo);
+    if (records == null) {
+      return;
+    }
+
+    if (isStreaming(outputStream)) {
+      streamBITGroup(records, outputStream);
+    } else {
+      writeBITGroup(records, outputStream);
+    }
+  }
+
+  /**
+   * Returns the number of bytes that {@link #encode(CBEFFInfo, OutputStream)} writes
+   * for a BIT group, if it can be computed without encoding the BIT group.
+   * This is the case if the BDB encoder is a {@link StreamingBiometricDataBlockEncoder}.
+   *
+   * @param cbeffInfo a CBEFF info containing the BIT group
+   *
+   * @return the length of the encoded BIT group, or {@code -1} if it is not known in advance
+   *
+   * @throws IOException if the length of a BDB cannot be computed
+   *
+   * @since 0.8.4
+   */
+  public int getEncodedLength(CBEFFInfo<B> cbeffInfo) throws IOException {
+    if (!(bdbEncoder instanceof StreamingBiometricDataBlockEncoder<?>)) {
+      return -1;
+    }
+
+    List<CBEFFInfo<B>> records = getRecords(cbeffInfo);
+    if (records == null) {
+      return 0;
+    }
+
+    return getTLVLength(BIOMETRIC_INFORMATION_GROUP_TEMPLATE_TAG, getBITGroupLength(records, new int[records.size()]));
+  }
+
+  /**
+   * Returns the records of the BIT group in a CBEFF info.
+   *
+   * @param cbeffInfo the CBEFF info
+   *
+   * @return the records, or {@code null} if the CBEFF info is neither simple nor complex
+   */
+  private List<CBEFFInfo<B>> getRecords(CBEFFInfo<B> cbeffInfo) {
+    if (cbeffInfo instanceof SimpleCBEFFInfo<?>) {
+      return Collections.singletonList(cbeffInfo);
+    } else if (cbeffInfo instanceof ComplexCBEFFInfo<?>) {
+      ComplexCBEFFInfo<B> complexCBEFFInfo = (ComplexCBEFFInfo<B>)cbeffInfo;
+      return complexCBEFFInfo.getSubRecords();
+    }
+    return null;
+  }
+
+  /**
+   * Indicates whether the BIT group can be written directly to a stream.
+   * This requires a streaming BDB encoder. A {@code TLVOutputStream} manages
+   * the lengths itself, so the buffering implementation is used for those.
+   *
+   * @param outputStream the stream to write to
+   *
+   * @return whether the BIT group can be written directly to the stream
+   */
+  private boolean isStreaming(OutputStream outputStream) {
+    return bdbEncoder instanceof StreamingBiometricDataBlockEncoder<?> && !(outputStream instanceof TLVOutputStream);
+  }
+
+  /**
+   * Computes the length of the value of a BIT group.
+   * This is the first pass of the streaming encoder.
+   *
+   * @param records the records of the BIT group
+   * @param bdbLengths an array in which the lengths of the BDBs are stored
+   *
+   * @return the length of the value of the BIT group
+   *
+   * @throws IOException if the length of a BDB cannot be computed
+   */
+  private int getBITGroupLength(List<CBEFFInfo<B>> records, int[] bdbLengths) throws IOException {
+    StreamingBiometricDataBlockEncoder<B> streamingEncoder = (StreamingBiometricDataBlockEncoder<B>)bdbEncoder;
+    int count = records.size();
+    long length = getTLVLength(BIOMETRIC_INFO_COUNT_TAG, 1);
+    for (int index = 0; index < count; index++) {
+      SimpleCBEFFInfo<B> simpleCBEFFInfo = (SimpleCBEFFInfo<B>)records.get(index);
+      B bdb = simpleCBEFFInfo.getBiometricDataBlock();
+      int bdbLength = streamingEncoder.getEncodedLength(bdb);
+      if (bdbLength < 0) {
+        throw new IOException("Illegal length " + bdbLength + " of BDB " + index);
+      }
+      bdbLengths[index] = bdbLength;
+      length += getTLVLength(BIOMETRIC_INFORMATION_TEMPLATE_TAG, getBITLength(bdb, bdbLength));
+    }
+    if (length > Integer.MAX_VALUE) {
+      throw new IOException("BIT group too long, length " + length);
+    }
+    return (int)length;
+  }
+
+  /**
+   * Computes the length of the value of a single BIT.
+   *
+   * @param bdb the contents of the BIT
+   * @param bdbLength the length of the encoded BDB
+   *
+   * @return the length of the value of the BIT
+   */
+  private int getBITLength(B bdb, int bdbLength) {
+    return getTLVLength(BIOMETRIC_HEADER_TEMPLATE_BASE_TAG & 0xFF, getBHTLength(bdb))
+        + getTLVLength(BiometricEncodingType.toBDBTag(encodingType), bdbLength);
+  }
+
+  /**
+   * Computes the length of the value of the header of a single BIT.
+   *
+   * @param bdb the contents of the BIT
+   *
+   * @return the length of the value of the header
+   */
+  private static int getBHTLength(BiometricDataBlock bdb) {
+    int length = 0;
+    SortedMap<Integer, byte[]> elements = bdb.getStandardBiometricHeader().getElements();
+    for (SortedMap.Entry<Integer, byte[]> entry: elements.entrySet()) {
+      length += getTLVLength(entry.getKey(), entry.getValue().length);
+    }
+    return length;
+  }
+
+  /**
+   * Writes a BIT group directly to a stream, using precomputed lengths.
+   *
+   * @param records the records of the BIT group
+   * @param outputStream the stream to write to
+   *
+   * @throws IOException on error writing to the stream
+   */
+  private void streamBITGroup(List<CBEFFInfo<B>> records, OutputStream outputStream) throws IOException {
+    int count = records.size();
+    int[] bdbLengths = new int[count];
+    int length = getBITGroupLength(records, bdbLengths);
+
+    writeTagAndLength(outputStream, BIOMETRIC_INFORMATION_GROUP_TEMPLATE_TAG, length); /* 7F61 */
+    writeTagAndLength(outputStream, BIOMETRIC_INFO_COUNT_TAG, 1); /* 0x02 */
+    outputStream.write(count);
+
+    int bdbTag = BiometricEncodingType.toBDBTag(encodingType);
+    for (int index = 0; index < count; index++) {
+      SimpleCBEFFInfo<B> simpleCBEFFInfo = (SimpleCBEFFInfo<B>)records.get(index);
+      B bdb = simpleCBEFFInfo.getBiometricDataBlock();
+      int bdbLength = bdbLengths[index];
+
+      writeTagAndLength(outputStream, BIOMETRIC_INFORMATION_TEMPLATE_TAG, getBITLength(bdb, bdbLength)); /* 7F60 */
+
+      writeTagAndLength(outputStream, BIOMETRIC_HEADER_TEMPLATE_BASE_TAG & 0xFF, getBHTLength(bdb)); /* A1 */
+      SortedMap<Integer, byte[]> elements = bdb.getStandardBiometricHeader().getElements();
+      for (SortedMap.Entry<Integer, byte[]> entry: elements.entrySet()) {
+        byte[] value = entry.getValue();
+        writeTagAndLength(outputStream, entry.getKey(), value.length);
+        outputStream.write(value);
+      }
+
+      writeTagAndLength(outputStream, bdbTag, bdbLength); /* 5F2E or 7F2E */
+      CountingOutputStream bdbOutputStream = new CountingOutputStream(outputStream);
+      bdbEncoder.encode(bdb, bdbOutputStream);
+      bdbOutputStream.flush();
+      if (bdbOutputStream.getCount() != bdbLength) {
+        throw new IOException("Encoded BDB " + index + " has length " + bdbOutputStream.getCount() + ", was expecting " + bdbLength);
+      }
     }
   }
 
@@ -80,7 +250,7 @@ public class ISO781611Encoder<B extends BiometricDataBlock> implements ISO781611
    *
    * @throws IOException on error writing to the stream
    */
-  private void writeBITGroup(List<CBEFFInfo> records, OutputStream outputStream) throws IOException {
+  private void writeBITGroup(List<CBEFFInfo<B>> records, OutputStream outputStream) throws IOException {
     TLVOutputStream tlvOut = outputStream instanceof TLVOutputStream ? (TLVOutputStream)outputStream : new TLVOutputStream(outputStream);
     tlvOut.writeTag(BIOMETRIC_INFORMATION_GROUP_TEMPLATE_TAG); /* 7F61 */
     tlvOut.writeTag(BIOMETRIC_INFO_COUNT_TAG); /* 0x02 */
@@ -88,7 +258,6 @@ public class ISO781611Encoder<B extends BiometricDataBlock> implements ISO781611
     tlvOut.writeValue(new byte[] { (byte)count });
 
     for (int index = 0; index < count; index++) {
-      @SuppressWarnings("unchecked")
       SimpleCBEFFInfo<B> simpleCBEFFInfo = (SimpleCBEFFInfo<B>)records.get(index);
       writeBIT(tlvOut, index, simpleCBEFFInfo);
     }
@@ -149,4 +318,40 @@ public class ISO781611Encoder<B extends BiometricDataBlock> implements ISO781611
     bdbEncoder.encode(bdb, tlvOutputStream);
     tlvOutputStream.writeValueEnd(); /* BIOMETRIC_DATA_BLOCK_TAG, i.e. 5F2E or 7F2E */
   }
+
+  /**
+   * Writes a tag and a length to a stream.
+   *
+   * @param outputStream the stream to write to
+   * @param tag the tag
+   * @param length the length of the value that follows
+   *
+   * @throws IOException on error writing to the stream
+   */
+  private static void writeTagAndLength(OutputStream outputStream, int tag, int length) throws IOException {
+    outputStream.write(TLVUtil.getTagAsBytes(tag));
+    outputStream.write(TLVUtil.getLengthAsBytes(length));
+  }
+
+  /**
+   * Returns the length of an encoded TLV element, including tag and length.
+   *
+   * @param tag the tag
+   * @param valueLength the length of the value
+   *
+   * @return the length of the encoded element
+   */
+  private static int getTLVLength(int tag, int valueLength) {
+    int tagLength = 1;
+    for (int t = tag >>> 8; t != 0; t >>>= 8) {
+      tagLength++;
+    }
+    int lengthLength = 1;
+    if (valueLength >= 0x80) {
+      for (int l = valueLength; l != 0; l >>>= 8) {
+        lengthLength++;
+      }
+    }
+    return tagLength + lengthLength + valueLength;
+  }
 }
@@ -0,0 +1,470 @@
+/*
+ * JMRTD - A Java API for accessing machine readable travel documents.
+ *
+ * Copyright (C) 2006 - 2026  The JMRTD team
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA
+ *
+ * $Id: $
+ */
+
+package org.jmrtd.cert;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.cert.TrustAnchor;
+import java.security.cert.X509Certificate;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.security.auth.x500.X500Principal;
+
+import org.bouncycastle.asn1.ASN1OctetString;
+import org.bouncycastle.asn1.ASN1Primitive;
+import org.bouncycastle.asn1.cms.SignedData;
+import org.bouncycastle.asn1.icao.CscaMasterList;
+import org.bouncycastle.asn1.x500.RDN;
+import org.bouncycastle.asn1.x500.X500Name;
+import org.bouncycastle.asn1.x500.style.BCStyle;
+import org.bouncycastle.asn1.x500.style.IETFUtils;
+import org.bouncycastle.asn1.x509.AuthorityKeyIdentifier;
+import org.bouncycastle.asn1.x509.Extension;
+import org.bouncycastle.asn1.x509.SubjectKeyIdentifier;
+import org.bouncycastle.util.encoders.Hex;
+import org.jmrtd.lds.SODFile;
+import org.jmrtd.lds.SignedDataUtil;
+
+/**
+ * A store of trusted country signing (CSCA) certificates, typically ingested from
+ * ICAO master lists, indexed by subject, subject key identifier, and country.
+ *
+ * Lookups are served from an immutable snapshot. Loading certificates builds a new
+ * snapshot which atomically replaces the current one, so that lookups never block
+ * and always see either the old or the new contents.
+ *
+ * Note that this class does not verify the signature on master lists,
+ * callers should only load master lists obtained from a trusted source.
+ *
+ * @author The JMRTD team (info@jmrtd.org)
+ *
+ * @version $Revision: $
+ *
+ * @since 0.8.4
+ */
+public class CSCATrustStore {
+
+  private static final Logger LOGGER = Logger.getLogger("org.jmrtd");
+
+  /** Content type of an ICAO master list. */
+  private static final String ICAO_CSCA_MASTER_LIST_OID = "2.23.136.1.1.2";
+
+  private final AtomicLong generationCounter;
+
+  private final AtomicReference<Snapshot> snapshot;
+
+  /**
+   * Creates an empty trust store.
+   */
+  public CSCATrustStore() {
+    this(Collections.<X509Certificate>emptyList());
+  }
+
+  /**
+   * Creates a trust store containing the given certificates.
+   *
+   * @param certificates the trusted certificates
+   */
+  public CSCATrustStore(Collection<X509Certificate> certificates) {
+    this.generationCounter = new AtomicLong();
+    this.snapshot = new AtomicReference<Snapshot>(new Snapshot(certificates, generationCounter.get()));
+  }
+
+  /**
+   * Replaces the contents of this trust store.
+   *
+   * @param certificates the trusted certificates
+   */
+  public void reload(Collection<X509Certificate> certificates) {
+    snapshot.set(new Snapshot(certificates, generationCounter.incrementAndGet()));
+  }
+
+  /**
+   * Returns the generation of the contents of this trust store.
+   * The generation changes whenever the contents change, so that outcomes
+   * derived from the contents can be tied to it,
+   * see {@link DSCertificateValidationCache}.
+   *
+   * @return the generation
+   */
+  public long getGeneration() {
+    return snapshot.get().generation;
+  }
+
+  /**
+   * Adds certificates to this trust store.
+   *
+   * @param certificates the trusted certificates to add
+   */
+  public void addAll(Collection<X509Certificate> certificates) {
+    while (true) {
+      Snapshot current = snapshot.get();
+      List<X509Certificate> union = new ArrayList<X509Certificate>(current.certificates);
+      union.addAll(certificates);
+      if (snapshot.compareAndSet(current, new Snapshot(union, generationCounter.incrementAndGet()))) {
+        return;
+      }
+    }
+  }
+
+  /**
+   * Adds the certificates in an ICAO master list to this trust store.
+   *
+   * @param inputStream the encoded master list
+   *
+   * @throws IOException on error reading the master list
+   */
+  public void addMasterList(InputStream inputStream) throws IOException {
+    addAll(readMasterList(inputStream));
+  }
+
+  /**
+   * Returns all certificates in this trust store.
+   *
+   * @return an unmodifiable list of certificates
+   */
+  public List<X509Certificate> getCertificates() {
+    return snapshot.get().certificates;
+  }
+
+  /**
+   * Returns the number of certificates in this trust store.
+   *
+   * @return the number of certificates
+   */
+  public int size() {
+    return snapshot.get().certificates.size();
+  }
+
+  /**
+   * Returns the certificates with the given subject.
+   *
+   * @param subject the subject, for instance the result of {@link SODFile#getIssuerX500Principal()}
+   *
+   * @return an unmodifiable list of certificates, possibly empty
+   */
+  public List<X509Certificate> getCertificatesBySubject(X500Principal subject) {
+    return lookup(snapshot.get().bySubject, subject);
+  }
+
+  /**
+   * Returns the certificates with the given subject key identifier.
+   *
+   * @param subjectKeyIdentifier the subject key identifier
+   *
+   * @return an unmodifiable list of certificates, possibly empty
+   */
+  public List<X509Certificate> getCertificatesBySubjectKeyIdentifier(byte[] subjectKeyIdentifier) {
+    if (subjectKeyIdentifier == null) {
+      return Collections.emptyList();
+    }
+    return lookup(snapshot.get().bySubjectKeyIdentifier, Hex.toHexString(subjectKeyIdentifier));
+  }
+
+  /**
+   * Returns the certificates of the given country.
+   *
+   * @param countryCode the two letter country code as it appears in subject names
+   *
+   * @return an unmodifiable list of certificates, possibly empty
+   */
+  public List<X509Certificate> getCertificatesByCountry(String countryCode) {
+    if (countryCode == null) {
+      return Collections.emptyList();
+    }
+    return lookup(snapshot.get().byCountry, countryCode.toUpperCase(Locale.ENGLISH));
+  }
+
+  /**
+   * Returns the certificates that may have issued the given certificate,
+   * based on its authority key identifier, or on its issuer if it has no
+   * authority key identifier.
+   *
+   * @param certificate the certificate, typically a document signer certificate
+   *
+   * @return an unmodifiable list of certificates, possibly empty
+   */
+  public List<X509Certificate> getIssuerCandidates(X509Certificate certificate) {
+    Snapshot current = snapshot.get();
+    byte[] authorityKeyIdentifier = getAuthorityKeyIdentifier(certificate);
+    if (authorityKeyIdentifier != null) {
+      List<X509Certificate> candidates = lookup(current.bySubjectKeyIdentifier, Hex.toHexString(authorityKeyIdentifier));
+      if (!candidates.isEmpty()) {
+        return candidates;
+      }
+    }
+    return lookup(current.bySubject, certificate.getIssuerX500Principal());
+  }
+
+  /**
+   * Returns the certificates that may have issued the document signer certificate
+   * of the given security object.
+   *
+   * @param sodFile the security object
+   *
+   * @return an unmodifiable list of certificates, possibly empty
+   */
+  public List<X509Certificate> getIssuerCandidates(SODFile sodFile) {
+    X509Certificate docSigningCertificate = sodFile.getDocSigningCertificate();
+    if (docSigningCertificate != null) {
+      return getIssuerCandidates(docSigningCertificate);
+    }
+    return getCertificatesBySubject(sodFile.getIssuerX500Principal());
+  }
+
+  /**
+   * Returns trust anchors for all certificates in this trust store.
+   *
+   * @return an unmodifiable set of trust anchors
+   */
+  public Set<TrustAnchor> getTrustAnchors() {
+    return snapshot.get().trustAnchors;
+  }
+
+  /**
+   * Returns trust anchors for the certificates that may have issued the given certificate.
+   *
+   * @param certificate the certificate, typically a document signer certificate
+   *
+   * @return an unmodifiable set of trust anchors, possibly empty
+   */
+  public Set<TrustAnchor> getTrustAnchors(X509Certificate certificate) {
+    Snapshot current = snapshot.get();
+    byte[] authorityKeyIdentifier = getAuthorityKeyIdentifier(certificate);
+    if (authorityKeyIdentifier != null) {
+      Set<TrustAnchor> trustAnchors = lookupTrustAnchors(current.trustAnchorsBySubjectKeyIdentifier, Hex.toHexString(authorityKeyIdentifier));
+      if (!trustAnchors.isEmpty()) {
+        return trustAnchors;
+      }
+    }
+    return lookupTrustAnchors(current.trustAnchorsBySubject, certificate.getIssuerX500Principal());
+  }
+
+  /**
+   * Reads the certificates from an ICAO master list.
+   *
+   * @param inputStream the encoded master list
+   *
+   * @return the certificates
+   *
+   * @throws IOException on error reading the master list
+   */
+  public static List<X509Certificate> readMasterList(InputStream inputStream) throws IOException {
+    SignedData signedData = SignedDataUtil.readSignedData(inputStream);
+    String contentType = signedData.getEncapContentInfo().getContentType().getId();
+    if (!ICAO_CSCA_MASTER_LIST_OID.equals(contentType)) {
+      LOGGER.warning("SignedData does not appear to contain a master list (content type is " + contentType + ", was expecting " + ICAO_CSCA_MASTER_LIST_OID + ")");
+    }
+
+    ASN1Primitive content = SignedDataUtil.getContent(signedData);
+    if (content == null) {
+      throw new IOException("Could not read master list content");
+    }
+
+    org.bouncycastle.asn1.x509.Certificate[] certStructs = CscaMasterList.getInstance(content).getCertStructs();
+    List<X509Certificate> certificates = new ArrayList<X509Certificate>(certStructs.length);
+    for (org.bouncycastle.asn1.x509.Certificate certStruct: certStructs) {
+      try {
+        certificates.add(SignedDataUtil.decodeCertificate(certStruct));
+      } catch (Exception e) {
+        LOGGER.log(Level.WARNING, "Skipping certificate in master list", e);
+      }
+    }
+    return certificates;
+  }
+
+  @Override
+  public String toString() {
+    Snapshot current = snapshot.get();
+    return "CSCATrustStore [" + current.certificates.size() + " certificates, " + current.byCountry.size() + " countries]";
+  }
+
+  /* ONLY PRIVATE METHODS BELOW */
+
+  private static <K> List<X509Certificate> lookup(Map<K, List<X509Certificate>> index, K key) {
+    if (key == null) {
+      return Collections.emptyList();
+    }
+    List<X509Certificate> result = index.get(key);
+    return result == null ? Collections.<X509Certificate>emptyList() : result;
+  }
+
+  private static <K> Set<TrustAnchor> lookupTrustAnchors(Map<K, Set<TrustAnchor>> index, K key) {
+    if (key == null) {
+      return Collections.emptySet();
+    }
+    Set<TrustAnchor> result = index.get(key);
+    return result == null ? Collections.<TrustAnchor>emptySet() : result;
+  }
+
+  /**
+   * Returns the subject key identifier of a certificate.
+   *
+   * @param certificate the certificate
+   *
+   * @return the key identifier, or {@code null} if not present
+   */
+  private static byte[] getSubjectKeyIdentifier(X509Certificate certificate) {
+    byte[] extensionValue = certificate.getExtensionValue(Extension.subjectKeyIdentifier.getId());
+    if (extensionValue == null) {
+      return null;
+    }
+    try {
+      return SubjectKeyIdentifier.getInstance(ASN1OctetString.getInstance(extensionValue).getOctets()).getKeyIdentifier();
+    } catch (Exception e) {
+      LOGGER.log(Level.FINE, "Could not decode subject key identifier", e);
+      return null;
+    }
+  }
+
+  /**
+   * Returns the authority key identifier of a certificate.
+   *
+   * @param certificate the certificate
+   *
+   * @return the key identifier, or {@code null} if not present
+   */
+  private static byte[] getAuthorityKeyIdentifier(X509Certificate certificate) {
+    byte[] extensionValue = certificate.getExtensionValue(Extension.authorityKeyIdentifier.getId());
+    if (extensionValue == null) {
+      return null;
+    }
+    try {
+      return AuthorityKeyIdentifier.getInstance(ASN1OctetString.getInstance(extensionValue).getOctets()).getKeyIdentifierOctets();
+    } catch (Exception e) {
+      LOGGER.log(Level.FINE, "Could not decode authority key identifier", e);
+      return null;
+    }
+  }
+
+  /**
+   * Returns the country of the subject of a certificate.
+   *
+   * @param certificate the certificate
+   *
+   * @return the upper case country code, or {@code null} if not present
+   */
+  private static String getCountry(X509Certificate certificate) {
+    try {
+      RDN[] rdns = X500Name.getInstance(certificate.getSubjectX500Principal().getEncoded()).getRDNs(BCStyle.C);
+      if (rdns == null || rdns.length == 0) {
+        return null;
+      }
+      return IETFUtils.valueToString(rdns[0].getFirst().getValue()).toUpperCase(Locale.ENGLISH);
+    } catch (Exception e) {
+      LOGGER.log(Level.FINE, "Could not determine country", e);
+      return null;
+    }
+  }
+
+  private static <K> void index(Map<K, List<X509Certificate>> index, K key, X509Certificate certificate) {
+    if (key == null) {
+      return;
+    }
+    List<X509Certificate> certificates = index.get(key);
+    if (certificates == null) {
+      certificates = new ArrayList<X509Certificate>(1);
+      index.put(key, certificates);
+    }
+    certificates.add(certificate);
+  }
+
+  private static <K> Map<K, List<X509Certificate>> freeze(Map<K, List<X509Certificate>> index) {
+    for (Map.Entry<K, List<X509Certificate>> entry: index.entrySet()) {
+      entry.setValue(Collections.unmodifiableList(entry.getValue()));
+    }
+    return Collections.unmodifiableMap(index);
+  }
+
+  /**
+   * Maps the certificates in a (frozen) index to their trust anchors.
+   *
+   * @param index the index
+   * @param trustAnchors the trust anchor of each certificate
+   *
+   * @return an unmodifiable index of trust anchors
+   */
+  private static <K> Map<K, Set<TrustAnchor>> toTrustAnchorIndex(Map<K, List<X509Certificate>> index, Map<X509Certificate, TrustAnchor> trustAnchors) {
+    Map<K, Set<TrustAnchor>> result = new HashMap<K, Set<TrustAnchor>>(2 * index.size());
+    for (Map.Entry<K, List<X509Certificate>> entry: index.entrySet()) {
+      Set<TrustAnchor> anchors = new LinkedHashSet<TrustAnchor>(2 * entry.getValue().size());
+      for (X509Certificate certificate: entry.getValue()) {
+        anchors.add(trustAnchors.get(certificate));
+      }
+      result.put(entry.getKey(), Collections.unmodifiableSet(anchors));
+    }
+    return Collections.unmodifiableMap(result);
+  }
+
+  /**
+   * An immutable, indexed set of certificates.
+   */
+  private static class Snapshot {
+
+    private final long generation;
+    private final List<X509Certificate> certificates;
+    private final Map<X500Principal, List<X509Certificate>> bySubject;
+    private final Map<String, List<X509Certificate>> bySubjectKeyIdentifier;
+    private final Map<String, List<X509Certificate>> byCountry;
+    private final Set<TrustAnchor> trustAnchors;
+    private final Map<X500Principal, Set<TrustAnchor>> trustAnchorsBySubject;
+    private final Map<String, Set<TrustAnchor>> trustAnchorsBySubjectKeyIdentifier;
+
+    public Snapshot(Collection<X509Certificate> certificates, long generation) {
+      this.generation = generation;
+      Set<X509Certificate> distinctCertificates = new LinkedHashSet<X509Certificate>(certificates);
+      Map<X500Principal, List<X509Certificate>> subjectIndex = new HashMap<X500Principal, List<X509Certificate>>();
+      Map<String, List<X509Certificate>> subjectKeyIdentifierIndex = new HashMap<String, List<X509Certificate>>();
+      Map<String, List<X509Certificate>> countryIndex = new LinkedHashMap<String, List<X509Certificate>>();
+      Map<X509Certificate, TrustAnchor> anchors = new LinkedHashMap<X509Certificate, TrustAnchor>(2 * distinctCertificates.size());
+      for (X509Certificate certificate: distinctCertificates) {
+        index(subjectIndex, certificate.getSubjectX500Principal(), certificate);
+        byte[] subjectKeyIdentifier = getSubjectKeyIdentifier(certificate);
+        index(subjectKeyIdentifierIndex, subjectKeyIdentifier == null ? null : Hex.toHexString(subjectKeyIdentifier), certificate);
+        index(countryIndex, getCountry(certificate), certificate);
+        anchors.put(certificate, new TrustAnchor(certificate, null));
+      }
+
+      this.certificates = Collections.unmodifiableList(new ArrayList<X509Certificate>(distinctCertificates));
+      this.bySubject = freeze(subjectIndex);
+      this.bySubjectKeyIdentifier = freeze(subjectKeyIdentifierIndex);
+      this.byCountry = freeze(countryIndex);
+      this.trustAnchors = Collections.unmodifiableSet(new LinkedHashSet<TrustAnchor>(anchors.values()));
+      this.trustAnchorsBySubject = toTrustAnchorIndex(bySubject, anchors);
+      this.trustAnchorsBySubjectKeyIdentifier = toTrustAnchorIndex(bySubjectKeyIdentifier, anchors);
+    }
+  }
+}
@@ -27,6 +27,8 @@ import java.security.Principal;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
+import org.jmrtd.lds.icao.ICAOCountry;
+
 import net.sf.scuba.data.Country;
 
 /**
@@ -62,7 +64,7 @@ public class CVCPrincipal implements Principal, Serializable {
 
     final String alpha2Code = name.substring(0, 2).toUpperCase();
     try {
-      country = Country.getInstance(alpha2Code);
+      country = ICAOCountry.getInstance(alpha2Code);
     } catch (IllegalArgumentException iae) {
       LOGGER.log(Level.FINE, "Could not find country for " + alpha2Code, iae);
       country = new Country() {
@@ -50,6 +50,7 @@ import org.ejbca.cvc.HolderReferenceField;
 import org.ejbca.cvc.OIDField;
 import org.ejbca.cvc.ReferenceField;
 import org.ejbca.cvc.exception.ConstructionException;
+import org.jmrtd.lds.icao.ICAOCountry;
 
 import net.sf.scuba.data.Country;
 
@@ -333,7 +334,7 @@ public class CardVerifiableCertificate extends Certificate {
     try  {
       ReferenceField rf = cvCertificate.getCertificateBody().getAuthorityReference();
       final String countryCode = rf.getCountry().toUpperCase();
-      Country country = Country.getInstance(countryCode);
+      Country country = ICAOCountry.getInstance(countryCode);
       return new CVCPrincipal(country, rf.getMnemonic(), rf.getSequence());
     } catch (NoSuchFieldException nsfe) {
       throw new CertificateException("No such field", nsfe);
@@ -350,7 +351,7 @@ public class CardVerifiableCertificate extends Certificate {
   public CVCPrincipal getHolderReference() throws CertificateException {
     try  {
       ReferenceField rf = cvCertificate.getCertificateBody().getHolderReference();
-      return new CVCPrincipal(Country.getInstance(rf.getCountry().toUpperCase()), rf.getMnemonic(), rf.getSequence());
+      return new CVCPrincipal(ICAOCountry.getInstance(rf.getCountry().toUpperCase()), rf.getMnemonic(), rf.getSequence());
     } catch (NoSuchFieldException nsfe) {
       throw new CertificateException("No such field", nsfe);
     }
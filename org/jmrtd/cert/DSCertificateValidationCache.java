@@ -0,0 +1,335 @@
+/*
+ * JMRTD - A Java API for accessing machine readable travel documents.
+ *
+ * Copyright (C) 2006 - 2026  The JMRTD team
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA
+ *
+ * $Id: $
+ */
+
+package org.jmrtd.cert;
+
+import java.security.GeneralSecurityException;
+import java.security.cert.X509Certificate;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.bouncycastle.util.encoders.Hex;
+import org.jmrtd.Util;
+
+/**
+ * A bounded cache of document signer certificate validation outcomes, keyed by
+ * the SHA-256 fingerprint of the document signer certificate.
+ *
+ * A single document signer certificate signs many documents, so its path
+ * to the country signing certificate only needs to be validated once.
+ * Outcomes expire when one of the certificates in the chain expires, or
+ * after a configurable maximum age, whichever comes first. The maximum age
+ * should not exceed the refresh interval of the revocation data used in validation.
+ * Failed outcomes, for instance because the issuer is not (yet) trusted, expire
+ * after a shorter maximum age.
+ *
+ * Outcomes are tied to the generation of the trust store they were computed with
+ * (see {@link CSCATrustStore#getGeneration()}), so that outcomes computed before
+ * the trust store changed are not used. {@link #invalidateAll()} should be called
+ * when the revocation data changes.
+ *
+ * Instances are thread-safe. When the maximum size is reached, the least recently
+ * used outcome is evicted.
+ *
+ * @author The JMRTD team (info@jmrtd.org)
+ *
+ * @version $Revision: $
+ *
+ * @since 0.8.4
+ */
+public class DSCertificateValidationCache {
+
+  /** The default maximum number of cached outcomes. */
+  public static final int DEFAULT_MAXIMUM_SIZE = 4096;
+
+  /** The default maximum age of cached outcomes, one hour. */
+  public static final long DEFAULT_MAXIMUM_AGE_MILLIS = 60L * 60L * 1000L;
+
+  /** The default maximum age of cached failed outcomes, one minute. */
+  public static final long DEFAULT_MAXIMUM_FAILURE_AGE_MILLIS = 60L * 1000L;
+
+  private final int maximumSize;
+
+  private final long maximumAgeMillis;
+
+  private final long maximumFailureAgeMillis;
+
+  private final Map<String, Outcome> outcomes;
+
+  private long hitCount;
+
+  private long missCount;
+
+  /**
+   * Creates a cache with default maximum size and maximum age.
+   */
+  public DSCertificateValidationCache() {
+    this(DEFAULT_MAXIMUM_SIZE, DEFAULT_MAXIMUM_AGE_MILLIS);
+  }
+
+  /**
+   * Creates a cache. Failed outcomes are cached for at most the default maximum failure age.
+   *
+   * @param maximumSize the maximum number of cached outcomes
+   * @param maximumAgeMillis the maximum age of cached outcomes in milliseconds
+   */
+  public DSCertificateValidationCache(int maximumSize, long maximumAgeMillis) {
+    this(maximumSize, maximumAgeMillis, Math.min(maximumAgeMillis, DEFAULT_MAXIMUM_FAILURE_AGE_MILLIS));
+  }
+
+  /**
+   * Creates a cache.
+   *
+   * @param maximumSize the maximum number of cached outcomes
+   * @param maximumAgeMillis the maximum age of cached successful outcomes in milliseconds
+   * @param maximumFailureAgeMillis the maximum age of cached failed outcomes in milliseconds,
+   *        or {@code 0} to not cache failed outcomes
+   */
+  public DSCertificateValidationCache(final int maximumSize, long maximumAgeMillis, long maximumFailureAgeMillis) {
+    if (maximumSize <= 0) {
+      throw new IllegalArgumentException("Maximum size should be positive, found " + maximumSize);
+    }
+    if (maximumAgeMillis <= 0) {
+      throw new IllegalArgumentException("Maximum age should be positive, found " + maximumAgeMillis);
+    }
+    if (maximumFailureAgeMillis < 0) {
+      throw new IllegalArgumentException("Maximum failure age should not be negative, found " + maximumFailureAgeMillis);
+    }
+
+    this.maximumSize = maximumSize;
+    this.maximumAgeMillis = maximumAgeMillis;
+    this.maximumFailureAgeMillis = maximumFailureAgeMillis;
+    this.outcomes = new LinkedHashMap<String, Outcome>(16, 0.75f, true) {
+      private static final long serialVersionUID = 4616316364632427040L;
+
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<String, Outcome> eldest) {
+        return size() > maximumSize;
+      }
+    };
+  }
+
+  /**
+   * Returns the cached outcome for a document signer certificate.
+   *
+   * @param docSigningCertificate the document signer certificate
+   * @param trustStoreGeneration the current generation of the trust store
+   * @param date the date of validation, typically the current date
+   *
+   * @return the outcome, or {@code null} if there is no (unexpired) cached outcome for this generation
+   *
+   * @throws GeneralSecurityException if the fingerprint of the certificate could not be computed
+   */
+  public Outcome get(X509Certificate docSigningCertificate, long trustStoreGeneration, Date date) throws GeneralSecurityException {
+    String fingerprint = getFingerprint(docSigningCertificate);
+    synchronized (outcomes) {
+      Outcome outcome = outcomes.get(fingerprint);
+      if (outcome != null && (date.getTime() >= outcome.expiryTime || outcome.trustStoreGeneration != trustStoreGeneration)) {
+        outcomes.remove(fingerprint);
+        outcome = null;
+      }
+      if (outcome == null) {
+        missCount++;
+      } else {
+        hitCount++;
+      }
+      return outcome;
+    }
+  }
+
+  /**
+   * Stores a successful validation outcome.
+   *
+   * @param docSigningCertificate the document signer certificate
+   * @param trustStoreGeneration the generation of the trust store used in validation,
+   *        as it was before validation started
+   * @param certificateChain the validated chain, starting with the document signer certificate
+   * @param date the date of validation
+   *
+   * @return the stored outcome
+   *
+   * @throws GeneralSecurityException if the fingerprint of the certificate could not be computed
+   */
+  public Outcome putValid(X509Certificate docSigningCertificate, long trustStoreGeneration, List<X509Certificate> certificateChain, Date date) throws GeneralSecurityException {
+    long expiryTime = date.getTime() + maximumAgeMillis;
+    for (X509Certificate certificate: certificateChain) {
+      expiryTime = Math.min(expiryTime, certificate.getNotAfter().getTime());
+    }
+    return put(docSigningCertificate, new Outcome(true, certificateChain, null, trustStoreGeneration, expiryTime));
+  }
+
+  /**
+   * Stores a failed validation outcome.
+   *
+   * The outcome is not stored if the maximum failure age is {@code 0}.
+   *
+   * @param docSigningCertificate the document signer certificate
+   * @param trustStoreGeneration the generation of the trust store used in validation,
+   *        as it was before validation started
+   * @param reason the reason of the failure
+   * @param date the date of validation
+   *
+   * @return the outcome
+   *
+   * @throws GeneralSecurityException if the fingerprint of the certificate could not be computed
+   */
+  public Outcome putInvalid(X509Certificate docSigningCertificate, long trustStoreGeneration, String reason, Date date) throws GeneralSecurityException {
+    Outcome outcome = new Outcome(false, Collections.<X509Certificate>emptyList(), reason, trustStoreGeneration, date.getTime() + maximumFailureAgeMillis);
+    return maximumFailureAgeMillis == 0 ? outcome : put(docSigningCertificate, outcome);
+  }
+
+  /**
+   * Removes all cached outcomes. This should be called when the revocation data change.
+   */
+  public void invalidateAll() {
+    synchronized (outcomes) {
+      outcomes.clear();
+    }
+  }
+
+  /**
+   * Returns the number of cached outcomes.
+   *
+   * @return the number of cached outcomes
+   */
+  public int size() {
+    synchronized (outcomes) {
+      return outcomes.size();
+    }
+  }
+
+  /**
+   * Returns the maximum number of cached outcomes.
+   *
+   * @return the maximum size
+   */
+  public int getMaximumSize() {
+    return maximumSize;
+  }
+
+  /**
+   * Returns the number of lookups that found an outcome.
+   *
+   * @return the number of hits
+   */
+  public long getHitCount() {
+    synchronized (outcomes) {
+      return hitCount;
+    }
+  }
+
+  /**
+   * Returns the number of lookups that did not find an outcome.
+   *
+   * @return the number of misses
+   */
+  public long getMissCount() {
+    synchronized (outcomes) {
+      return missCount;
+    }
+  }
+
+  @Override
+  public String toString() {
+    synchronized (outcomes) {
+      return "DSCertificateValidationCache [size: " + outcomes.size() + ", maximumSize: " + maximumSize
+          + ", hits: " + hitCount + ", misses: " + missCount + "]";
+    }
+  }
+
+  private Outcome put(X509Certificate docSigningCertificate, Outcome outcome) throws GeneralSecurityException {
+    String fingerprint = getFingerprint(docSigningCertificate);
+    synchronized (outcomes) {
+      outcomes.put(fingerprint, outcome);
+    }
+    return outcome;
+  }
+
+  private static String getFingerprint(X509Certificate certificate) throws GeneralSecurityException {
+    return Hex.toHexString(Util.getMessageDigest("SHA-256").digest(certificate.getEncoded()));
+  }
+
+  /**
+   * A cached validation outcome.
+   */
+  public static class Outcome {
+
+    private final boolean isValid;
+    private final List<X509Certificate> certificateChain;
+    private final String reason;
+    private final long trustStoreGeneration;
+    private final long expiryTime;
+
+    private Outcome(boolean isValid, List<X509Certificate> certificateChain, String reason, long trustStoreGeneration, long expiryTime) {
+      this.isValid = isValid;
+      this.certificateChain = Collections.unmodifiableList(new ArrayList<X509Certificate>(certificateChain));
+      this.reason = reason;
+      this.trustStoreGeneration = trustStoreGeneration;
+      this.expiryTime = expiryTime;
+    }
+
+    /**
+     * Whether the document signer certificate was found to be valid.
+     *
+     * @return a boolean
+     */
+    public boolean isValid() {
+      return isValid;
+    }
+
+    /**
+     * Returns the validated chain.
+     *
+     * @return the chain, starting with the document signer certificate, empty if not valid
+     */
+    public List<X509Certificate> getCertificateChain() {
+      return certificateChain;
+    }
+
+    /**
+     * Returns the reason why validation failed.
+     *
+     * @return the reason, or {@code null} if valid
+     */
+    public String getReason() {
+      return reason;
+    }
+
+    /**
+     * Returns the date after which this outcome is no longer used.
+     *
+     * @return the expiry date
+     */
+    public Date getExpiryDate() {
+      return new Date(expiryTime);
+    }
+
+    @Override
+    public String toString() {
+      return "Outcome [isValid: " + isValid + ", reason: " + reason + ", expiryDate: " + getExpiryDate() + "]";
+    }
+  }
+}
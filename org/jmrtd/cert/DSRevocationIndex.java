@@ -0,0 +1,513 @@
+/*
+ * JMRTD - A Java API for accessing machine readable travel documents.
+ *
+ * Copyright (C) 2006 - 2026  The JMRTD team
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA
+ *
+ * $Id: $
+ */
+
+package org.jmrtd.cert;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.math.BigInteger;
+import java.security.GeneralSecurityException;
+import java.security.cert.CRL;
+import java.security.cert.CertificateFactory;
+import java.security.cert.X509CRL;
+import java.security.cert.X509CRLEntry;
+import java.security.cert.X509Certificate;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.security.auth.x500.X500Principal;
+
+import org.jmrtd.Util;
+import org.jmrtd.lds.SODFile;
+
+/**
+ * An in-memory index of revoked document signer certificates, built from CRLs.
+ *
+ * Revoked certificates are identified by issuer and serial number, hashed
+ * to a 64-bit key and stored in an open addressing set of primitive longs,
+ * optionally fronted by a Bloom filter. As almost all lookups are for certificates
+ * that are not revoked, lookups that hit the set are confirmed against the
+ * CRLs of the issuer, so that a hash collision never results in a false positive.
+ *
+ * The index is held in an immutable snapshot, {@link #rebuild(Collection, CSCATrustStore)}
+ * builds a new snapshot which atomically replaces the current one.
+ * Instances are thread-safe.
+ *
+ * @author The JMRTD team (info@jmrtd.org)
+ *
+ * @version $Revision: $
+ *
+ * @since 0.8.4
+ */
+public class DSRevocationIndex {
+
+  private static final Logger LOGGER = Logger.getLogger("org.jmrtd");
+
+  /** Number of bits per revoked certificate in the Bloom filter. */
+  private static final int BLOOM_FILTER_BITS_PER_ENTRY = 10;
+
+  /** Number of hash functions in the Bloom filter, optimal for 10 bits per entry. */
+  private static final int BLOOM_FILTER_HASH_COUNT = 7;
+
+  private final boolean isBloomFilterUsed;
+
+  private final AtomicReference<Snapshot> snapshot;
+
+  /**
+   * Creates an empty index without Bloom filter.
+   */
+  public DSRevocationIndex() {
+    this(false);
+  }
+
+  /**
+   * Creates an empty index.
+   *
+   * @param isBloomFilterUsed whether to front the index with a Bloom filter,
+   *        which pays off for large CRLs as it is more cache friendly
+   */
+  public DSRevocationIndex(boolean isBloomFilterUsed) {
+    this.isBloomFilterUsed = isBloomFilterUsed;
+    this.snapshot = new AtomicReference<Snapshot>(new Snapshot(Collections.<X509CRL>emptyList(), isBloomFilterUsed));
+  }
+
+  /**
+   * Replaces the contents of this index with the revoked certificates in the given CRLs.
+   *
+   * @param crls the CRLs
+   * @param trustStore the trust store used to verify the CRL signatures,
+   *        or {@code null} to accept the CRLs without verification
+   *
+   * @return the number of CRLs that were accepted
+   */
+  public int rebuild(Collection<X509CRL> crls, CSCATrustStore trustStore) {
+    List<X509CRL> acceptedCRLs = new ArrayList<X509CRL>(crls.size());
+    for (X509CRL crl: crls) {
+      if (trustStore == null || isSignedByTrustedIssuer(crl, trustStore)) {
+        acceptedCRLs.add(crl);
+      } else {
+        LOGGER.warning("Skipping CRL of " + crl.getIssuerX500Principal() + ", could not verify signature");
+      }
+    }
+    snapshot.set(new Snapshot(acceptedCRLs, isBloomFilterUsed));
+    return acceptedCRLs.size();
+  }
+
+  /**
+   * Replaces the contents of this index with the revoked certificates in the
+   * CRL files in the given directory. Files that cannot be read as CRL are skipped.
+   *
+   * @param directory the directory containing the CRL files (DER or PEM encoded)
+   * @param trustStore the trust store used to verify the CRL signatures,
+   *        or {@code null} to accept the CRLs without verification
+   *
+   * @return the number of CRLs that were accepted
+   *
+   * @throws IOException if the directory cannot be listed
+   */
+  public int rebuild(File directory, CSCATrustStore trustStore) throws IOException {
+    File[] files = directory.listFiles();
+    if (files == null) {
+      throw new IOException("Cannot list files in " + directory);
+    }
+
+    List<X509CRL> crls = new ArrayList<X509CRL>(files.length);
+    for (File file: files) {
+      if (!file.isFile()) {
+        continue;
+      }
+      try {
+        crls.addAll(readCRLs(file));
+      } catch (Exception e) {
+        LOGGER.log(Level.WARNING, "Skipping " + file + ", could not read CRL", e);
+      }
+    }
+    return rebuild(crls, trustStore);
+  }
+
+  /**
+   * Whether the certificate with the given issuer and serial number is revoked.
+   *
+   * @param issuer the issuer, for instance the result of {@link SODFile#getIssuerX500Principal()}
+   * @param serialNumber the serial number, for instance the result of {@link SODFile#getSerialNumber()}
+   *
+   * @return whether the certificate is revoked
+   */
+  public boolean isRevoked(X500Principal issuer, BigInteger serialNumber) {
+    if (issuer == null || serialNumber == null) {
+      return false;
+    }
+    return snapshot.get().isRevoked(issuer, serialNumber);
+  }
+
+  /**
+   * Whether the given certificate is revoked.
+   *
+   * @param certificate the certificate
+   *
+   * @return whether the certificate is revoked
+   */
+  public boolean isRevoked(X509Certificate certificate) {
+    return isRevoked(certificate.getIssuerX500Principal(), certificate.getSerialNumber());
+  }
+
+  /**
+   * Whether the document signer certificate of the given security object is revoked.
+   * The document signer certificate is identified by the issuer and serial number
+   * in the signer info, or by the embedded certificate if the signer info uses a
+   * subject key identifier.
+   *
+   * @param sodFile the security object
+   *
+   * @return whether the document signer certificate is revoked
+   */
+  public boolean isRevoked(SODFile sodFile) {
+    X500Principal issuer = sodFile.getIssuerX500Principal();
+    BigInteger serialNumber = sodFile.getSerialNumber();
+    if (issuer != null && serialNumber != null) {
+      return isRevoked(issuer, serialNumber);
+    }
+
+    X509Certificate docSigningCertificate = sodFile.getDocSigningCertificate();
+    return docSigningCertificate != null && isRevoked(docSigningCertificate);
+  }
+
+  /**
+   * Returns the number of revoked certificates in this index.
+   *
+   * @return the number of revoked certificates
+   */
+  public int size() {
+    return snapshot.get().revokedKeys.size();
+  }
+
+  /**
+   * Returns the earliest next update date of the CRLs in this index.
+   * The index should be rebuilt before this date.
+   *
+   * @return the earliest next update date, or {@code null} if not known
+   */
+  public Date getNextUpdate() {
+    Date nextUpdate = snapshot.get().nextUpdate;
+    return nextUpdate == null ? null : new Date(nextUpdate.getTime());
+  }
+
+  @Override
+  public String toString() {
+    Snapshot current = snapshot.get();
+    return "DSRevocationIndex [" + current.revokedKeys.size() + " revoked certificates, "
+        + current.crlsByIssuer.size() + " issuers, nextUpdate: " + current.nextUpdate + "]";
+  }
+
+  /**
+   * Reads the CRLs in a file.
+   *
+   * @param file the file
+   *
+   * @return the CRLs
+   *
+   * @throws IOException on error reading the file
+   * @throws GeneralSecurityException on error decoding the CRLs
+   */
+  private static List<X509CRL> readCRLs(File file) throws IOException, GeneralSecurityException {
+    InputStream inputStream = new BufferedInputStream(new FileInputStream(file));
+    try {
+      CertificateFactory factory = CertificateFactory.getInstance("X.509", Util.getBouncyCastleProvider());
+      Collection<? extends CRL> crls = factory.generateCRLs(inputStream);
+      List<X509CRL> result = new ArrayList<X509CRL>(crls.size());
+      for (CRL crl: crls) {
+        if (crl instanceof X509CRL) {
+          result.add((X509CRL)crl);
+        }
+      }
+      return result;
+    } finally {
+      inputStream.close();
+    }
+  }
+
+  private static boolean isSignedByTrustedIssuer(X509CRL crl, CSCATrustStore trustStore) {
+    for (X509Certificate issuerCertificate: trustStore.getCertificatesBySubject(crl.getIssuerX500Principal())) {
+      try {
+        crl.verify(issuerCertificate.getPublicKey(), Util.getBouncyCastleProvider());
+        return true;
+      } catch (Exception e) {
+        LOGGER.log(Level.FINE, "CRL not signed by " + issuerCertificate.getSubjectX500Principal(), e);
+      }
+    }
+    return false;
+  }
+
+  private static String getIssuerKey(X500Principal issuer) {
+    return issuer.getName(X500Principal.CANONICAL);
+  }
+
+  /**
+   * Computes the 64-bit key for an issuer and a serial number.
+   *
+   * @param issuerKey the canonical issuer name
+   * @param serialNumber the serial number
+   *
+   * @return the key
+   */
+  private static long getKey(String issuerKey, BigInteger serialNumber) {
+    long hash = 0xCBF29CE484222325L; /* FNV-1a */
+    for (int i = 0; i < issuerKey.length(); i++) {
+      hash = (hash ^ issuerKey.charAt(i)) * 0x100000001B3L;
+    }
+    byte[] serialNumberBytes = serialNumber.toByteArray();
+    for (int i = 0; i < serialNumberBytes.length; i++) {
+      hash = (hash ^ (serialNumberBytes[i] & 0xFF)) * 0x100000001B3L;
+    }
+    return mix(hash);
+  }
+
+  /* Finalizer of MurmurHash3, spreads the bits of the key. */
+  private static long mix(long key) {
+    key ^= key >>> 33;
+    key *= 0xFF51AFD7ED558CCDL;
+    key ^= key >>> 33;
+    key *= 0xC4CEB9FE1A85EC53L;
+    key ^= key >>> 33;
+    return key;
+  }
+
+  /**
+   * An immutable index.
+   */
+  private static class Snapshot {
+
+    private final Map<String, List<X509CRL>> crlsByIssuer;
+    private final LongHashSet revokedKeys;
+    private final BloomFilter bloomFilter;
+    private final Date nextUpdate;
+
+    public Snapshot(List<X509CRL> crls, boolean isBloomFilterUsed) {
+      Map<String, List<X509CRL>> crlIndex = new HashMap<String, List<X509CRL>>();
+      List<Long> keys = new ArrayList<Long>();
+      Date earliestNextUpdate = null;
+      for (X509CRL crl: crls) {
+        String issuerKey = getIssuerKey(crl.getIssuerX500Principal());
+        index(crlIndex, issuerKey, crl);
+
+        Set<? extends X509CRLEntry> entries = crl.getRevokedCertificates();
+        if (entries != null) {
+          for (X509CRLEntry entry: entries) {
+            /* Indirect CRLs name the certificate issuer in the entry. */
+            String entryIssuerKey = getEntryIssuerKey(issuerKey, entry);
+            if (!entryIssuerKey.equals(issuerKey)) {
+              index(crlIndex, entryIssuerKey, crl);
+            }
+            keys.add(getKey(entryIssuerKey, entry.getSerialNumber()));
+          }
+        }
+
+        Date crlNextUpdate = crl.getNextUpdate();
+        if (crlNextUpdate != null && (earliestNextUpdate == null || crlNextUpdate.before(earliestNextUpdate))) {
+          earliestNextUpdate = crlNextUpdate;
+        }
+      }
+
+      this.crlsByIssuer = crlIndex;
+      this.revokedKeys = new LongHashSet(keys.size());
+      this.bloomFilter = isBloomFilterUsed ? new BloomFilter(keys.size()) : null;
+      for (long key: keys) {
+        revokedKeys.add(key);
+        if (bloomFilter != null) {
+          bloomFilter.add(key);
+        }
+      }
+      this.nextUpdate = earliestNextUpdate;
+    }
+
+    public boolean isRevoked(X500Principal issuer, BigInteger serialNumber) {
+      String issuerKey = getIssuerKey(issuer);
+      long key = getKey(issuerKey, serialNumber);
+      if (bloomFilter != null && !bloomFilter.mightContain(key)) {
+        return false;
+      }
+      if (!revokedKeys.contains(key)) {
+        return false;
+      }
+
+      /*
+       * Confirm, to rule out hash collisions. Entries are matched on serial number
+       * and effective issuer, X509CRL.getRevokedCertificate(BigInteger) only finds
+       * entries of certificates issued by the CRL issuer.
+       */
+      List<X509CRL> crls = crlsByIssuer.get(issuerKey);
+      if (crls == null) {
+        return false;
+      }
+      for (X509CRL crl: crls) {
+        Set<? extends X509CRLEntry> entries = crl.getRevokedCertificates();
+        if (entries == null) {
+          continue;
+        }
+        String crlIssuerKey = getIssuerKey(crl.getIssuerX500Principal());
+        for (X509CRLEntry entry: entries) {
+          if (serialNumber.equals(entry.getSerialNumber()) && issuerKey.equals(getEntryIssuerKey(crlIssuerKey, entry))) {
+            return true;
+          }
+        }
+      }
+      return false;
+    }
+
+    private static void index(Map<String, List<X509CRL>> crlIndex, String issuerKey, X509CRL crl) {
+      List<X509CRL> issuerCRLs = crlIndex.get(issuerKey);
+      if (issuerCRLs == null) {
+        issuerCRLs = new ArrayList<X509CRL>(1);
+        crlIndex.put(issuerKey, issuerCRLs);
+      }
+      /* NOTE: Identity, comparing CRLs compares their encodings. */
+      for (X509CRL issuerCRL: issuerCRLs) {
+        if (issuerCRL == crl) {
+          return;
+        }
+      }
+      issuerCRLs.add(crl);
+    }
+
+    /**
+     * Returns the key of the issuer of the certificate in a CRL entry.
+     * The certificate issuer of an entry in an indirect CRL also applies to
+     * the entries that follow it, both the JDK and BouncyCastle report
+     * this effective issuer.
+     *
+     * @param crlIssuerKey the key of the CRL issuer
+     * @param entry the entry
+     *
+     * @return the key of the certificate issuer
+     */
+    private static String getEntryIssuerKey(String crlIssuerKey, X509CRLEntry entry) {
+      X500Principal certificateIssuer = entry.getCertificateIssuer();
+      return certificateIssuer == null ? crlIssuerKey : getIssuerKey(certificateIssuer);
+    }
+  }
+
+  /**
+   * An open addressing (linear probing) hash set of longs.
+   * Zero is used to mark empty slots and is tracked separately.
+   */
+  private static class LongHashSet {
+
+    private final long[] slots;
+    private final int mask;
+    private boolean isZeroPresent;
+    private int size;
+
+    public LongHashSet(int expectedSize) {
+      int capacity = 16;
+      while (capacity < 2 * expectedSize) {
+        capacity <<= 1;
+      }
+      this.slots = new long[capacity];
+      this.mask = capacity - 1;
+    }
+
+    public void add(long key) {
+      if (key == 0) {
+        if (!isZeroPresent) {
+          isZeroPresent = true;
+          size++;
+        }
+        return;
+      }
+      int index = (int)key & mask;
+      while (slots[index] != 0) {
+        if (slots[index] == key) {
+          return;
+        }
+        index = (index + 1) & mask;
+      }
+      slots[index] = key;
+      size++;
+    }
+
+    public boolean contains(long key) {
+      if (key == 0) {
+        return isZeroPresent;
+      }
+      int index = (int)key & mask;
+      while (slots[index] != 0) {
+        if (slots[index] == key) {
+          return true;
+        }
+        index = (index + 1) & mask;
+      }
+      return false;
+    }
+
+    public int size() {
+      return size;
+    }
+  }
+
+  /**
+   * A Bloom filter on 64-bit keys, using double hashing on the two halves of the key.
+   */
+  private static class BloomFilter {
+
+    private final long[] bits;
+    private final int bitCount;
+
+    public BloomFilter(int expectedSize) {
+      int requiredBitCount = Math.max(64, expectedSize * BLOOM_FILTER_BITS_PER_ENTRY);
+      this.bits = new long[(requiredBitCount + 63) >>> 6];
+      this.bitCount = bits.length << 6;
+    }
+
+    public void add(long key) {
+      int h1 = (int)key;
+      int h2 = (int)(key >>> 32);
+      for (int i = 0; i < BLOOM_FILTER_HASH_COUNT; i++) {
+        int bit = ((h1 + i * h2) & Integer.MAX_VALUE) % bitCount;
+        bits[bit >>> 6] |= 1L << bit;
+      }
+    }
+
+    public boolean mightContain(long key) {
+      int h1 = (int)key;
+      int h2 = (int)(key >>> 32);
+      for (int i = 0; i < BLOOM_FILTER_HASH_COUNT; i++) {
+        int bit = ((h1 + i * h2) & Integer.MAX_VALUE) % bitCount;
+        if ((bits[bit >>> 6] & (1L << bit)) == 0) {
+          return false;
+        }
+      }
+      return true;
+    }
+  }
+}
@@ -0,0 +1,418 @@
+/*
+ * JMRTD - A Java API for accessing machine readable travel documents.
+ *
+ * Copyright (C) 2006 - 2026  The JMRTD team
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA
+ *
+ * $Id: $
+ */
+
+package org.jmrtd.crypto;
+
+import java.io.IOException;
+import java.math.BigInteger;
+import java.security.GeneralSecurityException;
+import java.security.InvalidKeyException;
+import java.security.NoSuchAlgorithmException;
+import java.security.PrivateKey;
+import java.security.PublicKey;
+import java.security.SecureRandom;
+import java.security.interfaces.ECPrivateKey;
+import java.security.interfaces.ECPublicKey;
+import java.security.spec.AlgorithmParameterSpec;
+import java.security.spec.ECParameterSpec;
+import java.security.spec.ECPoint;
+import java.security.spec.MGF1ParameterSpec;
+import java.security.spec.PSSParameterSpec;
+
+import javax.crypto.IllegalBlockSizeException;
+import javax.crypto.SecretKey;
+import javax.crypto.interfaces.DHPrivateKey;
+import javax.crypto.interfaces.DHPublicKey;
+import javax.crypto.spec.DHParameterSpec;
+
+import org.bouncycastle.crypto.CipherParameters;
+import org.bouncycastle.crypto.Digest;
+import org.bouncycastle.crypto.Mac;
+import org.bouncycastle.crypto.Signer;
+import org.bouncycastle.crypto.agreement.DHBasicAgreement;
+import org.bouncycastle.crypto.agreement.ECDHBasicAgreement;
+import org.bouncycastle.crypto.digests.SHA1Digest;
+import org.bouncycastle.crypto.digests.SHA224Digest;
+import org.bouncycastle.crypto.digests.SHA256Digest;
+import org.bouncycastle.crypto.digests.SHA384Digest;
+import org.bouncycastle.crypto.digests.SHA512Digest;
+import org.bouncycastle.crypto.engines.AESEngine;
+import org.bouncycastle.crypto.engines.DESEngine;
+import org.bouncycastle.crypto.engines.DESedeEngine;
+import org.bouncycastle.crypto.engines.RSABlindedEngine;
+import org.bouncycastle.crypto.macs.CMac;
+import org.bouncycastle.crypto.macs.ISO9797Alg3Mac;
+import org.bouncycastle.crypto.modes.CBCBlockCipher;
+import org.bouncycastle.crypto.paddings.ISO7816d4Padding;
+import org.bouncycastle.crypto.params.AsymmetricKeyParameter;
+import org.bouncycastle.crypto.params.DHParameters;
+import org.bouncycastle.crypto.params.DHPrivateKeyParameters;
+import org.bouncycastle.crypto.params.DHPublicKeyParameters;
+import org.bouncycastle.crypto.params.ECDomainParameters;
+import org.bouncycastle.crypto.params.ECPrivateKeyParameters;
+import org.bouncycastle.crypto.params.ECPublicKeyParameters;
+import org.bouncycastle.crypto.params.KeyParameter;
+import org.bouncycastle.crypto.params.ParametersWithIV;
+import org.bouncycastle.crypto.params.ParametersWithRandom;
+import org.bouncycastle.crypto.signers.DSADigestSigner;
+import org.bouncycastle.crypto.signers.ECDSASigner;
+import org.bouncycastle.crypto.signers.PSSSigner;
+import org.bouncycastle.crypto.signers.RSADigestSigner;
+import org.bouncycastle.crypto.util.PrivateKeyFactory;
+import org.bouncycastle.util.BigIntegers;
+import org.jmrtd.Util;
+
+/**
+ * A crypto backend based on the BouncyCastle lightweight API, which bypasses
+ * the JCA provider lookup and key conversions.
+ *
+ * Block ciphers and MACs keep their key schedule while they are re-initialized with the same key,
+ * which is the common case in secure messaging where only the initialization vector changes per APDU.
+ *
+ * Algorithms not supported by the lightweight API implementation (such as plain ECDSA signatures)
+ * are delegated to a {@link JCACryptoBackend}.
+ *
+ * @author The JMRTD team (info@jmrtd.org)
+ *
+ * @version $Revision: $
+ *
+ * @since 0.8.4
+ */
+public class BouncyCastleCryptoBackend implements CryptoBackend {
+
+  private final SecureRandom random;
+
+  private final CryptoBackend fallbackBackend;
+
+  /**
+   * Creates a backend.
+   */
+  public BouncyCastleCryptoBackend() {
+    this.random = new SecureRandom();
+    this.fallbackBackend = new JCACryptoBackend();
+  }
+
+  @Override
+  public String getName() {
+    return "BC-lightweight";
+  }
+
+  @Override
+  public BlockCipher getBlockCipher(String transformation) throws GeneralSecurityException {
+    String[] parts = transformation.split("/");
+    String algorithm = parts[0];
+    String mode = parts.length > 1 ? parts[1].toUpperCase() : "ECB";
+    String padding = parts.length > 2 ? parts[2].toUpperCase() : "NOPADDING";
+    if (!"NOPADDING".equals(padding) || !("CBC".equals(mode) || "ECB".equals(mode))) {
+      return fallbackBackend.getBlockCipher(transformation);
+    }
+
+    org.bouncycastle.crypto.BlockCipher engine = null;
+    if ("AES".equalsIgnoreCase(algorithm)) {
+      engine = AESEngine.newInstance();
+    } else if ("DESede".equalsIgnoreCase(algorithm) || "TripleDES".equalsIgnoreCase(algorithm)) {
+      engine = new DESedeEngine();
+    } else {
+      return fallbackBackend.getBlockCipher(transformation);
+    }
+
+    return new LightweightBlockCipher("CBC".equals(mode) ? CBCBlockCipher.newInstance(engine) : engine, "CBC".equals(mode));
+  }
+
+  @Override
+  public MAC getMAC(String algorithm) throws GeneralSecurityException {
+    if ("AESCMAC".equalsIgnoreCase(algorithm)) {
+      return new LightweightMAC(new CMac(AESEngine.newInstance()));
+    } else if ("ISO9797Alg3Mac".equalsIgnoreCase(algorithm)) {
+      return new LightweightMAC(new ISO9797Alg3Mac(new DESEngine()));
+    } else if ("ISO9797Alg3WithISO7816-4Padding".equalsIgnoreCase(algorithm)) {
+      return new LightweightMAC(new ISO9797Alg3Mac(new DESEngine(), new ISO7816d4Padding()));
+    }
+
+    return fallbackBackend.getMAC(algorithm);
+  }
+
+  @Override
+  public byte[] digest(String algorithm, byte[] data) throws GeneralSecurityException {
+    Digest digest = getDigest(algorithm);
+    if (digest == null) {
+      return fallbackBackend.digest(algorithm, data);
+    }
+
+    byte[] result = new byte[digest.getDigestSize()];
+    digest.update(data, 0, data.length);
+    digest.doFinal(result, 0);
+    return result;
+  }
+
+  @Override
+  public byte[] generateSecret(String agreementAlgorithm, PrivateKey privateKey, PublicKey publicKey) throws GeneralSecurityException {
+    if ("ECDH".equals(agreementAlgorithm)) {
+      if (!(privateKey instanceof ECPrivateKey) || !(publicKey instanceof ECPublicKey)) {
+        throw new InvalidKeyException("Expected EC keys for ECDH");
+      }
+      ECPrivateKeyParameters privateKeyParameters = Util.toBouncyECPrivateKeyParameters((ECPrivateKey)privateKey);
+      ECDomainParameters domainParameters = privateKeyParameters.getParameters();
+
+      /* NOTE: Interpret the public point on the curve of the private key, the public key may lack parameters. */
+      ECPoint w = ((ECPublicKey)publicKey).getW();
+      ECPublicKeyParameters publicKeyParameters = new ECPublicKeyParameters(domainParameters.getCurve().createPoint(w.getAffineX(), w.getAffineY()), domainParameters);
+
+      ECDHBasicAgreement agreement = new ECDHBasicAgreement();
+      agreement.init(privateKeyParameters);
+      try {
+        return BigIntegers.asUnsignedByteArray(agreement.getFieldSize(), agreement.calculateAgreement(publicKeyParameters));
+      } catch (IllegalStateException ise) {
+        throw new InvalidKeyException("Invalid public key", ise);
+      }
+    } else if ("DH".equals(agreementAlgorithm)) {
+      if (!(privateKey instanceof DHPrivateKey) || !(publicKey instanceof DHPublicKey)) {
+        throw new InvalidKeyException("Expected DH keys for DH");
+      }
+      DHPrivateKey dhPrivateKey = (DHPrivateKey)privateKey;
+      DHParameterSpec params = dhPrivateKey.getParams();
+      DHParameters domainParameters = new DHParameters(params.getP(), params.getG(), null, params.getL());
+
+      DHBasicAgreement agreement = new DHBasicAgreement();
+      agreement.init(new DHPrivateKeyParameters(dhPrivateKey.getX(), domainParameters));
+      try {
+        BigInteger secret = agreement.calculateAgreement(new DHPublicKeyParameters(((DHPublicKey)publicKey).getY(), domainParameters));
+        return BigIntegers.asUnsignedByteArray(agreement.getFieldSize(), secret);
+      } catch (IllegalArgumentException iae) {
+        throw new InvalidKeyException("Invalid public key", iae);
+      }
+    }
+
+    throw new NoSuchAlgorithmException("Unsupported agreement algorithm " + agreementAlgorithm);
+  }
+
+  @Override
+  public ECPoint multiplyAndAdd(BigInteger s, ECPoint p, ECPoint q, ECParameterSpec params) {
+    org.bouncycastle.math.ec.ECPoint bcP = Util.toBouncyCastleECPoint(p, params);
+    org.bouncycastle.math.ec.ECPoint result = bcP.multiply(s);
+    if (q != null) {
+      result = result.add(bcP.getCurve().createPoint(q.getAffineX(), q.getAffineY()));
+    }
+    return Util.fromBouncyCastleECPoint(result);
+  }
+
+  @Override
+  public byte[] sign(String signatureAlgorithm, AlgorithmParameterSpec params, PrivateKey privateKey, byte[] data) throws GeneralSecurityException {
+    Signer signer = getSigner(signatureAlgorithm, params);
+    if (signer == null) {
+      return fallbackBackend.sign(signatureAlgorithm, params, privateKey, data);
+    }
+
+    try {
+      signer.init(true, new ParametersWithRandom(toKeyParameter(privateKey), random));
+      signer.update(data, 0, data.length);
+      return signer.generateSignature();
+    } catch (org.bouncycastle.crypto.CryptoException ce) {
+      throw new GeneralSecurityException("Could not sign", ce);
+    } catch (RuntimeException re) {
+      throw new InvalidKeyException("Could not sign with " + privateKey.getAlgorithm() + " key", re);
+    }
+  }
+
+  @Override
+  public String toString() {
+    return "BouncyCastleCryptoBackend";
+  }
+
+  /**
+   * Returns a lightweight signer for the given algorithm.
+   *
+   * @param signatureAlgorithm the signature algorithm
+   * @param params the signature parameters, or {@code null}
+   *
+   * @return a signer, or {@code null} if the algorithm is not supported by this backend
+   */
+  private static Signer getSigner(String signatureAlgorithm, AlgorithmParameterSpec params) {
+    if (params instanceof PSSParameterSpec) {
+      PSSParameterSpec pssParams = (PSSParameterSpec)params;
+      Digest contentDigest = getDigest(pssParams.getDigestAlgorithm());
+      AlgorithmParameterSpec mgfParams = pssParams.getMGFParameters();
+      Digest mgfDigest = mgfParams instanceof MGF1ParameterSpec ? getDigest(((MGF1ParameterSpec)mgfParams).getDigestAlgorithm()) : getDigest(pssParams.getDigestAlgorithm());
+      if (contentDigest == null || mgfDigest == null || pssParams.getTrailerField() != 1) {
+        return null;
+      }
+      return new PSSSigner(new RSABlindedEngine(), contentDigest, mgfDigest, pssParams.getSaltLength());
+    } else if (params != null) {
+      return null;
+    }
+
+    String upperCaseAlgorithm = signatureAlgorithm.toUpperCase();
+    int withIndex = upperCaseAlgorithm.indexOf("WITH");
+    if (withIndex < 0) {
+      return null;
+    }
+    Digest digest = getDigest(upperCaseAlgorithm.substring(0, withIndex));
+    if (digest == null) {
+      return null;
+    }
+
+    String encryptionAlgorithm = upperCaseAlgorithm.substring(withIndex + "WITH".length());
+    if ("ECDSA".equals(encryptionAlgorithm)) {
+      return new DSADigestSigner(new ECDSASigner(), digest);
+    } else if ("RSA".equals(encryptionAlgorithm)) {
+      return new RSADigestSigner(digest);
+    } else if ("RSAANDMGF1".equals(encryptionAlgorithm) || "RSA/PSS".equals(encryptionAlgorithm)) {
+      return new PSSSigner(new RSABlindedEngine(), digest, digest.getDigestSize());
+    }
+
+    return null;
+  }
+
+  /**
+   * Returns a lightweight digest for the given algorithm.
+   *
+   * @param algorithm the digest algorithm, such as {@code "SHA-256"} or {@code "SHA256"}
+   *
+   * @return a digest, or {@code null} if the algorithm is not supported by this backend
+   */
+  private static Digest getDigest(String algorithm) {
+    String normalizedAlgorithm = algorithm.toUpperCase().replace("-", "");
+    if ("SHA1".equals(normalizedAlgorithm)) {
+      return new SHA1Digest();
+    } else if ("SHA224".equals(normalizedAlgorithm)) {
+      return new SHA224Digest();
+    } else if ("SHA256".equals(normalizedAlgorithm)) {
+      return new SHA256Digest();
+    } else if ("SHA384".equals(normalizedAlgorithm)) {
+      return new SHA384Digest();
+    } else if ("SHA512".equals(normalizedAlgorithm)) {
+      return new SHA512Digest();
+    }
+
+    return null;
+  }
+
+  private static AsymmetricKeyParameter toKeyParameter(PrivateKey privateKey) throws InvalidKeyException {
+    try {
+      return PrivateKeyFactory.createKey(privateKey.getEncoded());
+    } catch (IOException ioe) {
+      throw new InvalidKeyException("Could not convert private key", ioe);
+    }
+  }
+
+  /**
+   * A block cipher in CBC or ECB mode, without padding.
+   */
+  private static class LightweightBlockCipher implements BlockCipher {
+
+    private final org.bouncycastle.crypto.BlockCipher cipher;
+
+    private final boolean isCBC;
+
+    private SecretKey currentKey;
+
+    private boolean isEncrypting;
+
+    public LightweightBlockCipher(org.bouncycastle.crypto.BlockCipher cipher, boolean isCBC) {
+      this.cipher = cipher;
+      this.isCBC = isCBC;
+    }
+
+    @Override
+    public int getBlockSize() {
+      return cipher.getBlockSize();
+    }
+
+    @Override
+    public void init(boolean forEncryption, SecretKey key, byte[] iv) throws GeneralSecurityException {
+      /* NOTE: Re-use the key schedule if only the IV changes. */
+      boolean isSameKey = key == currentKey && forEncryption == isEncrypting;
+      CipherParameters keyParameter = isSameKey ? null : new KeyParameter(key.getEncoded());
+      try {
+        if (isCBC) {
+          cipher.init(forEncryption, new ParametersWithIV(keyParameter, iv == null ? new byte[cipher.getBlockSize()] : iv));
+        } else if (isSameKey) {
+          cipher.reset();
+        } else {
+          cipher.init(forEncryption, keyParameter);
+        }
+      } catch (IllegalArgumentException iae) {
+        currentKey = null;
+        throw new InvalidKeyException("Could not initialize cipher", iae);
+      }
+      currentKey = key;
+      isEncrypting = forEncryption;
+    }
+
+    @Override
+    public byte[] doFinal(byte[] data, int offset, int length) throws GeneralSecurityException {
+      if (currentKey == null) {
+        throw new IllegalStateException("Cipher not initialized");
+      }
+      int blockSize = cipher.getBlockSize();
+      if (length % blockSize != 0) {
+        throw new IllegalBlockSizeException("Input length " + length + " is not a multiple of " + blockSize);
+      }
+      byte[] result = new byte[length];
+      for (int i = 0; i < length; i += blockSize) {
+        cipher.processBlock(data, offset + i, result, i);
+      }
+      cipher.reset();
+      return result;
+    }
+  }
+
+  /**
+   * A message authentication code.
+   */
+  private static class LightweightMAC implements MAC {
+
+    private final Mac mac;
+
+    private SecretKey currentKey;
+
+    public LightweightMAC(Mac mac) {
+      this.mac = mac;
+    }
+
+    @Override
+    public void init(SecretKey key) throws GeneralSecurityException {
+      if (key == currentKey) {
+        /* NOTE: Re-use the derived sub-keys, the MAC is reset after each doFinal. */
+        return;
+      }
+      try {
+        mac.init(new KeyParameter(key.getEncoded()));
+      } catch (IllegalArgumentException iae) {
+        currentKey = null;
+        throw new InvalidKeyException("Could not initialize MAC", iae);
+      }
+      currentKey = key;
+    }
+
+    @Override
+    public byte[] doFinal(byte[] data, int offset, int length) {
+      if (currentKey == null) {
+        throw new IllegalStateException("MAC not initialized");
+      }
+      byte[] result = new byte[mac.getMacSize()];
+      mac.update(data, offset, length);
+      mac.doFinal(result, 0);
+      return result;
+    }
+  }
+}
@@ -0,0 +1,197 @@
+/*
+ * JMRTD - A Java API for accessing machine readable travel documents.
+ *
+ * Copyright (C) 2006 - 2026  The JMRTD team
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA
+ *
+ * $Id: $
+ */
+
+package org.jmrtd.crypto;
+
+import java.math.BigInteger;
+import java.security.GeneralSecurityException;
+import java.security.PrivateKey;
+import java.security.PublicKey;
+import java.security.spec.AlgorithmParameterSpec;
+import java.security.spec.ECParameterSpec;
+import java.security.spec.ECPoint;
+
+import javax.crypto.SecretKey;
+
+/**
+ * The cryptographic primitives used by the secure messaging wrappers and the protocols.
+ *
+ * Implementations are selected per {@code PassportService}, so that deployments can
+ * pick (and measure side by side) the fastest implementation for their platform.
+ * Algorithm names follow the JCA standard names used elsewhere in this library.
+ *
+ * Implementations of this interface are thread-safe. The block ciphers and MACs
+ * they return are not, and should be used by one thread at a time.
+ *
+ * @author The JMRTD team (info@jmrtd.org)
+ *
+ * @version $Revision: $
+ *
+ * @since 0.8.4
+ */
+public interface CryptoBackend {
+
+  /**
+   * Returns a short name of this backend, for logging and measurements.
+   *
+   * @return the name of this backend
+   */
+  String getName();
+
+  /**
+   * Returns a block cipher without padding.
+   *
+   * @param transformation the transformation, such as {@code "AES/CBC/NoPadding"},
+   *        {@code "AES/ECB/NoPadding"}, or {@code "DESede/CBC/NoPadding"}
+   *
+   * @return a block cipher
+   *
+   * @throws GeneralSecurityException if the transformation is not supported
+   */
+  BlockCipher getBlockCipher(String transformation) throws GeneralSecurityException;
+
+  /**
+   * Returns a message authentication code.
+   *
+   * @param algorithm the algorithm, such as {@code "AESCMAC"} or {@code "ISO9797Alg3Mac"}
+   *
+   * @return a message authentication code
+   *
+   * @throws GeneralSecurityException if the algorithm is not supported
+   */
+  MAC getMAC(String algorithm) throws GeneralSecurityException;
+
+  /**
+   * Computes a message digest.
+   *
+   * @param algorithm the digest algorithm, such as {@code "SHA-256"}
+   * @param data the data to digest
+   *
+   * @return the digest
+   *
+   * @throws GeneralSecurityException if the algorithm is not supported
+   */
+  byte[] digest(String algorithm, byte[] data) throws GeneralSecurityException;
+
+  /**
+   * Performs a key agreement.
+   * The resulting shared secret is padded to the length of the field (ECDH) or modulus (DH).
+   *
+   * @param agreementAlgorithm the agreement algorithm, either {@code "DH"} or {@code "ECDH"}
+   * @param privateKey this party's private key
+   * @param publicKey the other party's public key, with the same domain parameters
+   *
+   * @return the shared secret
+   *
+   * @throws GeneralSecurityException if the keys do not match the agreement algorithm
+   */
+  byte[] generateSecret(String agreementAlgorithm, PrivateKey privateKey, PublicKey publicKey) throws GeneralSecurityException;
+
+  /**
+   * Computes {@code s * P + Q} on the curve given by the domain parameters.
+   *
+   * @param s the scalar
+   * @param p the point to multiply
+   * @param q the point to add, or {@code null}
+   * @param params the domain parameters
+   *
+   * @return the resulting point, in affine coordinates
+   */
+  ECPoint multiplyAndAdd(BigInteger s, ECPoint p, ECPoint q, ECParameterSpec params);
+
+  /**
+   * Signs data.
+   *
+   * @param signatureAlgorithm the signature algorithm, such as {@code "SHA256withECDSA"}
+   * @param params the signature parameters (such as a {@code PSSParameterSpec}), or {@code null}
+   * @param privateKey the private key
+   * @param data the data to sign
+   *
+   * @return the signature, DER encoded for ECDSA
+   *
+   * @throws GeneralSecurityException if signing fails
+   */
+  byte[] sign(String signatureAlgorithm, AlgorithmParameterSpec params, PrivateKey privateKey, byte[] data) throws GeneralSecurityException;
+
+  /**
+   * A block cipher without padding, such as used in secure messaging.
+   */
+  interface BlockCipher {
+
+    /**
+     * Returns the block size.
+     *
+     * @return the block size in bytes
+     */
+    int getBlockSize();
+
+    /**
+     * (Re)initializes this cipher.
+     *
+     * @param forEncryption whether to encrypt or decrypt
+     * @param key the key
+     * @param iv the initialization vector, or {@code null} for ECB mode
+     *
+     * @throws GeneralSecurityException if the key or initialization vector are not acceptable
+     */
+    void init(boolean forEncryption, SecretKey key, byte[] iv) throws GeneralSecurityException;
+
+    /**
+     * Encrypts or decrypts data. The length should be a multiple of the block size.
+     *
+     * @param data the data
+     * @param offset the offset in the data
+     * @param length the length of the data
+     *
+     * @return the result
+     *
+     * @throws GeneralSecurityException if the length is not a multiple of the block size
+     */
+    byte[] doFinal(byte[] data, int offset, int length) throws GeneralSecurityException;
+  }
+
+  /**
+   * A message authentication code.
+   */
+  interface MAC {
+
+    /**
+     * (Re)initializes this message authentication code.
+     *
+     * @param key the key
+     *
+     * @throws GeneralSecurityException if the key is not acceptable
+     */
+    void init(SecretKey key) throws GeneralSecurityException;
+
+    /**
+     * Computes the message authentication code.
+     *
+     * @param data the data
+     * @param offset the offset in the data
+     * @param length the length of the data
+     *
+     * @return the message authentication code
+     */
+    byte[] doFinal(byte[] data, int offset, int length);
+  }
+}
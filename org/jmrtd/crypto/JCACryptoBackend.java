@@ -0,0 +1,144 @@
+/*
+ * JMRTD - A Java API for accessing machine readable travel documents.
+ *
+ * Copyright (C) 2006 - 2026  The JMRTD team
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA
+ *
+ * $Id: $
+ */
+
+package org.jmrtd.crypto;
+
+import java.math.BigInteger;
+import java.security.GeneralSecurityException;
+import java.security.PrivateKey;
+import java.security.Provider;
+import java.security.PublicKey;
+import java.security.Signature;
+import java.security.spec.AlgorithmParameterSpec;
+import java.security.spec.ECParameterSpec;
+import java.security.spec.ECPoint;
+
+import javax.crypto.Cipher;
+import javax.crypto.KeyAgreement;
+import javax.crypto.Mac;
+import javax.crypto.SecretKey;
+import javax.crypto.spec.IvParameterSpec;
+
+import org.jmrtd.Util;
+
+/**
+ * A crypto backend based on the Java Cryptography Architecture.
+ * Ciphers, MACs, digests, and signatures come from the configured providers,
+ * falling back to BouncyCastle. Key agreement uses the BouncyCastle provider,
+ * as the mapped domain parameters in PACE are not supported by all providers.
+ * The JCA has no API for EC point arithmetic, this is delegated to {@link Util}.
+ *
+ * This is the default backend.
+ *
+ * @author The JMRTD team (info@jmrtd.org)
+ *
+ * @version $Revision: $
+ *
+ * @since 0.8.4
+ */
+public class JCACryptoBackend implements CryptoBackend {
+
+  private static final Provider BC_PROVIDER = Util.getBouncyCastleProvider();
+
+  @Override
+  public String getName() {
+    return "JCA";
+  }
+
+  @Override
+  public BlockCipher getBlockCipher(String transformation) throws GeneralSecurityException {
+    final Cipher cipher = Util.getCipher(transformation);
+    return new BlockCipher() {
+      @Override
+      public int getBlockSize() {
+        return cipher.getBlockSize();
+      }
+
+      @Override
+      public void init(boolean forEncryption, SecretKey key, byte[] iv) throws GeneralSecurityException {
+        int mode = forEncryption ? Cipher.ENCRYPT_MODE : Cipher.DECRYPT_MODE;
+        if (iv == null) {
+          cipher.init(mode, key);
+        } else {
+          cipher.init(mode, key, new IvParameterSpec(iv));
+        }
+      }
+
+      @Override
+      public byte[] doFinal(byte[] data, int offset, int length) throws GeneralSecurityException {
+        return cipher.doFinal(data, offset, length);
+      }
+    };
+  }
+
+  @Override
+  public MAC getMAC(String algorithm) throws GeneralSecurityException {
+    final Mac mac = Util.getMac(algorithm);
+    return new MAC() {
+      @Override
+      public void init(SecretKey key) throws GeneralSecurityException {
+        mac.init(key);
+      }
+
+      @Override
+      public byte[] doFinal(byte[] data, int offset, int length) {
+        mac.update(data, offset, length);
+        return mac.doFinal();
+      }
+    };
+  }
+
+  @Override
+  public byte[] digest(String algorithm, byte[] data) throws GeneralSecurityException {
+    return Util.getMessageDigest(algorithm).digest(data);
+  }
+
+  @Override
+  public byte[] generateSecret(String agreementAlgorithm, PrivateKey privateKey, PublicKey publicKey) throws GeneralSecurityException {
+    KeyAgreement keyAgreement = KeyAgreement.getInstance(agreementAlgorithm, BC_PROVIDER);
+    keyAgreement.init(privateKey);
+    keyAgreement.doPhase(publicKey, true);
+    return keyAgreement.generateSecret();
+  }
+
+  @Override
+  public ECPoint multiplyAndAdd(BigInteger s, ECPoint p, ECPoint q, ECParameterSpec params) {
+    ECPoint product = Util.multiply(s, p, params);
+    return q == null ? product : Util.add(product, q, params);
+  }
+
+  @Override
+  public byte[] sign(String signatureAlgorithm, AlgorithmParameterSpec params, PrivateKey privateKey, byte[] data) throws GeneralSecurityException {
+    Signature signature = Util.getSignature(signatureAlgorithm);
+    if (params != null) {
+      signature.setParameter(params);
+    }
+    signature.initSign(privateKey);
+    signature.update(data);
+    return signature.sign();
+  }
+
+  @Override
+  public String toString() {
+    return "JCACryptoBackend";
+  }
+}
@@ -0,0 +1,94 @@
+/*
+ * JMRTD - A Java API for accessing machine readable travel documents.
+ *
+ * Copyright (C) 2006 - 2026  The JMRTD team
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA
+ *
+ * $Id: $
+ */
+
+package org.jmrtd.io;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * A stream that decorates an existing stream and keeps track of the number of bytes written.
+ * Without a carrier the bytes are discarded, which is useful for computing the length of an encoding.
+ *
+ * Closing this stream does not close the carrier.
+ *
+ * @author The JMRTD team (info@jmrtd.org)
+ *
+ * @version $Revision: $
+ *
+ * @since 0.8.4
+ */
+public class CountingOutputStream extends OutputStream {
+
+  private OutputStream carrier;
+
+  private long count;
+
+  /**
+   * Constructs a counting output stream that discards the bytes written.
+   */
+  public CountingOutputStream() {
+    this(null);
+  }
+
+  /**
+   * Constructs a counting output stream by decorating an existing output stream.
+   *
+   * @param carrier the existing output stream, or {@code null} to discard the bytes written
+   */
+  public CountingOutputStream(OutputStream carrier) {
+    this.carrier = carrier;
+    this.count = 0L;
+  }
+
+  @Override
+  public void write(int b) throws IOException {
+    if (carrier != null) {
+      carrier.write(b);
+    }
+    count++;
+  }
+
+  @Override
+  public void write(byte[] bytes, int offset, int length) throws IOException {
+    if (carrier != null) {
+      carrier.write(bytes, offset, length);
+    }
+    count += length;
+  }
+
+  @Override
+  public void flush() throws IOException {
+    if (carrier != null) {
+      carrier.flush();
+    }
+  }
+
+  /**
+   * Returns the number of bytes written to this stream.
+   *
+   * @return the number of bytes written
+   */
+  public long getCount() {
+    return count;
+  }
+}
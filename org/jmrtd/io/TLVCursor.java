@@ -0,0 +1,449 @@
+/*
+ * JMRTD - A Java API for accessing machine readable travel documents.
+ *
+ * Copyright (C) 2006 - 2026  The JMRTD team
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA
+ *
+ * $Id: $
+ */
+
+package org.jmrtd.io;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+
+/**
+ * A cursor over BER-TLV encoded elements in a byte array.
+ *
+ * The cursor visits the elements at one level, {@link #descend()} moves into
+ * the value of the current (constructed) element, {@link #ascend()} moves back
+ * to the enclosing element. Tags are represented as in {@code TLVInputStream},
+ * i.e. the tag bytes as a big-endian integer (for instance {@code 0x5F1F}).
+ *
+ * Moving the cursor does not allocate, and values are reported as offset
+ * and length into the underlying array. The array is not copied, so it should
+ * not be modified while the cursor is in use. Only definite lengths are supported.
+ *
+ * Instances are not thread-safe, but can be reused by calling {@link #reset(byte[], int, int)}.
+ *
+ * @author The JMRTD team (info@jmrtd.org)
+ *
+ * @version $Revision: $
+ *
+ * @since 0.8.4
+ */
+public class TLVCursor {
+
+  /* Number of ints saved on the stack per level. */
+  private static final int FRAME_SIZE = 6;
+
+  private byte[] bytes;
+
+  /* Start of the elements at the current level. */
+  private int start;
+
+  /* End (exclusive) of the elements at the current level. */
+  private int end;
+
+  /* Offset of the next element at the current level. */
+  private int position;
+
+  /* The current element, offset is -1 before the first call to next. */
+  private int offset;
+  private int tag;
+  private int length;
+  private int valueOffset;
+
+  private int depth;
+  private int[] stack;
+
+  /**
+   * Creates a cursor over the elements in a byte array.
+   *
+   * @param bytes the encoded elements
+   */
+  public TLVCursor(byte[] bytes) {
+    this(bytes, 0, bytes.length);
+  }
+
+  /**
+   * Creates a cursor over the elements in a range of a byte array.
+   *
+   * @param bytes the array
+   * @param offset the offset of the first element
+   * @param length the length of the encoded elements
+   */
+  public TLVCursor(byte[] bytes, int offset, int length) {
+    this.stack = new int[4 * FRAME_SIZE];
+    reset(bytes, offset, length);
+  }
+
+  /**
+   * Creates a cursor over the remaining bytes of a buffer.
+   * The backing array of the buffer is shared if it is accessible,
+   * otherwise the remaining bytes are copied.
+   * The position of the buffer is not changed.
+   *
+   * @param buffer the buffer
+   *
+   * @return a cursor
+   */
+  public static TLVCursor wrap(ByteBuffer buffer) {
+    if (buffer.hasArray()) {
+      return new TLVCursor(buffer.array(), buffer.arrayOffset() + buffer.position(), buffer.remaining());
+    }
+
+    byte[] bytes = new byte[buffer.remaining()];
+    buffer.duplicate().get(bytes);
+    return new TLVCursor(bytes);
+  }
+
+  /**
+   * Positions this cursor before the first element in a range of a byte array.
+   *
+   * @param bytes the array
+   * @param offset the offset of the first element
+   * @param length the length of the encoded elements
+   */
+  public void reset(byte[] bytes, int offset, int length) {
+    if (bytes == null) {
+      throw new IllegalArgumentException("Bytes cannot be null");
+    }
+    if (offset < 0 || length < 0 || offset + length > bytes.length || offset + length < 0) {
+      throw new IllegalArgumentException("Illegal range, offset " + offset + ", length " + length + ", array length " + bytes.length);
+    }
+
+    this.bytes = bytes;
+    this.start = offset;
+    this.end = offset + length;
+    this.position = offset;
+    this.depth = 0;
+    clearCurrent();
+  }
+
+  /**
+   * Moves this cursor to the next element at the current level.
+   *
+   * @return {@code true} if there is a next element, {@code false} if the end of the current level was reached
+   *
+   * @throws IOException if the element is not well-formed or extends beyond the end of the current level
+   */
+  public boolean next() throws IOException {
+    if (position >= end) {
+      position = end;
+      clearCurrent();
+      return false;
+    }
+
+    int index = position;
+    int b = bytes[index++] & 0xFF;
+    int nextTag = b;
+    if ((b & 0x1F) == 0x1F) {
+      do {
+        if (index >= end) {
+          throw new IOException("Truncated tag at offset " + position);
+        }
+        if (index - position >= 4) {
+          throw new IOException("Tag too long at offset " + position);
+        }
+        b = bytes[index++] & 0xFF;
+        nextTag = (nextTag << 8) | b;
+      } while ((b & 0x80) != 0);
+    }
+
+    if (index >= end) {
+      throw new IOException("Missing length at offset " + position);
+    }
+    b = bytes[index++] & 0xFF;
+    int nextLength = b;
+    if (b == 0x80) {
+      throw new IOException("Indefinite length at offset " + position + " not supported");
+    } else if (b > 0x80) {
+      int lengthByteCount = b & 0x7F;
+      if (lengthByteCount > 4 || index + lengthByteCount > end) {
+        throw new IOException("Illegal length at offset " + position);
+      }
+      nextLength = 0;
+      for (int i = 0; i < lengthByteCount; i++) {
+        nextLength = (nextLength << 8) | (bytes[index++] & 0xFF);
+      }
+      if (nextLength < 0) {
+        throw new IOException("Illegal length at offset " + position);
+      }
+    }
+    if (nextLength > end - index) {
+      throw new IOException("Value of " + Integer.toHexString(nextTag) + " at offset " + position
+          + " (length " + nextLength + ") extends beyond end " + end);
+    }
+
+    offset = position;
+    tag = nextTag;
+    length = nextLength;
+    valueOffset = index;
+    position = index + nextLength;
+    return true;
+  }
+
+  /**
+   * Moves this cursor to the next element at the current level with the given tag,
+   * skipping elements with other tags.
+   *
+   * @param expectedTag the tag to look for
+   *
+   * @return {@code true} if an element with the tag was found, {@code false} if the end of the current level was reached
+   *
+   * @throws IOException if an element is not well-formed
+   */
+  public boolean skipToTag(int expectedTag) throws IOException {
+    while (next()) {
+      if (tag == expectedTag) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Moves this cursor to the next element at the current level, which should have the given tag.
+   *
+   * @param expectedTag the expected tag
+   *
+   * @throws IOException if there is no next element, or if it has a different tag
+   */
+  public void expectTag(int expectedTag) throws IOException {
+    if (!next()) {
+      throw new IOException("Expected tag " + Integer.toHexString(expectedTag) + ", found end of data at offset " + end);
+    }
+    if (tag != expectedTag) {
+      throw new IOException("Expected tag " + Integer.toHexString(expectedTag) + ", found " + Integer.toHexString(tag) + " at offset " + offset);
+    }
+  }
+
+  /**
+   * Indicates whether there are more elements at the current level.
+   *
+   * @return whether a call to {@link #next()} will move to an element
+   */
+  public boolean hasNext() {
+    return position < end;
+  }
+
+  /**
+   * Moves this cursor into the value of the current element,
+   * positioning it before the first nested element.
+   */
+  public void descend() {
+    checkCurrent();
+    if (stack.length < (depth + 1) * FRAME_SIZE) {
+      stack = Arrays.copyOf(stack, stack.length * 2);
+    }
+    int index = depth * FRAME_SIZE;
+    stack[index++] = start;
+    stack[index++] = end;
+    stack[index++] = offset;
+    stack[index++] = tag;
+    stack[index++] = length;
+    stack[index] = valueOffset;
+    depth++;
+
+    start = valueOffset;
+    end = valueOffset + length;
+    position = start;
+    clearCurrent();
+  }
+
+  /**
+   * Moves this cursor back to the element that was current when {@link #descend()} was called.
+   * A subsequent call to {@link #next()} moves to the element following it.
+   */
+  public void ascend() {
+    if (depth == 0) {
+      throw new IllegalStateException("Cannot ascend from top level");
+    }
+    depth--;
+    int index = depth * FRAME_SIZE;
+    start = stack[index++];
+    end = stack[index++];
+    offset = stack[index++];
+    tag = stack[index++];
+    length = stack[index++];
+    valueOffset = stack[index];
+    position = valueOffset + length;
+  }
+
+  /**
+   * Returns the number of times {@link #descend()} was called without a matching {@link #ascend()}.
+   *
+   * @return the nesting depth, {@code 0} at top level
+   */
+  public int getDepth() {
+    return depth;
+  }
+
+  /**
+   * Returns the underlying array.
+   *
+   * @return the underlying array, not a copy
+   */
+  public byte[] getBytes() {
+    return bytes;
+  }
+
+  /**
+   * Returns the tag of the current element.
+   *
+   * @return the tag
+   */
+  public int getTag() {
+    checkCurrent();
+    return tag;
+  }
+
+  /**
+   * Indicates whether the current element is constructed, i.e. whether its value consists of elements.
+   *
+   * @return whether the current element is constructed
+   */
+  public boolean isConstructed() {
+    checkCurrent();
+    return (bytes[offset] & 0x20) != 0;
+  }
+
+  /**
+   * Returns the length of the value of the current element.
+   *
+   * @return the length of the value
+   */
+  public int getLength() {
+    checkCurrent();
+    return length;
+  }
+
+  /**
+   * Returns the offset of the current element, i.e. of its tag, in the underlying array.
+   *
+   * @return the offset of the current element
+   */
+  public int getOffset() {
+    checkCurrent();
+    return offset;
+  }
+
+  /**
+   * Returns the offset of the value of the current element in the underlying array.
+   *
+   * @return the offset of the value
+   */
+  public int getValueOffset() {
+    checkCurrent();
+    return valueOffset;
+  }
+
+  /**
+   * Returns the length of the current element, including tag and length.
+   *
+   * @return the length of the encoded element
+   */
+  public int getEncodedLength() {
+    checkCurrent();
+    return valueOffset + length - offset;
+  }
+
+  /**
+   * Returns a copy of the current element, including tag and length.
+   *
+   * @return the encoded element
+   */
+  public byte[] getEncoded() {
+    checkCurrent();
+    return Arrays.copyOfRange(bytes, offset, valueOffset + length);
+  }
+
+  /**
+   * Returns a copy of the value of the current element.
+   *
+   * @return the value
+   */
+  public byte[] getValue() {
+    checkCurrent();
+    return Arrays.copyOfRange(bytes, valueOffset, valueOffset + length);
+  }
+
+  /**
+   * Returns the value of the current element as an unsigned big-endian integer.
+   *
+   * @return the value as integer
+   *
+   * @throws IOException if the value is longer than 4 bytes
+   */
+  public int getValueAsInt() throws IOException {
+    checkCurrent();
+    if (length > 4) {
+      throw new IOException("Value of " + Integer.toHexString(tag) + " too long for int, length " + length);
+    }
+    int result = 0;
+    for (int i = valueOffset; i < valueOffset + length; i++) {
+      result = (result << 8) | (bytes[i] & 0xFF);
+    }
+    return result;
+  }
+
+  /**
+   * Returns the value of the current element decoded as a string.
+   *
+   * @param charset the character set
+   *
+   * @return the value as string
+   */
+  public String getValueAsString(Charset charset) {
+    checkCurrent();
+    return new String(bytes, valueOffset, length, charset);
+  }
+
+  /**
+   * Returns a stream for reading the value of the current element.
+   * The stream reads from the underlying array.
+   *
+   * @return an input stream
+   */
+  public InputStream getValueAsInputStream() {
+    checkCurrent();
+    return new ByteArrayInputStream(bytes, valueOffset, length);
+  }
+
+  @Override
+  public String toString() {
+    return "TLVCursor [depth: " + depth + ", start: " + start + ", end: " + end
+        + (offset < 0 ? "" : ", tag: " + Integer.toHexString(tag) + ", offset: " + offset + ", length: " + length) + "]";
+  }
+
+  private void clearCurrent() {
+    offset = -1;
+    tag = -1;
+    length = -1;
+    valueOffset = -1;
+  }
+
+  private void checkCurrent() {
+    if (offset < 0) {
+      throw new IllegalStateException("No current element");
+    }
+  }
+}
@@ -304,6 +304,10 @@ public abstract class AbstractImageInfo implements ImageInfo {
    * @throws IOException on error writing to the stream
    */
   protected void writeImage(OutputStream outputStream) throws IOException {
+    if (imageBytes != null && splittableInputStream == null) {
+      outputStream.write(imageBytes);
+      return;
+    }
     outputStream.write(getImageBytes());
   }
 
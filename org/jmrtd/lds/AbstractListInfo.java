@@ -28,6 +28,7 @@ import java.io.OutputStream;
 import java.io.Serializable;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -47,8 +48,14 @@ public abstract class AbstractListInfo<R extends Serializable> extends AbstractL
 
   private static final Logger LOGGER = Logger.getLogger("org.jmrtd");
 
+  /** Source of modification stamps, increasing over all lists. */
+  private static final AtomicLong MODIFICATION_STAMPS = new AtomicLong();
+
   private List<R> subRecords;
 
+  /** The stamp of the last modification of this list, or {@code 0} if not modified. */
+  private transient volatile long modificationStamp;
+
   /**
    * Returns the sub-records of this list.
    *
@@ -72,6 +79,7 @@ public abstract class AbstractListInfo<R extends Serializable> extends AbstractL
       this.subRecords = new ArrayList<R>();
     }
     this.subRecords.add(subRecord);
+    modificationStamp = MODIFICATION_STAMPS.incrementAndGet();
   }
 
   /**
@@ -84,6 +92,7 @@ public abstract class AbstractListInfo<R extends Serializable> extends AbstractL
       this.subRecords = new ArrayList<R>();
     }
     this.subRecords.addAll(subRecords);
+    modificationStamp = MODIFICATION_STAMPS.incrementAndGet();
   }
 
   /**
@@ -96,6 +105,35 @@ public abstract class AbstractListInfo<R extends Serializable> extends AbstractL
       this.subRecords = new ArrayList<R>();
     }
     this.subRecords.remove(index);
+    modificationStamp = MODIFICATION_STAMPS.incrementAndGet();
+  }
+
+  /**
+   * Returns the current modification stamp.
+   * Lists that are modified after this call get a larger stamp.
+   *
+   * @return the current modification stamp
+   */
+  static long getCurrentModificationStamp() {
+    return MODIFICATION_STAMPS.get();
+  }
+
+  /**
+   * Returns the stamp of the last modification of this list, or of a list nested in it.
+   * This is used by data groups to detect that records obtained from them were modified.
+   *
+   * @return the stamp of the last modification
+   */
+  long getModificationStamp() {
+    long result = modificationStamp;
+    if (subRecords != null) {
+      for (R subRecord: subRecords) {
+        if (subRecord instanceof AbstractListInfo<?>) {
+          result = Math.max(result, ((AbstractListInfo<?>)subRecord).getModificationStamp());
+        }
+      }
+    }
+    return result;
   }
 
   @Override
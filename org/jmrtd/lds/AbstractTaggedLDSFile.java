@@ -22,19 +22,32 @@
 
 package org.jmrtd.lds;
 
+import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.io.SequenceInputStream;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
+import org.jmrtd.io.CountingOutputStream;
+import org.jmrtd.io.TLVCursor;
+
 import net.sf.scuba.tlv.TLVInputStream;
 import net.sf.scuba.tlv.TLVOutputStream;
+import net.sf.scuba.tlv.TLVUtil;
 
 /**
  * Base class for TLV based LDS files.
  *
+ * Files read from an input stream retain the bytes that were read, which are
+ * returned by {@link #getEncoded()} instead of re-encoding the file, until the file
+ * is modified through one of its own methods, or through objects obtained from
+ * the file, such as biometric records, as reported by {@link #isModifiedSinceRead()}.
+ *
  * @author The JMRTD team (info@jmrtd.org)
  *
  * @version $Revision: 1811 $
@@ -45,9 +58,15 @@ public abstract class AbstractTaggedLDSFile extends AbstractLDSFile {
 
   private static final Logger LOGGER = Logger.getLogger("org.jmrtd");
 
+  /** The maximum number of bytes in a tag and length, as supported by this class. */
+  private static final int MAX_HEADER_LENGTH = 9;
+
   private int tag;
   private int length;
 
+  /* The bytes read, including tag and length, or null if constructed or modified. */
+  private transient byte[] encoded;
+
   /**
    * Constructs a data group. This constructor
    * is only visible to the other classes in this package.
@@ -81,7 +100,138 @@ public abstract class AbstractTaggedLDSFile extends AbstractLDSFile {
    */
   @Override
   protected void readObject(InputStream inputStream) throws IOException {
-    TLVInputStream tlvIn = inputStream instanceof TLVInputStream ? (TLVInputStream)inputStream : new TLVInputStream(inputStream);
+    encoded = null;
+    if (inputStream instanceof TLVInputStream) {
+      readObject((TLVInputStream)inputStream);
+      return;
+    }
+    if (inputStream instanceof LDSSnapshot.IndexedInputStream) {
+      readObject((LDSSnapshot.IndexedInputStream)inputStream);
+      return;
+    }
+
+    /* Read tag and length as is, so that the retained bytes are exactly the bytes read. */
+    byte[] header = new byte[MAX_HEADER_LENGTH];
+    int headerLength = 0;
+    int b = readByte(inputStream);
+    header[headerLength++] = (byte)b;
+    int inputTag = b;
+    if ((b & 0x1F) == 0x1F) {
+      do {
+        b = readByte(inputStream);
+        header[headerLength++] = (byte)b;
+        inputTag = (inputTag << 8) | b;
+      } while ((b & 0x80) != 0 && headerLength < 4);
+    }
+    if (inputTag != tag) {
+      throw new IllegalArgumentException("Was expecting tag " + Integer.toHexString(tag) + ", found " + Integer.toHexString(inputTag));
+    }
+
+    b = readByte(inputStream);
+    header[headerLength++] = (byte)b;
+    int inputLength = b;
+    if (b > 0x80 && b <= 0x84) {
+      inputLength = 0;
+      for (int i = 0; i < (b & 0x7F); i++) {
+        int lengthByte = readByte(inputStream);
+        header[headerLength++] = (byte)lengthByte;
+        inputLength = (inputLength << 8) | lengthByte;
+      }
+    } else if (b >= 0x80) {
+      inputLength = -1;
+    }
+    if (inputLength < 0) {
+      /* Indefinite or unsupported length, parse without retaining the bytes. */
+      readObject(new TLVInputStream(new SequenceInputStream(new ByteArrayInputStream(header, 0, headerLength), inputStream)));
+      return;
+    }
+
+    byte[] bytes = new byte[headerLength + inputLength];
+    System.arraycopy(header, 0, bytes, 0, headerLength);
+    new DataInputStream(inputStream).readFully(bytes, headerLength, inputLength);
+    length = inputLength;
+    readContent(bytes, headerLength, inputLength);
+    encoded = bytes;
+  }
+
+  /**
+   * Returns the contents of this file as byte array,
+   * includes the ICAO tag and length.
+   * For files read from an input stream which have not been modified,
+   * this is (a copy of) the bytes that were read.
+   *
+   * @return a byte array containing the file
+   */
+  @Override
+  public byte[] getEncoded() {
+    byte[] result = getRetainedEncoded();
+    if (result != null) {
+      return result.clone();
+    }
+
+    try {
+      int contentLength = getContentLength();
+      if (contentLength >= 0) {
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream(MAX_HEADER_LENGTH + contentLength);
+        writeObject(outputStream);
+        return outputStream.toByteArray();
+      }
+    } catch (IOException ioe) {
+      LOGGER.log(Level.WARNING, "Exception", ioe);
+      return null;
+    }
+    return super.getEncoded();
+  }
+
+  /**
+   * Indicates that the contents of this file were modified, so that
+   * the bytes that were read are no longer returned by {@link #getEncoded()}.
+   * Subclasses should call this from methods that modify the file.
+   *
+   * @since 0.8.4
+   */
+  protected void invalidateEncoded() {
+    encoded = null;
+    length = 0;
+  }
+
+  /**
+   * Indicates whether the contents of this file were modified since the file was read,
+   * through objects obtained from this file, so that the bytes that were read are no longer
+   * returned by {@link #getEncoded()}. Modifications through the methods of the file itself
+   * are reported using {@link #invalidateEncoded()} instead.
+   * This default implementation returns {@code false}.
+   *
+   * @return whether the contents were modified since the file was read
+   *
+   * @since 0.8.4
+   */
+  protected boolean isModifiedSinceRead() {
+    return false;
+  }
+
+  /**
+   * Returns the bytes that were read, if this file was not modified since.
+   *
+   * @return the bytes that were read, or {@code null}
+   */
+  private byte[] getRetainedEncoded() {
+    byte[] result = encoded;
+    if (result != null && isModifiedSinceRead()) {
+      invalidateEncoded();
+      return null;
+    }
+    return result;
+  }
+
+  /**
+   * Reads the contents of this LDS file, including tag and length from a TLV input stream.
+   *
+   * @param tlvIn the stream to read from
+   *
+   * @throws IOException if reading from the stream fails
+   */
+  private void readObject(TLVInputStream tlvIn) throws IOException {
     int inputTag = tlvIn.readTag();
     if (inputTag != tag) {
       throw new IllegalArgumentException("Was expecting tag " + Integer.toHexString(tag) + ", found " + Integer.toHexString(inputTag));
@@ -91,13 +241,58 @@ public abstract class AbstractTaggedLDSFile extends AbstractLDSFile {
 //    readContent(new SplittableInputStream(inputStream, length)); // was using this in <= 0.7.9 -- MO
   }
 
+  /**
+   * Reads the contents of this LDS file, including tag and length, from a snapshot,
+   * using the index of the contents stored in the snapshot.
+   *
+   * @param indexedInputStream the stream holding the encoded file and its index
+   *
+   * @throws IOException if the encoded file cannot be parsed
+   */
+  private void readObject(LDSSnapshot.IndexedInputStream indexedInputStream) throws IOException {
+    byte[] bytes = indexedInputStream.getBytes();
+    TLVCursor cursor = new TLVCursor(bytes);
+    if (!cursor.next() || cursor.getEncodedLength() != bytes.length) {
+      throw new IOException("Invalid encoded file");
+    }
+    int inputTag = cursor.getTag();
+    if (inputTag != tag) {
+      throw new IllegalArgumentException("Was expecting tag " + Integer.toHexString(tag) + ", found " + Integer.toHexString(inputTag));
+    }
+    length = cursor.getLength();
+    readContent(bytes, cursor.getValueOffset(), length, indexedInputStream.getFieldIndex());
+    encoded = bytes;
+  }
+
   @Override
   protected void writeObject(OutputStream outputStream) throws IOException {
-    TLVOutputStream tlvOut = outputStream instanceof TLVOutputStream ? (TLVOutputStream)outputStream : new TLVOutputStream(outputStream);
+    byte[] bytes = getRetainedEncoded();
+    if (bytes != null) {
+      outputStream.write(bytes);
+      return;
+    }
+
     int ourTag = getTag();
     if (tag != ourTag) {
       tag = ourTag;
     }
+
+    /* NOTE: If the length is known in advance, the contents are written directly to the stream. */
+    int contentLength = outputStream instanceof TLVOutputStream ? -1 : getContentLength();
+    if (contentLength >= 0) {
+      outputStream.write(TLVUtil.getTagAsBytes(ourTag));
+      outputStream.write(TLVUtil.getLengthAsBytes(contentLength));
+      CountingOutputStream contentOutputStream = new CountingOutputStream(outputStream);
+      writeContent(contentOutputStream);
+      contentOutputStream.flush();
+      if (contentOutputStream.getCount() != contentLength) {
+        throw new IOException("Content of file with tag " + Integer.toHexString(ourTag) + " has length " + contentOutputStream.getCount() + ", was expecting " + contentLength);
+      }
+      length = contentLength;
+      return;
+    }
+
+    TLVOutputStream tlvOut = outputStream instanceof TLVOutputStream ? (TLVOutputStream)outputStream : new TLVOutputStream(outputStream);
     tlvOut.writeTag(ourTag);
     byte[] value = getContent();
     int ourLength = value == null ? 0 : value.length;
@@ -118,6 +313,74 @@ public abstract class AbstractTaggedLDSFile extends AbstractLDSFile {
    */
   protected abstract void readContent(InputStream inputStream) throws IOException;
 
+  /**
+   * Reads the contents of the data group from a range of a byte array,
+   * not including the tag and length of the data group.
+   * This is used instead of {@link #readContent(InputStream)} when the encoded
+   * file has been read into memory. This default implementation reads
+   * from a stream over the range. Subclasses can override this to parse
+   * the contents in place, for instance using a {@link org.jmrtd.io.TLVCursor}.
+   * The array should not be modified.
+   *
+   * @param bytes the array holding the contents
+   * @param offset the offset of the contents
+   * @param length the length of the contents
+   *
+   * @throws IOException on error parsing the contents
+   *
+   * @since 0.8.4
+   */
+  protected void readContent(byte[] bytes, int offset, int length) throws IOException {
+    readContent(new ByteArrayInputStream(bytes, offset, length));
+  }
+
+  /**
+   * Reads the contents of the data group from a range of a byte array,
+   * given an index of the data objects in the contents, as tag, value offset, and
+   * value length triples, with offsets relative to the start of the array.
+   * This is used when the file is read from an {@link LDSSnapshot}, which stores such an index.
+   * This default implementation ignores the index and calls {@link #readContent(byte[], int, int)}.
+   * The array and the index should not be modified.
+   *
+   * @param bytes the array holding the contents
+   * @param offset the offset of the contents
+   * @param length the length of the contents
+   * @param contentIndex the index of the data objects in the contents
+   *
+   * @throws IOException on error parsing the contents
+   *
+   * @since 0.8.4
+   */
+  protected void readContent(byte[] bytes, int offset, int length, int[] contentIndex) throws IOException {
+    readContent(bytes, offset, length);
+  }
+
+  /**
+   * Checks an entry of a content index, as passed to {@link #readContent(byte[], int, int, int[])},
+   * against the encoding, by moving a cursor over the contents to the next data object
+   * and comparing its tag, value offset, and value length to the entry.
+   * Implementations that use the index should check each entry this way before decoding it,
+   * as the index may come from a snapshot that does not match the contents.
+   *
+   * @param cursor a cursor over the contents, positioned before the data object of the entry
+   * @param contentIndex the index of the data objects in the contents
+   * @param index the position of the entry in the index
+   *
+   * @throws IOException if the entry does not match the next data object in the contents
+   *
+   * @since 0.8.4
+   */
+  protected static void checkContentIndexEntry(TLVCursor cursor, int[] contentIndex, int index) throws IOException {
+    if (index < 0 || index + 2 >= contentIndex.length) {
+      throw new IOException("Content index entry " + index + " out of range");
+    }
+    cursor.expectTag(contentIndex[index]);
+    if (cursor.getValueOffset() != contentIndex[index + 1] || cursor.getLength() != contentIndex[index + 2]) {
+      throw new IOException("Content index entry for tag " + Integer.toHexString(contentIndex[index])
+          + " does not match the encoding at offset " + cursor.getOffset());
+    }
+  }
+
   /**
    * Writes the contents of the data group to an output stream.
    * Client code implementing this method should only write the contents
@@ -129,6 +392,23 @@ public abstract class AbstractTaggedLDSFile extends AbstractLDSFile {
    */
   protected abstract void writeContent(OutputStream outputStream) throws IOException;
 
+  /**
+   * Returns the number of bytes that {@link #writeContent(OutputStream)} writes,
+   * if it can be computed without encoding the contents. In that case the
+   * contents are written directly to the stream by {@link #writeObject(OutputStream)},
+   * instead of first being encoded to a buffer to determine the length.
+   * This default implementation returns {@code -1}.
+   *
+   * @return the length of the contents, or {@code -1} if it is not known in advance
+   *
+   * @throws IOException if the length cannot be computed
+   *
+   * @since 0.8.4
+   */
+  protected int getContentLength() throws IOException {
+    return -1;
+  }
+
   /**
    * Returns a textual representation of this file.
    *
@@ -155,11 +435,25 @@ public abstract class AbstractTaggedLDSFile extends AbstractLDSFile {
    */
   public int getLength() {
     if (length <= 0) {
-      length = getContent().length;
+      int contentLength = -1;
+      try {
+        contentLength = getContentLength();
+      } catch (IOException ioe) {
+        LOGGER.log(Level.FINE, "Could not compute DG content length", ioe);
+      }
+      length = contentLength >= 0 ? contentLength : getContent().length;
     }
     return length;
   }
 
+  private static int readByte(InputStream inputStream) throws IOException {
+    int b = inputStream.read();
+    if (b < 0) {
+      throw new EOFException("Unexpected end of stream");
+    }
+    return b;
+  }
+
   /**
    * Returns the value part of this LDS file.
    *
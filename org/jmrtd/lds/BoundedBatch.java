@@ -0,0 +1,116 @@
+/*
+ * JMRTD - A Java API for accessing machine readable travel documents.
+ *
+ * Copyright (C) 2006 - 2026  The JMRTD team
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA
+ *
+ * $Id: $
+ */
+
+package org.jmrtd.lds;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.Semaphore;
+
+/**
+ * Hands tasks over from one producer thread to an executor, bounding the number of tasks
+ * that are held in memory but not yet completed. The producer reserves capacity with
+ * {@link #awaitCapacity()} before reading the input of a task into memory, then submits
+ * the task with {@link #submit(Runnable)}, and finally waits for all tasks with {@link #finish()}.
+ *
+ * The methods of a batch should be called by the producer thread only.
+ * Completion of {@link #finish()} makes the effects of all tasks visible to the producer thread.
+ *
+ * @author The JMRTD team (info@jmrtd.org)
+ *
+ * @version $Revision: $
+ *
+ * @since 0.8.4
+ */
+public class BoundedBatch {
+
+  private final Executor executor;
+  private final Semaphore capacity;
+  private final int maxTasksInMemory;
+  private boolean isPermitHeld;
+
+  /**
+   * Creates a batch.
+   *
+   * @param executor the executor that runs the tasks
+   * @param maxTasksInMemory the maximum number of tasks held in memory that are not completed yet
+   */
+  public BoundedBatch(Executor executor, int maxTasksInMemory) {
+    if (maxTasksInMemory <= 0) {
+      throw new IllegalArgumentException("Maximum number of tasks should be positive, found " + maxTasksInMemory);
+    }
+
+    this.executor = executor;
+    this.maxTasksInMemory = maxTasksInMemory;
+    this.capacity = new Semaphore(maxTasksInMemory);
+  }
+
+  /**
+   * Blocks until the input of a task may be read into memory.
+   * Calling this again before submitting the task does not reserve more capacity.
+   *
+   * @throws InterruptedException if interrupted while waiting
+   */
+  public void awaitCapacity() throws InterruptedException {
+    if (!isPermitHeld) {
+      capacity.acquire();
+      isPermitHeld = true;
+    }
+  }
+
+  /**
+   * Hands a task whose input was read into memory over to the executor,
+   * waiting for capacity first if none was reserved.
+   *
+   * @param task the task
+   *
+   * @throws InterruptedException if interrupted while waiting for capacity
+   */
+  public void submit(final Runnable task) throws InterruptedException {
+    awaitCapacity();
+    executor.execute(new Runnable() {
+      @Override
+      public void run() {
+        try {
+          task.run();
+        } finally {
+          capacity.release();
+        }
+      }
+    });
+    /* Only now the task owns the permit, if the executor rejected the task it is released in finish. */
+    isPermitHeld = false;
+  }
+
+  /**
+   * Waits for all submitted tasks to complete.
+   *
+   * @throws InterruptedException if interrupted while waiting
+   */
+  public void finish() throws InterruptedException {
+    if (isPermitHeld) {
+      capacity.release();
+      isPermitHeld = false;
+    }
+    capacity.acquire(maxTasksInMemory);
+    capacity.release(maxTasksInMemory);
+  }
+}
@@ -29,6 +29,7 @@ import java.security.SecureRandom;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Random;
+import java.util.concurrent.Executor;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -58,6 +59,9 @@ public abstract class CBEFFDataGroup extends DataGroup {
 
   protected static final Logger LOGGER = Logger.getLogger("org.jmrtd.lds");
 
+  /* The length of the random data added to empty data groups. */
+  private static final int RANDOM_DATA_LENGTH = 8;
+
   /** For writing the optional random data block. */
   private Random random;
 
@@ -68,6 +72,12 @@ public abstract class CBEFFDataGroup extends DataGroup {
 
   protected BiometricEncodingType encodingType;
 
+  /** The modification stamp when the records were read, see {@link #isModifiedSinceRead()}. */
+  private transient long readModificationStamp;
+
+  /** For decoding the records concurrently, only set while reading. */
+  private transient Executor decodingExecutor;
+
   /**
    * Creates a CBEFF data group.
    *
@@ -100,6 +110,35 @@ public abstract class CBEFFDataGroup extends DataGroup {
     this.random = new Random();
   }
 
+  /**
+   * Constructs an instance, decoding the records concurrently on an executor.
+   * The records are decoded sequentially if the data group does not have a definite length.
+   *
+   * @param dataGroupTag the datagroup tag to use
+   * @param inputStream an input stream
+   * @param shouldAddRandomDataIfEmpty whether to include random data if there are no records
+   * @param decodingExecutor the executor on which the records are decoded
+   *
+   * @throws IOException on error
+   *
+   * @since 0.8.4
+   */
+  protected CBEFFDataGroup(int dataGroupTag, InputStream inputStream, boolean shouldAddRandomDataIfEmpty, Executor decodingExecutor) throws IOException {
+    super(dataGroupTag);
+    if (decodingExecutor == null) {
+      throw new IllegalArgumentException("Executor cannot be null");
+    }
+
+    this.shouldAddRandomDataIfEmpty = shouldAddRandomDataIfEmpty;
+    this.random = new Random();
+    this.decodingExecutor = decodingExecutor;
+    try {
+      readObject(inputStream);
+    } finally {
+      this.decodingExecutor = null;
+    }
+  }
+
   public abstract ISO781611Decoder<BiometricDataBlock> getDecoder();
 
   public abstract ISO781611Encoder<BiometricDataBlock> getEncoder();
@@ -112,35 +151,101 @@ public abstract class CBEFFDataGroup extends DataGroup {
   protected void readContent(InputStream inputStream) throws IOException {
     ISO781611Decoder<BiometricDataBlock> decoder = getDecoder();
     this.encodingType = decoder.getEncodingType();
-    ComplexCBEFFInfo<BiometricDataBlock> complexCBEFFInfo = decoder.decode(inputStream);
-    List<CBEFFInfo<BiometricDataBlock>> records = complexCBEFFInfo.getSubRecords();
-    for (CBEFFInfo<BiometricDataBlock> cbeffInfo: records) {
-      if (!(cbeffInfo instanceof SimpleCBEFFInfo<?>)) {
-        throw new IOException("Was expecting a SimpleCBEFFInfo, found " + cbeffInfo.getClass().getSimpleName());
-      }
-      SimpleCBEFFInfo<?> simpleCBEFFInfo = (SimpleCBEFFInfo<?>)cbeffInfo;
-      BiometricDataBlock bdb = simpleCBEFFInfo.getBiometricDataBlock();
-      add(bdb);
-    }
+    addSubRecords(decoder.decode(inputStream));
     encodingType = decoder.getEncodingType();
+    readModificationStamp = AbstractListInfo.getCurrentModificationStamp();
 
     /* FIXME: by symmetry, shouldn't there be a readOptionalRandomData here? */
   }
 
+  @Override
+  protected void readContent(byte[] bytes, int offset, int length) throws IOException {
+    ISO781611Decoder<BiometricDataBlock> decoder = getDecoder();
+    this.encodingType = decoder.getEncodingType();
+    if (decodingExecutor == null) {
+      addSubRecords(decoder.decode(bytes, offset, length));
+    } else {
+      addSubRecords(decoder.decode(bytes, offset, length, decodingExecutor));
+    }
+    encodingType = decoder.getEncodingType();
+    readModificationStamp = AbstractListInfo.getCurrentModificationStamp();
+  }
+
+  /**
+   * Indicates whether records obtained from this data group, such as face infos,
+   * were modified since this data group was read.
+   *
+   * @return whether a record was modified since this data group was read
+   */
+  @Override
+  protected boolean isModifiedSinceRead() {
+    if (subRecords == null) {
+      return false;
+    }
+    for (BiometricDataBlock subRecord: subRecords) {
+      if (subRecord instanceof AbstractListInfo<?> && ((AbstractListInfo<?>)subRecord).getModificationStamp() > readModificationStamp) {
+        return true;
+      }
+    }
+    return false;
+  }
+
   @Override
   protected void writeContent(OutputStream outputStream) throws IOException {
     ISO781611Encoder<BiometricDataBlock> encoder = getEncoder();
+    encoder.encode(getCBEFFInfo(), outputStream);
+
+    /* NOTE: Supplement to ICAO Doc 9303 R7-p1_v2_sIII_0057. */
+    if (shouldAddRandomDataIfEmpty) {
+      writeOptionalRandomData(outputStream);
+    }
+  }
+
+  @Override
+  protected int getContentLength() throws IOException {
+    ISO781611Encoder<BiometricDataBlock> encoder = getEncoder();
+    int contentLength = encoder.getEncodedLength(getCBEFFInfo());
+    if (contentLength < 0) {
+      return -1;
+    }
+
+    if (shouldAddRandomDataIfEmpty && getSubRecords().isEmpty()) {
+      contentLength += RANDOM_DATA_LENGTH + 2; /* 53 08 */
+    }
+    return contentLength;
+  }
+
+  /**
+   * Returns the records of this data group as a complex CBEFF info for encoding.
+   *
+   * @return a complex CBEFF info
+   */
+  private ComplexCBEFFInfo<BiometricDataBlock> getCBEFFInfo() {
     ComplexCBEFFInfo<BiometricDataBlock> cbeffInfo = new ComplexCBEFFInfo<BiometricDataBlock>();
     List<BiometricDataBlock> records = getSubRecords();
     for (BiometricDataBlock record: records) {
       SimpleCBEFFInfo<BiometricDataBlock> simpleCBEFFInfo = new SimpleCBEFFInfo<BiometricDataBlock>(record);
       cbeffInfo.add(simpleCBEFFInfo);
     }
-    encoder.encode(cbeffInfo, outputStream);
+    return cbeffInfo;
+  }
 
-    /* NOTE: Supplement to ICAO Doc 9303 R7-p1_v2_sIII_0057. */
-    if (shouldAddRandomDataIfEmpty) {
-      writeOptionalRandomData(outputStream);
+  /**
+   * Adds the biometric data blocks of decoded records.
+   *
+   * @param complexCBEFFInfo the decoded records
+   *
+   * @throws IOException if a record is not a simple CBEFF info
+   */
+  private void addSubRecords(ComplexCBEFFInfo<BiometricDataBlock> complexCBEFFInfo) throws IOException {
+    List<CBEFFInfo<BiometricDataBlock>> records = complexCBEFFInfo.getSubRecords();
+    for (CBEFFInfo<BiometricDataBlock> cbeffInfo: records) {
+      if (!(cbeffInfo instanceof SimpleCBEFFInfo<?>)) {
+        throw new IOException("Was expecting a SimpleCBEFFInfo, found " + cbeffInfo.getClass().getSimpleName());
+      }
+      SimpleCBEFFInfo<?> simpleCBEFFInfo = (SimpleCBEFFInfo<?>)cbeffInfo;
+      BiometricDataBlock bdb = simpleCBEFFInfo.getBiometricDataBlock();
+      add(bdb);
     }
   }
 
@@ -254,7 +359,7 @@ public abstract class CBEFFDataGroup extends DataGroup {
 
     TLVOutputStream tlvOut = outputStream instanceof TLVOutputStream ? (TLVOutputStream)outputStream : new TLVOutputStream(outputStream);
     tlvOut.writeTag(ISO781611.DISCRETIONARY_DATA_FOR_PAYLOAD_TAG);
-    byte[] value = new byte[8];
+    byte[] value = new byte[RANDOM_DATA_LENGTH];
     random.nextBytes(value);
     tlvOut.writeValue(value);
   }
@@ -0,0 +1,151 @@
+/*
+ * JMRTD - A Java API for accessing machine readable travel documents.
+ *
+ * Copyright (C) 2006 - 2026  The JMRTD team
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA
+ *
+ * $Id: $
+ */
+
+package org.jmrtd.lds;
+
+import java.security.GeneralSecurityException;
+import java.security.PrivateKey;
+import java.security.Signature;
+import java.security.cert.X509Certificate;
+import java.security.spec.AlgorithmParameterSpec;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * The default, JCA based, security object signer using a local private key.
+ *
+ * Initialized {@code Signature} instances are kept and reused across batches.
+ * A batch is signed on a single instance, concurrent batches use different instances.
+ *
+ * @author The JMRTD team (info@jmrtd.org)
+ *
+ * @version $Revision: $
+ *
+ * @since 0.8.4
+ */
+public class DefaultSODSigner implements SODSigner {
+
+  private final String name;
+
+  private final PrivateKey privateKey;
+
+  private final X509Certificate docSigningCertificate;
+
+  private final String digestEncryptionAlgorithm;
+
+  private final AlgorithmParameterSpec digestEncryptionParameters;
+
+  private final String provider;
+
+  private final Queue<Signature> signatures;
+
+  /**
+   * Creates a signer.
+   *
+   * @param name the name of this signer, used for reporting statistics
+   * @param privateKey the document signer private key
+   * @param docSigningCertificate the document signer certificate
+   * @param digestEncryptionAlgorithm a digest encryption algorithm, such as {@code "SHA256withRSA"}
+   */
+  public DefaultSODSigner(String name, PrivateKey privateKey, X509Certificate docSigningCertificate, String digestEncryptionAlgorithm) {
+    this(name, privateKey, docSigningCertificate, digestEncryptionAlgorithm, null, null);
+  }
+
+  /**
+   * Creates a signer using a specified signature provider.
+   *
+   * @param name the name of this signer, used for reporting statistics
+   * @param privateKey the document signer private key
+   * @param docSigningCertificate the document signer certificate
+   * @param digestEncryptionAlgorithm a digest encryption algorithm, such as {@code "SHA256withRSA"}
+   * @param digestEncryptionParameters the digest encryption algorithm parameters, or {@code null}
+   * @param provider the signature provider, or {@code null} for the preferred provider
+   */
+  public DefaultSODSigner(String name, PrivateKey privateKey, X509Certificate docSigningCertificate,
+      String digestEncryptionAlgorithm, AlgorithmParameterSpec digestEncryptionParameters, String provider) {
+    if (privateKey == null) {
+      throw new IllegalArgumentException("Private key cannot be null");
+    }
+    if (docSigningCertificate == null) {
+      throw new IllegalArgumentException("Document signer certificate cannot be null");
+    }
+    if (digestEncryptionAlgorithm == null) {
+      throw new IllegalArgumentException("Digest encryption algorithm cannot be null");
+    }
+
+    this.name = name;
+    this.privateKey = privateKey;
+    this.docSigningCertificate = docSigningCertificate;
+    this.digestEncryptionAlgorithm = digestEncryptionAlgorithm;
+    this.digestEncryptionParameters = digestEncryptionParameters;
+    this.provider = provider;
+    this.signatures = new ConcurrentLinkedQueue<Signature>();
+  }
+
+  @Override
+  public String getName() {
+    return name;
+  }
+
+  @Override
+  public String getDigestEncryptionAlgorithm() {
+    return digestEncryptionAlgorithm;
+  }
+
+  @Override
+  public AlgorithmParameterSpec getDigestEncryptionParameters() {
+    return digestEncryptionParameters;
+  }
+
+  @Override
+  public X509Certificate getDocSigningCertificate() {
+    return docSigningCertificate;
+  }
+
+  @Override
+  public List<byte[]> sign(List<byte[]> dataToBeSigned) throws GeneralSecurityException {
+    Signature signature = signatures.poll();
+    if (signature == null) {
+      signature = provider == null ? Signature.getInstance(digestEncryptionAlgorithm) : Signature.getInstance(digestEncryptionAlgorithm, provider);
+      if (digestEncryptionParameters != null) {
+        signature.setParameter(digestEncryptionParameters);
+      }
+      signature.initSign(privateKey);
+    }
+
+    /* NOTE: If signing fails the instance may be in an undefined state, so it is not put back. */
+    List<byte[]> result = new ArrayList<byte[]>(dataToBeSigned.size());
+    for (byte[] data: dataToBeSigned) {
+      signature.update(data);
+      result.add(signature.sign());
+    }
+    signatures.offer(signature);
+    return result;
+  }
+
+  @Override
+  public String toString() {
+    return "DefaultSODSigner [name: " + name + ", digestEncryptionAlgorithm: " + digestEncryptionAlgorithm + "]";
+  }
+}
@@ -0,0 +1,488 @@
+/*
+ * JMRTD - A Java API for accessing machine readable travel documents.
+ *
+ * Copyright (C) 2006 - 2026  The JMRTD team
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA
+ *
+ * $Id: $
+ */
+
+package org.jmrtd.lds;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.jmrtd.io.TLVCursor;
+
+/**
+ * A compact binary snapshot of the files of a document.
+ *
+ * A snapshot stores, for each file, its file identifier, the encoded file,
+ * and an index of the data objects directly inside the outer template of the file
+ * (for instance the MRZ in DG1, or the fields of DG11 and DG12).
+ * A snapshot can be read from a buffer or mapped from a file without copying,
+ * after which the encoded files and indexed data objects are available as
+ * slices of that buffer, without parsing. The file objects themselves are
+ * decoded on first access.
+ *
+ * The format (all integers big-endian):
+ * <pre>
+ *   header     magic "JLDS" (4), version (2), flags (2), file count (4)
+ *   directory  per file: FID (2), reserved (2), data offset (4), data length (4),
+ *              field table offset (4), field count (4)
+ *   fields     per field: tag (4), value offset within the file data (4), value length (4)
+ *   data       the encoded files
+ * </pre>
+ * Offsets are relative to the start of the snapshot. Readers reject versions
+ * they do not know.
+ *
+ * Instances are thread-safe.
+ *
+ * @author The JMRTD team (info@jmrtd.org)
+ *
+ * @version $Revision: $
+ *
+ * @since 0.8.4
+ */
+public class LDSSnapshot {
+
+  /** The version of the format written by this class. */
+  public static final int VERSION = 1;
+
+  private static final int MAGIC = 0x4A4C4453; /* "JLDS" */
+
+  private static final int HEADER_LENGTH = 12;
+  private static final int DIRECTORY_ENTRY_LENGTH = 20;
+  private static final int FIELD_ENTRY_LENGTH = 12;
+
+  private final ByteBuffer buffer;
+  private final Map<Short, Entry> entries;
+  private final Map<Short, LDSFile> files;
+
+  private LDSSnapshot(ByteBuffer buffer, Map<Short, Entry> entries) {
+    this.buffer = buffer;
+    this.entries = entries;
+    this.files = new HashMap<Short, LDSFile>();
+  }
+
+  /**
+   * Writes a snapshot of some files.
+   *
+   * @param files the files, indexed by file identifier
+   * @param outputStream the stream to write to
+   *
+   * @throws IOException on error writing to the stream
+   */
+  public static void write(Map<Short, ? extends LDSFile> files, OutputStream outputStream) throws IOException {
+    int fileCount = files.size();
+    short[] fids = new short[fileCount];
+    byte[][] encodedFiles = new byte[fileCount][];
+    int[][] fieldIndexes = new int[fileCount][];
+    long fieldTableLength = 0;
+    long dataLength = 0;
+    int i = 0;
+    for (Map.Entry<Short, ? extends LDSFile> entry: files.entrySet()) {
+      LDSFile file = entry.getValue();
+      if (entry.getKey() == null || file == null) {
+        throw new IllegalArgumentException("Cannot write null file identifier or file");
+      }
+      fids[i] = entry.getKey();
+      encodedFiles[i] = file.getEncoded();
+      if (encodedFiles[i] == null) {
+        throw new IOException("Could not encode file " + Integer.toHexString(fids[i] & 0xFFFF));
+      }
+      fieldIndexes[i] = getFieldIndex(encodedFiles[i]);
+      fieldTableLength += fieldIndexes[i].length * 4L;
+      dataLength += encodedFiles[i].length;
+      i++;
+    }
+
+    long fieldTableOffset = HEADER_LENGTH + (long)fileCount * DIRECTORY_ENTRY_LENGTH;
+    long dataOffset = fieldTableOffset + fieldTableLength;
+    if (dataOffset + dataLength > Integer.MAX_VALUE) {
+      throw new IllegalArgumentException("Files too large for a snapshot");
+    }
+
+    DataOutputStream dataOut = new DataOutputStream(outputStream);
+    dataOut.writeInt(MAGIC);
+    dataOut.writeShort(VERSION);
+    dataOut.writeShort(0);
+    dataOut.writeInt(fileCount);
+    for (i = 0; i < fileCount; i++) {
+      int fieldCount = fieldIndexes[i].length / 3;
+      dataOut.writeShort(fids[i]);
+      dataOut.writeShort(0);
+      dataOut.writeInt((int)dataOffset);
+      dataOut.writeInt(encodedFiles[i].length);
+      dataOut.writeInt((int)fieldTableOffset);
+      dataOut.writeInt(fieldCount);
+      dataOffset += encodedFiles[i].length;
+      fieldTableOffset += fieldCount * FIELD_ENTRY_LENGTH;
+    }
+    for (int[] fieldIndex: fieldIndexes) {
+      for (int value: fieldIndex) {
+        dataOut.writeInt(value);
+      }
+    }
+    for (byte[] encodedFile: encodedFiles) {
+      dataOut.write(encodedFile);
+    }
+    dataOut.flush();
+  }
+
+  /**
+   * Writes a snapshot of some files to a file.
+   *
+   * @param files the files, indexed by file identifier
+   * @param file the file to write to
+   *
+   * @throws IOException on error writing to the file
+   */
+  public static void write(Map<Short, ? extends LDSFile> files, File file) throws IOException {
+    OutputStream outputStream = new BufferedOutputStream(new FileOutputStream(file));
+    try {
+      write(files, outputStream);
+    } finally {
+      outputStream.close();
+    }
+  }
+
+  /**
+   * Reads a snapshot from the remaining bytes of a buffer.
+   * The bytes are not copied, so they should not be modified while the snapshot is in use.
+   * The position of the buffer is not changed.
+   *
+   * @param buffer the buffer
+   *
+   * @return the snapshot
+   *
+   * @throws IOException if the buffer does not contain a snapshot in a supported version
+   */
+  public static LDSSnapshot read(ByteBuffer buffer) throws IOException {
+    ByteBuffer snapshotBuffer = buffer.slice().asReadOnlyBuffer();
+    snapshotBuffer.order(ByteOrder.BIG_ENDIAN);
+    int length = snapshotBuffer.capacity();
+    if (length < HEADER_LENGTH || snapshotBuffer.getInt(0) != MAGIC) {
+      throw new IOException("Not a snapshot");
+    }
+    int version = snapshotBuffer.getShort(4) & 0xFFFF;
+    if (version != VERSION) {
+      throw new IOException("Unsupported snapshot version " + version);
+    }
+
+    int fileCount = snapshotBuffer.getInt(8);
+    if (fileCount < 0 || HEADER_LENGTH + (long)fileCount * DIRECTORY_ENTRY_LENGTH > length) {
+      throw new IOException("Invalid file count " + fileCount);
+    }
+
+    Map<Short, Entry> entries = new LinkedHashMap<Short, Entry>(2 * fileCount);
+    for (int i = 0; i < fileCount; i++) {
+      int offset = HEADER_LENGTH + i * DIRECTORY_ENTRY_LENGTH;
+      Entry entry = new Entry(snapshotBuffer.getShort(offset),
+          snapshotBuffer.getInt(offset + 4), snapshotBuffer.getInt(offset + 8),
+          snapshotBuffer.getInt(offset + 12), snapshotBuffer.getInt(offset + 16));
+      entry.check(snapshotBuffer);
+      if (entries.put(entry.fid, entry) != null) {
+        throw new IOException("Duplicate file " + Integer.toHexString(entry.fid & 0xFFFF));
+      }
+    }
+
+    return new LDSSnapshot(snapshotBuffer, entries);
+  }
+
+  /**
+   * Maps a snapshot from a file.
+   * The file should not be modified while the snapshot is in use.
+   *
+   * @param file the file
+   *
+   * @return the snapshot
+   *
+   * @throws IOException if the file cannot be mapped or does not contain a snapshot in a supported version
+   */
+  public static LDSSnapshot map(File file) throws IOException {
+    RandomAccessFile randomAccessFile = new RandomAccessFile(file, "r");
+    try {
+      FileChannel channel = randomAccessFile.getChannel();
+      return read(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+    } finally {
+      randomAccessFile.close();
+    }
+  }
+
+  /**
+   * Returns the identifiers of the files in this snapshot, in the order in which they were written.
+   *
+   * @return the file identifiers
+   */
+  public List<Short> getFIDs() {
+    return Collections.unmodifiableList(new ArrayList<Short>(entries.keySet()));
+  }
+
+  /**
+   * Returns the encoded file with the given identifier, without copying.
+   *
+   * @param fid the file identifier
+   *
+   * @return a read-only buffer with the encoded file, or {@code null} if the file is not in this snapshot
+   */
+  public ByteBuffer getEncoded(short fid) {
+    Entry entry = entries.get(fid);
+    if (entry == null) {
+      return null;
+    }
+
+    return slice(entry.dataOffset, entry.dataLength);
+  }
+
+  /**
+   * Returns the tags of the indexed data objects of the file with the given identifier.
+   *
+   * @param fid the file identifier
+   *
+   * @return the tags, in the order of the file, or {@code null} if the file is not in this snapshot
+   */
+  public List<Integer> getFieldTags(short fid) {
+    Entry entry = entries.get(fid);
+    if (entry == null) {
+      return null;
+    }
+
+    List<Integer> tags = new ArrayList<Integer>(entry.fieldCount);
+    for (int i = 0; i < entry.fieldCount; i++) {
+      tags.add(buffer.getInt(entry.fieldTableOffset + i * FIELD_ENTRY_LENGTH));
+    }
+    return tags;
+  }
+
+  /**
+   * Returns the value of the first indexed data object with the given tag
+   * in the file with the given identifier, without copying or parsing.
+   *
+   * @param fid the file identifier
+   * @param tag the tag of the data object, for instance {@code 0x5F1F} for the MRZ in DG1
+   *
+   * @return a read-only buffer with the value, or {@code null} if there is no such data object
+   */
+  public ByteBuffer getField(short fid, int tag) {
+    Entry entry = entries.get(fid);
+    if (entry == null) {
+      return null;
+    }
+
+    for (int i = 0; i < entry.fieldCount; i++) {
+      int offset = entry.fieldTableOffset + i * FIELD_ENTRY_LENGTH;
+      if (buffer.getInt(offset) == tag) {
+        return slice(entry.dataOffset + buffer.getInt(offset + 4), buffer.getInt(offset + 8));
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Returns the file with the given identifier.
+   * The file is decoded on first access. Files that index their contents,
+   * such as DG11 and DG12, use the index from the snapshot instead of parsing their contents.
+   *
+   * @param fid the file identifier
+   *
+   * @return the file, or {@code null} if the file is not in this snapshot
+   *
+   * @throws IOException if the file cannot be decoded
+   */
+  public synchronized LDSFile getFile(short fid) throws IOException {
+    LDSFile file = files.get(fid);
+    if (file != null) {
+      return file;
+    }
+
+    Entry entry = entries.get(fid);
+    if (entry == null) {
+      return null;
+    }
+
+    byte[] bytes = new byte[entry.dataLength];
+    slice(entry.dataOffset, entry.dataLength).get(bytes);
+    if (entry.fieldCount == 0) {
+      file = LDSFileUtil.getLDSFile(fid, new ByteArrayInputStream(bytes));
+    } else {
+      int[] fieldIndex = new int[3 * entry.fieldCount];
+      for (int i = 0; i < fieldIndex.length; i++) {
+        fieldIndex[i] = buffer.getInt(entry.fieldTableOffset + 4 * i);
+      }
+      file = LDSFileUtil.getLDSFile(fid, new IndexedInputStream(bytes, fieldIndex));
+    }
+    files.put(fid, file);
+    return file;
+  }
+
+  @Override
+  public String toString() {
+    StringBuilder result = new StringBuilder();
+    result.append("LDSSnapshot [");
+    boolean isFirst = true;
+    for (Entry entry: entries.values()) {
+      if (!isFirst) {
+        result.append(", ");
+      }
+      isFirst = false;
+      result.append(Integer.toHexString(entry.fid & 0xFFFF)).append(" (").append(entry.dataLength).append(" bytes)");
+    }
+    result.append("]");
+    return result.toString();
+  }
+
+  /* ONLY PRIVATE METHODS BELOW */
+
+  private ByteBuffer slice(int offset, int length) {
+    ByteBuffer result = buffer.duplicate();
+    result.limit(offset + length);
+    result.position(offset);
+    return result.slice();
+  }
+
+  /**
+   * Indexes the data objects inside the outer template of an encoded file,
+   * as tag, value offset, and value length triples.
+   * Files that are not a constructed TLV element, such as the CVCA file, get an empty index.
+   *
+   * @param encoded the encoded file
+   *
+   * @return the index
+   */
+  private static int[] getFieldIndex(byte[] encoded) {
+    TLVCursor cursor = new TLVCursor(encoded);
+    try {
+      if (!cursor.next() || !cursor.isConstructed() || cursor.getEncodedLength() != encoded.length) {
+        return new int[0];
+      }
+
+      int[] index = new int[3 * 8];
+      int count = 0;
+      cursor.descend();
+      while (cursor.next()) {
+        if (count == index.length) {
+          int[] newIndex = new int[2 * index.length];
+          System.arraycopy(index, 0, newIndex, 0, count);
+          index = newIndex;
+        }
+        index[count++] = cursor.getTag();
+        index[count++] = cursor.getValueOffset();
+        index[count++] = cursor.getLength();
+      }
+
+      int[] result = new int[count];
+      System.arraycopy(index, 0, result, 0, count);
+      return result;
+    } catch (IOException ioe) {
+      /* Not TLV encoded after all. */
+      return new int[0];
+    }
+  }
+
+  /**
+   * A stream over an encoded file from a snapshot, which also carries the index of the file,
+   * so that the file can be decoded using the index.
+   * See {@link AbstractTaggedLDSFile#readContent(byte[], int, int, int[])}.
+   */
+  static class IndexedInputStream extends ByteArrayInputStream {
+
+    private final int[] fieldIndex;
+
+    public IndexedInputStream(byte[] bytes, int[] fieldIndex) {
+      super(bytes);
+      this.fieldIndex = fieldIndex;
+    }
+
+    /**
+     * Returns the encoded file, without copying.
+     *
+     * @return the encoded file
+     */
+    public byte[] getBytes() {
+      return buf;
+    }
+
+    /**
+     * Returns the index of the data objects inside the outer template of the file,
+     * as tag, value offset, and value length triples.
+     *
+     * @return the index
+     */
+    public int[] getFieldIndex() {
+      return fieldIndex;
+    }
+  }
+
+  /**
+   * The directory entry of a file.
+   */
+  private static class Entry {
+
+    private final short fid;
+    private final int dataOffset;
+    private final int dataLength;
+    private final int fieldTableOffset;
+    private final int fieldCount;
+
+    public Entry(short fid, int dataOffset, int dataLength, int fieldTableOffset, int fieldCount) {
+      this.fid = fid;
+      this.dataOffset = dataOffset;
+      this.dataLength = dataLength;
+      this.fieldTableOffset = fieldTableOffset;
+      this.fieldCount = fieldCount;
+    }
+
+    /**
+     * Checks that this entry, and its fields, are within the bounds of the snapshot.
+     *
+     * @param buffer the snapshot
+     *
+     * @throws IOException if this entry is out of bounds
+     */
+    public void check(ByteBuffer buffer) throws IOException {
+      long length = buffer.capacity();
+      if (dataOffset < 0 || dataLength < 0 || dataOffset + (long)dataLength > length
+          || fieldTableOffset < 0 || fieldCount < 0 || fieldTableOffset + (long)fieldCount * FIELD_ENTRY_LENGTH > length) {
+        throw new IOException("Invalid directory entry for file " + Integer.toHexString(fid & 0xFFFF));
+      }
+
+      for (int i = 0; i < fieldCount; i++) {
+        int offset = fieldTableOffset + i * FIELD_ENTRY_LENGTH;
+        int valueOffset = buffer.getInt(offset + 4);
+        int valueLength = buffer.getInt(offset + 8);
+        if (valueOffset < 0 || valueLength < 0 || valueOffset + (long)valueLength > dataLength) {
+          throw new IOException("Invalid field entry for file " + Integer.toHexString(fid & 0xFFFF));
+        }
+      }
+    }
+  }
+}
@@ -0,0 +1,419 @@
+/*
+ * JMRTD - A Java API for accessing machine readable travel documents.
+ *
+ * Copyright (C) 2006 - 2026  The JMRTD team
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA
+ *
+ * $Id: $
+ */
+
+package org.jmrtd.lds;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.GeneralSecurityException;
+import java.security.cert.CertificateException;
+import java.security.cert.X509Certificate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+import org.jmrtd.cert.CSCATrustStore;
+import org.jmrtd.cert.DSCertificateValidationCache;
+import org.jmrtd.cert.DSRevocationIndex;
+
+/**
+ * Re-verifies stored document reads in bulk, for instance after a change of
+ * the trusted country signing certificates or of the revocation data.
+ *
+ * A document is a group of raw EF dumps: the files in one directory, or the
+ * entries with the same parent path in a ZIP archive. Dumps are recognized by
+ * their ICAO tag (the first byte), so file names do not matter. A group without
+ * an EF.SOD dump is skipped.
+ *
+ * Documents are read sequentially by the calling thread and verified in parallel
+ * on a pool of worker threads, sharing one trust store, one certificate validation
+ * cache, and one revocation index. The number of documents held in memory is bounded.
+ * Results are reported to a listener as soon as a document has been verified.
+ *
+ * @author The JMRTD team (info@jmrtd.org)
+ *
+ * @version $Revision: $
+ *
+ * @since 0.8.4
+ */
+public class PassiveAuthenticationBatchVerifier {
+
+  private static final Logger LOGGER = Logger.getLogger("org.jmrtd");
+
+  /** Runs the checks of a document on the worker thread verifying that document. */
+  private static final Executor DIRECT_EXECUTOR = new Executor() {
+    @Override
+    public void execute(Runnable command) {
+      command.run();
+    }
+  };
+
+  /**
+   * Receives the results of a batch verification.
+   * Methods are called from the worker threads, implementations should be thread-safe.
+   */
+  public interface Listener {
+
+    /**
+     * Called when a document has been verified.
+     *
+     * @param documentName the name of the document, its directory or the parent path in the archive
+     * @param result the result
+     */
+    void verified(String documentName, PassiveAuthenticationResult result);
+
+    /**
+     * Called when a document could not be verified, for instance because
+     * its EF.SOD or one of its data groups could not be parsed.
+     *
+     * @param documentName the name of the document, its directory or the parent path in the archive
+     * @param exception the reason
+     */
+    void failed(String documentName, Exception exception);
+  }
+
+  private final int threadCount;
+
+  private final PassiveAuthenticator authenticator;
+
+  private boolean isDataGroupParsed;
+
+  /**
+   * Creates a batch verifier using as many worker threads as there are processors.
+   *
+   * @param trustStore the trust store containing the country signing certificates
+   * @param validationCache the cache of document signer certificate validation outcomes, or {@code null}
+   * @param revocationIndex the index of revoked document signer certificates, or {@code null}
+   */
+  public PassiveAuthenticationBatchVerifier(CSCATrustStore trustStore, DSCertificateValidationCache validationCache, DSRevocationIndex revocationIndex) {
+    this(trustStore, validationCache, revocationIndex, Runtime.getRuntime().availableProcessors());
+  }
+
+  /**
+   * Creates a batch verifier.
+   * The validation cache should be invalidated when the revocation index is rebuilt.
+   *
+   * @param trustStore the trust store containing the country signing certificates
+   * @param validationCache the cache of document signer certificate validation outcomes, or {@code null}
+   * @param revocationIndex the index of revoked document signer certificates, or {@code null}
+   * @param threadCount the number of worker threads
+   */
+  public PassiveAuthenticationBatchVerifier(CSCATrustStore trustStore, DSCertificateValidationCache validationCache, final DSRevocationIndex revocationIndex, int threadCount) {
+    if (threadCount <= 0) {
+      throw new IllegalArgumentException("Thread count should be positive, found " + threadCount);
+    }
+
+    this.threadCount = threadCount;
+    this.authenticator = new PassiveAuthenticator(DIRECT_EXECUTOR, trustStore, validationCache) {
+      @Override
+      protected List<X509Certificate> validateCertificateChain(X509Certificate docSigningCertificate) throws GeneralSecurityException {
+        List<X509Certificate> chain = super.validateCertificateChain(docSigningCertificate);
+        if (revocationIndex != null && revocationIndex.isRevoked(docSigningCertificate)) {
+          throw new CertificateException("Document signer certificate " + docSigningCertificate.getSerialNumber() + " is revoked");
+        }
+        return chain;
+      }
+    };
+  }
+
+  /**
+   * Sets whether data groups are parsed before verification, so that malformed
+   * data groups are reported as failures. By default only the hashes are checked.
+   *
+   * @param isDataGroupParsed whether data groups are parsed
+   */
+  public void setDataGroupParsed(boolean isDataGroupParsed) {
+    this.isDataGroupParsed = isDataGroupParsed;
+  }
+
+  /**
+   * Returns whether data groups are parsed before verification.
+   *
+   * @return whether data groups are parsed
+   */
+  public boolean isDataGroupParsed() {
+    return isDataGroupParsed;
+  }
+
+  /**
+   * Verifies all documents in a directory tree. Each directory containing an
+   * EF.SOD dump is verified as one document.
+   *
+   * @param directory the root directory
+   * @param listener the listener receiving the results
+   *
+   * @return the number of documents reported to the listener
+   *
+   * @throws IOException if a directory cannot be listed
+   * @throws InterruptedException if interrupted while waiting for the workers
+   */
+  public int verifyDirectory(File directory, Listener listener) throws IOException, InterruptedException {
+    Batch batch = new Batch(listener);
+    try {
+      verifyDirectory(directory, batch);
+    } finally {
+      batch.finish();
+    }
+    return batch.documentCount;
+  }
+
+  /**
+   * Verifies all documents in a ZIP archive. Entries with the same parent path
+   * are verified as one document, these are expected to be stored consecutively.
+   *
+   * @param inputStream the archive
+   * @param listener the listener receiving the results
+   *
+   * @return the number of documents reported to the listener
+   *
+   * @throws IOException on error reading the archive
+   * @throws InterruptedException if interrupted while waiting for the workers
+   */
+  public int verifyArchive(InputStream inputStream, Listener listener) throws IOException, InterruptedException {
+    Batch batch = new Batch(listener);
+    try {
+      ZipInputStream zipInputStream = new ZipInputStream(inputStream);
+      String currentDocumentName = null;
+      List<byte[]> currentDumps = new ArrayList<byte[]>();
+      byte[] buffer = new byte[8192];
+      ZipEntry entry = null;
+      while ((entry = zipInputStream.getNextEntry()) != null) {
+        if (entry.isDirectory()) {
+          continue;
+        }
+        String entryName = entry.getName();
+        int separatorIndex = entryName.lastIndexOf('/');
+        String documentName = separatorIndex < 0 ? "" : entryName.substring(0, separatorIndex);
+        if (!documentName.equals(currentDocumentName)) {
+          if (currentDocumentName != null) {
+            batch.submit(currentDocumentName, currentDumps);
+          }
+          batch.awaitCapacity();
+          currentDocumentName = documentName;
+          currentDumps = new ArrayList<byte[]>();
+        }
+
+        ByteArrayOutputStream dumpOut = new ByteArrayOutputStream(entry.getSize() > 0 ? (int)entry.getSize() : 1024);
+        int length = 0;
+        while ((length = zipInputStream.read(buffer)) >= 0) {
+          dumpOut.write(buffer, 0, length);
+        }
+        currentDumps.add(dumpOut.toByteArray());
+      }
+      if (currentDocumentName != null) {
+        batch.submit(currentDocumentName, currentDumps);
+      }
+    } finally {
+      batch.finish();
+    }
+    return batch.documentCount;
+  }
+
+  /* ONLY PRIVATE METHODS BELOW */
+
+  private void verifyDirectory(File directory, Batch batch) throws IOException, InterruptedException {
+    File[] files = directory.listFiles();
+    if (files == null) {
+      throw new IOException("Cannot list files in " + directory);
+    }
+    Arrays.sort(files);
+
+    List<File> dumpFiles = new ArrayList<File>();
+    List<File> subdirectories = new ArrayList<File>();
+    for (File file: files) {
+      if (file.isDirectory()) {
+        subdirectories.add(file);
+      } else if (file.isFile()) {
+        dumpFiles.add(file);
+      }
+    }
+
+    if (!dumpFiles.isEmpty()) {
+      batch.awaitCapacity();
+      List<byte[]> dumps = new ArrayList<byte[]>(dumpFiles.size());
+      for (File dumpFile: dumpFiles) {
+        try {
+          dumps.add(readFile(dumpFile));
+        } catch (IOException ioe) {
+          LOGGER.log(Level.WARNING, "Skipping unreadable file " + dumpFile, ioe);
+        }
+      }
+      batch.submit(directory.getPath(), dumps);
+    }
+
+    for (File subdirectory: subdirectories) {
+      verifyDirectory(subdirectory, batch);
+    }
+  }
+
+  /**
+   * Parses the dumps of a document and verifies it.
+   *
+   * @param documentName the name of the document
+   * @param dumps the raw EF dumps
+   * @param listener the listener receiving the result
+   *
+   * @return whether the document was reported to the listener
+   */
+  private boolean verifyDocument(String documentName, List<byte[]> dumps, Listener listener) {
+    SODFile sodFile = null;
+    Map<Integer, byte[]> dataGroups = new TreeMap<Integer, byte[]>();
+    try {
+      for (byte[] dump: dumps) {
+        if (dump.length == 0) {
+          continue;
+        }
+        int tag = dump[0] & 0xFF;
+        if (tag == LDSFile.EF_SOD_TAG) {
+          sodFile = LDSFileUtil.getSODFile(new ByteArrayInputStream(dump));
+          continue;
+        }
+
+        int dataGroupNumber = 0;
+        try {
+          dataGroupNumber = LDSFileUtil.lookupDataGroupNumberByTag(tag);
+        } catch (NumberFormatException nfe) {
+          /* Not a data group, such as EF.COM or EF.CVCA. */
+          continue;
+        }
+        if (isDataGroupParsed) {
+          parseDataGroup(dataGroupNumber, dump);
+        }
+        dataGroups.put(dataGroupNumber, dump);
+      }
+
+      if (sodFile == null) {
+        /* Not a document, for instance a directory holding other files. */
+        return false;
+      }
+
+      listener.verified(documentName, authenticator.verify(sodFile, dataGroups));
+    } catch (InterruptedException ie) {
+      Thread.currentThread().interrupt();
+      listener.failed(documentName, ie);
+    } catch (Exception e) {
+      LOGGER.log(Level.FINE, "Could not verify " + documentName, e);
+      listener.failed(documentName, e);
+    }
+    return true;
+  }
+
+  private static void parseDataGroup(int dataGroupNumber, byte[] dump) throws IOException {
+    short fid = LDSFileUtil.lookupFIDByDataGroupNumber(dataGroupNumber);
+    try {
+      LDSFileUtil.getLDSFile(fid, new ByteArrayInputStream(dump));
+    } catch (IllegalArgumentException iae) {
+      /* Data group not supported by LDSFileUtil, only the hash can be checked. */
+      LOGGER.log(Level.FINE, "Not parsing DG" + dataGroupNumber, iae);
+    }
+  }
+
+  private static byte[] readFile(File file) throws IOException {
+    long length = file.length();
+    if (length > Integer.MAX_VALUE) {
+      throw new IOException("File too large: " + file);
+    }
+    byte[] bytes = new byte[(int)length];
+    DataInputStream inputStream = new DataInputStream(new FileInputStream(file));
+    try {
+      inputStream.readFully(bytes);
+    } finally {
+      inputStream.close();
+    }
+    return bytes;
+  }
+
+  /**
+   * The state of one batch verification run: the worker pool, and the permits
+   * bounding the number of documents in memory.
+   */
+  private class Batch {
+
+    private final Listener listener;
+    private final ExecutorService workers;
+    private final BoundedBatch tasks;
+    private int documentCount;
+
+    public Batch(Listener listener) {
+      this.listener = listener;
+      this.workers = Executors.newFixedThreadPool(threadCount);
+      this.tasks = new BoundedBatch(workers, 2 * threadCount);
+    }
+
+    /**
+     * Blocks until a document may be read into memory.
+     *
+     * @throws InterruptedException if interrupted while waiting
+     */
+    public void awaitCapacity() throws InterruptedException {
+      tasks.awaitCapacity();
+    }
+
+    /**
+     * Hands a document that was read into memory over to a worker.
+     *
+     * @param documentName the name of the document
+     * @param dumps the dumps of the document
+     *
+     * @throws InterruptedException if interrupted while waiting for capacity
+     */
+    public void submit(final String documentName, final List<byte[]> dumps) throws InterruptedException {
+      tasks.submit(new Runnable() {
+        @Override
+        public void run() {
+          if (verifyDocument(documentName, dumps, listener)) {
+            synchronized (Batch.this) {
+              documentCount++;
+            }
+          }
+        }
+      });
+    }
+
+    /**
+     * Waits for all submitted documents to be verified, and stops the workers.
+     *
+     * @throws InterruptedException if interrupted while waiting
+     */
+    public void finish() throws InterruptedException {
+      try {
+        tasks.finish();
+      } finally {
+        workers.shutdownNow();
+      }
+    }
+  }
+}
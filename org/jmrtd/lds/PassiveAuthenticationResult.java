@@ -0,0 +1,191 @@
+/*
+ * JMRTD - A Java API for accessing machine readable travel documents.
+ *
+ * Copyright (C) 2006 - 2026  The JMRTD team
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA
+ *
+ * $Id: $
+ */
+
+package org.jmrtd.lds;
+
+import java.io.Serializable;
+import java.security.cert.X509Certificate;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Result of a Passive Authentication run by a {@link PassiveAuthenticator}.
+ *
+ * @author The JMRTD team (info@jmrtd.org)
+ *
+ * @version $Revision: $
+ *
+ * @since 0.8.4
+ */
+public class PassiveAuthenticationResult implements Serializable {
+
+  private static final long serialVersionUID = -3390620151932826262L;
+
+  /**
+   * The independent checks that make up Passive Authentication.
+   */
+  public enum Check {
+
+    /** Comparison of the data group hashes in the security object with the data groups. */
+    DATA_GROUP_HASHES,
+
+    /** Comparison of the message digest in the signed attributes with the security object. */
+    SIGNED_ATTRIBUTES,
+
+    /** Verification of the signature using the document signer certificate. */
+    SIGNATURE,
+
+    /** Validation of the document signer certificate against the trusted country signing certificates. */
+    CERTIFICATE_CHAIN
+  }
+
+  /**
+   * The outcome of a check.
+   */
+  public enum Status {
+
+    /** The check was performed and succeeded. */
+    SUCCEEDED,
+
+    /** The check was performed and failed. */
+    FAILED,
+
+    /** The check was not performed, or was cancelled after another check failed. */
+    NOT_CHECKED
+  }
+
+  private Map<Check, Status> statuses;
+  private Map<Check, String> reasons;
+  private Map<Integer, Status> dataGroupStatuses;
+  private List<X509Certificate> certificateChain;
+
+  /**
+   * Creates a result.
+   *
+   * @param statuses the status per check, checks not present are considered not checked
+   * @param reasons the reason per check, for checks that failed or were not checked
+   * @param dataGroupStatuses the status of the hash check per data group number
+   * @param certificateChain the certificate chain, document signer certificate first, possibly empty
+   */
+  public PassiveAuthenticationResult(Map<Check, Status> statuses, Map<Check, String> reasons,
+      Map<Integer, Status> dataGroupStatuses, List<X509Certificate> certificateChain) {
+    this.statuses = new EnumMap<Check, Status>(Check.class);
+    for (Check check: Check.values()) {
+      Status status = statuses.get(check);
+      this.statuses.put(check, status == null ? Status.NOT_CHECKED : status);
+    }
+    this.reasons = new EnumMap<Check, String>(Check.class);
+    this.reasons.putAll(reasons);
+    this.dataGroupStatuses = new TreeMap<Integer, Status>(dataGroupStatuses);
+    this.certificateChain = new ArrayList<X509Certificate>(certificateChain);
+  }
+
+  /**
+   * Whether all checks succeeded.
+   *
+   * @return a boolean
+   */
+  public boolean isSuccessful() {
+    for (Status status: statuses.values()) {
+      if (status != Status.SUCCEEDED) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Returns the status of a check.
+   *
+   * @param check the check
+   *
+   * @return the status
+   */
+  public Status getStatus(Check check) {
+    return statuses.get(check);
+  }
+
+  /**
+   * Returns the reason why a check failed or was not checked.
+   *
+   * @param check the check
+   *
+   * @return a reason, or {@code null} if the check succeeded
+   */
+  public String getReason(Check check) {
+    return reasons.get(check);
+  }
+
+  /**
+   * Returns the first check that failed, in the order of {@link Check}.
+   *
+   * @return the failed check, or {@code null} if no check failed
+   */
+  public Check getFailedCheck() {
+    for (Map.Entry<Check, Status> entry: statuses.entrySet()) {
+      if (entry.getValue() == Status.FAILED) {
+        return entry.getKey();
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Returns the status of the hash check for each data group listed in the security object.
+   *
+   * @return the status indexed by data group number
+   */
+  public Map<Integer, Status> getDataGroupStatuses() {
+    return Collections.unmodifiableMap(dataGroupStatuses);
+  }
+
+  /**
+   * Returns the certificate chain, starting with the document signer certificate
+   * and ending with the trusted country signing certificate if the chain could be validated.
+   *
+   * @return the certificate chain, possibly empty
+   */
+  public List<X509Certificate> getCertificateChain() {
+    return Collections.unmodifiableList(certificateChain);
+  }
+
+  /**
+   * Returns the document signer certificate.
+   *
+   * @return the document signer certificate, or {@code null} if not known
+   */
+  public X509Certificate getDocSigningCertificate() {
+    return certificateChain.isEmpty() ? null : certificateChain.get(0);
+  }
+
+  @Override
+  public String toString() {
+    return "PassiveAuthenticationResult [statuses: " + statuses
+        + ", reasons: " + reasons
+        + ", dataGroupStatuses: " + dataGroupStatuses
+        + ", certificateChain length: " + certificateChain.size() + "]";
+  }
+}
@@ -0,0 +1,633 @@
+/*
+ * JMRTD - A Java API for accessing machine readable travel documents.
+ *
+ * Copyright (C) 2006 - 2026  The JMRTD team
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA
+ *
+ * $Id: $
+ */
+
+package org.jmrtd.lds;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.Provider;
+import java.security.PublicKey;
+import java.security.Signature;
+import java.security.SignatureException;
+import java.security.cert.CertPath;
+import java.security.cert.CertPathValidator;
+import java.security.cert.CertPathValidatorException;
+import java.security.cert.CertificateException;
+import java.security.cert.CertificateFactory;
+import java.security.cert.PKIXCertPathValidatorResult;
+import java.security.cert.PKIXParameters;
+import java.security.cert.TrustAnchor;
+import java.security.cert.X509Certificate;
+import java.security.spec.AlgorithmParameterSpec;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.EnumMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.Future;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.bouncycastle.asn1.icao.LDSSecurityObject;
+import org.jmrtd.Util;
+import org.jmrtd.cert.CSCATrustStore;
+import org.jmrtd.cert.DSCertificateValidationCache;
+import org.jmrtd.lds.PassiveAuthenticationResult.Check;
+import org.jmrtd.lds.PassiveAuthenticationResult.Status;
+
+/**
+ * Performs Passive Authentication of a document, given its security object
+ * and the contents of its data groups.
+ *
+ * The data group hash checks, the check of the message digest in the signed
+ * attributes, the verification of the signature, and the validation of the
+ * document signer certificate against the trusted country signing certificates
+ * are independent, and are submitted as separate tasks to an executor.
+ * As soon as one of the checks fails, the remaining tasks are cancelled.
+ *
+ * Instances are thread-safe, and can be used to verify many documents concurrently.
+ *
+ * @author The JMRTD team (info@jmrtd.org)
+ *
+ * @version $Revision: $
+ *
+ * @since 0.8.4
+ */
+public class PassiveAuthenticator {
+
+  private static final Logger LOGGER = Logger.getLogger("org.jmrtd");
+
+  private static final Provider BC_PROVIDER = Util.getBouncyCastleProvider();
+
+  private static final int BUFFER_SIZE = 8192;
+
+  /**
+   * Provides the contents of data groups.
+   */
+  public interface DataGroupSource {
+
+    /**
+     * Returns an input stream for reading the contents of a data group.
+     * The stream is closed by the caller.
+     *
+     * @param dataGroupNumber the data group number (1 to 16)
+     *
+     * @return an input stream, or {@code null} if the data group is not available
+     *
+     * @throws IOException on error opening the data group
+     */
+    InputStream getInputStream(int dataGroupNumber) throws IOException;
+  }
+
+  private final Executor executor;
+
+  private final Set<TrustAnchor> trustAnchors;
+
+  private final CSCATrustStore trustStore;
+
+  private final DSCertificateValidationCache validationCache;
+
+  private volatile SignatureVerificationCache signatureCache;
+
+  /**
+   * Creates a passive authenticator.
+   *
+   * @param executor the executor on which the checks are performed
+   * @param trustAnchors the trusted country signing certificates,
+   *        or {@code null} to skip validation of the document signer certificate
+   */
+  public PassiveAuthenticator(Executor executor, Set<TrustAnchor> trustAnchors) {
+    if (executor == null) {
+      throw new IllegalArgumentException("Executor cannot be null");
+    }
+
+    this.executor = executor;
+    this.trustAnchors = trustAnchors == null ? null : Collections.unmodifiableSet(new HashSet<TrustAnchor>(trustAnchors));
+    this.trustStore = null;
+    this.validationCache = null;
+  }
+
+  /**
+   * Creates a passive authenticator which validates document signer certificates
+   * against the current contents of a trust store. Only the certificates
+   * that may have issued the document signer certificate are used as trust anchors.
+   *
+   * @param executor the executor on which the checks are performed
+   * @param trustStore the trust store containing the country signing certificates
+   */
+  public PassiveAuthenticator(Executor executor, CSCATrustStore trustStore) {
+    this(executor, trustStore, null);
+  }
+
+  /**
+   * Creates a passive authenticator which validates document signer certificates
+   * against the current contents of a trust store, and which caches the validation
+   * outcome per document signer certificate and trust store generation.
+   *
+   * @param executor the executor on which the checks are performed
+   * @param trustStore the trust store containing the country signing certificates
+   * @param validationCache the cache of validation outcomes, or {@code null}
+   */
+  public PassiveAuthenticator(Executor executor, CSCATrustStore trustStore, DSCertificateValidationCache validationCache) {
+    if (executor == null) {
+      throw new IllegalArgumentException("Executor cannot be null");
+    }
+    if (trustStore == null) {
+      throw new IllegalArgumentException("Trust store cannot be null");
+    }
+
+    this.executor = executor;
+    this.trustAnchors = null;
+    this.trustStore = trustStore;
+    this.validationCache = validationCache;
+  }
+
+  /**
+   * Sets the cache of signature verification outcomes, so that repeated
+   * verification of the same security object skips the public key operation.
+   *
+   * @param signatureCache the cache, or {@code null} to always verify the signature
+   */
+  public void setSignatureVerificationCache(SignatureVerificationCache signatureCache) {
+    this.signatureCache = signatureCache;
+  }
+
+  /**
+   * Returns the cache of signature verification outcomes.
+   *
+   * @return the cache, or {@code null} if signatures are always verified
+   */
+  public SignatureVerificationCache getSignatureVerificationCache() {
+    return signatureCache;
+  }
+
+  /**
+   * Performs Passive Authentication.
+   *
+   * @param sodFile the security object
+   * @param dataGroups the encoded data groups, indexed by data group number
+   *
+   * @return the result
+   *
+   * @throws InterruptedException if the calling thread is interrupted while waiting for the checks
+   */
+  public PassiveAuthenticationResult verify(SODFile sodFile, final Map<Integer, byte[]> dataGroups) throws InterruptedException {
+    return verify(sodFile, new DataGroupSource() {
+      @Override
+      public InputStream getInputStream(int dataGroupNumber) {
+        byte[] bytes = dataGroups.get(dataGroupNumber);
+        return bytes == null ? null : new ByteArrayInputStream(bytes);
+      }
+    });
+  }
+
+  /**
+   * Performs Passive Authentication.
+   * Data groups listed in the security object which are not available from the
+   * source are reported as not checked, the data group hash check succeeds
+   * if all available data groups match.
+   *
+   * @param sodFile the security object
+   * @param dataGroupSource the source of the data groups
+   *
+   * @return the result
+   *
+   * @throws InterruptedException if the calling thread is interrupted while waiting for the checks
+   */
+  public PassiveAuthenticationResult verify(SODFile sodFile, DataGroupSource dataGroupSource) throws InterruptedException {
+    Map<Check, Status> statuses = new EnumMap<Check, Status>(Check.class);
+    Map<Check, String> reasons = new EnumMap<Check, String>(Check.class);
+    Map<Integer, Status> dataGroupStatuses = new TreeMap<Integer, Status>();
+    List<X509Certificate> certificateChain = new ArrayList<X509Certificate>();
+
+    /*
+     * NOTE: The stored hashes, the message digest, the signature, and the certificate
+     * all come from the same parse of the encoded security object.
+     */
+    SignedDataReader signedDataReader = null;
+    Map<Integer, byte[]> storedHashes = Collections.emptyMap();
+    String digestAlgorithm = null;
+    X509Certificate docSigningCertificate = null;
+    try {
+      signedDataReader = sodFile.getSignedDataReader();
+      LDSSecurityObject ldsSecurityObject = SODFile.getLDSSecurityObject(signedDataReader);
+      storedHashes = SODFile.getDataGroupHashes(ldsSecurityObject);
+      digestAlgorithm = SODFile.getDigestAlgorithm(ldsSecurityObject);
+      List<X509Certificate> certificates = signedDataReader.getCertificates();
+      if (!certificates.isEmpty()) {
+        docSigningCertificate = certificates.get(certificates.size() - 1);
+      }
+    } catch (IOException ioe) {
+      LOGGER.log(Level.FINE, "Could not read signed data", ioe);
+      signedDataReader = null;
+      statuses.put(Check.SIGNED_ATTRIBUTES, Status.FAILED);
+      reasons.put(Check.SIGNED_ATTRIBUTES, "Could not read signed data: " + ioe.getMessage());
+    }
+
+    List<Callable<Outcome>> tasks = new ArrayList<Callable<Outcome>>();
+    tasks.add(new SignedAttributesTask(signedDataReader));
+    if (docSigningCertificate == null) {
+      if (signedDataReader != null) {
+        statuses.put(Check.SIGNATURE, Status.FAILED);
+        reasons.put(Check.SIGNATURE, "No document signer certificate in security object");
+      }
+    } else {
+      certificateChain.add(docSigningCertificate);
+      tasks.add(new SignatureTask(signedDataReader, docSigningCertificate, signatureCache));
+      if (trustStore == null && (trustAnchors == null || trustAnchors.isEmpty())) {
+        reasons.put(Check.CERTIFICATE_CHAIN, "No trust anchors");
+      } else {
+        tasks.add(new CertificateChainTask(docSigningCertificate));
+      }
+    }
+    for (Map.Entry<Integer, byte[]> entry: storedHashes.entrySet()) {
+      tasks.add(new DataGroupHashTask(entry.getKey(), entry.getValue(), digestAlgorithm, dataGroupSource));
+    }
+
+    Check failedCheck = statuses.isEmpty() ? runUntilFailure(tasks, statuses, reasons, dataGroupStatuses, certificateChain) : statuses.keySet().iterator().next();
+
+    if (!statuses.containsKey(Check.DATA_GROUP_HASHES)) {
+      if (signedDataReader == null || dataGroupStatuses.size() < storedHashes.size()) {
+        reasons.put(Check.DATA_GROUP_HASHES, "Cancelled after failure of " + failedCheck);
+      } else if (!dataGroupStatuses.containsValue(Status.SUCCEEDED)) {
+        reasons.put(Check.DATA_GROUP_HASHES, "No data groups available");
+      } else {
+        statuses.put(Check.DATA_GROUP_HASHES, Status.SUCCEEDED);
+      }
+    }
+    for (int dataGroupNumber: storedHashes.keySet()) {
+      if (!dataGroupStatuses.containsKey(dataGroupNumber)) {
+        dataGroupStatuses.put(dataGroupNumber, Status.NOT_CHECKED);
+      }
+    }
+    for (Check check: Check.values()) {
+      if (!statuses.containsKey(check) && !reasons.containsKey(check)) {
+        reasons.put(check, "Cancelled after failure of " + failedCheck);
+      }
+    }
+
+    return new PassiveAuthenticationResult(statuses, reasons, dataGroupStatuses, certificateChain);
+  }
+
+  /**
+   * Validates the document signer certificate.
+   * The default implementation performs PKIX validation (without revocation checking)
+   * against the trust anchors of this authenticator, or against the issuer candidates
+   * found in the trust store of this authenticator.
+   * Subclasses may override this, for instance to add revocation checking.
+   *
+   * @param docSigningCertificate the document signer certificate
+   *
+   * @return the certificate chain, starting with the document signer certificate
+   *         and ending with the trusted country signing certificate
+   *
+   * @throws GeneralSecurityException if the certificate could not be validated
+   */
+  protected List<X509Certificate> validateCertificateChain(X509Certificate docSigningCertificate) throws GeneralSecurityException {
+    CertificateFactory certificateFactory = CertificateFactory.getInstance("X.509", BC_PROVIDER);
+    CertPath certPath = certificateFactory.generateCertPath(Collections.singletonList(docSigningCertificate));
+
+    Set<TrustAnchor> anchors = trustStore == null ? trustAnchors : trustStore.getTrustAnchors(docSigningCertificate);
+    if (anchors.isEmpty()) {
+      throw new CertificateException("No trusted issuer found for " + docSigningCertificate.getIssuerX500Principal());
+    }
+    PKIXParameters parameters = new PKIXParameters(anchors);
+    parameters.setRevocationEnabled(false);
+
+    CertPathValidator validator = CertPathValidator.getInstance("PKIX", BC_PROVIDER);
+    PKIXCertPathValidatorResult result = (PKIXCertPathValidatorResult)validator.validate(certPath, parameters);
+
+    List<X509Certificate> chain = new ArrayList<X509Certificate>(2);
+    chain.add(docSigningCertificate);
+    X509Certificate countrySigningCertificate = result.getTrustAnchor().getTrustedCert();
+    if (countrySigningCertificate != null) {
+      chain.add(countrySigningCertificate);
+    }
+    return chain;
+  }
+
+  /* ONLY PRIVATE METHODS BELOW */
+
+  /**
+   * Submits the tasks, and collects their outcomes until all tasks completed
+   * or one of them failed. Tasks that did not complete are cancelled.
+   *
+   * @param tasks the tasks
+   * @param statuses the statuses to update
+   * @param reasons the reasons to update
+   * @param dataGroupStatuses the data group statuses to update
+   * @param certificateChain the certificate chain to update
+   *
+   * @return the check that failed, or {@code null}
+   *
+   * @throws InterruptedException if interrupted while waiting
+   */
+  private Check runUntilFailure(List<Callable<Outcome>> tasks,
+      Map<Check, Status> statuses, Map<Check, String> reasons,
+      Map<Integer, Status> dataGroupStatuses, List<X509Certificate> certificateChain) throws InterruptedException {
+    CompletionService<Outcome> completionService = new ExecutorCompletionService<Outcome>(executor);
+    List<Future<Outcome>> futures = new ArrayList<Future<Outcome>>(tasks.size());
+    try {
+      for (Callable<Outcome> task: tasks) {
+        futures.add(completionService.submit(task));
+      }
+      for (int i = 0; i < futures.size(); i++) {
+        Outcome outcome = completionService.take().get();
+        if (outcome.check == Check.DATA_GROUP_HASHES) {
+          dataGroupStatuses.put(outcome.dataGroupNumber, outcome.status);
+        }
+        if (outcome.check != Check.DATA_GROUP_HASHES || outcome.status == Status.FAILED) {
+          statuses.put(outcome.check, outcome.status);
+          if (outcome.reason != null) {
+            reasons.put(outcome.check, outcome.reason);
+          }
+        }
+        if (outcome.check == Check.CERTIFICATE_CHAIN && outcome.certificateChain != null) {
+          certificateChain.clear();
+          certificateChain.addAll(outcome.certificateChain);
+        }
+        if (outcome.status == Status.FAILED) {
+          return outcome.check;
+        }
+      }
+      return null;
+    } catch (ExecutionException ee) {
+      throw new IllegalStateException("Unexpected exception in Passive Authentication check", ee.getCause());
+    } finally {
+      for (Future<Outcome> future: futures) {
+        future.cancel(true);
+      }
+    }
+  }
+
+  /**
+   * Determines the JCA signature algorithm to use for verifying the signature.
+   * Some security objects only indicate the key algorithm in the signer info,
+   * in which case the digest algorithm of the signer info is used.
+   *
+   * @param signedDataReader the signed data
+   * @param params the signature parameters, or {@code null}
+   * @param publicKey the document signer public key
+   *
+   * @return the signature algorithm
+   *
+   * @throws NoSuchAlgorithmException if the signature algorithm could not be determined
+   * @throws IOException on error decoding the algorithm identifiers
+   */
+  private static String getSignatureAlgorithm(SignedDataReader signedDataReader, AlgorithmParameterSpec params, PublicKey publicKey) throws NoSuchAlgorithmException, IOException {
+    String signatureAlgorithm = signedDataReader.getDigestEncryptionAlgorithm();
+    if (signatureAlgorithm != null && signatureAlgorithm.contains("with") && !"SSAwithRSA/PSS".equals(signatureAlgorithm)) {
+      return signatureAlgorithm;
+    }
+
+    if ("SSAwithRSA/PSS".equals(signatureAlgorithm) && params != null) {
+      return "RSASSA-PSS";
+    }
+
+    String digestAlgorithm = signedDataReader.getDigestAlgorithm();
+    if (digestAlgorithm == null) {
+      throw new NoSuchAlgorithmException("Could not determine signature algorithm");
+    }
+    digestAlgorithm = digestAlgorithm.replace("-", "");
+
+    if ("SSAwithRSA/PSS".equals(signatureAlgorithm)) {
+      return digestAlgorithm + "withRSA/PSS";
+    }
+
+    String keyAlgorithm = publicKey.getAlgorithm();
+    if ("EC".equals(keyAlgorithm) || "ECDSA".equals(keyAlgorithm)) {
+      return digestAlgorithm + "withECDSA";
+    }
+
+    return digestAlgorithm + "with" + keyAlgorithm;
+  }
+
+  /**
+   * The outcome of a single check.
+   */
+  private static class Outcome {
+
+    private final Check check;
+    private final int dataGroupNumber;
+    private final Status status;
+    private final String reason;
+    private final List<X509Certificate> certificateChain;
+
+    public Outcome(Check check, int dataGroupNumber, Status status, String reason, List<X509Certificate> certificateChain) {
+      this.check = check;
+      this.dataGroupNumber = dataGroupNumber;
+      this.status = status;
+      this.reason = reason;
+      this.certificateChain = certificateChain;
+    }
+
+    public Outcome(Check check, Status status, String reason) {
+      this(check, -1, status, reason, null);
+    }
+  }
+
+  /**
+   * Compares the hash of a data group with the hash stored in the security object.
+   */
+  private static class DataGroupHashTask implements Callable<Outcome> {
+
+    private final int dataGroupNumber;
+    private final byte[] storedHash;
+    private final String digestAlgorithm;
+    private final DataGroupSource dataGroupSource;
+
+    public DataGroupHashTask(int dataGroupNumber, byte[] storedHash, String digestAlgorithm, DataGroupSource dataGroupSource) {
+      this.dataGroupNumber = dataGroupNumber;
+      this.storedHash = storedHash;
+      this.digestAlgorithm = digestAlgorithm;
+      this.dataGroupSource = dataGroupSource;
+    }
+
+    @Override
+    public Outcome call() {
+      InputStream inputStream = null;
+      try {
+        inputStream = dataGroupSource.getInputStream(dataGroupNumber);
+        if (inputStream == null) {
+          return new Outcome(Check.DATA_GROUP_HASHES, dataGroupNumber, Status.NOT_CHECKED, "DG" + dataGroupNumber + " not available", null);
+        }
+        if (digestAlgorithm == null) {
+          return new Outcome(Check.DATA_GROUP_HASHES, dataGroupNumber, Status.FAILED, "Unknown digest algorithm in security object", null);
+        }
+
+        MessageDigest digest = Util.getMessageDigest(digestAlgorithm);
+        byte[] buffer = new byte[BUFFER_SIZE];
+        int length = 0;
+        while ((length = inputStream.read(buffer)) >= 0) {
+          if (Thread.currentThread().isInterrupted()) {
+            return new Outcome(Check.DATA_GROUP_HASHES, dataGroupNumber, Status.NOT_CHECKED, "Interrupted", null);
+          }
+          digest.update(buffer, 0, length);
+        }
+
+        if (!MessageDigest.isEqual(storedHash, digest.digest())) {
+          return new Outcome(Check.DATA_GROUP_HASHES, dataGroupNumber, Status.FAILED, "Hash mismatch for DG" + dataGroupNumber, null);
+        }
+        return new Outcome(Check.DATA_GROUP_HASHES, dataGroupNumber, Status.SUCCEEDED, null, null);
+      } catch (Exception e) {
+        LOGGER.log(Level.FINE, "Could not check hash of DG" + dataGroupNumber, e);
+        return new Outcome(Check.DATA_GROUP_HASHES, dataGroupNumber, Status.FAILED, "Could not check hash of DG" + dataGroupNumber + ": " + e.getMessage(), null);
+      } finally {
+        if (inputStream != null) {
+          try {
+            inputStream.close();
+          } catch (IOException ioe) {
+            LOGGER.log(Level.FINE, "Error closing stream", ioe);
+          }
+        }
+      }
+    }
+  }
+
+  /**
+   * Compares the message digest in the signed attributes with the digest of the security object.
+   */
+  private static class SignedAttributesTask implements Callable<Outcome> {
+
+    private final SignedDataReader signedDataReader;
+
+    public SignedAttributesTask(SignedDataReader signedDataReader) {
+      this.signedDataReader = signedDataReader;
+    }
+
+    @Override
+    public Outcome call() {
+      try {
+        signedDataReader.checkMessageDigest();
+        return new Outcome(Check.SIGNED_ATTRIBUTES, Status.SUCCEEDED, null);
+      } catch (Exception e) {
+        LOGGER.log(Level.FINE, "Signed attributes do not match security object", e);
+        return new Outcome(Check.SIGNED_ATTRIBUTES, Status.FAILED, "Signed attributes do not match security object: " + e.getMessage());
+      }
+    }
+  }
+
+  /**
+   * Verifies the signature over the signed attributes using the document signer certificate.
+   */
+  private static class SignatureTask implements Callable<Outcome> {
+
+    private final SignedDataReader signedDataReader;
+    private final X509Certificate docSigningCertificate;
+    private final SignatureVerificationCache signatureCache;
+
+    public SignatureTask(SignedDataReader signedDataReader, X509Certificate docSigningCertificate, SignatureVerificationCache signatureCache) {
+      this.signedDataReader = signedDataReader;
+      this.docSigningCertificate = docSigningCertificate;
+      this.signatureCache = signatureCache;
+    }
+
+    @Override
+    public Outcome call() {
+      try {
+        byte[] encryptedDigest = signedDataReader.getSignature();
+        AlgorithmParameterSpec params = signedDataReader.getDigestEncryptionAlgorithmParams();
+        String signatureAlgorithm = getSignatureAlgorithm(signedDataReader, params, docSigningCertificate.getPublicKey());
+
+        boolean isValid = false;
+        if (signatureCache != null) {
+          isValid = signatureCache.verify(docSigningCertificate, signatureAlgorithm, params, signedDataReader.getSignedContent(), encryptedDigest);
+        } else {
+          Signature signature = Util.getSignature(signatureAlgorithm);
+          if (params != null) {
+            signature.setParameter(params);
+          }
+          signature.initVerify(docSigningCertificate);
+          signedDataReader.updateSignedContent(signature);
+          isValid = signature.verify(encryptedDigest);
+        }
+        if (!isValid) {
+          return new Outcome(Check.SIGNATURE, Status.FAILED, "Invalid " + signatureAlgorithm + " signature");
+        }
+        return new Outcome(Check.SIGNATURE, Status.SUCCEEDED, null);
+      } catch (SignatureException se) {
+        LOGGER.log(Level.FINE, "Invalid signature", se);
+        return new Outcome(Check.SIGNATURE, Status.FAILED, "Invalid signature: " + se.getMessage());
+      } catch (Exception e) {
+        LOGGER.log(Level.FINE, "Could not verify signature", e);
+        return new Outcome(Check.SIGNATURE, Status.FAILED, "Could not verify signature: " + e.getMessage());
+      }
+    }
+  }
+
+  /**
+   * Validates the document signer certificate.
+   */
+  private class CertificateChainTask implements Callable<Outcome> {
+
+    private final X509Certificate docSigningCertificate;
+
+    public CertificateChainTask(X509Certificate docSigningCertificate) {
+      this.docSigningCertificate = docSigningCertificate;
+    }
+
+    @Override
+    public Outcome call() {
+      try {
+        if (validationCache == null) {
+          List<X509Certificate> chain = validateCertificateChain(docSigningCertificate);
+          return new Outcome(Check.CERTIFICATE_CHAIN, -1, Status.SUCCEEDED, null, chain);
+        }
+
+        Date now = new Date();
+        long trustStoreGeneration = trustStore.getGeneration();
+        DSCertificateValidationCache.Outcome cachedOutcome = validationCache.get(docSigningCertificate, trustStoreGeneration, now);
+        if (cachedOutcome == null) {
+          try {
+            cachedOutcome = validationCache.putValid(docSigningCertificate, trustStoreGeneration, validateCertificateChain(docSigningCertificate), now);
+          } catch (CertPathValidatorException cpve) {
+            LOGGER.log(Level.FINE, "Could not validate document signer certificate", cpve);
+            cachedOutcome = validationCache.putInvalid(docSigningCertificate, trustStoreGeneration, cpve.getMessage(), now);
+          } catch (CertificateException ce) {
+            LOGGER.log(Level.FINE, "Could not validate document signer certificate", ce);
+            cachedOutcome = validationCache.putInvalid(docSigningCertificate, trustStoreGeneration, ce.getMessage(), now);
+          }
+        }
+        if (!cachedOutcome.isValid()) {
+          return new Outcome(Check.CERTIFICATE_CHAIN, Status.FAILED, "Could not validate document signer certificate: " + cachedOutcome.getReason());
+        }
+        return new Outcome(Check.CERTIFICATE_CHAIN, -1, Status.SUCCEEDED, null, cachedOutcome.getCertificateChain());
+      } catch (Exception e) {
+        LOGGER.log(Level.FINE, "Could not validate document signer certificate", e);
+        return new Outcome(Check.CERTIFICATE_CHAIN, Status.FAILED, "Could not validate document signer certificate: " + e.getMessage());
+      }
+    }
+  }
+}
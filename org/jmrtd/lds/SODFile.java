@@ -33,7 +33,9 @@ import java.security.PrivateKey;
 import java.security.SignatureException;
 import java.security.cert.X509Certificate;
 import java.security.spec.AlgorithmParameterSpec;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 import java.util.TreeMap;
@@ -85,7 +87,7 @@ public class SODFile extends AbstractTaggedLDSFile {
    *    {joint-iso-itu-t(2) international-organizations(23) icao(136) mrtd(1) security(1) ldsSecurityObject(1)}
    * </pre>
    */
-  private static final String ICAO_LDS_SOD_OID = "2.23.136.1.1.1";
+  static final String ICAO_LDS_SOD_OID = "2.23.136.1.1.1";
 
   /**
    * This TC_SOD_IOD is apparently used in
@@ -121,6 +123,16 @@ public class SODFile extends AbstractTaggedLDSFile {
    */
   private transient SignedData signedData;
 
+  /*
+   * Derived from signedData on first use. These are immutable once computed,
+   * a race between threads at most results in computing them more than once.
+   */
+  private transient volatile LDSSecurityObject ldsSecurityObject;
+  private transient volatile Map<Integer, byte[]> dataGroupHashes;
+  private transient volatile byte[] eContent;
+  private transient volatile List<X509Certificate> docSigningCertificates;
+  private transient volatile SignedDataReader signedDataReader;
+
   /**
    * Constructs a Security Object data structure.
    *
@@ -339,6 +351,35 @@ public class SODFile extends AbstractTaggedLDSFile {
   }
 
 
+  /**
+   * Constructs a Security Object data structure from prepared content and an
+   * externally computed signature over its signed attributes.
+   * Used by {@link SODSigningPipeline}.
+   *
+   * @param digestAlgorithm a digest algorithm, such as "SHA-1" or "SHA-256"
+   * @param digestEncryptionAlgorithm a digest encryption algorithm, such as "SHA256withRSA"
+   * @param digestEncryptionParameters the digest encryption algorithm parameters, or {@code null}
+   * @param contentInfo the content info containing the LDS security object
+   * @param encryptedDigest externally signed contents
+   * @param docSigningCertificate the document signing certificate
+   *
+   * @throws GeneralSecurityException if either of the algorithm parameters is not recognized, or if the document signing certificate cannot be used
+   */
+  SODFile(String digestAlgorithm, String digestEncryptionAlgorithm,
+      AlgorithmParameterSpec digestEncryptionParameters,
+      ContentInfo contentInfo,
+      byte[] encryptedDigest,
+      X509Certificate docSigningCertificate) throws GeneralSecurityException {
+    super(EF_SOD_TAG);
+    signedData = SignedDataUtil.createSignedData(digestAlgorithm,
+        digestEncryptionAlgorithm,
+        digestEncryptionParameters,
+        ICAO_LDS_SOD_OID,
+        contentInfo,
+        encryptedDigest,
+        docSigningCertificate);
+  }
+
   /**
    * Constructs a Security Object data structure.
    *
@@ -356,6 +397,11 @@ public class SODFile extends AbstractTaggedLDSFile {
   @Override
   protected void readContent(InputStream inputStream) throws IOException {
     this.signedData = SignedDataUtil.readSignedData(inputStream);
+    this.ldsSecurityObject = null;
+    this.dataGroupHashes = null;
+    this.eContent = null;
+    this.docSigningCertificates = null;
+    this.signedDataReader = null;
   }
 
   @Override
@@ -369,14 +415,18 @@ public class SODFile extends AbstractTaggedLDSFile {
    * @return data group hashes indexed by data group number (1 to 16)
    */
   public Map<Integer, byte[]> getDataGroupHashes() {
-    DataGroupHash[] hashObjects = getLDSSecurityObject(signedData).getDatagroupHash();
-    Map<Integer, byte[]> hashMap = new TreeMap<Integer, byte[]>(); /* HashMap... get it? :D (not funny anymore, now that it's a TreeMap.) */
-    for (DataGroupHash hashObject: hashObjects) {
-      int number = hashObject.getDataGroupNumber();
-      byte[] hashValue = hashObject.getDataGroupHashValue().getOctets();
-      hashMap.put(number, hashValue);
+    Map<Integer, byte[]> hashMap = dataGroupHashes;
+    if (hashMap == null) {
+      hashMap = getDataGroupHashes(getLDSSecurityObject());
+      dataGroupHashes = hashMap;
     }
-    return hashMap;
+
+    /* Copy, so that callers cannot change the cached hashes. */
+    Map<Integer, byte[]> result = new TreeMap<Integer, byte[]>();
+    for (Map.Entry<Integer, byte[]> entry: hashMap.entrySet()) {
+      result.put(entry.getKey(), entry.getValue().clone());
+    }
+    return result;
   }
 
   /**
@@ -408,7 +458,13 @@ public class SODFile extends AbstractTaggedLDSFile {
    * @throws SignatureException if the contents do not check out
    */
   public byte[] getEContent() throws SignatureException {
-    return SignedDataUtil.getEContent(signedData);
+    byte[] result = eContent;
+    if (result == null) {
+      /* Only cached if the signed attributes check out, so a failure is reported on every call. */
+      result = SignedDataUtil.getEContent(signedData);
+      eContent = result;
+    }
+    return result.clone();
   }
 
   /**
@@ -417,7 +473,7 @@ public class SODFile extends AbstractTaggedLDSFile {
    * @return an algorithm string such as "SHA-1" or "SHA-256"
    */
   public String getDigestAlgorithm() {
-    return getDigestAlgorithm(getLDSSecurityObject(signedData));
+    return getDigestAlgorithm(getLDSSecurityObject());
   }
 
   /**
@@ -427,7 +483,7 @@ public class SODFile extends AbstractTaggedLDSFile {
    *
    * @return a mnemonic (Java JCE) string representation of the digest algorithm
    */
-  private static String getDigestAlgorithm(LDSSecurityObject ldsSecurityObject) {
+  static String getDigestAlgorithm(LDSSecurityObject ldsSecurityObject) {
     try {
       return SignedDataUtil.lookupMnemonicByOID(ldsSecurityObject.getDigestAlgorithmIdentifier().getAlgorithm().getId());
     } catch (NoSuchAlgorithmException nsae) {
@@ -462,7 +518,7 @@ public class SODFile extends AbstractTaggedLDSFile {
    * @since LDS V1.8
    */
   public String getLDSVersion() {
-    LDSVersionInfo ldsVersionInfo = getLDSSecurityObject(signedData).getVersionInfo();
+    LDSVersionInfo ldsVersionInfo = getLDSSecurityObject().getVersionInfo();
     if (ldsVersionInfo == null) {
       return null;
     } else {
@@ -478,7 +534,7 @@ public class SODFile extends AbstractTaggedLDSFile {
    * @since LDS V1.8
    */
   public String getUnicodeVersion() {
-    LDSVersionInfo ldsVersionInfo = getLDSSecurityObject(signedData).getVersionInfo();
+    LDSVersionInfo ldsVersionInfo = getLDSSecurityObject().getVersionInfo();
     if (ldsVersionInfo == null) {
       return null;
     } else {
@@ -498,7 +554,7 @@ public class SODFile extends AbstractTaggedLDSFile {
    * @return the document signing certificate
    */
   public List<X509Certificate> getDocSigningCertificates() {
-    return SignedDataUtil.getCertificates(signedData);
+    return new ArrayList<X509Certificate>(getCachedDocSigningCertificates());
   }
 
   /**
@@ -511,8 +567,8 @@ public class SODFile extends AbstractTaggedLDSFile {
    * @return the document signing certificate
    */
   public X509Certificate getDocSigningCertificate() {
-    List<X509Certificate> certificates = getDocSigningCertificates();
-    if (certificates == null || certificates.isEmpty()) {
+    List<X509Certificate> certificates = getCachedDocSigningCertificates();
+    if (certificates.isEmpty()) {
       return null;
     }
 
@@ -575,6 +631,28 @@ public class SODFile extends AbstractTaggedLDSFile {
     return SignedDataUtil.getSubjectKeyIdentifier(signedData);
   }
 
+  /**
+   * Returns a reader over the encoding of this file, for use by verifiers in this package.
+   * The reader gives access to the signed content and the signature directly
+   * from the encoded bytes, without going through the BC object graph.
+   *
+   * @return the signed data reader
+   *
+   * @throws IOException if this file could not be encoded or the encoding could not be read
+   */
+  SignedDataReader getSignedDataReader() throws IOException {
+    SignedDataReader result = signedDataReader;
+    if (result == null) {
+      byte[] encoded = getEncoded();
+      if (encoded == null) {
+        throw new IOException("Could not encode security object");
+      }
+      result = new SignedDataReader(encoded);
+      signedDataReader = result;
+    }
+    return result;
+  }
+
   /**
    * Returns a textual representation of this file.
    *
@@ -585,7 +663,7 @@ public class SODFile extends AbstractTaggedLDSFile {
     try {
       StringBuilder result = new StringBuilder();
       result.append("SODFile ");
-      List<X509Certificate> certificates = getDocSigningCertificates();
+      List<X509Certificate> certificates = getCachedDocSigningCertificates();
       for (X509Certificate certificate: certificates) {
         result.append(certificate.getIssuerX500Principal().getName());
         result.append(", ");
@@ -618,8 +696,76 @@ public class SODFile extends AbstractTaggedLDSFile {
     return 11 * Arrays.hashCode(getEncoded()) + 111;
   }
 
+  /**
+   * Extracts the data group hashes from the security object.
+   *
+   * @param ldsSecurityObject the security object
+   *
+   * @return data group hashes indexed by data group number
+   */
+  static Map<Integer, byte[]> getDataGroupHashes(LDSSecurityObject ldsSecurityObject) {
+    DataGroupHash[] hashObjects = ldsSecurityObject.getDatagroupHash();
+    Map<Integer, byte[]> hashMap = new TreeMap<Integer, byte[]>(); /* HashMap... get it? :D (not funny anymore, now that it's a TreeMap.) */
+    for (DataGroupHash hashObject: hashObjects) {
+      int number = hashObject.getDataGroupNumber();
+      byte[] hashValue = hashObject.getDataGroupHashValue().getOctets();
+      hashMap.put(number, hashValue);
+    }
+    return hashMap;
+  }
+
+  /**
+   * Decodes the security object from the encapsulated content located by a signed data reader,
+   * for use by verifiers in this package, so that the stored hashes are read from the same
+   * bytes that the message digest and signature are checked over.
+   *
+   * @param signedDataReader the signed data reader
+   *
+   * @return the security object
+   *
+   * @throws IOException if the encapsulated content is absent or is not a security object
+   */
+  static LDSSecurityObject getLDSSecurityObject(SignedDataReader signedDataReader) throws IOException {
+    if (!signedDataReader.hasEContent()) {
+      throw new IOException("No encapsulated content in signed data");
+    }
+    try {
+      return readLDSSecurityObject(signedDataReader.getEContentType(), signedDataReader.getEContent());
+    } catch (RuntimeException re) {
+      throw new IOException("Could not read security object in signed data", re);
+    }
+  }
+
   /* ONLY PRIVATE METHODS BELOW */
 
+  /**
+   * Returns the security object, decoding it on first use.
+   *
+   * @return the security object
+   */
+  private LDSSecurityObject getLDSSecurityObject() {
+    LDSSecurityObject result = ldsSecurityObject;
+    if (result == null) {
+      result = getLDSSecurityObject(signedData);
+      ldsSecurityObject = result;
+    }
+    return result;
+  }
+
+  /**
+   * Returns the embedded certificates, decoding them on first use.
+   *
+   * @return an unmodifiable list of certificates
+   */
+  private List<X509Certificate> getCachedDocSigningCertificates() {
+    List<X509Certificate> result = docSigningCertificates;
+    if (result == null) {
+      result = Collections.unmodifiableList(SignedDataUtil.getCertificates(signedData));
+      docSigningCertificates = result;
+    }
+    return result;
+  }
+
   /**
    * Encodes a content info for the hash table.
    *
@@ -634,7 +780,7 @@ public class SODFile extends AbstractTaggedLDSFile {
    * @throws NoSuchAlgorithmException on error
    * @throws IOException on error writing to memory
    */
-  private static ContentInfo toContentInfo(String contentTypeOID, String digestAlgorithm,
+  static ContentInfo toContentInfo(String contentTypeOID, String digestAlgorithm,
       Map<Integer, byte[]> dataGroupHashes,
       String ldsVersion, String unicodeVersion) throws NoSuchAlgorithmException, IOException {
     DataGroupHash[] dataGroupHashesArray = new DataGroupHash[dataGroupHashes.size()];
@@ -673,28 +819,42 @@ public class SODFile extends AbstractTaggedLDSFile {
       ContentInfo encapContentInfo = signedData.getEncapContentInfo();
       String contentType = encapContentInfo.getContentType().getId();
       ASN1OctetString eContent = (ASN1OctetString)encapContentInfo.getContent();
-      if (!(ICAO_LDS_SOD_OID.equals(contentType)
-          || SDU_LDS_SOD_OID.equals(contentType)
-          || ICAO_LDS_SOD_ALT_OID.equals(contentType))) {
-        LOGGER.warning("SignedData does not appear to contain an LDS SOd. (content type is " + contentType + ", was expecting " + ICAO_LDS_SOD_OID + ")");
-      }
-      ASN1InputStream inputStream = new ASN1InputStream(new ByteArrayInputStream(eContent.getOctets()));
-      try {
-        Object firstObject = inputStream.readObject();
-        if (!(firstObject instanceof ASN1Sequence)) {
-          throw new IllegalStateException("Expected ASN1Sequence, found " + firstObject.getClass().getSimpleName());
-        }
-        LDSSecurityObject sod = LDSSecurityObject.getInstance(firstObject);
-        Object nextObject = inputStream.readObject();
-        if (nextObject != null) {
-          LOGGER.warning("Ignoring extra object found after LDSSecurityObject...");
-        }
-        return sod;
-      } finally {
-        inputStream.close();
-      }
+      return readLDSSecurityObject(contentType, eContent.getOctets());
     } catch (IOException ioe) {
       throw new IllegalStateException("Could not read security object in signedData", ioe);
     }
   }
+
+  /**
+   * Decodes the security object from the encapsulated content.
+   *
+   * @param contentType the content type of the encapsulated content
+   * @param eContent the encapsulated content
+   *
+   * @return the security object
+   *
+   * @throws IOException on error decoding the encapsulated content
+   */
+  private static LDSSecurityObject readLDSSecurityObject(String contentType, byte[] eContent) throws IOException {
+    if (!(ICAO_LDS_SOD_OID.equals(contentType)
+        || SDU_LDS_SOD_OID.equals(contentType)
+        || ICAO_LDS_SOD_ALT_OID.equals(contentType))) {
+      LOGGER.warning("SignedData does not appear to contain an LDS SOd. (content type is " + contentType + ", was expecting " + ICAO_LDS_SOD_OID + ")");
+    }
+    ASN1InputStream inputStream = new ASN1InputStream(new ByteArrayInputStream(eContent));
+    try {
+      Object firstObject = inputStream.readObject();
+      if (!(firstObject instanceof ASN1Sequence)) {
+        throw new IOException("Expected ASN1Sequence, found " + (firstObject == null ? "nothing" : firstObject.getClass().getSimpleName()));
+      }
+      LDSSecurityObject sod = LDSSecurityObject.getInstance(firstObject);
+      Object nextObject = inputStream.readObject();
+      if (nextObject != null) {
+        LOGGER.warning("Ignoring extra object found after LDSSecurityObject...");
+      }
+      return sod;
+    } finally {
+      inputStream.close();
+    }
+  }
 }
@@ -0,0 +1,82 @@
+/*
+ * JMRTD - A Java API for accessing machine readable travel documents.
+ *
+ * Copyright (C) 2006 - 2026  The JMRTD team
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA
+ *
+ * $Id: $
+ */
+
+package org.jmrtd.lds;
+
+import java.security.GeneralSecurityException;
+import java.security.cert.X509Certificate;
+import java.security.spec.AlgorithmParameterSpec;
+import java.util.List;
+
+/**
+ * Computes document signer signatures over the signed attributes of security objects,
+ * for instance using a local private key or a hardware security module.
+ *
+ * Implementations must be safe for use by multiple threads.
+ *
+ * @author The JMRTD team (info@jmrtd.org)
+ *
+ * @version $Revision: $
+ *
+ * @since 0.8.4
+ */
+public interface SODSigner {
+
+  /**
+   * Returns a name identifying this signer, used for reporting statistics.
+   *
+   * @return the name
+   */
+  String getName();
+
+  /**
+   * Returns the signature algorithm.
+   *
+   * @return a digest encryption algorithm, such as {@code "SHA256withRSA"}
+   */
+  String getDigestEncryptionAlgorithm();
+
+  /**
+   * Returns the parameters of the signature algorithm.
+   *
+   * @return the parameters, or {@code null}
+   */
+  AlgorithmParameterSpec getDigestEncryptionParameters();
+
+  /**
+   * Returns the document signer certificate to embed in the security objects.
+   *
+   * @return the document signer certificate
+   */
+  X509Certificate getDocSigningCertificate();
+
+  /**
+   * Signs a batch of DER encoded signed attributes.
+   *
+   * @param dataToBeSigned the data to be signed
+   *
+   * @return the signatures, in the same order
+   *
+   * @throws GeneralSecurityException on error
+   */
+  List<byte[]> sign(List<byte[]> dataToBeSigned) throws GeneralSecurityException;
+}
@@ -0,0 +1,426 @@
+/*
+ * JMRTD - A Java API for accessing machine readable travel documents.
+ *
+ * Copyright (C) 2006 - 2026  The JMRTD team
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA
+ *
+ * $Id: $
+ */
+
+package org.jmrtd.lds;
+
+import java.io.IOException;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SignatureException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+
+import org.bouncycastle.asn1.ASN1Encoding;
+import org.bouncycastle.asn1.cms.ContentInfo;
+import org.jmrtd.Util;
+
+/**
+ * Creates signed security objects for a batch of documents during personalization.
+ *
+ * The data groups of all documents are hashed in parallel on an executor.
+ * The signed attributes of consecutive documents are grouped into batches
+ * which are signed by a pluggable {@link SODSigner}, so that a signer can reuse
+ * its {@code Signature} instance or HSM session for a whole batch.
+ * Batches are signed on the executor as soon as their data groups are hashed,
+ * while the remaining data groups are still being hashed.
+ *
+ * Signing statistics are kept per signer name.
+ * Instances are thread-safe, batches may be signed concurrently with different signers.
+ *
+ * @author The JMRTD team (info@jmrtd.org)
+ *
+ * @version $Revision: $
+ *
+ * @since 0.8.4
+ */
+public class SODSigningPipeline {
+
+  /** The default number of security objects per signing batch. */
+  public static final int DEFAULT_BATCH_SIZE = 32;
+
+  private final Executor executor;
+
+  private final String digestAlgorithm;
+
+  private final int batchSize;
+
+  private final String ldsVersion;
+
+  private final String unicodeVersion;
+
+  private final ConcurrentHashMap<String, SignerStatistics> statistics;
+
+  /**
+   * Creates a signing pipeline with the default batch size.
+   *
+   * @param executor the executor on which data groups are hashed and batches are signed
+   * @param digestAlgorithm the digest algorithm, such as {@code "SHA-256"}
+   */
+  public SODSigningPipeline(Executor executor, String digestAlgorithm) {
+    this(executor, digestAlgorithm, DEFAULT_BATCH_SIZE);
+  }
+
+  /**
+   * Creates a signing pipeline.
+   *
+   * @param executor the executor on which data groups are hashed and batches are signed
+   * @param digestAlgorithm the digest algorithm, such as {@code "SHA-256"}
+   * @param batchSize the maximum number of security objects per signing batch
+   */
+  public SODSigningPipeline(Executor executor, String digestAlgorithm, int batchSize) {
+    this(executor, digestAlgorithm, batchSize, null, null);
+  }
+
+  /**
+   * Creates a signing pipeline for LDS version 1.8 or later security objects.
+   *
+   * @param executor the executor on which data groups are hashed and batches are signed
+   * @param digestAlgorithm the digest algorithm, such as {@code "SHA-256"}
+   * @param batchSize the maximum number of security objects per signing batch
+   * @param ldsVersion the LDS version, or {@code null}
+   * @param unicodeVersion the Unicode version, or {@code null}
+   */
+  public SODSigningPipeline(Executor executor, String digestAlgorithm, int batchSize, String ldsVersion, String unicodeVersion) {
+    if (executor == null) {
+      throw new IllegalArgumentException("Executor cannot be null");
+    }
+    if (digestAlgorithm == null) {
+      throw new IllegalArgumentException("Digest algorithm cannot be null");
+    }
+    if (batchSize <= 0) {
+      throw new IllegalArgumentException("Batch size should be positive, found " + batchSize);
+    }
+
+    this.executor = executor;
+    this.digestAlgorithm = digestAlgorithm;
+    this.batchSize = batchSize;
+    this.ldsVersion = ldsVersion;
+    this.unicodeVersion = unicodeVersion;
+    this.statistics = new ConcurrentHashMap<String, SignerStatistics>();
+  }
+
+  /**
+   * Creates signed security objects.
+   *
+   * @param documents the encoded data groups of each document, indexed by data group number
+   * @param signer the signer
+   *
+   * @return the security objects, in the same order as the documents
+   *
+   * @throws GeneralSecurityException on error hashing or signing
+   * @throws InterruptedException if interrupted while waiting for the executor
+   */
+  public List<SODFile> sign(List<? extends Map<Integer, byte[]>> documents, SODSigner signer) throws GeneralSecurityException, InterruptedException {
+    List<Future<?>> futures = new ArrayList<Future<?>>();
+    try {
+      /* Hash all data groups in parallel. */
+      List<Map<Integer, Future<byte[]>>> hashFutures = new ArrayList<Map<Integer, Future<byte[]>>>(documents.size());
+      for (Map<Integer, byte[]> dataGroups: documents) {
+        Map<Integer, Future<byte[]>> documentHashFutures = new TreeMap<Integer, Future<byte[]>>();
+        for (Map.Entry<Integer, byte[]> entry: dataGroups.entrySet()) {
+          FutureTask<byte[]> hashTask = new FutureTask<byte[]>(new HashTask(digestAlgorithm, entry.getValue()));
+          futures.add(hashTask);
+          documentHashFutures.put(entry.getKey(), hashTask);
+          executor.execute(hashTask);
+        }
+        hashFutures.add(documentHashFutures);
+      }
+
+      /* Prepare signed attributes in document order, and sign each batch as soon as it is complete. */
+      SignerStatistics signerStatistics = getOrCreateStatistics(signer.getName());
+      List<Future<List<SODFile>>> batchFutures = new ArrayList<Future<List<SODFile>>>();
+      List<ContentInfo> contentInfos = new ArrayList<ContentInfo>(batchSize);
+      List<byte[]> dataToBeSigned = new ArrayList<byte[]>(batchSize);
+      for (Map<Integer, Future<byte[]>> documentHashFutures: hashFutures) {
+        Map<Integer, byte[]> dataGroupHashes = new TreeMap<Integer, byte[]>();
+        for (Map.Entry<Integer, Future<byte[]>> entry: documentHashFutures.entrySet()) {
+          dataGroupHashes.put(entry.getKey(), getResult(entry.getValue()));
+        }
+        ContentInfo contentInfo = toContentInfo(dataGroupHashes);
+        contentInfos.add(contentInfo);
+        dataToBeSigned.add(toDataToBeSigned(contentInfo));
+        if (contentInfos.size() >= batchSize) {
+          batchFutures.add(submitBatch(signer, signerStatistics, contentInfos, dataToBeSigned, futures));
+          contentInfos = new ArrayList<ContentInfo>(batchSize);
+          dataToBeSigned = new ArrayList<byte[]>(batchSize);
+        }
+      }
+      if (!contentInfos.isEmpty()) {
+        batchFutures.add(submitBatch(signer, signerStatistics, contentInfos, dataToBeSigned, futures));
+      }
+
+      List<SODFile> result = new ArrayList<SODFile>(documents.size());
+      for (Future<List<SODFile>> batchFuture: batchFutures) {
+        result.addAll(getResult(batchFuture));
+      }
+      return result;
+    } finally {
+      /* Cancels outstanding tasks after a failure, no-op for completed tasks. */
+      for (Future<?> future: futures) {
+        future.cancel(true);
+      }
+    }
+  }
+
+  /**
+   * Returns the statistics of a signer.
+   *
+   * @param signerName the name of the signer
+   *
+   * @return the statistics, or {@code null} if the signer has not been used by this pipeline
+   */
+  public SignerStatistics getStatistics(String signerName) {
+    return statistics.get(signerName);
+  }
+
+  /**
+   * Returns the statistics of all signers used by this pipeline.
+   *
+   * @return the statistics, indexed by signer name
+   */
+  public Map<String, SignerStatistics> getStatistics() {
+    return Collections.unmodifiableMap(new HashMap<String, SignerStatistics>(statistics));
+  }
+
+  @Override
+  public String toString() {
+    return "SODSigningPipeline [digestAlgorithm: " + digestAlgorithm + ", batchSize: " + batchSize + ", statistics: " + statistics.values() + "]";
+  }
+
+  /* ONLY PRIVATE METHODS BELOW */
+
+  private Future<List<SODFile>> submitBatch(SODSigner signer, SignerStatistics signerStatistics,
+      List<ContentInfo> contentInfos, List<byte[]> dataToBeSigned, List<Future<?>> futures) {
+    FutureTask<List<SODFile>> signingTask = new FutureTask<List<SODFile>>(new SigningTask(signer, signerStatistics, digestAlgorithm, contentInfos, dataToBeSigned));
+    futures.add(signingTask);
+    executor.execute(signingTask);
+    return signingTask;
+  }
+
+  private SignerStatistics getOrCreateStatistics(String signerName) {
+    String key = signerName == null ? "" : signerName;
+    SignerStatistics signerStatistics = statistics.get(key);
+    if (signerStatistics == null) {
+      SignerStatistics newSignerStatistics = new SignerStatistics(key);
+      signerStatistics = statistics.putIfAbsent(key, newSignerStatistics);
+      if (signerStatistics == null) {
+        signerStatistics = newSignerStatistics;
+      }
+    }
+    return signerStatistics;
+  }
+
+  private ContentInfo toContentInfo(Map<Integer, byte[]> dataGroupHashes) throws GeneralSecurityException {
+    try {
+      return SODFile.toContentInfo(SODFile.ICAO_LDS_SOD_OID, digestAlgorithm, dataGroupHashes, ldsVersion, unicodeVersion);
+    } catch (IOException ioe) {
+      throw new IllegalArgumentException("Error creating signedData", ioe);
+    }
+  }
+
+  private byte[] toDataToBeSigned(ContentInfo contentInfo) throws GeneralSecurityException {
+    try {
+      return SignedDataUtil.createAuthenticatedAttributes(digestAlgorithm, SODFile.ICAO_LDS_SOD_OID, contentInfo).getEncoded(ASN1Encoding.DER);
+    } catch (IOException ioe) {
+      throw new IllegalArgumentException("Error creating signedData", ioe);
+    }
+  }
+
+  private static <T> T getResult(Future<T> future) throws GeneralSecurityException, InterruptedException {
+    try {
+      return future.get();
+    } catch (ExecutionException ee) {
+      Throwable cause = ee.getCause();
+      if (cause instanceof GeneralSecurityException) {
+        throw (GeneralSecurityException)cause;
+      }
+      if (cause instanceof RuntimeException) {
+        throw (RuntimeException)cause;
+      }
+      throw new IllegalStateException("Unexpected exception in signing pipeline", cause);
+    }
+  }
+
+  /**
+   * Hashes a single data group.
+   */
+  private static class HashTask implements Callable<byte[]> {
+
+    private final String digestAlgorithm;
+    private final byte[] dataGroup;
+
+    public HashTask(String digestAlgorithm, byte[] dataGroup) {
+      this.digestAlgorithm = digestAlgorithm;
+      this.dataGroup = dataGroup;
+    }
+
+    @Override
+    public byte[] call() throws GeneralSecurityException {
+      MessageDigest digest = Util.getMessageDigest(digestAlgorithm);
+      return digest.digest(dataGroup);
+    }
+  }
+
+  /**
+   * Signs a batch of signed attributes, and creates the security objects.
+   */
+  private static class SigningTask implements Callable<List<SODFile>> {
+
+    private final SODSigner signer;
+    private final SignerStatistics signerStatistics;
+    private final String digestAlgorithm;
+    private final List<ContentInfo> contentInfos;
+    private final List<byte[]> dataToBeSigned;
+
+    public SigningTask(SODSigner signer, SignerStatistics signerStatistics, String digestAlgorithm,
+        List<ContentInfo> contentInfos, List<byte[]> dataToBeSigned) {
+      this.signer = signer;
+      this.signerStatistics = signerStatistics;
+      this.digestAlgorithm = digestAlgorithm;
+      this.contentInfos = contentInfos;
+      this.dataToBeSigned = dataToBeSigned;
+    }
+
+    @Override
+    public List<SODFile> call() throws GeneralSecurityException {
+      long startTime = System.nanoTime();
+      List<byte[]> encryptedDigests = null;
+      try {
+        encryptedDigests = signer.sign(dataToBeSigned);
+      } catch (GeneralSecurityException gse) {
+        signerStatistics.recordFailure();
+        throw gse;
+      }
+      signerStatistics.recordBatch(dataToBeSigned.size(), System.nanoTime() - startTime);
+
+      if (encryptedDigests == null || encryptedDigests.size() != contentInfos.size()) {
+        throw new SignatureException("Signer " + signer.getName() + " returned " + (encryptedDigests == null ? 0 : encryptedDigests.size())
+            + " signatures for " + contentInfos.size() + " security objects");
+      }
+
+      List<SODFile> result = new ArrayList<SODFile>(contentInfos.size());
+      for (int i = 0; i < contentInfos.size(); i++) {
+        result.add(new SODFile(digestAlgorithm, signer.getDigestEncryptionAlgorithm(), signer.getDigestEncryptionParameters(),
+            contentInfos.get(i), encryptedDigests.get(i), signer.getDocSigningCertificate()));
+      }
+      return result;
+    }
+  }
+
+  /**
+   * Signing statistics of a signer.
+   * The signing time is the sum of the durations of all batches, concurrently
+   * signed batches both count, so that the throughput is per signing thread.
+   */
+  public static class SignerStatistics {
+
+    private final String signerName;
+    private long signatureCount;
+    private long batchCount;
+    private long failedBatchCount;
+    private long signingTimeNanos;
+
+    private SignerStatistics(String signerName) {
+      this.signerName = signerName;
+    }
+
+    /**
+     * Returns the name of the signer.
+     *
+     * @return the name of the signer
+     */
+    public String getSignerName() {
+      return signerName;
+    }
+
+    /**
+     * Returns the number of signatures created.
+     *
+     * @return the number of signatures
+     */
+    public synchronized long getSignatureCount() {
+      return signatureCount;
+    }
+
+    /**
+     * Returns the number of batches signed successfully.
+     *
+     * @return the number of batches
+     */
+    public synchronized long getBatchCount() {
+      return batchCount;
+    }
+
+    /**
+     * Returns the number of batches for which signing failed.
+     *
+     * @return the number of failed batches
+     */
+    public synchronized long getFailedBatchCount() {
+      return failedBatchCount;
+    }
+
+    /**
+     * Returns the total time spent signing successful batches.
+     *
+     * @return the signing time in nanoseconds
+     */
+    public synchronized long getSigningTimeNanos() {
+      return signingTimeNanos;
+    }
+
+    /**
+     * Returns the number of signatures per second of signing time.
+     *
+     * @return the throughput, or {@code 0} if nothing was signed yet
+     */
+    public synchronized double getSignaturesPerSecond() {
+      return signingTimeNanos == 0 ? 0.0 : signatureCount * 1000000000.0 / signingTimeNanos;
+    }
+
+    private synchronized void recordBatch(int size, long durationNanos) {
+      signatureCount += size;
+      batchCount++;
+      signingTimeNanos += durationNanos;
+    }
+
+    private synchronized void recordFailure() {
+      failedBatchCount++;
+    }
+
+    @Override
+    public synchronized String toString() {
+      return "SignerStatistics [signerName: " + signerName + ", signatures: " + signatureCount + ", batches: " + batchCount
+          + ", failedBatches: " + failedBatchCount + ", signaturesPerSecond: " + getSignaturesPerSecond() + "]";
+    }
+  }
+}
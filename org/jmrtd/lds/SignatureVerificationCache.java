@@ -0,0 +1,244 @@
+/*
+ * JMRTD - A Java API for accessing machine readable travel documents.
+ *
+ * Copyright (C) 2006 - 2026  The JMRTD team
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA
+ *
+ * $Id: $
+ */
+
+package org.jmrtd.lds;
+
+import java.nio.charset.Charset;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.Signature;
+import java.security.cert.X509Certificate;
+import java.security.spec.AlgorithmParameterSpec;
+import java.security.spec.MGF1ParameterSpec;
+import java.security.spec.PSSParameterSpec;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.bouncycastle.util.encoders.Hex;
+import org.jmrtd.Util;
+
+/**
+ * A bounded cache of security object signature verification outcomes.
+ *
+ * The key is a SHA-256 digest over the document signer certificate, the signature
+ * algorithm and its parameters, the signed content (the signed attributes, which
+ * include the digest of the encapsulated content), and the signature.
+ * Repeated presentations of the same document skip the public key operation,
+ * while any change to one of these inputs results in a different key, and hence
+ * in a full verification.
+ *
+ * Outcomes do not depend on time, trusted certificates, or revocation data,
+ * so they do not expire. Validation of the document signer certificate is
+ * a separate check, see {@link org.jmrtd.cert.DSCertificateValidationCache}.
+ *
+ * Instances are thread-safe. When the maximum size is reached, the least recently
+ * used outcome is evicted.
+ *
+ * @author The JMRTD team (info@jmrtd.org)
+ *
+ * @version $Revision: $
+ *
+ * @since 0.8.4
+ */
+public class SignatureVerificationCache {
+
+  /** The default maximum number of cached outcomes. */
+  public static final int DEFAULT_MAXIMUM_SIZE = 16384;
+
+  private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+  private final int maximumSize;
+
+  private final Map<String, Boolean> outcomes;
+
+  private long hitCount;
+
+  private long missCount;
+
+  /**
+   * Creates a cache with default maximum size.
+   */
+  public SignatureVerificationCache() {
+    this(DEFAULT_MAXIMUM_SIZE);
+  }
+
+  /**
+   * Creates a cache.
+   *
+   * @param maximumSize the maximum number of cached outcomes
+   */
+  public SignatureVerificationCache(final int maximumSize) {
+    if (maximumSize <= 0) {
+      throw new IllegalArgumentException("Maximum size should be positive, found " + maximumSize);
+    }
+
+    this.maximumSize = maximumSize;
+    this.outcomes = new LinkedHashMap<String, Boolean>(16, 0.75f, true) {
+      private static final long serialVersionUID = -2817462284610377423L;
+
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<String, Boolean> eldest) {
+        return size() > maximumSize;
+      }
+    };
+  }
+
+  /**
+   * Verifies a signature, or returns the cached outcome of an earlier verification with the same inputs.
+   * Only outcomes of completed verifications are cached, exceptions are not.
+   *
+   * @param docSigningCertificate the document signer certificate
+   * @param signatureAlgorithm the JCA signature algorithm
+   * @param params the signature algorithm parameters, or {@code null}
+   * @param signedContent the signed content
+   * @param signature the signature
+   *
+   * @return whether the signature is valid
+   *
+   * @throws GeneralSecurityException if the signature could not be verified
+   */
+  public boolean verify(X509Certificate docSigningCertificate, String signatureAlgorithm, AlgorithmParameterSpec params,
+      byte[] signedContent, byte[] signature) throws GeneralSecurityException {
+    String key = getKey(docSigningCertificate, signatureAlgorithm, params, signedContent, signature);
+    synchronized (outcomes) {
+      Boolean outcome = outcomes.get(key);
+      if (outcome != null) {
+        hitCount++;
+        return outcome.booleanValue();
+      }
+      missCount++;
+    }
+
+    Signature verifier = Util.getSignature(signatureAlgorithm);
+    if (params != null) {
+      verifier.setParameter(params);
+    }
+    verifier.initVerify(docSigningCertificate);
+    verifier.update(signedContent);
+    boolean isValid = verifier.verify(signature);
+
+    synchronized (outcomes) {
+      outcomes.put(key, Boolean.valueOf(isValid));
+    }
+    return isValid;
+  }
+
+  /**
+   * Removes all cached outcomes.
+   */
+  public void invalidateAll() {
+    synchronized (outcomes) {
+      outcomes.clear();
+    }
+  }
+
+  /**
+   * Returns the number of cached outcomes.
+   *
+   * @return the number of cached outcomes
+   */
+  public int size() {
+    synchronized (outcomes) {
+      return outcomes.size();
+    }
+  }
+
+  /**
+   * Returns the maximum number of cached outcomes.
+   *
+   * @return the maximum size
+   */
+  public int getMaximumSize() {
+    return maximumSize;
+  }
+
+  /**
+   * Returns the number of verifications that were answered from the cache.
+   *
+   * @return the number of hits
+   */
+  public long getHitCount() {
+    synchronized (outcomes) {
+      return hitCount;
+    }
+  }
+
+  /**
+   * Returns the number of verifications that were not answered from the cache.
+   *
+   * @return the number of misses
+   */
+  public long getMissCount() {
+    synchronized (outcomes) {
+      return missCount;
+    }
+  }
+
+  @Override
+  public String toString() {
+    synchronized (outcomes) {
+      return "SignatureVerificationCache [size: " + outcomes.size() + ", maximumSize: " + maximumSize
+          + ", hits: " + hitCount + ", misses: " + missCount + "]";
+    }
+  }
+
+  private static String getKey(X509Certificate docSigningCertificate, String signatureAlgorithm, AlgorithmParameterSpec params,
+      byte[] signedContent, byte[] signature) throws GeneralSecurityException {
+    MessageDigest digest = Util.getMessageDigest("SHA-256");
+    update(digest, docSigningCertificate.getEncoded());
+    update(digest, signatureAlgorithm.getBytes(UTF_8));
+    update(digest, getParamsDescription(params).getBytes(UTF_8));
+    update(digest, signedContent);
+    update(digest, signature);
+    return Hex.toHexString(digest.digest());
+  }
+
+  /**
+   * Updates a digest with a length prefixed component, so that
+   * different splits of the same bytes result in different keys.
+   *
+   * @param digest the digest
+   * @param component the component
+   */
+  private static void update(MessageDigest digest, byte[] component) {
+    int length = component.length;
+    digest.update((byte)(length >>> 24));
+    digest.update((byte)(length >>> 16));
+    digest.update((byte)(length >>> 8));
+    digest.update((byte)length);
+    digest.update(component);
+  }
+
+  private static String getParamsDescription(AlgorithmParameterSpec params) {
+    if (params == null) {
+      return "";
+    }
+    if (params instanceof PSSParameterSpec) {
+      PSSParameterSpec pssParams = (PSSParameterSpec)params;
+      AlgorithmParameterSpec mgfParams = pssParams.getMGFParameters();
+      String mgfDigestAlgorithm = mgfParams instanceof MGF1ParameterSpec ? ((MGF1ParameterSpec)mgfParams).getDigestAlgorithm() : String.valueOf(mgfParams);
+      return "PSS " + pssParams.getDigestAlgorithm() + " " + pssParams.getMGFAlgorithm() + " " + mgfDigestAlgorithm
+          + " " + pssParams.getSaltLength() + " " + pssParams.getTrailerField();
+    }
+    return params.getClass().getName() + " " + params;
+  }
+}
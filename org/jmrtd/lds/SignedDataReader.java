@@ -0,0 +1,762 @@
+/*
+ * JMRTD - A Java API for accessing machine readable travel documents.
+ *
+ * Copyright (C) 2006 - 2026  The JMRTD team
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA
+ *
+ * $Id: $
+ */
+
+package org.jmrtd.lds;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.Signature;
+import java.security.SignatureException;
+import java.security.cert.CertificateException;
+import java.security.cert.CertificateFactory;
+import java.security.cert.X509Certificate;
+import java.security.spec.AlgorithmParameterSpec;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.bouncycastle.asn1.ASN1ObjectIdentifier;
+import org.bouncycastle.asn1.ASN1Primitive;
+import org.bouncycastle.asn1.cms.IssuerAndSerialNumber;
+import org.bouncycastle.asn1.x509.AlgorithmIdentifier;
+import org.jmrtd.Util;
+
+/**
+ * A lightweight reader for the CMS SignedData structure in EF.SOD and EF.CardSecurity.
+ *
+ * Unlike {@link SignedDataUtil#readSignedData(java.io.InputStream)}, this does not
+ * build an ASN.1 object graph. The constructor walks the DER encoding once and
+ * only records the offsets of the parts needed for verification: the encapsulated
+ * content, the embedded certificates, and the parts of the signer info.
+ * Encodings with more than one signer info, more than one message digest attribute,
+ * or unexpected elements after the content info, encapsulated content info, or signer info
+ * fields are rejected, so that verification cannot be made to depend on which one a parser picks.
+ * These are decoded on request. The encapsulated content and the signed attributes
+ * can be fed to a digest or signature directly from the original bytes.
+ *
+ * Only definite length encodings are supported, as mandated for EF.SOD by Doc 9303.
+ * The given byte array is not copied and should not be modified afterwards.
+ *
+ * @author The JMRTD team (info@jmrtd.org)
+ *
+ * @version $Revision: $
+ *
+ * @since 0.8.4
+ */
+public class SignedDataReader {
+
+  private static final Logger LOGGER = Logger.getLogger("org.jmrtd");
+
+  private static final int SEQUENCE_TAG = 0x30;
+  private static final int SET_TAG = 0x31;
+  private static final int INTEGER_TAG = 0x02;
+  private static final int OCTET_STRING_TAG = 0x04;
+  private static final int OBJECT_IDENTIFIER_TAG = 0x06;
+  private static final int CONTEXT_SPECIFIC_0_CONSTRUCTED_TAG = 0xA0;
+  private static final int CONTEXT_SPECIFIC_1_CONSTRUCTED_TAG = 0xA1;
+  private static final int CONTEXT_SPECIFIC_0_PRIMITIVE_TAG = 0x80;
+
+  /** The DER encoding of the signed-data content type object identifier. */
+  private static final byte[] SIGNED_DATA_OID_ENCODED = {
+      0x06, 0x09, 0x2A, (byte)0x86, 0x48, (byte)0x86, (byte)0xF7, 0x0D, 0x01, 0x07, 0x02
+  };
+
+  /** The DER encoding of the message digest attribute type object identifier. */
+  private static final byte[] MESSAGE_DIGEST_OID_ENCODED = {
+      0x06, 0x09, 0x2A, (byte)0x86, 0x48, (byte)0x86, (byte)0xF7, 0x0D, 0x01, 0x09, 0x04
+  };
+
+  private final byte[] encoded;
+
+  /* Offsets and lengths of complete TLV structures, unless stated otherwise. */
+  private int eContentTypeOffset;
+  private int eContentTypeLength;
+
+  /* Value only, -1 if absent. */
+  private int eContentOffset = -1;
+  private int eContentLength;
+
+  private int[] certificateOffsets = new int[0];
+  private int[] certificateLengths = new int[0];
+
+  private int signerInfoCount;
+
+  private int signerIdentifierTag;
+  private int signerIdentifierOffset;
+  private int signerIdentifierLength;
+
+  private int digestAlgorithmOffset;
+  private int digestAlgorithmLength;
+
+  /* Including the implicit [0] tag, -1 if absent. */
+  private int signedAttributesOffset = -1;
+  private int signedAttributesLength;
+
+  private int signatureAlgorithmOffset;
+  private int signatureAlgorithmLength;
+
+  /* Value only. */
+  private int signatureOffset;
+  private int signatureLength;
+
+  /**
+   * Creates a reader for an encoded EF.SOD or EF.CardSecurity.
+   *
+   * @param encoded the encoded file, either a content info structure or a content info structure wrapped in the EF.SOD tag
+   *
+   * @throws IOException if the encoding is not a well-formed signed data structure
+   */
+  public SignedDataReader(byte[] encoded) throws IOException {
+    this(encoded, 0, encoded.length);
+  }
+
+  /**
+   * Creates a reader for an encoded EF.SOD or EF.CardSecurity contained in a larger array.
+   *
+   * @param encoded the array containing the encoded file
+   * @param offset the offset of the file within the array
+   * @param length the length of the file
+   *
+   * @throws IOException if the encoding is not a well-formed signed data structure
+   */
+  public SignedDataReader(byte[] encoded, int offset, int length) throws IOException {
+    if (offset < 0 || length < 0 || offset + length > encoded.length) {
+      throw new IllegalArgumentException("Offset and length out of range");
+    }
+    this.encoded = encoded;
+    parse(offset, offset + length);
+  }
+
+  /**
+   * Returns the content type of the encapsulated content.
+   *
+   * @return an object identifier, such as {@code "2.23.136.1.1.1"} for the LDS security object
+   *
+   * @throws IOException on error decoding the object identifier
+   */
+  public String getEContentType() throws IOException {
+    return ASN1ObjectIdentifier.getInstance(decode(eContentTypeOffset, eContentTypeLength)).getId();
+  }
+
+  /**
+   * Whether the encapsulated content is present.
+   *
+   * @return a boolean
+   */
+  public boolean hasEContent() {
+    return eContentOffset >= 0;
+  }
+
+  /**
+   * Returns (a copy of) the encapsulated content, for instance the encoded LDS security object.
+   *
+   * @return the encapsulated content, or {@code null} if absent
+   */
+  public byte[] getEContent() {
+    return eContentOffset < 0 ? null : copy(eContentOffset, eContentLength);
+  }
+
+  /**
+   * Returns the offset of the encapsulated content in the array given to the constructor.
+   *
+   * @return the offset, or {@code -1} if absent
+   */
+  public int getEContentOffset() {
+    return eContentOffset;
+  }
+
+  /**
+   * Returns the length of the encapsulated content.
+   *
+   * @return the length
+   */
+  public int getEContentLength() {
+    return eContentLength;
+  }
+
+  /**
+   * Returns the number of embedded certificates.
+   *
+   * @return the number of certificates
+   */
+  public int getCertificateCount() {
+    return certificateOffsets.length;
+  }
+
+  /**
+   * Decodes one of the embedded certificates.
+   *
+   * @param index the index of the certificate
+   *
+   * @return the certificate
+   *
+   * @throws CertificateException on error decoding the certificate
+   */
+  public X509Certificate getCertificate(int index) throws CertificateException {
+    /*
+     * NOTE: We explicitly prefer Bouncy Castle here, see SignedDataUtil.decodeCertificate.
+     */
+    CertificateFactory factory = CertificateFactory.getInstance("X.509", Util.getBouncyCastleProvider());
+    return (X509Certificate)factory.generateCertificate(new ByteArrayInputStream(encoded, certificateOffsets[index], certificateLengths[index]));
+  }
+
+  /**
+   * Decodes the embedded certificates. Certificates that cannot be decoded are skipped.
+   *
+   * @return the certificates
+   */
+  public List<X509Certificate> getCertificates() {
+    List<X509Certificate> result = new ArrayList<X509Certificate>(certificateOffsets.length);
+    for (int i = 0; i < certificateOffsets.length; i++) {
+      try {
+        result.add(getCertificate(i));
+      } catch (Exception e) {
+        LOGGER.log(Level.WARNING, "Exception in decoding certificate", e);
+      }
+    }
+    return result;
+  }
+
+  /**
+   * Returns the number of signer infos. This is always one, as signed data
+   * structures with more than one signer info are rejected.
+   *
+   * @return the number of signer infos
+   */
+  public int getSignerInfoCount() {
+    return signerInfoCount;
+  }
+
+  /**
+   * Returns the issuer and serial number identifying the signer.
+   *
+   * @return the issuer and serial number, or {@code null} if the signer is identified by subject key identifier
+   *
+   * @throws IOException on error decoding
+   */
+  public IssuerAndSerialNumber getIssuerAndSerialNumber() throws IOException {
+    if (signerIdentifierTag != SEQUENCE_TAG) {
+      return null;
+    }
+    return IssuerAndSerialNumber.getInstance(decode(signerIdentifierOffset, signerIdentifierLength));
+  }
+
+  /**
+   * Returns the subject key identifier identifying the signer.
+   *
+   * @return the subject key identifier, or {@code null} if the signer is identified by issuer and serial number
+   *
+   * @throws IOException on error decoding
+   */
+  public byte[] getSubjectKeyIdentifier() throws IOException {
+    if (signerIdentifierTag != CONTEXT_SPECIFIC_0_PRIMITIVE_TAG) {
+      return null;
+    }
+    Header header = new Header();
+    readHeader(signerIdentifierOffset, signerIdentifierOffset + signerIdentifierLength, header);
+    return copy(header.valueOffset, header.valueLength);
+  }
+
+  /**
+   * Returns the digest algorithm of the signer.
+   *
+   * @return a JCE mnemonic algorithm string, or {@code null} if not recognized
+   *
+   * @throws IOException on error decoding
+   */
+  public String getDigestAlgorithm() throws IOException {
+    return lookupMnemonic(getAlgorithmIdentifier(digestAlgorithmOffset, digestAlgorithmLength));
+  }
+
+  /**
+   * Returns the signature algorithm of the signer.
+   *
+   * @return a JCE mnemonic algorithm string, or {@code null} if not recognized
+   *
+   * @throws IOException on error decoding
+   */
+  public String getDigestEncryptionAlgorithm() throws IOException {
+    return lookupMnemonic(getAlgorithmIdentifier(signatureAlgorithmOffset, signatureAlgorithmLength));
+  }
+
+  /**
+   * Returns the parameters of the signature algorithm of the signer.
+   *
+   * @return the parameters, or {@code null} if the algorithm is not RSASSA/PSS
+   *
+   * @throws IOException on error decoding
+   */
+  public AlgorithmParameterSpec getDigestEncryptionAlgorithmParams() throws IOException {
+    return SignedDataUtil.getDigestEncryptionAlgorithmParams(getAlgorithmIdentifier(signatureAlgorithmOffset, signatureAlgorithmLength));
+  }
+
+  /**
+   * Whether the signer info contains signed attributes.
+   * ICAO compliant documents always include signed attributes.
+   *
+   * @return a boolean
+   */
+  public boolean hasSignedAttributes() {
+    return signedAttributesOffset >= 0;
+  }
+
+  /**
+   * Returns the DER encoded signed attributes, as input to the signature.
+   *
+   * @return the signed attributes, or {@code null} if absent
+   */
+  public byte[] getSignedAttributes() {
+    if (signedAttributesOffset < 0) {
+      return null;
+    }
+    byte[] result = copy(signedAttributesOffset, signedAttributesLength);
+    /* The implicit [0] tag is replaced by the SET tag, see RFC 5652 Section 5.4. */
+    result[0] = (byte)SET_TAG;
+    return result;
+  }
+
+  /**
+   * Returns the data over which the signature was computed,
+   * the signed attributes if present, or the encapsulated content otherwise.
+   *
+   * @return the signed content
+   */
+  public byte[] getSignedContent() {
+    return signedAttributesOffset >= 0 ? getSignedAttributes() : getEContent();
+  }
+
+  /**
+   * Feeds the data over which the signature was computed to a signature
+   * that was initialized for verification, without copying.
+   *
+   * @param signature the signature
+   *
+   * @throws SignatureException if the signature was not initialized
+   */
+  public void updateSignedContent(Signature signature) throws SignatureException {
+    if (signedAttributesOffset >= 0) {
+      signature.update((byte)SET_TAG);
+      signature.update(encoded, signedAttributesOffset + 1, signedAttributesLength - 1);
+    } else if (eContentOffset >= 0) {
+      signature.update(encoded, eContentOffset, eContentLength);
+    }
+  }
+
+  /**
+   * Returns the message digest attribute from the signed attributes.
+   *
+   * @return the message digest, or {@code null} if absent
+   *
+   * @throws IOException on error decoding the signed attributes
+   */
+  public byte[] getMessageDigest() throws IOException {
+    Header header = new Header();
+    if (!findMessageDigest(header)) {
+      return null;
+    }
+    return copy(header.valueOffset, header.valueLength);
+  }
+
+  /**
+   * Checks the message digest attribute in the signed attributes against
+   * the digest of the encapsulated content. This succeeds if signed attributes are absent.
+   *
+   * @throws SignatureException if the message digest is missing or does not match
+   * @throws GeneralSecurityException if the digest algorithm is not supported
+   */
+  public void checkMessageDigest() throws GeneralSecurityException {
+    if (signedAttributesOffset < 0) {
+      return;
+    }
+
+    Header header = new Header();
+    try {
+      if (!findMessageDigest(header)) {
+        throw new SignatureException("Missing message digest in signed attributes");
+      }
+    } catch (IOException ioe) {
+      throw new SignatureException("Malformed signed attributes", ioe);
+    }
+
+    String digestAlgorithm = null;
+    try {
+      digestAlgorithm = getDigestAlgorithm();
+    } catch (IOException ioe) {
+      throw new NoSuchAlgorithmException("Malformed digest algorithm");
+    }
+    if (digestAlgorithm == null) {
+      throw new NoSuchAlgorithmException("Unsupported digest algorithm");
+    }
+
+    MessageDigest digest = Util.getMessageDigest(digestAlgorithm);
+    if (eContentOffset >= 0) {
+      digest.update(encoded, eContentOffset, eContentLength);
+    }
+    byte[] computedDigest = digest.digest();
+    if (!regionEquals(header.valueOffset, header.valueLength, computedDigest)) {
+      throw new SignatureException("Error checking signedAttribute message digest in eContent!");
+    }
+  }
+
+  /**
+   * Returns (a copy of) the signature of the signer.
+   *
+   * @return the signature
+   */
+  public byte[] getSignature() {
+    return copy(signatureOffset, signatureLength);
+  }
+
+  @Override
+  public String toString() {
+    return "SignedDataReader [eContentLength: " + (eContentOffset < 0 ? "absent" : eContentLength)
+        + ", certificates: " + certificateOffsets.length
+        + ", signerInfos: " + signerInfoCount
+        + ", signedAttributes: " + (signedAttributesOffset >= 0) + "]";
+  }
+
+  /* ONLY PRIVATE METHODS BELOW */
+
+  private void parse(int offset, int end) throws IOException {
+    Header header = new Header();
+
+    /* EF.SOD wraps the content info in an application tag, EF.CardSecurity does not. */
+    readHeader(offset, end, header);
+    if (header.tag == LDSFile.EF_SOD_TAG) {
+      int fileEnd = header.end();
+      readHeader(header.valueOffset, fileEnd, header);
+      expectEnd(header, fileEnd, "content info");
+    }
+
+    /* ContentInfo ::= SEQUENCE { contentType, content [0] EXPLICIT } */
+    expectTag(header, SEQUENCE_TAG, "content info");
+    int contentInfoEnd = header.end();
+    readHeader(header.valueOffset, contentInfoEnd, header);
+    if (!regionEquals(header.offset, header.end() - header.offset, SIGNED_DATA_OID_ENCODED)) {
+      throw new IOException("Was expecting signed-data content type OID (" + SignedDataUtil.RFC_3369_SIGNED_DATA_OID + ")");
+    }
+    readHeader(header.end(), contentInfoEnd, header);
+    expectTag(header, CONTEXT_SPECIFIC_0_CONSTRUCTED_TAG, "content");
+    expectEnd(header, contentInfoEnd, "content info");
+    int contentEnd = header.end();
+    readHeader(header.valueOffset, contentEnd, header);
+    expectTag(header, SEQUENCE_TAG, "signed data");
+    expectEnd(header, contentEnd, "content");
+    parseSignedData(header.valueOffset, header.end(), header);
+
+    /* Rejects malformed signed attributes and duplicate message digests up front. */
+    findMessageDigest(header);
+  }
+
+  /*
+   * SignedData ::= SEQUENCE {
+   *   version, digestAlgorithms SET, encapContentInfo SEQUENCE,
+   *   certificates [0] IMPLICIT OPTIONAL, crls [1] IMPLICIT OPTIONAL, signerInfos SET }
+   */
+  private void parseSignedData(int offset, int end, Header header) throws IOException {
+    readHeader(offset, end, header);
+    expectTag(header, INTEGER_TAG, "signed data version");
+    readHeader(header.end(), end, header);
+    expectTag(header, SET_TAG, "digest algorithms");
+
+    readHeader(header.end(), end, header);
+    expectTag(header, SEQUENCE_TAG, "encapsulated content info");
+    int next = header.end();
+    parseEncapContentInfo(header.valueOffset, header.end(), header);
+
+    readHeader(next, end, header);
+    if (header.tag == CONTEXT_SPECIFIC_0_CONSTRUCTED_TAG) {
+      next = header.end();
+      parseCertificates(header.valueOffset, next, header);
+      readHeader(next, end, header);
+    }
+    if (header.tag == CONTEXT_SPECIFIC_1_CONSTRUCTED_TAG) {
+      readHeader(header.end(), end, header);
+    }
+
+    expectTag(header, SET_TAG, "signer infos");
+    int signerInfosEnd = header.end();
+    expectEnd(header, end, "signed data");
+    if (header.valueLength == 0) {
+      throw new IOException("No signer info in signed data");
+    }
+    readHeader(header.valueOffset, signerInfosEnd, header);
+    expectTag(header, SEQUENCE_TAG, "signer info");
+    if (header.end() != signerInfosEnd) {
+      throw new IOException("More than one signer info in signed data");
+    }
+    signerInfoCount = 1;
+    parseSignerInfo(header.valueOffset, header.end(), header);
+  }
+
+  /* EncapsulatedContentInfo ::= SEQUENCE { eContentType, eContent [0] EXPLICIT OCTET STRING OPTIONAL } */
+  private void parseEncapContentInfo(int offset, int end, Header header) throws IOException {
+    readHeader(offset, end, header);
+    expectTag(header, OBJECT_IDENTIFIER_TAG, "encapsulated content type");
+    eContentTypeOffset = header.offset;
+    eContentTypeLength = header.end() - header.offset;
+
+    if (header.end() >= end) {
+      return;
+    }
+    readHeader(header.end(), end, header);
+    expectTag(header, CONTEXT_SPECIFIC_0_CONSTRUCTED_TAG, "encapsulated content");
+    expectEnd(header, end, "encapsulated content info");
+    int eContentEnd = header.end();
+    readHeader(header.valueOffset, eContentEnd, header);
+    expectTag(header, OCTET_STRING_TAG, "encapsulated content");
+    expectEnd(header, eContentEnd, "encapsulated content");
+    eContentOffset = header.valueOffset;
+    eContentLength = header.valueLength;
+  }
+
+  private void parseCertificates(int offset, int end, Header header) throws IOException {
+    int count = 0;
+    for (int certificateOffset = offset; certificateOffset < end; certificateOffset = header.end()) {
+      readHeader(certificateOffset, end, header);
+      count++;
+    }
+
+    certificateOffsets = new int[count];
+    certificateLengths = new int[count];
+    int index = 0;
+    for (int certificateOffset = offset; certificateOffset < end; certificateOffset = header.end()) {
+      readHeader(certificateOffset, end, header);
+      certificateOffsets[index] = header.offset;
+      certificateLengths[index] = header.end() - header.offset;
+      index++;
+    }
+  }
+
+  /*
+   * SignerInfo ::= SEQUENCE {
+   *   version, sid, digestAlgorithm, signedAttrs [0] IMPLICIT OPTIONAL,
+   *   signatureAlgorithm, signature OCTET STRING, unsignedAttrs [1] IMPLICIT OPTIONAL }
+   */
+  private void parseSignerInfo(int offset, int end, Header header) throws IOException {
+    readHeader(offset, end, header);
+    expectTag(header, INTEGER_TAG, "signer info version");
+
+    readHeader(header.end(), end, header);
+    if (header.tag != SEQUENCE_TAG && header.tag != CONTEXT_SPECIFIC_0_PRIMITIVE_TAG) {
+      LOGGER.warning("Unexpected signer identifier tag " + Integer.toHexString(header.tag));
+    }
+    signerIdentifierTag = header.tag;
+    signerIdentifierOffset = header.offset;
+    signerIdentifierLength = header.end() - header.offset;
+
+    readHeader(header.end(), end, header);
+    expectTag(header, SEQUENCE_TAG, "digest algorithm");
+    digestAlgorithmOffset = header.offset;
+    digestAlgorithmLength = header.end() - header.offset;
+
+    readHeader(header.end(), end, header);
+    if (header.tag == CONTEXT_SPECIFIC_0_CONSTRUCTED_TAG) {
+      signedAttributesOffset = header.offset;
+      signedAttributesLength = header.end() - header.offset;
+      readHeader(header.end(), end, header);
+    }
+
+    expectTag(header, SEQUENCE_TAG, "signature algorithm");
+    signatureAlgorithmOffset = header.offset;
+    signatureAlgorithmLength = header.end() - header.offset;
+
+    readHeader(header.end(), end, header);
+    expectTag(header, OCTET_STRING_TAG, "signature");
+    signatureOffset = header.valueOffset;
+    signatureLength = header.valueLength;
+
+    if (header.end() < end) {
+      readHeader(header.end(), end, header);
+      expectTag(header, CONTEXT_SPECIFIC_1_CONSTRUCTED_TAG, "unsigned attributes");
+    }
+    expectEnd(header, end, "signer info");
+  }
+
+  /*
+   * SignedAttributes ::= SET OF Attribute
+   * Attribute ::= SEQUENCE { attrType OBJECT IDENTIFIER, attrValues SET OF AttributeValue }
+   */
+  private boolean findMessageDigest(Header header) throws IOException {
+    if (signedAttributesOffset < 0) {
+      return false;
+    }
+
+    int end = signedAttributesOffset + signedAttributesLength;
+    readHeader(signedAttributesOffset, end, header);
+    int messageDigestOffset = -1;
+    int attributeOffset = header.valueOffset;
+    while (attributeOffset < end) {
+      readHeader(attributeOffset, end, header);
+      expectTag(header, SEQUENCE_TAG, "attribute");
+      int attributeEnd = header.end();
+      attributeOffset = attributeEnd;
+
+      readHeader(header.valueOffset, attributeEnd, header);
+      if (!regionEquals(header.offset, header.end() - header.offset, MESSAGE_DIGEST_OID_ENCODED)) {
+        continue;
+      }
+      if (messageDigestOffset >= 0) {
+        throw new IOException("More than one message digest attribute in signed attributes");
+      }
+
+      readHeader(header.end(), attributeEnd, header);
+      expectTag(header, SET_TAG, "attribute values");
+      expectEnd(header, attributeEnd, "message digest attribute");
+      int attributeValuesEnd = header.end();
+      readHeader(header.valueOffset, attributeValuesEnd, header);
+      expectTag(header, OCTET_STRING_TAG, "message digest");
+      expectEnd(header, attributeValuesEnd, "message digest");
+      messageDigestOffset = header.offset;
+    }
+    if (messageDigestOffset < 0) {
+      return false;
+    }
+
+    readHeader(messageDigestOffset, end, header);
+    return true;
+  }
+
+  /**
+   * Reads a tag and definite length, checking that the value lies within the enclosing structure.
+   *
+   * @param offset the offset of the tag
+   * @param end the end of the enclosing structure
+   * @param header the header to fill
+   *
+   * @throws IOException if the encoding is malformed or uses indefinite length
+   */
+  private void readHeader(int offset, int end, Header header) throws IOException {
+    int index = offset;
+    if (index >= end) {
+      throw new IOException("Unexpected end of data at offset " + offset);
+    }
+
+    int tag = encoded[index++] & 0xFF;
+    if ((tag & 0x1F) == 0x1F) {
+      int b = 0;
+      do {
+        if (index >= end) {
+          throw new IOException("Unexpected end of data in tag at offset " + offset);
+        }
+        b = encoded[index++] & 0xFF;
+        tag = (tag << 8) | b;
+      } while ((b & 0x80) != 0);
+    }
+
+    if (index >= end) {
+      throw new IOException("Unexpected end of data in length at offset " + offset);
+    }
+    int length = encoded[index++] & 0xFF;
+    if (length == 0x80) {
+      throw new IOException("Indefinite length encoding not supported at offset " + offset);
+    }
+    if (length > 0x80) {
+      int lengthByteCount = length & 0x7F;
+      if (lengthByteCount > 4 || index + lengthByteCount > end) {
+        throw new IOException("Invalid length at offset " + offset);
+      }
+      length = 0;
+      for (int i = 0; i < lengthByteCount; i++) {
+        length = (length << 8) | (encoded[index++] & 0xFF);
+      }
+      if (length < 0) {
+        throw new IOException("Invalid length at offset " + offset);
+      }
+    }
+    if (length > end - index) {
+      throw new IOException("Length " + length + " exceeds enclosing structure at offset " + offset);
+    }
+
+    header.tag = tag;
+    header.offset = offset;
+    header.valueOffset = index;
+    header.valueLength = length;
+  }
+
+  private static void expectTag(Header header, int expectedTag, String name) throws IOException {
+    if (header.tag != expectedTag) {
+      throw new IOException("Was expecting tag " + Integer.toHexString(expectedTag) + " for " + name
+          + ", found " + Integer.toHexString(header.tag) + " at offset " + header.offset);
+    }
+  }
+
+  private static void expectEnd(Header header, int end, String name) throws IOException {
+    if (header.end() != end) {
+      throw new IOException("Unexpected data after " + name + " at offset " + header.end());
+    }
+  }
+
+  private boolean regionEquals(int offset, int length, byte[] expected) {
+    if (length != expected.length) {
+      return false;
+    }
+    for (int i = 0; i < length; i++) {
+      if (encoded[offset + i] != expected[i]) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private byte[] copy(int offset, int length) {
+    byte[] result = new byte[length];
+    System.arraycopy(encoded, offset, result, 0, length);
+    return result;
+  }
+
+  private ASN1Primitive decode(int offset, int length) throws IOException {
+    return ASN1Primitive.fromByteArray(copy(offset, length));
+  }
+
+  private AlgorithmIdentifier getAlgorithmIdentifier(int offset, int length) throws IOException {
+    return AlgorithmIdentifier.getInstance(decode(offset, length));
+  }
+
+  private static String lookupMnemonic(AlgorithmIdentifier algorithmIdentifier) {
+    try {
+      return SignedDataUtil.lookupMnemonicByOID(algorithmIdentifier.getAlgorithm().getId());
+    } catch (NoSuchAlgorithmException nsae) {
+      LOGGER.log(Level.WARNING, "No such algorithm", nsae);
+      return null;
+    }
+  }
+
+  /**
+   * A decoded tag and length, reused while walking the structure.
+   */
+  private static final class Header {
+
+    private int tag;
+    private int offset;
+    private int valueOffset;
+    private int valueLength;
+
+    private int end() {
+      return valueOffset + valueLength;
+    }
+  }
+}
@@ -30,7 +30,6 @@ import java.math.BigInteger;
 import java.security.AlgorithmParameters;
 import java.security.GeneralSecurityException;
 import java.security.InvalidAlgorithmParameterException;
-import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 import java.security.PrivateKey;
 import java.security.Signature;
@@ -77,6 +76,8 @@ import org.bouncycastle.asn1.x500.X500Name;
 import org.bouncycastle.asn1.x509.AlgorithmIdentifier;
 import org.bouncycastle.asn1.x509.X509ObjectIdentifiers;
 import org.jmrtd.Util;
+import org.jmrtd.crypto.CryptoBackend;
+import org.jmrtd.crypto.JCACryptoBackend;
 
 /**
  * Utility class for helping with CMS SignedData in security object document and
@@ -298,7 +299,23 @@ public final class SignedDataUtil {
   public static AlgorithmParameterSpec getDigestEncryptionAlgorithmParams(SignedData signedData) {
     try {
       SignerInfo signerInfo = getSignerInfo(signedData);
-      AlgorithmIdentifier digestEncryptionAlgorithm = signerInfo.getDigestEncryptionAlgorithm();
+      return getDigestEncryptionAlgorithmParams(signerInfo.getDigestEncryptionAlgorithm());
+    } catch (Exception e) {
+      LOGGER.log(Level.WARNING, "Cannot get RSASSA/PSS parameters", e);
+    }
+
+    return null;
+  }
+
+  /**
+   * Returns the parameters of a digest encryption (signature) algorithm identifier.
+   *
+   * @param digestEncryptionAlgorithm the algorithm identifier
+   *
+   * @return the algorithm parameters, or {@code null} on unrecognized algorithms
+   */
+  static AlgorithmParameterSpec getDigestEncryptionAlgorithmParams(AlgorithmIdentifier digestEncryptionAlgorithm) {
+    try {
       String digestEncryptionAlgorithmOID = digestEncryptionAlgorithm.getAlgorithm().getId();
       if (!PKCS1_RSASSA_PSS_OID.equals(digestEncryptionAlgorithmOID)) {
         /* We only support additional parameters for RSASSA/PSS signature algorithm. */
@@ -365,6 +382,48 @@ public final class SignedDataUtil {
    * @throws SignatureException if the contents do not check out
    */
   public static byte[] getEContent(SignedData signedData) throws SignatureException {
+    return getEContent(signedData, true);
+  }
+
+  /**
+   * Returns the contents of the signed data over which the
+   * signature is to be computed, optionally without checking the
+   * message digest in the signed attributes against the content.
+   * This allows the message digest check and the signature verification
+   * to be performed independently.
+   *
+   * @param signedData the signed data
+   * @param isMessageDigestChecked whether to check the message digest in the signed attributes
+   *
+   * @return the contents of the security object over which the
+   *         signature is to be computed
+   *
+   * @throws SignatureException if the contents do not check out
+   *
+   * @since 0.8.4
+   */
+  public static byte[] getEContent(SignedData signedData, boolean isMessageDigestChecked) throws SignatureException {
+    return getEContent(signedData, isMessageDigestChecked, new JCACryptoBackend());
+  }
+
+  /**
+   * Returns the contents of the signed data over which the
+   * signature is to be computed, optionally without checking the
+   * message digest in the signed attributes against the content.
+   * The message digest is computed by the given crypto backend.
+   *
+   * @param signedData the signed data
+   * @param isMessageDigestChecked whether to check the message digest in the signed attributes
+   * @param cryptoBackend the crypto backend
+   *
+   * @return the contents of the security object over which the
+   *         signature is to be computed
+   *
+   * @throws SignatureException if the contents do not check out
+   *
+   * @since 0.8.4
+   */
+  public static byte[] getEContent(SignedData signedData, boolean isMessageDigestChecked, CryptoBackend cryptoBackend) throws SignatureException {
     SignerInfo signerInfo = getSignerInfo(signedData);
     ASN1Set signedAttributesSet = signerInfo.getAuthenticatedAttributes();
 
@@ -383,7 +442,9 @@ public final class SignedDataUtil {
 
     try {
       attributesBytes = signedAttributesSet.getEncoded(ASN1Encoding.DER);
-      checkEContent(getAttributes(signedAttributesSet), digAlg, contentBytes);
+      if (isMessageDigestChecked) {
+        checkEContent(getAttributes(signedAttributesSet), digAlg, contentBytes, cryptoBackend);
+      }
       return attributesBytes;
     } catch (Exception e) {
       throw new SignatureException(e);
@@ -640,13 +701,31 @@ public final class SignedDataUtil {
    * @throws GeneralSecurityException on error
    */
   public static ASN1Set createAuthenticatedAttributes(String digestAlgorithm, String contentTypeOID, ContentInfo contentInfo) throws GeneralSecurityException {
+    return createAuthenticatedAttributes(digestAlgorithm, contentTypeOID, contentInfo, new JCACryptoBackend());
+  }
+
+  /**
+   * Creates the authenticated attributes to be signed, using the given crypto backend
+   * to digest the content.
+   *
+   * @param digestAlgorithm the digest algorithm
+   * @param contentTypeOID the object identifier
+   * @param contentInfo the content info to digest
+   * @param cryptoBackend the crypto backend
+   *
+   * @return authenticated attributes to be signed
+   *
+   * @throws GeneralSecurityException on error
+   *
+   * @since 0.8.4
+   */
+  public static ASN1Set createAuthenticatedAttributes(String digestAlgorithm, String contentTypeOID, ContentInfo contentInfo, CryptoBackend cryptoBackend) throws GeneralSecurityException {
     /* Check bug found by Paulo Assumpco. */
     if ("SHA256".equals(digestAlgorithm)) {
       digestAlgorithm = "SHA-256";
     }
-    MessageDigest dig = Util.getMessageDigest(digestAlgorithm);
     byte[] contentBytes = ((ASN1OctetString)contentInfo.getContent()).getOctets();
-    byte[] digestedContentBytes = dig.digest(contentBytes);
+    byte[] digestedContentBytes = cryptoBackend.digest(digestAlgorithm, contentBytes);
     ASN1OctetString digestedContent = new DEROctetString(digestedContentBytes);
     Attribute contentTypeAttribute = new Attribute(new ASN1ObjectIdentifier(RFC_3369_CONTENT_TYPE_OID), createSingletonSet(new ASN1ObjectIdentifier(contentTypeOID)));
     Attribute messageDigestAttribute = new Attribute(new ASN1ObjectIdentifier(RFC_3369_MESSAGE_DIGEST_OID), createSingletonSet(digestedContent));
@@ -753,6 +832,32 @@ public final class SignedDataUtil {
     return encryptedDigest;
   }
 
+  /**
+   * Signs the (authenticated attributes derived from the given) data, using the given crypto backend.
+   *
+   * @param digestAlgorithm the digest algorithm
+   * @param digestEncryptionAlgorithm the signature algorithm
+   * @param digestEncryptionParameters the parameters, or {@code null}
+   * @param contentTypeOID the object identifier
+   * @param contentInfo the content info
+   * @param privateKey the private key to use for signing
+   * @param cryptoBackend the crypto backend
+   *
+   * @return the signed data
+   *
+   * @throws GeneralSecurityException on error
+   *
+   * @since 0.8.4
+   */
+  public static byte[] signData(String digestAlgorithm, String digestEncryptionAlgorithm, AlgorithmParameterSpec digestEncryptionParameters, String contentTypeOID, ContentInfo contentInfo, PrivateKey privateKey, CryptoBackend cryptoBackend) throws GeneralSecurityException {
+    try {
+      byte[] dataToBeSigned = createAuthenticatedAttributes(digestAlgorithm, contentTypeOID, contentInfo, cryptoBackend).getEncoded(ASN1Encoding.DER);
+      return cryptoBackend.sign(digestEncryptionAlgorithm, digestEncryptionParameters, privateKey, dataToBeSigned);
+    } catch (IOException ioe) {
+      throw new SignatureException("Could not encode authenticated attributes", ioe);
+    }
+  }
+
   /**
    * Extracts the signer info structure from a signed data structure.
    *
@@ -989,11 +1094,12 @@ public final class SignedDataUtil {
    * @param attributes the attributes, this should contain an attribute of type {@link #RFC_3369_MESSAGE_DIGEST_OID}
    * @param digAlg the digest algorithm
    * @param contentBytes the contents
+   * @param cryptoBackend the crypto backend that computes the digest
    *
-   * @throws NoSuchAlgorithmException if the digest algorithm is unsupported
+   * @throws GeneralSecurityException if the digest algorithm is unsupported
    * @throws SignatureException if the reported digest does not correspond to the computed digest
    */
-  private static void checkEContent(Collection<Attribute> attributes, String digAlg, byte[] contentBytes) throws NoSuchAlgorithmException, SignatureException {
+  private static void checkEContent(Collection<Attribute> attributes, String digAlg, byte[] contentBytes, CryptoBackend cryptoBackend) throws GeneralSecurityException {
     for (Attribute attribute: attributes) {
       if (!RFC_3369_MESSAGE_DIGEST_OID.equals(attribute.getAttrType().getId())) {
         continue;
@@ -1009,8 +1115,7 @@ public final class SignedDataUtil {
         LOGGER.warning("Error extracting signedAttribute message digest in eContent!");
       }
 
-      MessageDigest dig = MessageDigest.getInstance(digAlg);
-      byte[] computedDigestedContent = dig.digest(contentBytes);
+      byte[] computedDigestedContent = cryptoBackend.digest(digAlg, contentBytes);
       if (!Arrays.equals(storedDigestedContent, computedDigestedContent)) {
         throw new SignatureException("Error checking signedAttribute message digest in eContent!");
       }
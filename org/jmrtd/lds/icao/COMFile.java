@@ -31,6 +31,7 @@ import java.util.IllegalFormatConversionException;
 import java.util.List;
 import java.util.StringTokenizer;
 
+import org.jmrtd.io.TLVCursor;
 import org.jmrtd.lds.AbstractTaggedLDSFile;
 import org.jmrtd.lds.LDSFileUtil;
 
@@ -176,6 +177,41 @@ public class COMFile extends AbstractTaggedLDSFile {
     }
   }
 
+  @Override
+  protected void readContent(byte[] bytes, int offset, int length) throws IOException {
+    TLVCursor cursor = new TLVCursor(bytes, offset, length);
+    if (!cursor.next() || cursor.getTag() != VERSION_LDS_TAG) {
+      throw new IllegalArgumentException("Expected VERSION_LDS_TAG (" + Integer.toHexString(VERSION_LDS_TAG) + ")");
+    }
+    if (cursor.getLength() != 4) {
+      throw new IllegalArgumentException("Wrong length of LDS version object");
+    }
+    int valueOffset = cursor.getValueOffset();
+    versionLDS = new String(bytes, valueOffset, 2);
+    updateLevelLDS = new String(bytes, valueOffset + 2, 2);
+
+    if (!cursor.next() || cursor.getTag() != VERSION_UNICODE_TAG) {
+      throw new IllegalArgumentException("Expected VERSION_UNICODE_TAG (" + Integer.toHexString(VERSION_UNICODE_TAG) + ")");
+    }
+    if (cursor.getLength() != 6) {
+      throw new IllegalArgumentException("Wrong length of LDS version object");
+    }
+    valueOffset = cursor.getValueOffset();
+    majorVersionUnicode = new String(bytes, valueOffset, 2);
+    minorVersionUnicode = new String(bytes, valueOffset + 2, 2);
+    releaseLevelUnicode = new String(bytes, valueOffset + 4, 2);
+
+    if (!cursor.next() || cursor.getTag() != TAG_LIST_TAG) {
+      throw new IllegalArgumentException("Expected TAG_LIST_TAG (" + Integer.toHexString(TAG_LIST_TAG) + ")");
+    }
+    valueOffset = cursor.getValueOffset();
+    int tagCount = cursor.getLength();
+    tagList = new ArrayList<Integer>(tagCount);
+    for (int i = 0; i < tagCount; i++) {
+      tagList.add(bytes[valueOffset + i] & 0xFF);
+    }
+  }
+
   /**
    * Returns the LDS version as a dot seperated string
    * containing version and update level.
@@ -242,6 +278,7 @@ public class COMFile extends AbstractTaggedLDSFile {
     }
     tagList.add(tag);
     Collections.sort(tagList);
+    invalidateEncoded();
 
   }
 
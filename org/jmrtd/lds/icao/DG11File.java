@@ -37,6 +37,7 @@ import java.util.StringTokenizer;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
+import org.jmrtd.io.TLVCursor;
 import org.jmrtd.lds.DataGroup;
 
 import net.sf.scuba.tlv.TLVInputStream;
@@ -66,6 +67,9 @@ import net.sf.scuba.util.Hex;
  * <li>Custody Information</li>
  * </ol>
  *
+ * When read from an encoded file, the fields are indexed while reading and
+ * decoded when first accessed, from the bytes read.
+ *
  * @author The JMRTD team (info@jmrtd.org)
  *
  * @version $Revision: 1869 $
@@ -113,6 +117,15 @@ public class DG11File extends DataGroup {
 
   private List<Integer> tagPresenceList;
 
+  /*
+   * When read from an encoded file, the fields that have not been decoded yet,
+   * as tag, offset, and length triples into the encoded bytes. Decoded fields
+   * have tag 0.
+   */
+  private byte[] undecodedBytes;
+  private int[] fieldIndex;
+  private int undecodedFieldCount;
+
   /**
    * Constructs a file from binary representation.
    *
@@ -213,6 +226,7 @@ public class DG11File extends DataGroup {
     if (tagPresenceList != null) {
       return tagPresenceList;
     }
+    decodeFields();
     tagPresenceList = new ArrayList<Integer>(12);
     if (nameOfHolder != null) {
       tagPresenceList.add(FULL_NAME_TAG);
@@ -262,6 +276,7 @@ public class DG11File extends DataGroup {
    * @return the name of holder
    */
   public String getNameOfHolder() {
+    decodeField(FULL_NAME_TAG);
     return nameOfHolder;
   }
 
@@ -271,6 +286,7 @@ public class DG11File extends DataGroup {
    * @return the other names, or empty list when not present
    */
   public List<String> getOtherNames() {
+    decodeField(OTHER_NAME_TAG);
     return otherNames == null ? new ArrayList<String>() : new ArrayList<String>(otherNames);
   }
 
@@ -280,6 +296,7 @@ public class DG11File extends DataGroup {
    * @return the personal number
    */
   public String getPersonalNumber() {
+    decodeField(PERSONAL_NUMBER_TAG);
     return personalNumber;
   }
 
@@ -289,6 +306,7 @@ public class DG11File extends DataGroup {
    * @return the full date of birth
    */
   public String getFullDateOfBirth() {
+    decodeField(FULL_DATE_OF_BIRTH_TAG);
     return fullDateOfBirth;
   }
 
@@ -298,6 +316,7 @@ public class DG11File extends DataGroup {
    * @return the place of birth
    */
   public List<String> getPlaceOfBirth() {
+    decodeField(PLACE_OF_BIRTH_TAG);
     return placeOfBirth;
   }
 
@@ -307,6 +326,7 @@ public class DG11File extends DataGroup {
    * @return the permanent address
    */
   public List<String> getPermanentAddress() {
+    decodeField(PERMANENT_ADDRESS_TAG);
     return permanentAddress;
   }
 
@@ -316,6 +336,7 @@ public class DG11File extends DataGroup {
    * @return the telephone
    */
   public String getTelephone() {
+    decodeField(TELEPHONE_TAG);
     return telephone;
   }
 
@@ -325,6 +346,7 @@ public class DG11File extends DataGroup {
    * @return the profession
    */
   public String getProfession() {
+    decodeField(PROFESSION_TAG);
     return profession;
   }
 
@@ -334,6 +356,7 @@ public class DG11File extends DataGroup {
    * @return the title
    */
   public String getTitle() {
+    decodeField(TITLE_TAG);
     return title;
   }
 
@@ -343,6 +366,7 @@ public class DG11File extends DataGroup {
    * @return the personal summary
    */
   public String getPersonalSummary() {
+    decodeField(PERSONAL_SUMMARY_TAG);
     return personalSummary;
   }
 
@@ -352,6 +376,7 @@ public class DG11File extends DataGroup {
    * @return the proof of citizenship
    */
   public byte[] getProofOfCitizenship() {
+    decodeField(PROOF_OF_CITIZENSHIP_TAG);
     return proofOfCitizenship;
   }
 
@@ -361,6 +386,7 @@ public class DG11File extends DataGroup {
    * @return the other valid travel document numbers
    */
   public List<String> getOtherValidTDNumbers() {
+    decodeField(OTHER_VALID_TD_NUMBERS_TAG);
     return otherValidTDNumbers;
   }
 
@@ -370,6 +396,7 @@ public class DG11File extends DataGroup {
    * @return the custody information
    */
   public String getCustodyInformation() {
+    decodeField(CUSTODY_INFORMATION_TAG);
     return custodyInformation;
   }
 
@@ -380,6 +407,7 @@ public class DG11File extends DataGroup {
    */
   @Override
   public String toString() {
+    decodeFields();
     return new StringBuilder()
         .append("DG11File [")
         .append(nameOfHolder == null ? "" : nameOfHolder).append(", ")
@@ -455,6 +483,61 @@ public class DG11File extends DataGroup {
     }
   }
 
+  @Override
+  protected void readContent(byte[] bytes, int offset, int length) throws IOException {
+    TLVCursor cursor = new TLVCursor(bytes, offset, length);
+    if (!cursor.next() || cursor.getTag() != TAG_LIST_TAG) {
+      throw new IllegalArgumentException("Expected tag list in DG11");
+    }
+
+    /* Find out which tags are present. */
+    List<Integer> tagList = readTagList(bytes, cursor.getValueOffset(), cursor.getLength());
+
+    /* Now index the fields in order, values are decoded when first accessed. */
+    undecodedBytes = bytes;
+    fieldIndex = new int[3 * tagList.size()];
+    undecodedFieldCount = 0;
+    for (int t: tagList) {
+      readField(t, cursor);
+    }
+  }
+
+  @Override
+  protected void readContent(byte[] bytes, int offset, int length, int[] contentIndex) throws IOException {
+    if (contentIndex.length < 3 || contentIndex[0] != TAG_LIST_TAG) {
+      throw new IllegalArgumentException("Expected tag list in DG11");
+    }
+
+    /* NOTE: The index is checked against the encoding, entry by entry, as it may come from an untrusted snapshot. */
+    TLVCursor cursor = new TLVCursor(bytes, offset, length);
+    checkContentIndexEntry(cursor, contentIndex, 0);
+
+    /* Find out which tags are present. */
+    List<Integer> tagList = readTagList(bytes, contentIndex[1], contentIndex[2]);
+
+    /* Now index the fields in order, using the given index instead of parsing the contents. */
+    undecodedBytes = bytes;
+    fieldIndex = new int[3 * tagList.size()];
+    undecodedFieldCount = 0;
+    int index = 3;
+    for (int t: tagList) {
+      if (index >= contentIndex.length) {
+        throw new IllegalArgumentException("Expected " + Integer.toHexString(t) + ", but found end of DG11");
+      }
+      checkContentIndexEntry(cursor, contentIndex, index);
+      int tag = contentIndex[index];
+      if (tag == CONTENT_SPECIFIC_CONSTRUCTED_TAG) {
+        readOtherNames(new TLVCursor(bytes, contentIndex[index + 1], contentIndex[index + 2]));
+      } else {
+        if (tag != t) {
+          throw new IllegalArgumentException("Expected " + Integer.toHexString(t) + ", but found " + Integer.toHexString(tag));
+        }
+        indexField(tag, contentIndex[index + 1], contentIndex[index + 2]);
+      }
+      index += 3;
+    }
+  }
+
   @Override
   protected void writeContent(OutputStream out) throws IOException {
     TLVOutputStream tlvOut = out instanceof TLVOutputStream ? (TLVOutputStream)out : new TLVOutputStream(out);
@@ -574,28 +657,32 @@ public class DG11File extends DataGroup {
   /**
    * Parses the custody information field.
    *
-   * @param value the value of the custody information data object
+   * @param bytes the bytes containing the value of the custody information data object
+   * @param offset the offset of the value
+   * @param length the length of the value
    */
-  private void parseCustodyInformation(byte[] value) {
+  private void parseCustodyInformation(byte[] bytes, int offset, int length) {
     try {
-      String field = new String(value, "UTF-8");
+      String field = new String(bytes, offset, length, "UTF-8");
       //		custodyInformation = in.replace("<", " ").trim();
       custodyInformation = field.trim();
     } catch (UnsupportedEncodingException uee) {
       LOGGER.log(Level.WARNING, "Exception", uee);
-      custodyInformation = new String(value).trim();
+      custodyInformation = new String(bytes, offset, length).trim();
     }
   }
 
   /**
    * Parses the other valid travel document numbers field.
    *
-   * @param value the value of the other valid travel document numbers data object
+   * @param bytes the bytes containing the value of the other valid travel document numbers data object
+   * @param offset the offset of the value
+   * @param length the length of the value
    */
-  private void parseOtherValidTDNumbers(byte[] value) {
-    String field = new String(value).trim();
+  private void parseOtherValidTDNumbers(byte[] bytes, int offset, int length) {
+    String field = new String(bytes, offset, length).trim();
     try {
-      field = new String(value, "UTF-8");
+      field = new String(bytes, offset, length, "UTF-8");
     } catch (UnsupportedEncodingException uee) {
       LOGGER.log(Level.WARNING, "Exception", uee);
     }
@@ -610,53 +697,61 @@ public class DG11File extends DataGroup {
   /**
    * Parses the proof of citizen field.
    *
-   * @param value the value of the proof of citizen data object
+   * @param bytes the bytes containing the value of the proof of citizen data object
+   * @param offset the offset of the value
+   * @param length the length of the value
    */
-  private void parseProofOfCitizenShip(byte[] value) {
-    proofOfCitizenship = value;
+  private void parseProofOfCitizenShip(byte[] bytes, int offset, int length) {
+    proofOfCitizenship = copyValue(bytes, offset, length);
   }
 
   /**
    * Parses the personal summary field.
    *
-   * @param value the value of the personal summary data object
+   * @param bytes the bytes containing the value of the personal summary data object
+   * @param offset the offset of the value
+   * @param length the length of the value
    */
-  private void parsePersonalSummary(byte[] value) {
+  private void parsePersonalSummary(byte[] bytes, int offset, int length) {
     try {
-      String field = new String(value, "UTF-8");
+      String field = new String(bytes, offset, length, "UTF-8");
       //		personalSummary = in.replace("<", " ").trim();
       personalSummary = field.trim();
     } catch (UnsupportedEncodingException usee) {
       LOGGER.log(Level.WARNING, "Exception", usee);
-      personalSummary = new String(value).trim();
+      personalSummary = new String(bytes, offset, length).trim();
     }
   }
 
   /**
    * Parses the title field.
    *
-   * @param value the value of the title data object
+   * @param bytes the bytes containing the value of the title data object
+   * @param offset the offset of the value
+   * @param length the length of the value
    */
-  private void parseTitle(byte[] value) {
+  private void parseTitle(byte[] bytes, int offset, int length) {
     try {
-      String field = new String(value, "UTF-8");
+      String field = new String(bytes, offset, length, "UTF-8");
       //		title = in.replace("<", " ").trim();
       title = field.trim();
     } catch (UnsupportedEncodingException usee) {
       LOGGER.log(Level.WARNING, "Exception", usee);
-      title = new String(value).trim();
+      title = new String(bytes, offset, length).trim();
     }
   }
 
   /**
    * Parses the profession field.
    *
-   * @param value the value of the profession data object
+   * @param bytes the bytes containing the value of the profession data object
+   * @param offset the offset of the value
+   * @param length the length of the value
    */
-  private void parseProfession(byte[] value) {
-    String field = new String(value);
+  private void parseProfession(byte[] bytes, int offset, int length) {
+    String field = new String(bytes, offset, length);
     try {
-      field = new String(value, "UTF-8");
+      field = new String(bytes, offset, length, "UTF-8");
     } catch (UnsupportedEncodingException uee) {
       LOGGER.log(Level.WARNING, "Exception", uee);
     }
@@ -667,12 +762,14 @@ public class DG11File extends DataGroup {
   /**
    * Parses the telephone field.
    *
-   * @param value the value of the telephone data object
+   * @param bytes the bytes containing the value of the telephone data object
+   * @param offset the offset of the value
+   * @param length the length of the value
    */
-  private void parseTelephone(byte[] value) {
-    String field = new String(value);
+  private void parseTelephone(byte[] bytes, int offset, int length) {
+    String field = new String(bytes, offset, length);
     try {
-      field = new String(value, "UTF-8");
+      field = new String(bytes, offset, length, "UTF-8");
     } catch (UnsupportedEncodingException uee) {
       LOGGER.log(Level.WARNING, "Exception", uee);
     }
@@ -683,12 +780,14 @@ public class DG11File extends DataGroup {
   /**
    * Parses the permanent address field.
    *
-   * @param value the value in the permanent address data object
+   * @param bytes the bytes containing the value in the permanent address data object
+   * @param offset the offset of the value
+   * @param length the length of the value
    */
-  private void parsePermanentAddress(byte[] value) {
-    String field = new String(value);
+  private void parsePermanentAddress(byte[] bytes, int offset, int length) {
+    String field = new String(bytes, offset, length);
     try {
-      field = new String(value, "UTF-8");
+      field = new String(bytes, offset, length, "UTF-8");
     } catch (UnsupportedEncodingException uee) {
       LOGGER.log(Level.WARNING, "Exception", uee);
     }
@@ -703,12 +802,14 @@ public class DG11File extends DataGroup {
   /**
    * Parses the place of birth field.
    *
-   * @param value the value in the place of birth data object
+   * @param bytes the bytes containing the value in the place of birth data object
+   * @param offset the offset of the value
+   * @param length the length of the value
    */
-  private void parsePlaceOfBirth(byte[] value) {
-    String field = new String(value);
+  private void parsePlaceOfBirth(byte[] bytes, int offset, int length) {
+    String field = new String(bytes, offset, length);
     try {
-      field = new String(value, "UTF-8");
+      field = new String(bytes, offset, length, "UTF-8");
     } catch (UnsupportedEncodingException uee) {
       LOGGER.log(Level.WARNING, "Exception", uee);
     }
@@ -723,17 +824,19 @@ public class DG11File extends DataGroup {
   /**
    * Parses the date of birth.
    *
-   * @param value the value of the date of birth data object
+   * @param bytes the bytes containing the value of the date of birth data object
+   * @param offset the offset of the value
+   * @param length the length of the value
    */
-  private void parseFullDateOfBirth(byte[] value) {
+  private void parseFullDateOfBirth(byte[] bytes, int offset, int length) {
     String field = null;
-    if (value.length == 4) {
+    if (length == 4) {
       /* Either France or Belgium uses this encoding for dates. */
-      field = Hex.bytesToHexString(value);
+      field = Hex.bytesToHexString(bytes, offset, length);
     } else {
-      field = new String(value);
+      field = new String(bytes, offset, length);
       try {
-        field = new String(value, "UTF-8");
+        field = new String(bytes, offset, length, "UTF-8");
       } catch (UnsupportedEncodingException usee) {
         LOGGER.log(Level.WARNING, "Exception", usee);
       }
@@ -744,30 +847,34 @@ public class DG11File extends DataGroup {
   /**
    * Parses the other name field.
    *
-   * @param value the value of the other name data object
+   * @param bytes the bytes containing the value of the other name data object
+   * @param offset the offset of the value
+   * @param length the length of the value
    */
-  private synchronized void parseOtherName(byte[] value) {
+  private synchronized void parseOtherName(byte[] bytes, int offset, int length) {
     if (otherNames == null) {
       otherNames = new ArrayList<String>();
     }
     try {
-      String field = new String(value, "UTF-8");
+      String field = new String(bytes, offset, length, "UTF-8");
       otherNames.add(field.trim());
     } catch (UnsupportedEncodingException usee) {
       LOGGER.log(Level.WARNING, "Exception", usee);
-      otherNames.add(new String(value).trim());
+      otherNames.add(new String(bytes, offset, length).trim());
     }
   }
 
   /**
    * Parses the personal number field.
    *
-   * @param value the value of the personal number data object
+   * @param bytes the bytes containing the value of the personal number data object
+   * @param offset the offset of the value
+   * @param length the length of the value
    */
-  private void parsePersonalNumber(byte[] value) {
-    String field = new String(value);
+  private void parsePersonalNumber(byte[] bytes, int offset, int length) {
+    String field = new String(bytes, offset, length);
     try {
-      field = new String(value, "UTF-8");
+      field = new String(bytes, offset, length, "UTF-8");
     } catch (UnsupportedEncodingException uee) {
       LOGGER.log(Level.WARNING, "Exception", uee);
     }
@@ -777,12 +884,14 @@ public class DG11File extends DataGroup {
   /**
    * Parses the name of holder field.
    *
-   * @param value the value of the name of holder data object
+   * @param bytes the bytes containing the value of the name of holder data object
+   * @param offset the offset of the value
+   * @param length the length of the value
    */
-  private void parseNameOfHolder(byte[] value) {
-    String field = new String(value);
+  private void parseNameOfHolder(byte[] bytes, int offset, int length) {
+    String field = new String(bytes, offset, length);
     try {
-      field = new String(value, "UTF-8");
+      field = new String(bytes, offset, length, "UTF-8");
     } catch (UnsupportedEncodingException uee) {
       LOGGER.log(Level.WARNING, "Exception", uee);
     }
@@ -821,57 +930,229 @@ public class DG11File extends DataGroup {
         }
         /* int otherNameLength = */ tlvInputStream.readLength();
         byte[] value = tlvInputStream.readValue();
-        parseOtherName(value);
+        parseOtherName(value, 0, value.length);
       }
     } else {
       if (tag != expectedFieldTag) {
         throw new IllegalArgumentException("Expected " + Integer.toHexString(expectedFieldTag) + ", but found " + Integer.toHexString(tag));
       }
-      tlvInputStream.readLength();
+      /* int length = */ tlvInputStream.readLength();
       byte[] value = tlvInputStream.readValue();
-      switch (tag) {
-        case FULL_NAME_TAG:
-          parseNameOfHolder(value);
-          break;
-        case OTHER_NAME_TAG:
-          parseOtherName(value);
-          break;
-        case PERSONAL_NUMBER_TAG:
-          parsePersonalNumber(value);
-          break;
-        case FULL_DATE_OF_BIRTH_TAG:
-          parseFullDateOfBirth(value);
-          break;
-        case PLACE_OF_BIRTH_TAG:
-          parsePlaceOfBirth(value);
-          break;
-        case PERMANENT_ADDRESS_TAG:
-          parsePermanentAddress(value);
-          break;
-        case TELEPHONE_TAG:
-          parseTelephone(value);
-          break;
-        case PROFESSION_TAG:
-          parseProfession(value);
-          break;
-        case TITLE_TAG:
-          parseTitle(value);
-          break;
-        case PERSONAL_SUMMARY_TAG:
-          parsePersonalSummary(value);
-          break;
-        case PROOF_OF_CITIZENSHIP_TAG:
-          parseProofOfCitizenShip(value);
-          break;
-        case OTHER_VALID_TD_NUMBERS_TAG:
-          parseOtherValidTDNumbers(value);
-          break;
-        case CUSTODY_INFORMATION_TAG:
-          parseCustodyInformation(value);
-          break;
-        default:
-          throw new IllegalArgumentException("Unknown field tag in DG11: " + Integer.toHexString(tag));
+      parseField(tag, value, 0, value.length);
+    }
+  }
+
+  /**
+   * Indexes a field using a cursor positioned before the field.
+   *
+   * @param expectedFieldTag the tag to expect
+   * @param cursor the cursor
+   *
+   * @throws IOException on error parsing the field
+   */
+  private void readField(int expectedFieldTag, TLVCursor cursor) throws IOException {
+    if (!cursor.next()) {
+      throw new IllegalArgumentException("Expected " + Integer.toHexString(expectedFieldTag) + ", but found end of DG11");
+    }
+    int tag = cursor.getTag();
+    if (tag == CONTENT_SPECIFIC_CONSTRUCTED_TAG) {
+      cursor.descend();
+      readOtherNames(cursor);
+      cursor.ascend();
+    } else {
+      if (tag != expectedFieldTag) {
+        throw new IllegalArgumentException("Expected " + Integer.toHexString(expectedFieldTag) + ", but found " + Integer.toHexString(tag));
+      }
+      indexField(tag, cursor.getValueOffset(), cursor.getLength());
+    }
+  }
+
+  /**
+   * Indexes the other names in the content specific template, using a cursor positioned before the count.
+   *
+   * @param cursor the cursor
+   *
+   * @throws IOException on error parsing the template
+   */
+  private void readOtherNames(TLVCursor cursor) throws IOException {
+    if (!cursor.next() || cursor.getTag() != COUNT_TAG) {
+      throw new IllegalArgumentException("Expected " + Integer.toHexString(COUNT_TAG));
+    }
+    if (cursor.getLength() != 1) {
+      throw new IllegalArgumentException("Expected length 1 count length, found " + cursor.getLength());
+    }
+    int count = cursor.getValueAsInt();
+    for (int i = 0; i < count; i++) {
+      if (!cursor.next() || cursor.getTag() != OTHER_NAME_TAG) {
+        throw new IllegalArgumentException("Expected " + Integer.toHexString(OTHER_NAME_TAG));
+      }
+      indexField(OTHER_NAME_TAG, cursor.getValueOffset(), cursor.getLength());
+    }
+  }
+
+  /**
+   * Reads the tags in the value of the tag list.
+   *
+   * @param bytes the array holding the value
+   * @param offset the offset of the value
+   * @param length the length of the value
+   *
+   * @return the tags
+   *
+   * @throws IOException if a tag is truncated or too long
+   */
+  private static List<Integer> readTagList(byte[] bytes, int offset, int length) throws IOException {
+    int tagListEnd = offset + length;
+    List<Integer> tagList = new ArrayList<Integer>(length / 2 + 1);
+    int index = offset;
+    while (index < tagListEnd) {
+      int tagOffset = index;
+      int b = bytes[index++] & 0xFF;
+      int tag = b;
+      if ((b & 0x1F) == 0x1F) {
+        do {
+          if (index >= tagListEnd) {
+            throw new IOException("Truncated tag in tag list at offset " + tagOffset);
+          }
+          if (index - tagOffset >= 4) {
+            throw new IOException("Tag too long in tag list at offset " + tagOffset);
+          }
+          b = bytes[index++] & 0xFF;
+          tag = (tag << 8) | b;
+        } while ((b & 0x80) != 0);
       }
+      tagList.add(tag);
+    }
+    return tagList;
+  }
+
+  /**
+   * Parses the value of a field.
+   *
+   * @param tag the tag of the field
+   * @param bytes the bytes containing the value of the field
+   * @param offset the offset of the value
+   * @param length the length of the value
+   */
+  private void parseField(int tag, byte[] bytes, int offset, int length) {
+    switch (tag) {
+      case FULL_NAME_TAG:
+        parseNameOfHolder(bytes, offset, length);
+        break;
+      case OTHER_NAME_TAG:
+        parseOtherName(bytes, offset, length);
+        break;
+      case PERSONAL_NUMBER_TAG:
+        parsePersonalNumber(bytes, offset, length);
+        break;
+      case FULL_DATE_OF_BIRTH_TAG:
+        parseFullDateOfBirth(bytes, offset, length);
+        break;
+      case PLACE_OF_BIRTH_TAG:
+        parsePlaceOfBirth(bytes, offset, length);
+        break;
+      case PERMANENT_ADDRESS_TAG:
+        parsePermanentAddress(bytes, offset, length);
+        break;
+      case TELEPHONE_TAG:
+        parseTelephone(bytes, offset, length);
+        break;
+      case PROFESSION_TAG:
+        parseProfession(bytes, offset, length);
+        break;
+      case TITLE_TAG:
+        parseTitle(bytes, offset, length);
+        break;
+      case PERSONAL_SUMMARY_TAG:
+        parsePersonalSummary(bytes, offset, length);
+        break;
+      case PROOF_OF_CITIZENSHIP_TAG:
+        parseProofOfCitizenShip(bytes, offset, length);
+        break;
+      case OTHER_VALID_TD_NUMBERS_TAG:
+        parseOtherValidTDNumbers(bytes, offset, length);
+        break;
+      case CUSTODY_INFORMATION_TAG:
+        parseCustodyInformation(bytes, offset, length);
+        break;
+      default:
+        throw new IllegalArgumentException("Unknown field tag in DG11: " + Integer.toHexString(tag));
+    }
+  }
+
+  /**
+   * Adds a field to the index of fields that have not been decoded yet.
+   *
+   * @param tag the tag of the field
+   * @param offset the offset of the value in the encoded bytes
+   * @param length the length of the value
+   */
+  private void indexField(int tag, int offset, int length) {
+    int index = 3 * undecodedFieldCount;
+    if (index == fieldIndex.length) {
+      fieldIndex = Arrays.copyOf(fieldIndex, 2 * fieldIndex.length + 3);
+    }
+    fieldIndex[index] = tag;
+    fieldIndex[index + 1] = offset;
+    fieldIndex[index + 2] = length;
+    undecodedFieldCount++;
+  }
+
+  /**
+   * Decodes the field (or fields, for other names) with the given tag,
+   * if it has not been decoded yet.
+   *
+   * @param tag the tag of the field
+   */
+  private synchronized void decodeField(int tag) {
+    if (fieldIndex == null) {
+      return;
+    }
+    for (int index = 0; index < fieldIndex.length; index += 3) {
+      if (fieldIndex[index] == tag) {
+        parseField(tag, undecodedBytes, fieldIndex[index + 1], fieldIndex[index + 2]);
+        fieldIndex[index] = 0;
+        undecodedFieldCount--;
+      }
+    }
+    if (undecodedFieldCount == 0) {
+      fieldIndex = null;
+      undecodedBytes = null;
+    }
+  }
+
+  /**
+   * Decodes all fields that have not been decoded yet.
+   */
+  private synchronized void decodeFields() {
+    if (fieldIndex == null) {
+      return;
+    }
+    for (int index = 0; index < fieldIndex.length; index += 3) {
+      int tag = fieldIndex[index];
+      if (tag != 0) {
+        parseField(tag, undecodedBytes, fieldIndex[index + 1], fieldIndex[index + 2]);
+        fieldIndex[index] = 0;
+      }
+    }
+    undecodedFieldCount = 0;
+    fieldIndex = null;
+    undecodedBytes = null;
+  }
+
+  /**
+   * Returns the value of a field as a separate array.
+   *
+   * @param bytes the bytes containing the value
+   * @param offset the offset of the value
+   * @param length the length of the value
+   *
+   * @return the value
+   */
+  private static byte[] copyValue(byte[] bytes, int offset, int length) {
+    if (offset == 0 && length == bytes.length) {
+      return bytes;
     }
+    return Arrays.copyOfRange(bytes, offset, offset + length);
   }
 }
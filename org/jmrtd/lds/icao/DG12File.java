@@ -36,6 +36,7 @@ import java.util.List;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
+import org.jmrtd.io.TLVCursor;
 import org.jmrtd.lds.DataGroup;
 
 import net.sf.scuba.tlv.TLVInputStream;
@@ -47,6 +48,9 @@ import net.sf.scuba.util.Hex;
  * File structure for the EF_DG12 file.
  * Datagroup 12 contains additional document detail(s).
  *
+ * When read from an encoded file, the fields are indexed while reading and
+ * decoded when first accessed, from the bytes read.
+ *
  * @author The JMRTD team (info@jmrtd.org)
  *
  * @version $Revision: 1860 $
@@ -84,6 +88,15 @@ public class DG12File extends DataGroup {
 
   private List<Integer> tagPresenceList;
 
+  /*
+   * When read from an encoded file, the fields that have not been decoded yet,
+   * as tag, offset, and length triples into the encoded bytes. Decoded fields
+   * have tag 0.
+   */
+  private byte[] undecodedBytes;
+  private int[] fieldIndex;
+  private int undecodedFieldCount;
+
   private static final Logger LOGGER = Logger.getLogger("org.jmrtd");
 
   /**
@@ -187,6 +200,67 @@ public class DG12File extends DataGroup {
     }
   }
 
+  @Override
+  protected void readContent(byte[] bytes, int offset, int length) throws IOException {
+    TLVCursor cursor = new TLVCursor(bytes, offset, length);
+    if (!cursor.next() || cursor.getTag() != TAG_LIST_TAG) {
+      throw new IllegalArgumentException("Expected tag list in DG12");
+    }
+
+    /* Find out which tags are present. */
+    List<Integer> tagList = readTagList(bytes, cursor.getValueOffset(), cursor.getLength());
+
+    /* Now index the fields in order, values are decoded when first accessed. */
+    undecodedBytes = bytes;
+    fieldIndex = new int[3 * tagList.size()];
+    undecodedFieldCount = 0;
+    for (int t: tagList) {
+      readField(t, cursor);
+    }
+
+    /* Except for the date of issue, which is checked while reading. */
+    decodeField(DATE_OF_ISSUE_TAG);
+  }
+
+  @Override
+  protected void readContent(byte[] bytes, int offset, int length, int[] contentIndex) throws IOException {
+    if (contentIndex.length < 3 || contentIndex[0] != TAG_LIST_TAG) {
+      throw new IllegalArgumentException("Expected tag list in DG12");
+    }
+
+    /* NOTE: The index is checked against the encoding, entry by entry, as it may come from an untrusted snapshot. */
+    TLVCursor cursor = new TLVCursor(bytes, offset, length);
+    checkContentIndexEntry(cursor, contentIndex, 0);
+
+    /* Find out which tags are present. */
+    List<Integer> tagList = readTagList(bytes, contentIndex[1], contentIndex[2]);
+
+    /* Now index the fields in order, using the given index instead of parsing the contents. */
+    undecodedBytes = bytes;
+    fieldIndex = new int[3 * tagList.size()];
+    undecodedFieldCount = 0;
+    int index = 3;
+    for (int t: tagList) {
+      if (index >= contentIndex.length) {
+        throw new IllegalArgumentException("Expected " + Integer.toHexString(t) + ", but found end of DG12");
+      }
+      checkContentIndexEntry(cursor, contentIndex, index);
+      int tag = contentIndex[index];
+      if (tag == CONTENT_SPECIFIC_CONSTRUCTED_TAG) {
+        readNamesOfOtherPersons(new TLVCursor(bytes, contentIndex[index + 1], contentIndex[index + 2]));
+      } else {
+        if (tag != t) {
+          throw new IllegalArgumentException("Expected " + Integer.toHexString(t) + ", but found " + Integer.toHexString(tag));
+        }
+        indexField(tag, contentIndex[index + 1], contentIndex[index + 2]);
+      }
+      index += 3;
+    }
+
+    /* Except for the date of issue, which is checked while reading. */
+    decodeField(DATE_OF_ISSUE_TAG);
+  }
+
   @Override
   protected void writeContent(OutputStream outputStream) throws IOException {
     TLVOutputStream tlvOut = outputStream instanceof TLVOutputStream ? (TLVOutputStream)outputStream : new TLVOutputStream(outputStream);
@@ -261,6 +335,7 @@ public class DG12File extends DataGroup {
     if (tagPresenceList != null) {
       return tagPresenceList;
     }
+    decodeFields();
     tagPresenceList = new ArrayList<Integer>(10);
     if (issuingAuthority != null) {
       tagPresenceList.add(ISSUING_AUTHORITY_TAG);
@@ -324,7 +399,7 @@ public class DG12File extends DataGroup {
         }
         /* int otherPersonFieldLength = */ tlvInputStream.readLength();
         byte[] value = tlvInputStream.readValue();
-        parseNameOfOtherPerson(value);
+        parseNameOfOtherPerson(value, 0, value.length);
       }
     } else {
       if (tag != expectedFieldTag) {
@@ -332,37 +407,133 @@ public class DG12File extends DataGroup {
       }
       /* int length = */ tlvInputStream.readLength();
       byte[] value = tlvInputStream.readValue();
-      switch (tag) {
-        case ISSUING_AUTHORITY_TAG:
-          parseIssuingAuthority(value);
-          break;
-        case DATE_OF_ISSUE_TAG:
-          parseDateOfIssue(value);
-          break;
-        case NAME_OF_OTHER_PERSON_TAG:
-          parseNameOfOtherPerson(value);
-          break;
-        case ENDORSEMENTS_AND_OBSERVATIONS_TAG:
-          parseEndorsementsAndObservations(value);
-          break;
-        case TAX_OR_EXIT_REQUIREMENTS_TAG:
-          parseTaxOrExitRequirements(value);
-          break;
-        case IMAGE_OF_FRONT_TAG:
-          parseImageOfFront(value);
-          break;
-        case IMAGE_OF_REAR_TAG:
-          parseImageOfRear(value);
-          break;
-        case DATE_AND_TIME_OF_PERSONALIZATION_TAG:
-          parseDateAndTimeOfPersonalization(value);
-          break;
-        case PERSONALIZATION_SYSTEM_SERIAL_NUMBER_TAG:
-          parsePersonalizationSystemSerialNumber(value);
-          break;
-        default:
-          throw new IllegalArgumentException("Unknown field tag in DG12: " + Integer.toHexString(tag));
+      parseField(tag, value, 0, value.length);
+    }
+  }
+
+  /**
+   * Indexes a field using a cursor positioned before the field.
+   *
+   * @param expectedFieldTag the tag to expect
+   * @param cursor the cursor
+   *
+   * @throws IOException on error parsing the field
+   */
+  private void readField(int expectedFieldTag, TLVCursor cursor) throws IOException {
+    if (!cursor.next()) {
+      throw new IllegalArgumentException("Expected " + Integer.toHexString(expectedFieldTag) + ", but found end of DG12");
+    }
+    int tag = cursor.getTag();
+    if (tag == CONTENT_SPECIFIC_CONSTRUCTED_TAG) {
+      cursor.descend();
+      readNamesOfOtherPersons(cursor);
+      cursor.ascend();
+    } else {
+      if (tag != expectedFieldTag) {
+        throw new IllegalArgumentException("Expected " + Integer.toHexString(expectedFieldTag) + ", but found " + Integer.toHexString(tag));
       }
+      indexField(tag, cursor.getValueOffset(), cursor.getLength());
+    }
+  }
+
+  /**
+   * Indexes the names of other persons in the content specific template, using a cursor positioned before the count.
+   *
+   * @param cursor the cursor
+   *
+   * @throws IOException on error parsing the template
+   */
+  private void readNamesOfOtherPersons(TLVCursor cursor) throws IOException {
+    if (!cursor.next() || cursor.getTag() != COUNT_TAG) {
+      throw new IllegalArgumentException("Expected " + Integer.toHexString(COUNT_TAG));
+    }
+    if (cursor.getLength() != 1) {
+      throw new IllegalArgumentException("Expected length 1 count length, found " + cursor.getLength());
+    }
+    int count = cursor.getValueAsInt();
+    for (int i = 0; i < count; i++) {
+      if (!cursor.next() || cursor.getTag() != NAME_OF_OTHER_PERSON_TAG) {
+        throw new IllegalArgumentException("Expected " + Integer.toHexString(NAME_OF_OTHER_PERSON_TAG));
+      }
+      indexField(NAME_OF_OTHER_PERSON_TAG, cursor.getValueOffset(), cursor.getLength());
+    }
+  }
+
+  /**
+   * Reads the tags in the value of the tag list.
+   *
+   * @param bytes the array holding the value
+   * @param offset the offset of the value
+   * @param length the length of the value
+   *
+   * @return the tags
+   *
+   * @throws IOException if a tag is truncated or too long
+   */
+  private static List<Integer> readTagList(byte[] bytes, int offset, int length) throws IOException {
+    int tagListEnd = offset + length;
+    List<Integer> tagList = new ArrayList<Integer>(length / 2 + 1);
+    int index = offset;
+    while (index < tagListEnd) {
+      int tagOffset = index;
+      int b = bytes[index++] & 0xFF;
+      int tag = b;
+      if ((b & 0x1F) == 0x1F) {
+        do {
+          if (index >= tagListEnd) {
+            throw new IOException("Truncated tag in tag list at offset " + tagOffset);
+          }
+          if (index - tagOffset >= 4) {
+            throw new IOException("Tag too long in tag list at offset " + tagOffset);
+          }
+          b = bytes[index++] & 0xFF;
+          tag = (tag << 8) | b;
+        } while ((b & 0x80) != 0);
+      }
+      tagList.add(tag);
+    }
+    return tagList;
+  }
+
+  /**
+   * Parses the value of a field.
+   *
+   * @param tag the tag of the field
+   * @param bytes the bytes containing the value of the field
+   * @param offset the offset of the value
+   * @param length the length of the value
+   */
+  private void parseField(int tag, byte[] bytes, int offset, int length) {
+    switch (tag) {
+      case ISSUING_AUTHORITY_TAG:
+        parseIssuingAuthority(bytes, offset, length);
+        break;
+      case DATE_OF_ISSUE_TAG:
+        parseDateOfIssue(bytes, offset, length);
+        break;
+      case NAME_OF_OTHER_PERSON_TAG:
+        parseNameOfOtherPerson(bytes, offset, length);
+        break;
+      case ENDORSEMENTS_AND_OBSERVATIONS_TAG:
+        parseEndorsementsAndObservations(bytes, offset, length);
+        break;
+      case TAX_OR_EXIT_REQUIREMENTS_TAG:
+        parseTaxOrExitRequirements(bytes, offset, length);
+        break;
+      case IMAGE_OF_FRONT_TAG:
+        parseImageOfFront(bytes, offset, length);
+        break;
+      case IMAGE_OF_REAR_TAG:
+        parseImageOfRear(bytes, offset, length);
+        break;
+      case DATE_AND_TIME_OF_PERSONALIZATION_TAG:
+        parseDateAndTimeOfPersonalization(bytes, offset, length);
+        break;
+      case PERSONALIZATION_SYSTEM_SERIAL_NUMBER_TAG:
+        parsePersonalizationSystemSerialNumber(bytes, offset, length);
+        break;
+      default:
+        throw new IllegalArgumentException("Unknown field tag in DG12: " + Integer.toHexString(tag));
     }
   }
 
@@ -374,6 +545,7 @@ public class DG12File extends DataGroup {
    * @return the issuingAuthority
    */
   public String getIssuingAuthority() {
+    decodeField(ISSUING_AUTHORITY_TAG);
     return issuingAuthority;
   }
 
@@ -383,6 +555,7 @@ public class DG12File extends DataGroup {
    * @return the dateOfIssue
    */
   public String getDateOfIssue() {
+    decodeField(DATE_OF_ISSUE_TAG);
     return dateOfIssue;
   }
 
@@ -392,6 +565,7 @@ public class DG12File extends DataGroup {
    * @return the nameOfOtherPerson
    */
   public List<String> getNamesOfOtherPersons() {
+    decodeField(NAME_OF_OTHER_PERSON_TAG);
     return namesOfOtherPersons;
   }
 
@@ -401,6 +575,7 @@ public class DG12File extends DataGroup {
    * @return the endorsementsAndObservations
    */
   public String getEndorsementsAndObservations() {
+    decodeField(ENDORSEMENTS_AND_OBSERVATIONS_TAG);
     return endorsementsAndObservations;
   }
 
@@ -410,6 +585,7 @@ public class DG12File extends DataGroup {
    * @return the taxOrExitRequirements
    */
   public String getTaxOrExitRequirements() {
+    decodeField(TAX_OR_EXIT_REQUIREMENTS_TAG);
     return taxOrExitRequirements;
   }
 
@@ -419,6 +595,7 @@ public class DG12File extends DataGroup {
    * @return the imageOfFront
    */
   public byte[] getImageOfFront() {
+    decodeField(IMAGE_OF_FRONT_TAG);
     return imageOfFront;
   }
 
@@ -428,6 +605,7 @@ public class DG12File extends DataGroup {
    * @return the imageOfRear
    */
   public byte[] getImageOfRear() {
+    decodeField(IMAGE_OF_REAR_TAG);
     return imageOfRear;
   }
 
@@ -437,6 +615,7 @@ public class DG12File extends DataGroup {
    * @return the dateAndTimeOfPersonalization
    */
   public String getDateAndTimeOfPersonalization() {
+    decodeField(DATE_AND_TIME_OF_PERSONALIZATION_TAG);
     return dateAndTimeOfPersonalization;
   }
 
@@ -446,6 +625,7 @@ public class DG12File extends DataGroup {
    * @return the personalizationSystemSerialNumber
    */
   public String getPersonalizationSystemSerialNumber() {
+    decodeField(PERSONALIZATION_SYSTEM_SERIAL_NUMBER_TAG);
     return personalizationSystemSerialNumber;
   }
 
@@ -461,6 +641,7 @@ public class DG12File extends DataGroup {
    */
   @Override
   public String toString() {
+    decodeFields();
     return new StringBuilder()
         .append("DG12File [")
         .append(issuingAuthority == null ? "" : issuingAuthority).append(", ")
@@ -501,27 +682,31 @@ public class DG12File extends DataGroup {
   /**
    * Parses the personalization system serial number.
    *
-   * @param value the value of the personalization system serial number
+   * @param bytes the bytes containing the value of the personalization system serial number
+   * @param offset the offset of the value
+   * @param length the length of the value
    */
-  private void parsePersonalizationSystemSerialNumber(byte[] value) {
+  private void parsePersonalizationSystemSerialNumber(byte[] bytes, int offset, int length) {
     try {
-      String field = new String(value, "UTF-8");
+      String field = new String(bytes, offset, length, "UTF-8");
       personalizationSystemSerialNumber = field.trim();
     } catch (UnsupportedEncodingException usee) {
       /* NOTE: UTF-8 not supported? Unlikely. In any case use default charset. */
       LOGGER.log(Level.WARNING, "Exception", usee);
-      personalizationSystemSerialNumber = new String(value).trim();
+      personalizationSystemSerialNumber = new String(bytes, offset, length).trim();
     }
   }
 
   /**
    * Parses the date and time of personalization.
    *
-   * @param value the value of the date and time of personalization data object
+   * @param bytes the bytes containing the value of the date and time of personalization data object
+   * @param offset the offset of the value
+   * @param length the length of the value
    */
-  private void parseDateAndTimeOfPersonalization(byte[] value) {
+  private void parseDateAndTimeOfPersonalization(byte[] bytes, int offset, int length) {
     try {
-      String field = new String(value, "UTF-8");
+      String field = new String(bytes, offset, length, "UTF-8");
       dateAndTimeOfPersonalization = field.trim();
     } catch (UnsupportedEncodingException usee) {
       /* NOTE: never happens, UTF-8 is supported. */
@@ -532,86 +717,98 @@ public class DG12File extends DataGroup {
   /**
    * Parses the image of front field.
    *
-   * @param value the value of the image of front data object
+   * @param bytes the bytes containing the value of the image of front data object
+   * @param offset the offset of the value
+   * @param length the length of the value
    */
-  private void parseImageOfFront(byte[] value) {
-    imageOfFront =  value;
+  private void parseImageOfFront(byte[] bytes, int offset, int length) {
+    imageOfFront = copyValue(bytes, offset, length);
   }
 
   /**
    * Parses the image of rear field.
    *
-   * @param value the value of the image of read data object
+   * @param bytes the bytes containing the value of the image of read data object
+   * @param offset the offset of the value
+   * @param length the length of the value
    */
-  private void parseImageOfRear(byte[] value) {
-    imageOfRear =  value;
+  private void parseImageOfRear(byte[] bytes, int offset, int length) {
+    imageOfRear = copyValue(bytes, offset, length);
   }
 
   /**
    * Parses the tax or exit requirements.
    *
-   * @param value the value of the tax or exit requirements data object
+   * @param bytes the bytes containing the value of the tax or exit requirements data object
+   * @param offset the offset of the value
+   * @param length the length of the value
    */
-  private void parseTaxOrExitRequirements(byte[] value) {
+  private void parseTaxOrExitRequirements(byte[] bytes, int offset, int length) {
     try {
-      String field = new String(value, "UTF-8");
+      String field = new String(bytes, offset, length, "UTF-8");
       taxOrExitRequirements = field.trim();
     } catch (UnsupportedEncodingException usee) {
       /* NOTE: UTF-8 not supported? Unlikely. In any case use default charset. */
       LOGGER.log(Level.WARNING, "Exception", usee);
-      taxOrExitRequirements = new String(value).trim();
+      taxOrExitRequirements = new String(bytes, offset, length).trim();
     }
   }
 
   /**
    * Parses the endorsements and observations field.
    *
-   * @param value the value of the endorsements and observations data object
+   * @param bytes the bytes containing the value of the endorsements and observations data object
+   * @param offset the offset of the value
+   * @param length the length of the value
    */
-  private void parseEndorsementsAndObservations(byte[] value) {
+  private void parseEndorsementsAndObservations(byte[] bytes, int offset, int length) {
     try {
-      String field = new String(value, "UTF-8");
+      String field = new String(bytes, offset, length, "UTF-8");
       endorsementsAndObservations = field.trim();
     } catch (UnsupportedEncodingException usee) {
       /* NOTE: UTF-8 not supported? Unlikely. In any case use default charset. */
       LOGGER.log(Level.WARNING, "Exception", usee);
-      endorsementsAndObservations = new String(value).trim();
+      endorsementsAndObservations = new String(bytes, offset, length).trim();
     }
   }
 
   /**
    * Parses the name of other person field.
    *
-   * @param value the value of the name of other person data object
+   * @param bytes the bytes containing the value of the name of other person data object
+   * @param offset the offset of the value
+   * @param length the length of the value
    */
-  private synchronized void parseNameOfOtherPerson(byte[] value) {
+  private synchronized void parseNameOfOtherPerson(byte[] bytes, int offset, int length) {
     if (namesOfOtherPersons == null) {
       namesOfOtherPersons = new ArrayList<String>();
     }
     try {
-      String field = new String(value, "UTF-8");
+      String field = new String(bytes, offset, length, "UTF-8");
       namesOfOtherPersons.add(field.trim());
     } catch (UnsupportedEncodingException usee) {
       /* NOTE: UTF-8 not supported? Unlikely. In any case use default charset. */
       LOGGER.log(Level.WARNING, "Exception", usee);
-      namesOfOtherPersons.add(new String(value).trim());
+      namesOfOtherPersons.add(new String(bytes, offset, length).trim());
     }
   }
 
   /**
    * Parses the data of issue field.
    *
-   * @param value the value of the date of issue data object
+   * @param bytes the bytes containing the value of the date of issue data object
+   * @param offset the offset of the value
+   * @param length the length of the value
    */
-  private void parseDateOfIssue(byte[] value) {
-    if (value == null) {
+  private void parseDateOfIssue(byte[] bytes, int offset, int length) {
+    if (bytes == null) {
       throw new IllegalArgumentException("Wrong date format");
     }
 
     /* Try to interpret value as a ccyymmdd formatted date string as per Doc 9303. */
-    if (value.length == 8) {
+    if (length == 8) {
       try {
-        String dateString = new String(value, "UTF-8");
+        String dateString = new String(bytes, offset, length, "UTF-8");
         dateOfIssue = dateString.trim();
         return;
       } catch (UnsupportedEncodingException usee) {
@@ -622,8 +819,8 @@ public class DG12File extends DataGroup {
     LOGGER.warning("DG12 date of issue is not in expected ccyymmdd ASCII format");
 
     /* Some live French MRTDs encode the date as ccyymmdd but in BCD, not in ASCII. */
-    if (value.length == 4) {
-      String dateString = Hex.bytesToHexString(value);
+    if (length == 4) {
+      String dateString = Hex.bytesToHexString(bytes, offset, length);
       dateOfIssue = dateString.trim();
       return;
     }
@@ -635,16 +832,94 @@ public class DG12File extends DataGroup {
   /**
    * Parses the issuing authority field.
    *
-   * @param value the value of the issuing authority data object
+   * @param bytes the bytes containing the value of the issuing authority data object
+   * @param offset the offset of the value
+   * @param length the length of the value
    */
-  private void parseIssuingAuthority(byte[] value) {
+  private void parseIssuingAuthority(byte[] bytes, int offset, int length) {
     try {
-      String field = new String(value, "UTF-8");
+      String field = new String(bytes, offset, length, "UTF-8");
       issuingAuthority = field.trim();
     } catch (UnsupportedEncodingException usee) {
       /* NOTE: Default charset, wtf, UTF-8 not supported? */
       LOGGER.log(Level.WARNING, "Exception", usee);
-      issuingAuthority = (new String(value)).trim();
+      issuingAuthority = (new String(bytes, offset, length)).trim();
+    }
+  }
+
+  /**
+   * Adds a field to the index of fields that have not been decoded yet.
+   *
+   * @param tag the tag of the field
+   * @param offset the offset of the value in the encoded bytes
+   * @param length the length of the value
+   */
+  private void indexField(int tag, int offset, int length) {
+    int index = 3 * undecodedFieldCount;
+    if (index == fieldIndex.length) {
+      fieldIndex = Arrays.copyOf(fieldIndex, 2 * fieldIndex.length + 3);
+    }
+    fieldIndex[index] = tag;
+    fieldIndex[index + 1] = offset;
+    fieldIndex[index + 2] = length;
+    undecodedFieldCount++;
+  }
+
+  /**
+   * Decodes the field (or fields, for names of other persons) with the given tag,
+   * if it has not been decoded yet.
+   *
+   * @param tag the tag of the field
+   */
+  private synchronized void decodeField(int tag) {
+    if (fieldIndex == null) {
+      return;
+    }
+    for (int index = 0; index < fieldIndex.length; index += 3) {
+      if (fieldIndex[index] == tag) {
+        parseField(tag, undecodedBytes, fieldIndex[index + 1], fieldIndex[index + 2]);
+        fieldIndex[index] = 0;
+        undecodedFieldCount--;
+      }
+    }
+    if (undecodedFieldCount == 0) {
+      fieldIndex = null;
+      undecodedBytes = null;
+    }
+  }
+
+  /**
+   * Decodes all fields that have not been decoded yet.
+   */
+  private synchronized void decodeFields() {
+    if (fieldIndex == null) {
+      return;
+    }
+    for (int index = 0; index < fieldIndex.length; index += 3) {
+      int tag = fieldIndex[index];
+      if (tag != 0) {
+        parseField(tag, undecodedBytes, fieldIndex[index + 1], fieldIndex[index + 2]);
+        fieldIndex[index] = 0;
+      }
+    }
+    undecodedFieldCount = 0;
+    fieldIndex = null;
+    undecodedBytes = null;
+  }
+
+  /**
+   * Returns the value of a field as a separate array.
+   *
+   * @param bytes the bytes containing the value
+   * @param offset the offset of the value
+   * @param length the length of the value
+   *
+   * @return the value
+   */
+  private static byte[] copyValue(byte[] bytes, int offset, int length) {
+    if (offset == 0 && length == bytes.length) {
+      return bytes;
     }
+    return Arrays.copyOfRange(bytes, offset, offset + length);
   }
 }
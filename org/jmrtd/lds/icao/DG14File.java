@@ -39,6 +39,7 @@ import org.bouncycastle.asn1.ASN1InputStream;
 import org.bouncycastle.asn1.ASN1Primitive;
 import org.bouncycastle.asn1.ASN1Set;
 import org.bouncycastle.asn1.DLSet;
+import org.jmrtd.io.TLVCursor;
 import org.jmrtd.lds.ActiveAuthenticationInfo;
 import org.jmrtd.lds.ChipAuthenticationInfo;
 import org.jmrtd.lds.ChipAuthenticationPublicKeyInfo;
@@ -111,6 +112,30 @@ public class DG14File extends DataGroup {
     }
   }
 
+  @Override
+  protected void readContent(byte[] bytes, int offset, int length) throws IOException {
+    TLVCursor cursor = new TLVCursor(bytes, offset, length);
+    if (!cursor.next() || cursor.getTag() != 0x31) {
+      throw new IllegalArgumentException("Expected SET of SecurityInfo in DG14");
+    }
+    cursor.descend();
+    securityInfos = new HashSet<SecurityInfo>();
+    while (cursor.next()) {
+      /* Decoded lazily, like the elements of the set on the stream path, so that the same elements fail or are skipped. */
+      ASN1Primitive object = new ASN1InputStream(cursor.getEncoded(), true).readObject();
+      try {
+        SecurityInfo securityInfo = SecurityInfo.getInstance(object);
+        if (securityInfo == null) {
+          LOGGER.warning("Skipping this unsupported SecurityInfo");
+          continue;
+        }
+        securityInfos.add(securityInfo);
+      } catch (Exception e) {
+        LOGGER.log(Level.WARNING, "Skipping Security Info", e);
+      }
+    }
+  }
+
   /* FIXME: rewrite (using writeObject instead of getDERObject) to remove interface dependency on BC. */
   @Override
   protected void writeContent(OutputStream outputStream) throws IOException {
@@ -22,10 +22,12 @@
 
 package org.jmrtd.lds.icao;
 
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 
+import org.jmrtd.io.TLVCursor;
 import org.jmrtd.lds.DataGroup;
 
 import net.sf.scuba.tlv.TLVInputStream;
@@ -77,6 +79,16 @@ public class DG1File extends DataGroup {
     this.mrzInfo = new MRZInfo(tlvIn, length);
   }
 
+  @Override
+  protected void readContent(byte[] bytes, int offset, int length) throws IOException {
+    TLVCursor cursor = new TLVCursor(bytes, offset, length);
+    if (!cursor.skipToTag(MRZ_INFO_TAG)) {
+      throw new IllegalArgumentException("Expected MRZ info tag " + Integer.toHexString(MRZ_INFO_TAG) + " in DG1");
+    }
+    int mrzInfoLength = cursor.getLength();
+    this.mrzInfo = new MRZInfo(new ByteArrayInputStream(bytes, cursor.getValueOffset(), mrzInfoLength), mrzInfoLength);
+  }
+
   /**
    * Returns the MRZ information stored in this file.
    *
@@ -32,18 +32,18 @@ import java.util.Map;
 
 import org.jmrtd.cbeff.BiometricDataBlock;
 import org.jmrtd.cbeff.BiometricDataBlockDecoder;
-import org.jmrtd.cbeff.BiometricDataBlockEncoder;
 import org.jmrtd.cbeff.BiometricEncodingType;
 import org.jmrtd.cbeff.ISO781611;
 import org.jmrtd.cbeff.ISO781611Decoder;
 import org.jmrtd.cbeff.ISO781611Encoder;
 import org.jmrtd.cbeff.StandardBiometricHeader;
+import org.jmrtd.cbeff.StreamingBiometricDataBlockEncoder;
 import org.jmrtd.lds.CBEFFDataGroup;
 import org.jmrtd.lds.iso19794.FaceInfo;
 import org.jmrtd.lds.iso39794.FaceImageDataBlock;
 
 import net.sf.scuba.tlv.TLVInputStream;
-import net.sf.scuba.tlv.TLVOutputStream;
+import net.sf.scuba.tlv.TLVUtil;
 
 /**
  * File structure for the EF_DG2 file.
@@ -93,7 +93,7 @@ public class DG2File extends CBEFFDataGroup {
     return decoders;
   }
 
-  private static final ISO781611Encoder<BiometricDataBlock> ISO_19794_ENCODER = new ISO781611Encoder<BiometricDataBlock>(new BiometricDataBlockEncoder<BiometricDataBlock>() {
+  private static final ISO781611Encoder<BiometricDataBlock> ISO_19794_ENCODER = new ISO781611Encoder<BiometricDataBlock>(new StreamingBiometricDataBlockEncoder<BiometricDataBlock>() {
 
     @Override
     public void encode(BiometricDataBlock info, OutputStream outputStream) throws IOException {
@@ -102,22 +102,39 @@ public class DG2File extends CBEFFDataGroup {
       }
     }
 
+    @Override
+    public int getEncodedLength(BiometricDataBlock info) {
+      if (info instanceof FaceInfo) {
+        return (int)((FaceInfo)info).getRecordLength();
+      }
+      return 0;
+    }
+
     @Override
     public BiometricEncodingType getEncodingType() {
       return BiometricEncodingType.ISO_19794;
     }
   });
 
-  private static final ISO781611Encoder<BiometricDataBlock> ISO_39794_ENCODER = new ISO781611Encoder<BiometricDataBlock>(new BiometricDataBlockEncoder<BiometricDataBlock>() {
+  private static final ISO781611Encoder<BiometricDataBlock> ISO_39794_ENCODER = new ISO781611Encoder<BiometricDataBlock>(new StreamingBiometricDataBlockEncoder<BiometricDataBlock>() {
 
     @Override
     public void encode(BiometricDataBlock info, OutputStream outputStream) throws IOException {
       if (info instanceof FaceImageDataBlock) {
-        TLVOutputStream tlvOutputStream = outputStream instanceof TLVOutputStream ? (TLVOutputStream)outputStream : new TLVOutputStream(outputStream);
-        byte[] encodedFaceImageDataBlock = ((FaceImageDataBlock)info).getEncoded();
-        tlvOutputStream.writeTag(0xA1);
-        tlvOutputStream.writeValue(encodedFaceImageDataBlock);
+        FaceImageDataBlock dataBlock = (FaceImageDataBlock)info;
+        outputStream.write(TLVUtil.getTagAsBytes(0xA1));
+        outputStream.write(TLVUtil.getLengthAsBytes(dataBlock.getEncodedLength()));
+        dataBlock.writeObject(outputStream);
+      }
+    }
+
+    @Override
+    public int getEncodedLength(BiometricDataBlock info) throws IOException {
+      if (info instanceof FaceImageDataBlock) {
+        int length = ((FaceImageDataBlock)info).getEncodedLength();
+        return TLVUtil.getTagAsBytes(0xA1).length + TLVUtil.getLengthAsBytes(length).length + length;
       }
+      return 0;
     }
 
     @Override
@@ -29,21 +29,22 @@ import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Executor;
 
 import org.jmrtd.cbeff.BiometricDataBlock;
 import org.jmrtd.cbeff.BiometricDataBlockDecoder;
-import org.jmrtd.cbeff.BiometricDataBlockEncoder;
 import org.jmrtd.cbeff.BiometricEncodingType;
 import org.jmrtd.cbeff.ISO781611;
 import org.jmrtd.cbeff.ISO781611Decoder;
 import org.jmrtd.cbeff.ISO781611Encoder;
 import org.jmrtd.cbeff.StandardBiometricHeader;
+import org.jmrtd.cbeff.StreamingBiometricDataBlockEncoder;
 import org.jmrtd.lds.CBEFFDataGroup;
 import org.jmrtd.lds.iso19794.FingerInfo;
 import org.jmrtd.lds.iso39794.FingerImageDataBlock;
 
 import net.sf.scuba.tlv.TLVInputStream;
-import net.sf.scuba.tlv.TLVOutputStream;
+import net.sf.scuba.tlv.TLVUtil;
 
 /**
  * File structure for the EF_DG3 file.
@@ -92,7 +93,7 @@ public class DG3File extends CBEFFDataGroup {
     return decoders;
   }
 
-  private static final ISO781611Encoder<BiometricDataBlock> ISO_19794_ENCODER = new ISO781611Encoder<BiometricDataBlock>(new BiometricDataBlockEncoder<BiometricDataBlock>() {
+  private static final ISO781611Encoder<BiometricDataBlock> ISO_19794_ENCODER = new ISO781611Encoder<BiometricDataBlock>(new StreamingBiometricDataBlockEncoder<BiometricDataBlock>() {
 
     @Override
     public void encode(BiometricDataBlock info, OutputStream outputStream) throws IOException {
@@ -101,21 +102,39 @@ public class DG3File extends CBEFFDataGroup {
       }
     }
 
+    @Override
+    public int getEncodedLength(BiometricDataBlock info) {
+      if (info instanceof FingerInfo) {
+        return (int)((FingerInfo)info).getRecordLength();
+      }
+      return 0;
+    }
+
     @Override
     public BiometricEncodingType getEncodingType() {
       return BiometricEncodingType.ISO_19794;
     }
   });
 
-  private static final ISO781611Encoder<BiometricDataBlock> ISO_39794_ENCODER = new ISO781611Encoder<BiometricDataBlock>(new BiometricDataBlockEncoder<BiometricDataBlock>() {
+  private static final ISO781611Encoder<BiometricDataBlock> ISO_39794_ENCODER = new ISO781611Encoder<BiometricDataBlock>(new StreamingBiometricDataBlockEncoder<BiometricDataBlock>() {
 
     @Override
     public void encode(BiometricDataBlock info, OutputStream outputStream) throws IOException {
       if (info instanceof FingerImageDataBlock) {
-        TLVOutputStream tlvOutputStream = outputStream instanceof TLVOutputStream ? (TLVOutputStream)outputStream : new TLVOutputStream(outputStream);
-        tlvOutputStream.writeTag(0xA1);
-        tlvOutputStream.writeValue(((FingerImageDataBlock)info).getEncoded());
+        FingerImageDataBlock dataBlock = (FingerImageDataBlock)info;
+        outputStream.write(TLVUtil.getTagAsBytes(0xA1));
+        outputStream.write(TLVUtil.getLengthAsBytes(dataBlock.getEncodedLength()));
+        dataBlock.writeObject(outputStream);
+      }
+    }
+
+    @Override
+    public int getEncodedLength(BiometricDataBlock info) throws IOException {
+      if (info instanceof FingerImageDataBlock) {
+        int length = ((FingerImageDataBlock)info).getEncodedLength();
+        return TLVUtil.getTagAsBytes(0xA1).length + TLVUtil.getLengthAsBytes(length).length + length;
       }
+      return 0;
     }
 
     @Override
@@ -164,6 +183,21 @@ public class DG3File extends CBEFFDataGroup {
     super(EF_DG3_TAG, inputStream, false);
   }
 
+  /**
+   * Creates a new file based on an input stream, decoding the records concurrently.
+   * The order of the records is preserved.
+   *
+   * @param inputStream an input stream
+   * @param executor the executor on which the records are decoded
+   *
+   * @throws IOException on error reading from input stream
+   *
+   * @since 0.8.4
+   */
+  public DG3File(InputStream inputStream, Executor executor) throws IOException {
+    super(EF_DG3_TAG, inputStream, false, executor);
+  }
+
   public static DG3File createISO19794DG3File(List<FingerInfo> fingerInfos) {
     return new DG3File(BiometricEncodingType.ISO_19794, fingerInfos, false);
   }
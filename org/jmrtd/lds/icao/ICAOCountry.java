@@ -82,9 +82,22 @@ public class ICAOCountry extends Country {
       XXA, XXB, XXC, XXX,
       EUE,
       UNO, UNA, UNK,
-      XBA, XIM, XCC, XCO, XEC, XPO, XOM
+      XBA, XIM, XCC, XCE, XCO, XEC, XPO, XES, XMP, XOM, XDC
   };
 
+  /** The number of values a code character can take, {@code '<'} and {@code 'A'} - {@code 'Z'}. */
+  private static final int CODE_RADIX = 27;
+
+  /** The number of 2-letter codes, 2-letter codes are indexed before 3-letter codes. */
+  private static final int ALPHA2_CODE_COUNT = CODE_RADIX * CODE_RADIX;
+
+  /**
+   * All countries indexed by 2-letter and 3-letter code, see {@link #getIndex(CharSequence)}.
+   * Special ICAO countries take precedence over other countries with the same 3-letter code,
+   * 2-letter codes only refer to other countries.
+   */
+  private static final Country[] INDEX = createIndex();
+
   private String name;
   private String nationality;
   private String alpha2Code;
@@ -131,6 +144,12 @@ public class ICAOCountry extends Country {
    * @return an ICAO country
    */
   public static Country getInstance(String alpha3Code) {
+    if (alpha3Code != null && alpha3Code.length() >= 2) {
+      int index = getIndex(alpha3Code);
+      if (index >= 0 && INDEX[index] != null) {
+        return INDEX[index];
+      }
+    }
     for (ICAOCountry country: VALUES) {
       if (country.alpha3Code.equals(alpha3Code)) {
         return country;
@@ -145,6 +164,26 @@ public class ICAOCountry extends Country {
     throw new IllegalArgumentException("Illegal ICAO country alpha 3 code " + alpha3Code);
   }
 
+  /**
+   * Looks up a country by 2-letter or 3-letter code, including the special ICAO codes,
+   * without allocating. A single letter code is taken as padded with fillers,
+   * so that {@code "D"}, as found in an MRZ field with trailing fillers removed,
+   * denotes the same country as {@code "D<<"}.
+   *
+   * @param code the code, in upper case
+   *
+   * @return the country, or {@code null} if the code is unknown
+   *
+   * @since 0.8.4
+   */
+  public static Country lookup(CharSequence code) {
+    if (code == null) {
+      return null;
+    }
+    int index = getIndex(code);
+    return index < 0 ? null : INDEX[index];
+  }
+
   @Override
   public int valueOf() {
     return -1;
@@ -189,4 +228,74 @@ public class ICAOCountry extends Country {
   public String toAlpha3Code() {
     return alpha3Code;
   }
+
+  /**
+   * Returns the position of a code in the index.
+   *
+   * @param code a 1-letter, 2-letter, or 3-letter code
+   *
+   * @return the position, or {@code -1} if {@code code} is not a code
+   */
+  private static int getIndex(CharSequence code) {
+    int length = code.length();
+    if (length < 1 || length > 3) {
+      return -1;
+    }
+    int index = 0;
+    for (int i = 0; i < length; i++) {
+      char c = code.charAt(i);
+      if (c >= 'A' && c <= 'Z') {
+        index = index * CODE_RADIX + c - 'A' + 1;
+      } else if (c == '<') {
+        index = index * CODE_RADIX;
+      } else {
+        return -1;
+      }
+    }
+    if (length == 1) {
+      /* Padded with fillers. */
+      return ALPHA2_CODE_COUNT + index * CODE_RADIX * CODE_RADIX;
+    }
+    return length == 2 ? index : ALPHA2_CODE_COUNT + index;
+  }
+
+  /**
+   * Creates the index of countries by code.
+   *
+   * @return the index
+   */
+  private static Country[] createIndex() {
+    Country[] index = new Country[ALPHA2_CODE_COUNT + CODE_RADIX * ALPHA2_CODE_COUNT];
+    for (ICAOCountry country: VALUES) {
+      addToIndex(index, country.alpha3Code, country);
+    }
+    try {
+      Country[] countries = Country.values();
+      for (Country country: countries) {
+        addToIndex(index, country.toAlpha2Code(), country);
+        addToIndex(index, country.toAlpha3Code(), country);
+      }
+    } catch (Exception e) {
+      /* NOTE: Lookups not in the index fall back to Country.getInstance(). */
+      LOGGER.log(Level.WARNING, "Could not index countries", e);
+    }
+    return index;
+  }
+
+  /**
+   * Adds a country to the index, unless a country with the same code was added before.
+   *
+   * @param index the index
+   * @param code the 2-letter or 3-letter code of the country
+   * @param country the country
+   */
+  private static void addToIndex(Country[] index, String code, Country country) {
+    if (code == null || (code.length() != 2 && code.length() != 3)) {
+      return;
+    }
+    int position = getIndex(code);
+    if (position >= 0 && index[position] == null) {
+      index[position] = country;
+    }
+  }
 }
@@ -29,6 +29,7 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.io.UnsupportedEncodingException;
+import java.util.Arrays;
 import java.util.Objects;
 
 import org.jmrtd.lds.AbstractLDSInfo;
@@ -112,6 +113,24 @@ public class MRZInfo extends AbstractLDSInfo {
   /** All valid characters in MRZ. */
   private static final String MRZ_CHARS = "<0123456789ABCDEFGHIJKLMNOPQRSTUVWXYZ";
 
+  /** The numerical values of MRZ characters (lower case letters included), indexed by character, -1 for other characters. */
+  private static final byte[] MRZ_CHAR_VALUES = new byte[128];
+
+  /** The 7-3-1 check digit weights. */
+  private static final int[] CHECK_DIGIT_WEIGHTS = { 7, 3, 1 };
+
+  static {
+    Arrays.fill(MRZ_CHAR_VALUES, (byte)-1);
+    MRZ_CHAR_VALUES['<'] = 0;
+    for (char c = '0'; c <= '9'; c++) {
+      MRZ_CHAR_VALUES[c] = (byte)(c - '0');
+    }
+    for (char c = 'A'; c <= 'Z'; c++) {
+      MRZ_CHAR_VALUES[c] = (byte)(c - 'A' + 10);
+      MRZ_CHAR_VALUES[Character.toLowerCase(c)] = (byte)(c - 'A' + 10);
+    }
+  }
+
   private DocumentType documentType;
   private String documentCode;
   private String issuingState;
@@ -743,6 +762,63 @@ public class MRZInfo extends AbstractLDSInfo {
     return checkDigit(str, false);
   }
 
+  /**
+   * Computes the 7-3-1 check digit for a range of characters of the MRZ.
+   *
+   * @param str a part of the MRZ
+   * @param start the index of the first character
+   * @param end the index after the last character
+   *
+   * @return the resulting check digit (in '0' - '9')
+   *
+   * @throws IllegalArgumentException if the range contains characters that cannot occur in an MRZ
+   *
+   * @since 0.8.4
+   */
+  public static char checkDigit(CharSequence str, int start, int end) {
+    if (start < 0 || end > str.length() || start > end) {
+      throw new IllegalArgumentException("Range " + start + " - " + end + " out of bounds for length " + str.length());
+    }
+    int checkSum = getCheckSum(str, start, end, 0);
+    if (checkSum < 0) {
+      throw new IllegalArgumentException("Error in computing check digit, illegal character in \"" + str.subSequence(start, end) + "\"");
+    }
+    return toCheckDigit(checkSum, false);
+  }
+
+  /**
+   * Computes the 7-3-1 weighted sum of a range of characters, as if the range
+   * starts at {@code position} in the sequence of characters protected by a check digit.
+   * This allows check digits to be computed over several ranges without concatenating them.
+   * The check digit is the sum modulo 10.
+   *
+   * @param str the characters
+   * @param start the index of the first character
+   * @param end the index after the last character
+   * @param position the position of the first character in the protected sequence
+   *
+   * @return the (non-negative) weighted sum, or {@code -1} if the range contains characters that cannot occur in an MRZ
+   */
+  static int getCheckSum(CharSequence str, int start, int end, int position) {
+    int sum = 0;
+    int weightIndex = position % 3;
+    for (int i = start; i < end; i++) {
+      char c = str.charAt(i);
+      int value = c < MRZ_CHAR_VALUES.length ? MRZ_CHAR_VALUES[c] : -1;
+      if (value < 0) {
+        return -1;
+      }
+      sum += CHECK_DIGIT_WEIGHTS[weightIndex] * value;
+      if (++weightIndex == 3) {
+        weightIndex = 0;
+        if (sum >= 1 << 24) {
+          sum %= 10;
+        }
+      }
+    }
+    return sum;
+  }
+
   /* ONLY PRIVATE METHODS BELOW */
 
   /**
@@ -1362,14 +1438,16 @@ public class MRZInfo extends AbstractLDSInfo {
   }
 
   /**
-   * Returns the composite part over which the composite check digit is computed.
+   * Computes the composite check digit.
+   * The parts of the MRZ protected by the composite check digit are summed
+   * at their positions, instead of being concatenated first.
    *
-   * @param documentType the type of document, either {@code DOC_TYPE_ID1} or {@code DOC_TYPE_ID3}
+   * @param documentType the type of document
    *
-   * @return a string with the composite part
+   * @return the composite check digit, {@code '0'} for visas which have no composite check digit
    */
-  private String getComposite(DocumentType documentType) {
-    StringBuilder composite = new StringBuilder();
+  private char getCompositeCheckDigit(DocumentType documentType) {
+    int sum = 0;
     int documentNumberLength = documentNumber.length();
 
     switch (documentType) {
@@ -1384,57 +1462,54 @@ public class MRZInfo extends AbstractLDSInfo {
        * 19-29, i.e., optionalData2(11)
        */
       if (documentNumberLength <= 9) {
-        composite.append(mrzFormat(documentNumber, 9));
-        composite.append(documentNumberCheckDigit);
-        composite.append(mrzFormat(optionalData1, 15));
+        sum += getFormattedCheckSum(documentNumber, 9, 0);
+        sum += getCheckSum(documentNumberCheckDigit, 9);
+        sum += getFormattedCheckSum(optionalData1, 15, 10);
       } else {
-        /* Document number, first 9 characters. */
-        composite.append(documentNumber.substring(0, 9));
-        composite.append("<"); /* Filler instead of check digit. */
+        /* Document number, first 9 characters, followed by a filler instead of check digit. */
+        sum += getCheckSum(documentNumber, 0, 9, 0);
 
         /* Remainder of document number. */
-        String documentNumberRemainder = documentNumber.substring(9);
-        composite.append(documentNumberRemainder);
-        composite.append(documentNumberCheckDigit);
-        composite.append('<');
-
-        /* Remainder of optional data 1 (removing any prefix). */
-        String optionalData1Remainder = mrzFormat(optionalData1, 15 - 2 - documentNumberRemainder.length());
-        composite.append(optionalData1Remainder);
+        int documentNumberRemainderLength = documentNumberLength - 9;
+        sum += getCheckSum(documentNumber, 9, documentNumberLength, 10);
+        sum += getCheckSum(documentNumberCheckDigit, 10 + documentNumberRemainderLength);
+
+        /* Remainder of optional data 1 (removing any prefix), after a filler. */
+        sum += getFormattedCheckSum(optionalData1, 15 - 2 - documentNumberRemainderLength, 12 + documentNumberRemainderLength);
       }
-      composite.append(dateOfBirth);
-      composite.append(dateOfBirthCheckDigit);
-      composite.append(dateOfExpiry);
-      composite.append(dateOfExpiryCheckDigit);
-      composite.append(mrzFormat(optionalData2, 11));
-      return composite.toString();
+      sum += getCheckSum(dateOfBirth, 0, dateOfBirth.length(), 25);
+      sum += getCheckSum(dateOfBirthCheckDigit, 25 + dateOfBirth.length());
+      sum += getCheckSum(dateOfExpiry, 0, dateOfExpiry.length(), 26 + dateOfBirth.length());
+      sum += getCheckSum(dateOfExpiryCheckDigit, 26 + dateOfBirth.length() + dateOfExpiry.length());
+      sum += getFormattedCheckSum(optionalData2, 11, 27 + dateOfBirth.length() + dateOfExpiry.length());
+      return toCheckDigit(sum, false);
     case TD2:
       /* Composite check digit lower line: 1-10, 14-20, 22-35. */
-      composite.append(documentNumber);
-      composite.append(documentNumberCheckDigit);
-      composite.append(dateOfBirth);
-      composite.append(dateOfBirthCheckDigit);
-      composite.append(dateOfExpiry);
-      composite.append(dateOfExpiryCheckDigit);
-      composite.append(mrzFormat(optionalData1, 7));
-      return composite.toString();
+      sum += getCheckSum(documentNumber, 0, documentNumberLength, 0);
+      sum += getCheckSum(documentNumberCheckDigit, documentNumberLength);
+      sum += getCheckSum(dateOfBirth, 0, dateOfBirth.length(), documentNumberLength + 1);
+      sum += getCheckSum(dateOfBirthCheckDigit, documentNumberLength + 1 + dateOfBirth.length());
+      sum += getCheckSum(dateOfExpiry, 0, dateOfExpiry.length(), documentNumberLength + 2 + dateOfBirth.length());
+      sum += getCheckSum(dateOfExpiryCheckDigit, documentNumberLength + 2 + dateOfBirth.length() + dateOfExpiry.length());
+      sum += getFormattedCheckSum(optionalData1, 7, documentNumberLength + 3 + dateOfBirth.length() + dateOfExpiry.length());
+      return toCheckDigit(sum, false);
     case MRVB:
       /* No composite checkdigit for MRV-B. */
-      return null;
+      return '0';
     case TD3:
       /* Composite check digit lower line: 1-10, 14-20, 22-43. */
-      composite.append(mrzFormat(documentNumber, 9));
-      composite.append(documentNumberCheckDigit);
-      composite.append(dateOfBirth);
-      composite.append(dateOfBirthCheckDigit);
-      composite.append(dateOfExpiry);
-      composite.append(dateOfExpiryCheckDigit);
-      composite.append(mrzFormat(optionalData1, 14));
-      composite.append(personalNumberCheckDigit);
-      return composite.toString();
+      sum += getFormattedCheckSum(documentNumber, 9, 0);
+      sum += getCheckSum(documentNumberCheckDigit, 9);
+      sum += getCheckSum(dateOfBirth, 0, dateOfBirth.length(), 10);
+      sum += getCheckSum(dateOfBirthCheckDigit, 10 + dateOfBirth.length());
+      sum += getCheckSum(dateOfExpiry, 0, dateOfExpiry.length(), 11 + dateOfBirth.length());
+      sum += getCheckSum(dateOfExpiryCheckDigit, 11 + dateOfBirth.length() + dateOfExpiry.length());
+      sum += getFormattedCheckSum(optionalData1, 14, 12 + dateOfBirth.length() + dateOfExpiry.length());
+      sum += getCheckSum(personalNumberCheckDigit, 26 + dateOfBirth.length() + dateOfExpiry.length());
+      return toCheckDigit(sum, false);
     case MRVA:
       /* No composite checkdigit for MRV-A. */
-      return null;
+      return '0';
     default:
       throw new IllegalStateException("Unsupported document type");
     }
@@ -1450,10 +1525,10 @@ public class MRZInfo extends AbstractLDSInfo {
     this.dateOfExpiryCheckDigit = checkDigit(dateOfExpiry);
 
     if (documentType == DocumentType.TD3 && optionalData1.length() < 15) {
-      this.personalNumberCheckDigit = checkDigit(mrzFormat(optionalData1, 14), true); /* FIXME: Uses '<' over '0'. Where specified? */
+      this.personalNumberCheckDigit = toCheckDigit(getFormattedCheckSum(optionalData1, 14, 0), true); /* FIXME: Uses '<' over '0'. Where specified? */
     }
 
-    this.compositeCheckDigit = checkDigit(getComposite(documentType));
+    this.compositeCheckDigit = getCompositeCheckDigit(documentType);
   }
 
   /**
@@ -1656,146 +1731,117 @@ public class MRZInfo extends AbstractLDSInfo {
    * @return the resulting check digit (in '0' - '9', '<')
    */
   private static char checkDigit(String str, boolean preferFillerOverZero) {
-    try {
-      byte[] chars = str == null ? new byte[] { } : str.getBytes("UTF-8");
-      int[] weights = { 7, 3, 1 };
-      int result = 0;
-      for (int i = 0; i < chars.length; i++) {
-        result = (result + weights[i % 3] * decodeMRZDigit(chars[i])) % 10;
-      }
-      String checkDigitString = Integer.toString(result);
-      if (checkDigitString.length() != 1) {
-        throw new IllegalStateException("Error in computing check digit."); /* NOTE: Never happens. */
-      }
-      char checkDigit = (char)checkDigitString.getBytes("UTF-8")[0];
-      if (preferFillerOverZero && checkDigit == '0') {
-        checkDigit = '<';
-      }
-      return checkDigit;
-    } catch (NumberFormatException nfe) {
-      /* NOTE: never happens. */
-      throw new IllegalStateException("Error in computing check digit", nfe);
-    } catch (UnsupportedEncodingException usee) {
-      /* NOTE: never happens. */
-      throw new IllegalStateException("Error in computing check digit", usee);
-    } catch (Exception e) {
-      throw new IllegalArgumentException("Error in computing check digit", e);
+    return toCheckDigit(getCheckSum(str, 0), preferFillerOverZero);
+  }
+
+  /**
+   * Converts a 7-3-1 weighted sum to a check digit.
+   *
+   * @param checkSum the weighted sum
+   * @param preferFillerOverZero a boolean indicating whether fillers should be preferred
+   *
+   * @return the resulting check digit (in '0' - '9', '<')
+   */
+  private static char toCheckDigit(int checkSum, boolean preferFillerOverZero) {
+    int checkDigit = checkSum % 10;
+    if (preferFillerOverZero && checkDigit == 0) {
+      return '<';
+    }
+    return (char)('0' + checkDigit);
+  }
+
+  /**
+   * Computes the 7-3-1 weighted sum of part of the MRZ.
+   *
+   * @param str a part of the MRZ, or {@code null}
+   * @param position the position of {@code str} in the sequence protected by a check digit
+   *
+   * @return the weighted sum
+   *
+   * @throws IllegalStateException if {@code str} contains characters that cannot occur in an MRZ
+   */
+  private static int getCheckSum(String str, int position) {
+    return str == null ? 0 : getCheckSum(str, 0, str.length(), position);
+  }
+
+  /**
+   * Computes the 7-3-1 weighted sum of a range of a part of the MRZ.
+   *
+   * @param str a part of the MRZ
+   * @param start the index of the first character
+   * @param end the index after the last character
+   * @param position the position of the range in the sequence protected by a check digit
+   *
+   * @return the weighted sum
+   *
+   * @throws IllegalStateException if the range contains characters that cannot occur in an MRZ
+   */
+  private static int getCheckSum(String str, int start, int end, int position) {
+    int checkSum = getCheckSum((CharSequence)str, start, end, position);
+    if (checkSum < 0) {
+      throw new IllegalStateException("Error in computing check digit, illegal character in \"" + str + "\"");
     }
+    return checkSum;
   }
 
   /**
-   * Looks up the numerical value for MRZ characters. In order to be able
-   * to compute check digits.
+   * Computes the 7-3-1 weighted contribution of a single MRZ character.
    *
-   * @param ch a character from the MRZ.
+   * @param c the character
+   * @param position the position of {@code c} in the sequence protected by a check digit
    *
-   * @return the numerical value of the character.
+   * @return the weighted value
    *
-   * @throws NumberFormatException if {@code ch} is not a valid MRZ character
+   * @throws IllegalStateException if {@code c} cannot occur in an MRZ
    */
-  private static int decodeMRZDigit(byte ch) {
-    switch (ch) {
-    case '<':
-    case '0':
+  private static int getCheckSum(char c, int position) {
+    int value = c < MRZ_CHAR_VALUES.length ? MRZ_CHAR_VALUES[c] : -1;
+    if (value < 0) {
+      throw new IllegalStateException("Error in computing check digit, illegal character '" + c + "'");
+    }
+    return CHECK_DIGIT_WEIGHTS[position % 3] * value;
+  }
+
+  /**
+   * Computes the 7-3-1 weighted sum of a field as formatted by {@link #mrzFormat(String, int)},
+   * without formatting it. Characters that would be replaced by fillers do not contribute.
+   *
+   * @param str the field, or {@code null}
+   * @param width the width of the formatted field
+   * @param position the position of the field in the sequence protected by a check digit
+   *
+   * @return the weighted sum
+   *
+   * @throws IllegalArgumentException if {@code str} is wider than {@code width}
+   */
+  private static int getFormattedCheckSum(String str, int width, int position) {
+    if (str == null) {
       return 0;
-    case '1':
-      return 1;
-    case '2':
-      return 2;
-    case '3':
-      return 3;
-    case '4':
-      return 4;
-    case '5':
-      return 5;
-    case '6':
-      return 6;
-    case '7':
-      return 7;
-    case '8':
-      return 8;
-    case '9':
-      return 9;
-    case 'a':
-    case 'A':
-      return 10;
-    case 'b':
-    case 'B':
-      return 11;
-    case 'c':
-    case 'C':
-      return 12;
-    case 'd':
-    case 'D':
-      return 13;
-    case 'e':
-    case 'E':
-      return 14;
-    case 'f':
-    case 'F':
-      return 15;
-    case 'g':
-    case 'G':
-      return 16;
-    case 'h':
-    case 'H':
-      return 17;
-    case 'i':
-    case 'I':
-      return 18;
-    case 'j':
-    case 'J':
-      return 19;
-    case 'k':
-    case 'K':
-      return 20;
-    case 'l':
-    case 'L':
-      return 21;
-    case 'm':
-    case 'M':
-      return 22;
-    case 'n':
-    case 'N':
-      return 23;
-    case 'o':
-    case 'O':
-      return 24;
-    case 'p':
-    case 'P':
-      return 25;
-    case 'q':
-    case 'Q':
-      return 26;
-    case 'r':
-    case 'R':
-      return 27;
-    case 's':
-    case 'S':
-      return 28;
-    case 't':
-    case 'T':
-      return 29;
-    case 'u':
-    case 'U':
-      return 30;
-    case 'v':
-    case 'V':
-      return 31;
-    case 'w':
-    case 'W':
-      return 32;
-    case 'x':
-    case 'X':
-      return 33;
-    case 'y':
-    case 'Y':
-      return 34;
-    case 'z':
-    case 'Z':
-      return 35;
-    default:
-      throw new NumberFormatException("Could not decode MRZ character " + ch + " ('" + Character.toString((char) ch) + "')");
     }
+    if (str.length() > width) {
+      throw new IllegalArgumentException("Argument too wide (" + str.length() + " > " + width + ")");
+    }
+    int start = 0;
+    int end = str.length();
+    while (start < end && str.charAt(start) <= ' ') {
+      start++;
+    }
+    while (end > start && str.charAt(end - 1) <= ' ') {
+      end--;
+    }
+    int sum = 0;
+    int weightIndex = position % 3;
+    for (int i = start; i < end; i++) {
+      char c = str.charAt(i);
+      int value = c < MRZ_CHAR_VALUES.length ? MRZ_CHAR_VALUES[c] : -1;
+      if (value > 0) {
+        sum += CHECK_DIGIT_WEIGHTS[weightIndex] * value;
+      }
+      if (++weightIndex == 3) {
+        weightIndex = 0;
+      }
+    }
+    return sum;
   }
+
 }
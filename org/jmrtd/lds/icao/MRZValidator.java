@@ -0,0 +1,170 @@
+/*
+ * JMRTD - A Java API for accessing machine readable travel documents.
+ *
+ * Copyright (C) 2006 - 2026  The JMRTD team
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA
+ *
+ * $Id: $
+ */
+
+package org.jmrtd.lds.icao;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Executor;
+
+import org.jmrtd.lds.BoundedBatch;
+
+/**
+ * Validates large numbers of MRZs in parallel, using {@link MRZView}.
+ *
+ * The MRZs are read sequentially by the calling thread in chunks, and the chunks
+ * are validated on an executor. The number of MRZs held in memory is bounded,
+ * so that the MRZs may be produced lazily by the iterable. A chunk releases its MRZs
+ * once validated, only the results are kept until the run ends.
+ *
+ * @author The JMRTD team (info@jmrtd.org)
+ *
+ * @version $Revision: $
+ *
+ * @since 0.8.4
+ */
+public class MRZValidator {
+
+  private static final int CHUNK_SIZE = 1024;
+
+  private final Executor executor;
+
+  private final int parallelism;
+
+  /**
+   * Creates a validator that validates on the calling thread.
+   */
+  public MRZValidator() {
+    this(null, 1);
+  }
+
+  /**
+   * Creates a validator.
+   * The executor is not shut down by the validator, so it can be shared between runs and validators.
+   *
+   * @param executor the executor on which the chunks are validated, or {@code null} to validate on the calling thread
+   * @param parallelism the number of chunks to validate concurrently, typically the number of threads of the executor
+   */
+  public MRZValidator(Executor executor, int parallelism) {
+    if (parallelism <= 0) {
+      throw new IllegalArgumentException("Parallelism should be positive, found " + parallelism);
+    }
+
+    this.executor = executor;
+    this.parallelism = parallelism;
+  }
+
+  /**
+   * Validates MRZs.
+   * An MRZ that is {@code null} or that cannot be parsed fails the {@link MRZView.Check#FORMAT} check.
+   *
+   * @param mrzs the MRZs, each as one line or as separate lines
+   *
+   * @return the failed checks for each MRZ, in the order of {@code mrzs}, an empty set for valid MRZs
+   *
+   * @throws InterruptedException if interrupted while waiting for the workers
+   */
+  public List<Set<MRZView.Check>> validate(Iterable<? extends CharSequence> mrzs) throws InterruptedException {
+    Iterator<? extends CharSequence> iterator = mrzs.iterator();
+    Chunk firstChunk = readChunk(iterator);
+    if (!iterator.hasNext() || executor == null || parallelism == 1) {
+      /* Not worth the hand-over. */
+      List<Set<MRZView.Check>> results = new ArrayList<Set<MRZView.Check>>(firstChunk.results.length);
+      for (Chunk chunk = firstChunk; chunk != null; chunk = iterator.hasNext() ? readChunk(iterator) : null) {
+        chunk.run();
+        if (chunk.exception != null) {
+          throw chunk.exception;
+        }
+        results.addAll(Arrays.asList(chunk.results));
+      }
+      return results;
+    }
+
+    List<Chunk> chunks = new ArrayList<Chunk>();
+    BoundedBatch batch = new BoundedBatch(executor, 2 * parallelism);
+    try {
+      chunks.add(firstChunk);
+      batch.submit(firstChunk);
+      while (iterator.hasNext()) {
+        batch.awaitCapacity();
+        Chunk chunk = readChunk(iterator);
+        chunks.add(chunk);
+        batch.submit(chunk);
+      }
+    } finally {
+      batch.finish();
+    }
+
+    List<Set<MRZView.Check>> results = new ArrayList<Set<MRZView.Check>>(chunks.size() * CHUNK_SIZE);
+    for (Chunk chunk: chunks) {
+      if (chunk.exception != null) {
+        throw chunk.exception;
+      }
+      results.addAll(Arrays.asList(chunk.results));
+    }
+    return results;
+  }
+
+  /* ONLY PRIVATE METHODS BELOW */
+
+  private static Chunk readChunk(Iterator<? extends CharSequence> iterator) {
+    CharSequence[] mrzs = new CharSequence[CHUNK_SIZE];
+    int count = 0;
+    while (count < CHUNK_SIZE && iterator.hasNext()) {
+      mrzs[count++] = iterator.next();
+    }
+    return new Chunk(count < CHUNK_SIZE ? Arrays.copyOf(mrzs, count) : mrzs);
+  }
+
+  /**
+   * A number of consecutive MRZs and their results.
+   */
+  private static class Chunk implements Runnable {
+
+    /* Cleared once validated, so that only the results are retained. */
+    private CharSequence[] mrzs;
+    private final Set<MRZView.Check>[] results;
+    private RuntimeException exception;
+
+    @SuppressWarnings("unchecked")
+    public Chunk(CharSequence[] mrzs) {
+      this.mrzs = mrzs;
+      this.results = (Set<MRZView.Check>[])new Set<?>[mrzs.length];
+    }
+
+    @Override
+    public void run() {
+      try {
+        for (int i = 0; i < mrzs.length; i++) {
+          results[i] = MRZView.validate(mrzs[i]);
+        }
+      } catch (RuntimeException re) {
+        exception = re;
+      } finally {
+        mrzs = null;
+      }
+    }
+  }
+}
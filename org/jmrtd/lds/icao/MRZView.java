@@ -0,0 +1,754 @@
+/*
+ * JMRTD - A Java API for accessing machine readable travel documents.
+ *
+ * Copyright (C) 2006 - 2026  The JMRTD team
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA
+ *
+ * $Id: $
+ */
+
+package org.jmrtd.lds.icao;
+
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.Set;
+
+/**
+ * A view of the fields of a machine readable zone held in a character sequence.
+ *
+ * Parsing only records the positions of the lines and fields. Fields are returned
+ * as character sequences backed by the parsed sequence, and check digits are
+ * verified on the parsed sequence itself, so no intermediate strings are created.
+ * The parsed sequence should not be modified while the view is in use.
+ * Use {@link #toMRZInfo()} to obtain the complete MRZ info.
+ *
+ * The MRZ may be given as one line, or as separate lines separated by newlines.
+ * Leading and trailing whitespace is ignored. Field views do not include trailing
+ * filler characters, but fillers within fields (for instance between name
+ * components) are not replaced.
+ *
+ * @author The JMRTD team (info@jmrtd.org)
+ *
+ * @version $Revision: $
+ *
+ * @since 0.8.4
+ */
+public final class MRZView {
+
+  /**
+   * The layout of an MRZ.
+   */
+  public enum Format {
+
+    /** MROTD 3 lines of 30 characters, as per part 5. */
+    TD1(3, 30),
+
+    /** MROTD 2 lines of 36 characters, as per part 6. */
+    TD2(2, 36),
+
+    /** MRP 2 lines of 44 characters, as per part 4. */
+    TD3(2, 44),
+
+    /** MRV type A, 2 lines of 44 characters. */
+    MRVA(2, 44),
+
+    /** MRV type B, 2 lines of 36 characters. */
+    MRVB(2, 36);
+
+    private final int lineCount;
+    private final int lineLength;
+
+    /**
+     * Constructs a format.
+     *
+     * @param lineCount the number of lines
+     * @param lineLength the number of characters per line
+     */
+    Format(int lineCount, int lineLength) {
+      this.lineCount = lineCount;
+      this.lineLength = lineLength;
+    }
+
+    /**
+     * Returns the number of lines.
+     *
+     * @return the number of lines
+     */
+    public int getLineCount() {
+      return lineCount;
+    }
+
+    /**
+     * Returns the number of characters per line.
+     *
+     * @return the number of characters per line
+     */
+    public int getLineLength() {
+      return lineLength;
+    }
+  }
+
+  /**
+   * The checks performed by {@link MRZView#validate()}.
+   */
+  public enum Check {
+
+    /** The MRZ could not be parsed, or contains characters other than {@code 0-9}, {@code A-Z}, and {@code <}. */
+    FORMAT,
+
+    /** The document code is consistent with the format. */
+    DOCUMENT_CODE,
+
+    /** The check digit over the document number. */
+    DOCUMENT_NUMBER,
+
+    /** The check digit over the date of birth. */
+    DATE_OF_BIRTH,
+
+    /** The check digit over the date of expiry. */
+    DATE_OF_EXPIRY,
+
+    /** The check digit over the personal number (TD3 only). */
+    PERSONAL_NUMBER,
+
+    /** The composite check digit (TD1, TD2, and TD3). */
+    COMPOSITE
+  }
+
+  private static final Check[] CHECKS = Check.values();
+
+  private static final Set<Check> FORMAT_FAILED = Collections.unmodifiableSet(EnumSet.of(Check.FORMAT));
+
+  private final CharSequence mrz;
+
+  private final Format format;
+
+  /* Offsets of the lines in the sequence. */
+  private final int[] lineOffsets;
+
+  /* Offsets of the fields in the sequence, -1 if absent. */
+  private final int nameOffset;
+  private final int nameLength;
+  private final int documentNumberOffset;
+  private final int documentNumberExtensionOffset;
+  private final int documentNumberExtensionLength;
+  private final int documentNumberCheckDigitOffset;
+  private final int nationalityOffset;
+  private final int dateOfBirthOffset;
+  private final int genderOffset;
+  private final int dateOfExpiryOffset;
+  private final int optionalData1Offset;
+  private final int optionalData1Length;
+  private final int optionalData2Offset;
+  private final int optionalData2Length;
+  private final int personalNumberCheckDigitOffset;
+  private final int compositeCheckDigitOffset;
+
+  /**
+   * Constructs a view after the lines have been located.
+   *
+   * @param mrz the sequence
+   * @param format the format
+   * @param lineOffsets the offsets of the lines
+   */
+  private MRZView(CharSequence mrz, Format format, int[] lineOffsets) {
+    this.mrz = mrz;
+    this.format = format;
+    this.lineOffsets = lineOffsets;
+
+    if (format == Format.TD1) {
+      int line0 = lineOffsets[0];
+      int line1 = lineOffsets[1];
+      documentNumberOffset = line0 + 5;
+      optionalData2Offset = line1 + 18;
+      optionalData2Length = 11;
+      nationalityOffset = line1 + 15;
+      dateOfBirthOffset = line1;
+      genderOffset = line1 + 7;
+      dateOfExpiryOffset = line1 + 8;
+      compositeCheckDigitOffset = line1 + 29;
+      personalNumberCheckDigitOffset = -1;
+      nameOffset = lineOffsets[2];
+      nameLength = 30;
+
+      /* Line 1, pos 16 to 30 is optional data, unless the document number is extended into it, see note j. */
+      int optionalData1Start = line0 + 15;
+      int optionalData1End = line0 + 30;
+      if (mrz.charAt(line0 + 14) == '<' && trimEnd(optionalData1Start, optionalData1End) > optionalData1Start) {
+        int extensionEnd = optionalData1Start;
+        while (extensionEnd < optionalData1End && mrz.charAt(extensionEnd) != '<') {
+          extensionEnd++;
+        }
+        if (extensionEnd == optionalData1Start) {
+          /* Malformed extension, the check digit will not match. */
+          documentNumberExtensionOffset = optionalData1Start;
+          documentNumberExtensionLength = 0;
+          documentNumberCheckDigitOffset = line0 + 14;
+        } else {
+          documentNumberExtensionOffset = optionalData1Start;
+          documentNumberExtensionLength = extensionEnd - 1 - optionalData1Start;
+          documentNumberCheckDigitOffset = extensionEnd - 1;
+        }
+        optionalData1Offset = Math.min(extensionEnd + 1, optionalData1End);
+      } else {
+        documentNumberExtensionOffset = -1;
+        documentNumberExtensionLength = 0;
+        documentNumberCheckDigitOffset = line0 + 14;
+        optionalData1Offset = optionalData1Start;
+      }
+      optionalData1Length = optionalData1End - optionalData1Offset;
+    } else {
+      int line0 = lineOffsets[0];
+      int line1 = lineOffsets[1];
+      nameOffset = line0 + 5;
+      nameLength = format.getLineLength() - 5;
+      documentNumberOffset = line1;
+      nationalityOffset = line1 + 10;
+      dateOfBirthOffset = line1 + 13;
+      genderOffset = line1 + 20;
+      dateOfExpiryOffset = line1 + 21;
+      optionalData2Offset = -1;
+      optionalData2Length = 0;
+
+      int optionalData1Start = line1 + 28;
+      int optionalData1FieldLength;
+      switch (format) {
+        case TD2:
+          optionalData1FieldLength = 7;
+          personalNumberCheckDigitOffset = -1;
+          compositeCheckDigitOffset = line1 + 35;
+          break;
+        case MRVB:
+          optionalData1FieldLength = 8;
+          personalNumberCheckDigitOffset = -1;
+          compositeCheckDigitOffset = -1;
+          break;
+        case TD3:
+          optionalData1FieldLength = 14;
+          personalNumberCheckDigitOffset = line1 + 42;
+          compositeCheckDigitOffset = line1 + 43;
+          break;
+        case MRVA:
+          /* Fall through... */
+        default:
+          optionalData1FieldLength = 16;
+          personalNumberCheckDigitOffset = -1;
+          compositeCheckDigitOffset = -1;
+          break;
+      }
+
+      /* For TD2 the document number can be extended into the optional data, see note j. */
+      int optionalData1End = trimEnd(optionalData1Start, optionalData1Start + optionalData1FieldLength);
+      if (format == Format.TD2 && mrz.charAt(line1 + 9) == '<' && optionalData1End > optionalData1Start) {
+        documentNumberExtensionOffset = optionalData1Start;
+        documentNumberExtensionLength = optionalData1End - 1 - optionalData1Start;
+        documentNumberCheckDigitOffset = optionalData1End - 1;
+        optionalData1Offset = optionalData1End;
+      } else {
+        documentNumberExtensionOffset = -1;
+        documentNumberExtensionLength = 0;
+        documentNumberCheckDigitOffset = line1 + 9;
+        optionalData1Offset = optionalData1Start;
+      }
+      optionalData1Length = optionalData1Start + optionalData1FieldLength - optionalData1Offset;
+    }
+  }
+
+  /**
+   * Parses an MRZ.
+   *
+   * @param mrz the MRZ, as one line or as separate lines
+   *
+   * @return a view of the fields of the MRZ
+   *
+   * @throws IllegalArgumentException if the number or length of the lines does not match any of the formats
+   */
+  public static MRZView parse(CharSequence mrz) {
+    if (mrz == null) {
+      throw new IllegalArgumentException("Null MRZ");
+    }
+
+    int start = 0;
+    int end = mrz.length();
+    while (start < end && mrz.charAt(start) <= ' ') {
+      start++;
+    }
+    while (end > start && mrz.charAt(end - 1) <= ' ') {
+      end--;
+    }
+
+    int[] lineOffsets = new int[3];
+    int lineCount = 0;
+    int lineLength = -1;
+    int lineStart = start;
+    for (int i = start; i <= end; i++) {
+      if (i < end && mrz.charAt(i) != '\n') {
+        continue;
+      }
+
+      int lineEnd = i;
+      if (lineEnd > lineStart && mrz.charAt(lineEnd - 1) == '\r') {
+        lineEnd--;
+      }
+      if (lineCount == 3) {
+        throw new IllegalArgumentException("Was expecting at most 3 lines");
+      }
+      if (lineCount > 0 && lineEnd - lineStart != lineLength) {
+        throw new IllegalArgumentException("Line " + (lineCount + 1) + " has length " + (lineEnd - lineStart) + ", was expecting " + lineLength);
+      }
+      lineLength = lineEnd - lineStart;
+      lineOffsets[lineCount++] = lineStart;
+      lineStart = i + 1;
+    }
+
+    boolean isVisa = end > start && mrz.charAt(start) == 'V';
+    Format format = null;
+    if (lineCount == 1) {
+      format = getFormat(lineLength, isVisa);
+      if (format != null) {
+        for (int line = 1; line < format.getLineCount(); line++) {
+          lineOffsets[line] = start + line * format.getLineLength();
+        }
+      }
+    } else {
+      format = getFormat(lineCount * lineLength, isVisa);
+      if (format != null && format.getLineCount() != lineCount) {
+        format = null;
+      }
+    }
+    if (format == null) {
+      throw new IllegalArgumentException("Unsupported MRZ layout, " + lineCount + " line(s) of " + lineLength + " characters");
+    }
+
+    return new MRZView(mrz, format, lineOffsets);
+  }
+
+  /**
+   * Parses and validates an MRZ.
+   *
+   * @param mrz the MRZ, as one line or as separate lines
+   *
+   * @return the failed checks, an empty set if the MRZ is valid
+   *
+   * @see #validate()
+   */
+  public static Set<Check> validate(CharSequence mrz) {
+    if (mrz == null) {
+      return FORMAT_FAILED;
+    }
+    try {
+      return parse(mrz).validate();
+    } catch (IllegalArgumentException iae) {
+      return FORMAT_FAILED;
+    }
+  }
+
+  /**
+   * Returns the format of the MRZ.
+   *
+   * @return the format
+   */
+  public Format getFormat() {
+    return format;
+  }
+
+  /**
+   * Returns the document code.
+   *
+   * @return the document code
+   */
+  public CharSequence getDocumentCode() {
+    return getField(lineOffsets[0], 2);
+  }
+
+  /**
+   * Returns the issuing state or organization.
+   *
+   * @return a 3 letter code (or shorter)
+   */
+  public CharSequence getIssuingState() {
+    return getField(lineOffsets[0] + 2, 3);
+  }
+
+  /**
+   * Returns the name field, with the primary and secondary identifiers
+   * separated by two fillers.
+   *
+   * @return the name
+   */
+  public CharSequence getName() {
+    return getField(nameOffset, nameLength);
+  }
+
+  /**
+   * Returns the primary identifier, i.e. the part of the name before the first two fillers.
+   *
+   * @return the primary identifier
+   */
+  public CharSequence getPrimaryIdentifier() {
+    int separatorOffset = indexOfNameSeparator();
+    return separatorOffset < 0 ? getName() : getField(nameOffset, separatorOffset - nameOffset);
+  }
+
+  /**
+   * Returns the secondary identifier, i.e. the part of the name after the first two fillers.
+   *
+   * @return the secondary identifier, which may be empty
+   */
+  public CharSequence getSecondaryIdentifier() {
+    int separatorOffset = indexOfNameSeparator();
+    if (separatorOffset < 0) {
+      return getField(nameOffset, 0);
+    }
+    return getField(separatorOffset + 2, nameOffset + nameLength - separatorOffset - 2);
+  }
+
+  /**
+   * Returns the document number, including the part that was extended into the optional data.
+   *
+   * @return the document number
+   */
+  public CharSequence getDocumentNumber() {
+    if (documentNumberExtensionOffset < 0) {
+      return getField(documentNumberOffset, 9);
+    }
+    int end = trimEnd(documentNumberOffset, documentNumberOffset + 9);
+    return new FieldView(mrz, documentNumberOffset, end, documentNumberExtensionOffset,
+        trimEnd(documentNumberExtensionOffset, documentNumberExtensionOffset + documentNumberExtensionLength));
+  }
+
+  /**
+   * Returns the nationality.
+   *
+   * @return a 3 letter code (or shorter)
+   */
+  public CharSequence getNationality() {
+    return getField(nationalityOffset, 3);
+  }
+
+  /**
+   * Returns the date of birth.
+   *
+   * @return the date of birth in {@code yyMMdd} format
+   */
+  public CharSequence getDateOfBirth() {
+    return getField(dateOfBirthOffset, 6);
+  }
+
+  /**
+   * Returns the gender.
+   *
+   * @return one of {@code M}, {@code F}, or empty (for {@code <})
+   */
+  public CharSequence getGender() {
+    return getField(genderOffset, 1);
+  }
+
+  /**
+   * Returns the date of expiry.
+   *
+   * @return the date of expiry in {@code yyMMdd} format
+   */
+  public CharSequence getDateOfExpiry() {
+    return getField(dateOfExpiryOffset, 6);
+  }
+
+  /**
+   * Returns the (first) optional data field, not including any document number extension.
+   * For TD3 this holds the personal number.
+   *
+   * @return the optional data
+   */
+  public CharSequence getOptionalData1() {
+    return getField(optionalData1Offset, optionalData1Length);
+  }
+
+  /**
+   * Returns the second optional data field (TD1 only).
+   *
+   * @return the optional data, or {@code null} if the format has no second optional data field
+   */
+  public CharSequence getOptionalData2() {
+    return optionalData2Offset < 0 ? null : getField(optionalData2Offset, optionalData2Length);
+  }
+
+  /**
+   * Validates the MRZ, i.e. performs all checks in {@link Check}.
+   * Checks that do not apply to the format are skipped.
+   *
+   * @return the failed checks, an empty set if the MRZ is valid
+   */
+  public Set<Check> validate() {
+    EnumSet<Check> failedChecks = null;
+    for (Check check: CHECKS) {
+      if (!isValid(check)) {
+        if (failedChecks == null) {
+          failedChecks = EnumSet.noneOf(Check.class);
+        }
+        failedChecks.add(check);
+      }
+    }
+    return failedChecks == null ? Collections.<Check>emptySet() : Collections.unmodifiableSet(failedChecks);
+  }
+
+  /**
+   * Performs a single check.
+   *
+   * @param check the check
+   *
+   * @return whether the check succeeded, {@code true} if the check does not apply to the format
+   */
+  public boolean isValid(Check check) {
+    switch (check) {
+      case FORMAT:
+        return isMRZCharacters();
+      case DOCUMENT_CODE:
+        return isDocumentCodeConsistent();
+      case DOCUMENT_NUMBER:
+        int documentNumberCheckSum = updateCheckSum(mrz, documentNumberOffset, documentNumberOffset + 9, 0, 0);
+        if (documentNumberExtensionOffset >= 0) {
+          documentNumberCheckSum = updateCheckSum(mrz, documentNumberExtensionOffset, documentNumberExtensionOffset + documentNumberExtensionLength, 9, documentNumberCheckSum);
+        }
+        return isCheckDigit(mrz.charAt(documentNumberCheckDigitOffset), documentNumberCheckSum, false);
+      case DATE_OF_BIRTH:
+        return isCheckDigit(mrz.charAt(dateOfBirthOffset + 6), updateCheckSum(mrz, dateOfBirthOffset, dateOfBirthOffset + 6, 0, 0), false);
+      case DATE_OF_EXPIRY:
+        return isCheckDigit(mrz.charAt(dateOfExpiryOffset + 6), updateCheckSum(mrz, dateOfExpiryOffset, dateOfExpiryOffset + 6, 0, 0), false);
+      case PERSONAL_NUMBER:
+        if (personalNumberCheckDigitOffset < 0) {
+          return true;
+        }
+        /* NOTE: An empty personal number may have '<' as check digit. */
+        return isCheckDigit(mrz.charAt(personalNumberCheckDigitOffset), updateCheckSum(mrz, lineOffsets[1] + 28, lineOffsets[1] + 42, 0, 0), true);
+      case COMPOSITE:
+        if (compositeCheckDigitOffset < 0) {
+          return true;
+        }
+        return isCheckDigit(mrz.charAt(compositeCheckDigitOffset), getCompositeCheckSum(), false);
+      default:
+        throw new IllegalArgumentException("Unsupported check " + check);
+    }
+  }
+
+  /**
+   * Creates an MRZ info from this view.
+   *
+   * @return the MRZ info
+   */
+  public MRZInfo toMRZInfo() {
+    StringBuilder result = new StringBuilder(format.getLineCount() * format.getLineLength());
+    for (int line = 0; line < format.getLineCount(); line++) {
+      result.append(mrz, lineOffsets[line], lineOffsets[line] + format.getLineLength());
+    }
+    return new MRZInfo(result.toString());
+  }
+
+  @Override
+  public String toString() {
+    StringBuilder result = new StringBuilder();
+    for (int line = 0; line < format.getLineCount(); line++) {
+      result.append(mrz, lineOffsets[line], lineOffsets[line] + format.getLineLength()).append('\n');
+    }
+    return result.toString();
+  }
+
+  /* ONLY PRIVATE METHODS BELOW */
+
+  private static Format getFormat(int length, boolean isVisa) {
+    switch (length) {
+      case 90:
+        return Format.TD1;
+      case 72:
+        return isVisa ? Format.MRVB : Format.TD2;
+      case 88:
+        return isVisa ? Format.MRVA : Format.TD3;
+      default:
+        return null;
+    }
+  }
+
+  private boolean isMRZCharacters() {
+    for (int line = 0; line < format.getLineCount(); line++) {
+      int lineOffset = lineOffsets[line];
+      for (int i = lineOffset; i < lineOffset + format.getLineLength(); i++) {
+        if (!isMRZChar(mrz.charAt(i))) {
+          return false;
+        }
+      }
+    }
+    return true;
+  }
+
+  private boolean isDocumentCodeConsistent() {
+    char c = mrz.charAt(lineOffsets[0]);
+    switch (format) {
+      case TD1:
+        /* Fall through... */
+      case TD2:
+        return c == 'A' || c == 'C' || c == 'I';
+      case TD3:
+        return c == 'P';
+      case MRVA:
+        /* Fall through... */
+      case MRVB:
+        return c == 'V';
+      default:
+        return false;
+    }
+  }
+
+  /**
+   * Computes the check sum over the parts of the MRZ protected by the composite check digit.
+   *
+   * @return the check sum, or {@code -1} if there is an illegal character
+   */
+  private int getCompositeCheckSum() {
+    int line1 = lineOffsets[1];
+    switch (format) {
+      case TD1:
+        /* Upper line 6-30, middle line 1-7, 9-15, 19-29. */
+        int line0 = lineOffsets[0];
+        int sum = updateCheckSum(mrz, line0 + 5, line0 + 30, 0, 0);
+        sum = updateCheckSum(mrz, line1, line1 + 7, 25, sum);
+        sum = updateCheckSum(mrz, line1 + 8, line1 + 15, 32, sum);
+        return updateCheckSum(mrz, line1 + 18, line1 + 29, 39, sum);
+      case TD2:
+        /* Lower line 1-10, 14-20, 22-35. */
+        sum = updateCheckSum(mrz, line1, line1 + 10, 0, 0);
+        sum = updateCheckSum(mrz, line1 + 13, line1 + 20, 10, sum);
+        return updateCheckSum(mrz, line1 + 21, line1 + 35, 17, sum);
+      case TD3:
+        /* Lower line 1-10, 14-20, 22-43. */
+        sum = updateCheckSum(mrz, line1, line1 + 10, 0, 0);
+        sum = updateCheckSum(mrz, line1 + 13, line1 + 20, 10, sum);
+        return updateCheckSum(mrz, line1 + 21, line1 + 43, 17, sum);
+      default:
+        return -1;
+    }
+  }
+
+  private int indexOfNameSeparator() {
+    int end = nameOffset + nameLength - 1;
+    for (int i = nameOffset; i < end; i++) {
+      if (mrz.charAt(i) == '<' && mrz.charAt(i + 1) == '<') {
+        return i;
+      }
+    }
+    return -1;
+  }
+
+  private CharSequence getField(int offset, int length) {
+    return new FieldView(mrz, offset, trimEnd(offset, offset + length), 0, 0);
+  }
+
+  private int trimEnd(int start, int end) {
+    while (end > start && mrz.charAt(end - 1) == '<') {
+      end--;
+    }
+    return end;
+  }
+
+  /**
+   * Continues the 7-3-1 weighted check sum over a range of characters.
+   *
+   * @param sequence the characters
+   * @param start the start of the range
+   * @param end the end of the range (exclusive)
+   * @param position the number of characters included in the check sum so far
+   * @param sum the check sum so far, or {@code -1}
+   *
+   * @return the check sum, or {@code -1} if there is an illegal character
+   */
+  private static int updateCheckSum(CharSequence sequence, int start, int end, int position, int sum) {
+    if (sum < 0) {
+      return -1;
+    }
+    int rangeSum = MRZInfo.getCheckSum(sequence, start, end, position);
+    return rangeSum < 0 ? -1 : sum + rangeSum;
+  }
+
+  private static boolean isCheckDigit(char c, int checkSum, boolean isFillerAllowedForZero) {
+    if (checkSum < 0) {
+      return false;
+    }
+    int checkDigit = checkSum % 10;
+    return c == '0' + checkDigit || (isFillerAllowedForZero && checkDigit == 0 && c == '<');
+  }
+
+  /**
+   * Determines whether a character can occur in an MRZ.
+   *
+   * @param c the character
+   *
+   * @return whether {@code c} is a digit, an upper case letter, or a filler
+   */
+  private static boolean isMRZChar(char c) {
+    return (c >= '0' && c <= '9') || (c >= 'A' && c <= 'Z') || c == '<';
+  }
+
+  /**
+   * A view of one or two ranges of a character sequence.
+   */
+  private static final class FieldView implements CharSequence {
+
+    private final CharSequence sequence;
+    private final int start1;
+    private final int end1;
+    private final int start2;
+    private final int end2;
+
+    public FieldView(CharSequence sequence, int start1, int end1, int start2, int end2) {
+      this.sequence = sequence;
+      this.start1 = start1;
+      this.end1 = end1;
+      this.start2 = start2;
+      this.end2 = end2;
+    }
+
+    @Override
+    public int length() {
+      return (end1 - start1) + (end2 - start2);
+    }
+
+    @Override
+    public char charAt(int index) {
+      if (index < 0 || index >= length()) {
+        throw new IndexOutOfBoundsException("Index " + index + ", length " + length());
+      }
+      int length1 = end1 - start1;
+      return index < length1 ? sequence.charAt(start1 + index) : sequence.charAt(start2 + index - length1);
+    }
+
+    @Override
+    public CharSequence subSequence(int start, int end) {
+      if (start < 0 || end > length() || start > end) {
+        throw new IndexOutOfBoundsException("Range " + start + " - " + end + ", length " + length());
+      }
+      int length1 = end1 - start1;
+      return new FieldView(sequence,
+          start1 + Math.min(start, length1), start1 + Math.min(end, length1),
+          start2 + Math.max(start - length1, 0), start2 + Math.max(end - length1, 0));
+    }
+
+    @Override
+    public String toString() {
+      StringBuilder result = new StringBuilder(length());
+      result.append(sequence, start1, end1);
+      result.append(sequence, start2, end2);
+      return result.toString();
+    }
+  }
+}
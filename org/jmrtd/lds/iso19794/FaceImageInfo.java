@@ -22,7 +22,6 @@
 
 package org.jmrtd.lds.iso19794;
 
-import java.io.ByteArrayOutputStream;
 import java.io.DataInputStream;
 import java.io.DataOutputStream;
 import java.io.IOException;
@@ -52,7 +51,7 @@ import net.sf.scuba.data.Gender;
  */
 public class FaceImageInfo extends AbstractImageInfo {
 
-  private static final long serialVersionUID = -1751069410327594067L;
+  private static final long serialVersionUID = 6999449013820022407L;
 
   private static final Logger LOGGER = Logger.getLogger("org.jmrtd");
 
@@ -301,7 +300,7 @@ public class FaceImageInfo extends AbstractImageInfo {
   private int expression;
   private int[] poseAngle;
   private int[] poseAngleUncertainty;
-  private FeaturePoint[] featurePoints;
+  private FeaturePointArray featurePoints;
   private int faceImageType;
   private int imageDataType;
   private int colorSpace;
@@ -358,11 +357,8 @@ public class FaceImageInfo extends AbstractImageInfo {
     this.colorSpace = colorSpace;
     this.sourceType = sourceType;
     this.deviceType = deviceType;
-    int featurePointCount = featurePoints == null ? 0 : featurePoints.length;
-    this.featurePoints = new FeaturePoint[featurePointCount];
-    if (featurePointCount > 0) {
-      System.arraycopy(featurePoints, 0, this.featurePoints, 0, featurePointCount);
-    }
+    this.featurePoints = new FeaturePointArray(featurePoints);
+    int featurePointCount = this.featurePoints.size();
     this.poseAngle = new int[3];
     System.arraycopy(poseAngle, 0, this.poseAngle, 0, 3);
     this.poseAngleUncertainty = new int[3];
@@ -415,18 +411,9 @@ public class FaceImageInfo extends AbstractImageInfo {
     poseAngleUncertainty[ROLL] = dataIn.readUnsignedByte(); /* +1 = 20 */
 
     /* Feature Point(s) (optional) (8 * featurePointCount), see ISO 19794-5 5.8 */
-    featurePoints = new FeaturePoint[featurePointCount];
-    for (int i = 0; i < featurePointCount; i++) {
-      int featureType = dataIn.readUnsignedByte(); /* 1 */
-      byte featurePoint = dataIn.readByte(); /* +1 = 2 */
-      int x = dataIn.readUnsignedShort(); /* +2 = 4 */
-      int y = dataIn.readUnsignedShort(); /* +2 = 6 */
-      long skippedBytes = 0;
-      while (skippedBytes < 2) {
-        skippedBytes += dataIn.skip(2);
-      } /* +2 = 8, NOTE: 2 bytes reserved */
-      featurePoints[i] = new FeaturePoint(featureType, featurePoint, x, y);
-    }
+    byte[] featurePointBytes = new byte[8 * featurePointCount];
+    dataIn.readFully(featurePointBytes);
+    featurePoints = new FeaturePointArray(featurePointBytes);
 
     /* Image Information */
     faceImageType = dataIn.readUnsignedByte(); /* 1 */
@@ -465,13 +452,11 @@ public class FaceImageInfo extends AbstractImageInfo {
    */
   @Override
   public void writeObject(OutputStream outputStream) throws IOException {
-    ByteArrayOutputStream recordOut = new ByteArrayOutputStream();
-    writeFacialRecordData(recordOut);
-    byte[] facialRecordData = recordOut.toByteArray();
-    long faceImageBlockLength = facialRecordData.length + 4L;
-    DataOutputStream dataOut = new DataOutputStream(outputStream);
+    /* NOTE: The length is computed, so that the record data can be written directly to the stream. */
+    long faceImageBlockLength = 20L + 8L * featurePoints.size() + 12L + getImageLength();
+    DataOutputStream dataOut = outputStream instanceof DataOutputStream ? (DataOutputStream)outputStream : new DataOutputStream(outputStream);
     dataOut.writeInt((int)faceImageBlockLength);
-    dataOut.write(facialRecordData);
+    writeFacialRecordData(dataOut);
     dataOut.flush();
   }
 
@@ -481,16 +466,30 @@ public class FaceImageInfo extends AbstractImageInfo {
    * @return the record length
    */
   public long getRecordLength() {
-    /* Should be equal to (20 + 8 * featurePoints.length + 12 + getImageLength()). */
+    /* Should be equal to (20 + 8 * featurePoints.size() + 12 + getImageLength()). */
     return recordLength;
   }
 
   /**
    * Returns the available feature points of this face.
+   * The feature points are created from the {@link #getFeaturePointArray() feature point array}
+   * on each call.
    *
    * @return feature points
    */
   public FeaturePoint[] getFeaturePoints() {
+    return featurePoints.toFeaturePoints();
+  }
+
+  /**
+   * Returns the available feature points of this face, without creating
+   * an object per feature point.
+   *
+   * @return the feature points
+   *
+   * @since 0.8.4
+   */
+  public FeaturePointArray getFeaturePointArray() {
     return featurePoints;
   }
 
@@ -644,19 +643,7 @@ public class FaceImageInfo extends AbstractImageInfo {
     out.append("Pose angle: ").append(poseAngleToString()).append(", ");
     out.append("Face image type: ").append(faceImageTypeToString()).append(", ");
     out.append("Source type: ").append(sourceTypeToString()).append(", ");
-    out.append("FeaturePoints [");
-    if (featurePoints != null && featurePoints.length > 0) {
-      boolean isFirstFeaturePoint = true;
-      for (FeaturePoint featurePoint: featurePoints) {
-        if (isFirstFeaturePoint) {
-          isFirstFeaturePoint = false;
-        } else {
-          out.append(", ");
-        }
-        out.append(featurePoint.toString());
-      }
-    }
-    out.append("]"); /* FeaturePoints. */
+    out.append(featurePoints);
     out.append("]"); /* FaceImageInfo. */
     return out.toString();
   }
@@ -671,7 +658,7 @@ public class FaceImageInfo extends AbstractImageInfo {
     result = prime * result + ((eyeColor == null) ? 0 : eyeColor.hashCode());
     result = prime * result + faceImageType;
     result = prime * result + featureMask;
-    result = prime * result + Arrays.hashCode(featurePoints);
+    result = prime * result + featurePoints.hashCode();
     result = prime * result + ((gender == null) ? 0 : gender.hashCode());
     result = prime * result + hairColor;
     result = prime * result + imageDataType;
@@ -702,7 +689,7 @@ public class FaceImageInfo extends AbstractImageInfo {
         && eyeColor == other.eyeColor
         && faceImageType == other.faceImageType
         && featureMask == other.featureMask
-        && Arrays.equals(featurePoints, other.featurePoints)
+        && featurePoints.equals(other.featurePoints)
         && gender == other.gender
         && hairColor == other.hairColor
         && imageDataType == other.imageDataType
@@ -716,15 +703,14 @@ public class FaceImageInfo extends AbstractImageInfo {
   /**
    * Writes the record data to a stream.
    *
-   * @param outputStream the stream to write to
+   * @param dataOut the stream to write to
    *
    * @throws IOException on error
    */
-  private void writeFacialRecordData(OutputStream outputStream) throws IOException {
-    DataOutputStream dataOut = new DataOutputStream(outputStream);
+  private void writeFacialRecordData(DataOutputStream dataOut) throws IOException {
 
     /* Facial Information (16) */
-    dataOut.writeShort(featurePoints.length);                                              /* 2 */
+    dataOut.writeShort(featurePoints.size());                                               /* 2 */
     dataOut.writeByte(gender == null ? Gender.UNSPECIFIED.toInt() : gender.toInt());       /* 1 */
     dataOut.writeByte(eyeColor == null ? EyeColor.UNSPECIFIED.toInt() : eyeColor.toInt()); /* 1 */
     dataOut.writeByte(hairColor);                                                          /* 1 */
@@ -741,13 +727,7 @@ public class FaceImageInfo extends AbstractImageInfo {
     }
 
     /* Feature Point(s) (optional) (8 * featurePointCount) */
-    for (FeaturePoint fp: featurePoints) {
-      dataOut.writeByte(fp.getType());
-      dataOut.writeByte((fp.getMajorCode() << 4) | fp.getMinorCode());
-      dataOut.writeShort(fp.getX());
-      dataOut.writeShort(fp.getY());
-      dataOut.writeShort(0x00); /* 2 bytes RFU */
-    }
+    featurePoints.writeObject(dataOut);
 
     /* Image Information (12) */
     dataOut.writeByte(faceImageType);                           /* 1 */
@@ -764,8 +744,6 @@ public class FaceImageInfo extends AbstractImageInfo {
      * ISO 19794-5
      */
     writeImage(dataOut);
-    dataOut.flush();
-    dataOut.close();
   }
 
   /**
@@ -1080,4 +1058,231 @@ public class FaceImageInfo extends AbstractImageInfo {
           .append(")").toString();
     }
   }
+
+  /**
+   * The feature points of a face, as described in Section 5.6.3 of ISO/IEC FCD 19794-5,
+   * stored in primitive arrays rather than as {@link FeaturePoint} objects.
+   * The feature points are kept in their encoded form, i.e. types and codes are bytes,
+   * and coordinates are unsigned 16-bit values.
+   *
+   * @author The JMRTD team (info@jmrtd.org)
+   *
+   * @version $Revision: $
+   *
+   * @since 0.8.4
+   */
+  public static class FeaturePointArray implements Serializable {
+
+    private static final long serialVersionUID = 6254498166213536384L;
+
+    private byte[] types;
+
+    /* Major code in the high nibble, minor code in the low nibble. */
+    private byte[] codes;
+
+    /* The x- and y-coordinate of each feature point. */
+    private short[] coordinates;
+
+    /**
+     * Constructs a feature point array from feature point objects.
+     *
+     * @param featurePoints the feature points, or {@code null} for none
+     */
+    FeaturePointArray(FeaturePoint[] featurePoints) {
+      int size = featurePoints == null ? 0 : featurePoints.length;
+      this.types = new byte[size];
+      this.codes = new byte[size];
+      this.coordinates = new short[2 * size];
+      for (int i = 0; i < size; i++) {
+        FeaturePoint featurePoint = featurePoints[i];
+        types[i] = (byte)featurePoint.getType();
+        codes[i] = (byte)((featurePoint.getMajorCode() << 4) | featurePoint.getMinorCode());
+        coordinates[2 * i] = (short)featurePoint.getX();
+        coordinates[2 * i + 1] = (short)featurePoint.getY();
+      }
+    }
+
+    /**
+     * Constructs a feature point array from the encoded feature points,
+     * 8 bytes per feature point.
+     *
+     * @param encoded the encoded feature points
+     */
+    FeaturePointArray(byte[] encoded) {
+      int size = encoded.length / 8;
+      this.types = new byte[size];
+      this.codes = new byte[size];
+      this.coordinates = new short[2 * size];
+      for (int i = 0, offset = 0; i < size; i++, offset += 8) {
+        types[i] = encoded[offset];
+        codes[i] = encoded[offset + 1];
+        coordinates[2 * i] = (short)(((encoded[offset + 2] & 0xFF) << 8) | (encoded[offset + 3] & 0xFF));
+        coordinates[2 * i + 1] = (short)(((encoded[offset + 4] & 0xFF) << 8) | (encoded[offset + 5] & 0xFF));
+        /* NOTE: 2 bytes reserved. */
+      }
+    }
+
+    /**
+     * Returns the number of feature points.
+     *
+     * @return the number of feature points
+     */
+    public int size() {
+      return types.length;
+    }
+
+    /**
+     * Returns the type of a feature point.
+     *
+     * @param index the index of the feature point
+     *
+     * @return the type
+     */
+    public int getType(int index) {
+      return types[index] & 0xFF;
+    }
+
+    /**
+     * Returns the major code of a feature point.
+     *
+     * @param index the index of the feature point
+     *
+     * @return the major code
+     */
+    public int getMajorCode(int index) {
+      return (codes[index] & 0xF0) >> 4;
+    }
+
+    /**
+     * Returns the minor code of a feature point.
+     *
+     * @param index the index of the feature point
+     *
+     * @return the minor code
+     */
+    public int getMinorCode(int index) {
+      return codes[index] & 0x0F;
+    }
+
+    /**
+     * Returns the X-coordinate of a feature point.
+     *
+     * @param index the index of the feature point
+     *
+     * @return the X-coordinate
+     */
+    public int getX(int index) {
+      return coordinates[2 * index] & 0xFFFF;
+    }
+
+    /**
+     * Returns the Y-coordinate of a feature point.
+     *
+     * @param index the index of the feature point
+     *
+     * @return the Y-coordinate
+     */
+    public int getY(int index) {
+      return coordinates[2 * index + 1] & 0xFFFF;
+    }
+
+    /**
+     * Copies the coordinates of all feature points to an array, as
+     * consecutive (x, y) pairs.
+     *
+     * @param destination the array to copy to, with room for {@code 2 * size()} values
+     * @param offset the offset in {@code destination} of the first X-coordinate
+     */
+    public void getCoordinates(float[] destination, int offset) {
+      if (offset < 0 || destination.length - offset < coordinates.length) {
+        throw new IllegalArgumentException("No room for " + coordinates.length + " coordinates at offset " + offset);
+      }
+      for (int i = 0; i < coordinates.length; i++) {
+        destination[offset + i] = coordinates[i] & 0xFFFF;
+      }
+    }
+
+    /**
+     * Creates a feature point object for each of the feature points.
+     *
+     * @return the feature points
+     */
+    public FeaturePoint[] toFeaturePoints() {
+      FeaturePoint[] result = new FeaturePoint[types.length];
+      for (int i = 0; i < result.length; i++) {
+        result[i] = new FeaturePoint(getType(i), codes[i], getX(i), getY(i));
+      }
+      return result;
+    }
+
+    @Override
+    public int hashCode() {
+      final int prime = 31;
+      int result = 1;
+      result = prime * result + Arrays.hashCode(types);
+      result = prime * result + Arrays.hashCode(codes);
+      result = prime * result + Arrays.hashCode(coordinates);
+      return result;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+      if (this == obj) {
+        return true;
+      }
+      if (obj == null) {
+        return false;
+      }
+      if (getClass() != obj.getClass()) {
+        return false;
+      }
+
+      FeaturePointArray other = (FeaturePointArray)obj;
+      return Arrays.equals(types, other.types)
+          && Arrays.equals(codes, other.codes)
+          && Arrays.equals(coordinates, other.coordinates);
+    }
+
+    /**
+     * Generates a textual representation of the feature points,
+     * formatted like {@link FeaturePoint#toString()}.
+     *
+     * @return a textual representation of the feature points
+     */
+    @Override
+    public String toString() {
+      StringBuilder result = new StringBuilder();
+      result.append("FeaturePoints [");
+      for (int i = 0; i < types.length; i++) {
+        if (i > 0) {
+          result.append(", ");
+        }
+        result.append("( point: ").append(getMajorCode(i)).append(".").append(getMinorCode(i))
+            .append(", ")
+            .append("type: ").append(Integer.toHexString(getType(i))).append(", ")
+            .append("(").append(getX(i)).append(", ")
+            .append(getY(i)).append(")")
+            .append(")");
+      }
+      result.append("]");
+      return result.toString();
+    }
+
+    /**
+     * Writes the encoded feature points, 8 bytes per feature point.
+     *
+     * @param dataOut the stream to write to
+     *
+     * @throws IOException on error writing to the stream
+     */
+    void writeObject(DataOutputStream dataOut) throws IOException {
+      for (int i = 0; i < types.length; i++) {
+        dataOut.writeByte(types[i]);
+        dataOut.writeByte(codes[i]);
+        dataOut.writeShort(coordinates[2 * i]);
+        dataOut.writeShort(coordinates[2 * i + 1]);
+        dataOut.writeShort(0x00); /* 2 bytes RFU */
+      }
+    }
+  }
 }
@@ -204,16 +204,8 @@ public class FaceInfo extends AbstractListInfo<FaceImageInfo> implements Biometr
    */
   @Override
   public void writeObject(OutputStream outputStream) throws IOException {
-
-    int headerLength = 14; /* 4 + 4 + 4 + 2 (Section 5.4 of ISO/IEC 19794-5) */
-
-    long dataLength = 0;
     List<FaceImageInfo> faceImageInfos = getSubRecords();
-    for (FaceImageInfo faceImageInfo: faceImageInfos) {
-      dataLength += faceImageInfo.getRecordLength();
-    }
-
-    long recordLength = headerLength + dataLength;
+    long recordLength = getRecordLength();
 
     DataOutputStream dataOut = outputStream instanceof DataOutputStream ? (DataOutputStream)outputStream : new DataOutputStream(outputStream);
 
@@ -236,6 +228,26 @@ public class FaceInfo extends AbstractListInfo<FaceImageInfo> implements Biometr
     }
   }
 
+  /**
+   * Returns the length of the encoded facial record, including the facial record header.
+   * This is the number of bytes written by {@link #writeObject(OutputStream)}.
+   *
+   * @return the record length
+   *
+   * @since 0.8.4
+   */
+  public long getRecordLength() {
+    long headerLength = 14; /* 4 + 4 + 4 + 2 (Section 5.4 of ISO/IEC 19794-5) */
+
+    long dataLength = 0;
+    List<FaceImageInfo> faceImageInfos = getSubRecords();
+    for (FaceImageInfo faceImageInfo: faceImageInfos) {
+      dataLength += faceImageInfo.getRecordLength();
+    }
+
+    return headerLength + dataLength;
+  }
+
   /**
    * Returns the standard biometric header of this biometric data block.
    *
@@ -22,7 +22,6 @@
 
 package org.jmrtd.lds.iso19794;
 
-import java.io.ByteArrayOutputStream;
 import java.io.DataInputStream;
 import java.io.DataOutputStream;
 import java.io.IOException;
@@ -321,13 +320,7 @@ public class FingerImageInfo extends AbstractImageInfo {
    */
   @Override
   protected void writeObject(OutputStream out) throws IOException {
-    ByteArrayOutputStream imageOut = new ByteArrayOutputStream();
-    writeImage(imageOut);
-    imageOut.flush();
-    byte[] imageBytes = imageOut.toByteArray();
-    imageOut.close();
-
-    long fingerDataBlockLength = imageBytes.length + 14L;
+    long fingerDataBlockLength = getImageLength() + 14L;
 
     DataOutputStream dataOut = out instanceof DataOutputStream ? (DataOutputStream)out : new DataOutputStream(out);
 
@@ -342,7 +335,7 @@ public class FingerImageInfo extends AbstractImageInfo {
     dataOut.writeShort(getHeight());
     dataOut.writeByte(0x00); /* RFU */
 
-    dataOut.write(imageBytes);
+    writeImage(dataOut);
     dataOut.flush();
   }
 
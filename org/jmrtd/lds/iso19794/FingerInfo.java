@@ -346,16 +346,8 @@ public class FingerInfo extends AbstractListInfo<FingerImageInfo> implements Bio
    */
   @Override
   public void writeObject(OutputStream outputStream) throws IOException {
-
-    long headerLength = 32; /* 4 + 4 + 6 + 2 + 2 + 1 + 1 + 2 + 2 + 2 + 2 + 1 + 1 + 2 */
-
-    long dataLength = 0;
     List<FingerImageInfo> fingerImageInfos = getSubRecords();
-    for (FingerImageInfo fingerImageInfo: fingerImageInfos) {
-      dataLength += fingerImageInfo.getRecordLength();
-    }
-
-    long recordLength = headerLength + dataLength;
+    long recordLength = getRecordLength();
 
     /* General record header, should be 32... */
 
@@ -384,6 +376,26 @@ public class FingerInfo extends AbstractListInfo<FingerImageInfo> implements Bio
     }
   }
 
+  /**
+   * Returns the length of the encoded finger record, including the general record header.
+   * This is the number of bytes written by {@link #writeObject(OutputStream)}.
+   *
+   * @return the record length
+   *
+   * @since 0.8.4
+   */
+  public long getRecordLength() {
+    long headerLength = 32; /* 4 + 4 + 6 + 2 + 2 + 1 + 1 + 2 + 2 + 2 + 2 + 1 + 1 + 2 */
+
+    long dataLength = 0;
+    List<FingerImageInfo> fingerImageInfos = getSubRecords();
+    for (FingerImageInfo fingerImageInfo: fingerImageInfos) {
+      dataLength += fingerImageInfo.getRecordLength();
+    }
+
+    return headerLength + dataLength;
+  }
+
   @Override
   public int hashCode() {
     final int prime = 31;
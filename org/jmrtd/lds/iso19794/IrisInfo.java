@@ -377,13 +377,8 @@ public class IrisInfo extends AbstractListInfo<IrisBiometricSubtypeInfo> impleme
 
     int headerLength = 45;
 
-    int dataLength = 0;
     List<IrisBiometricSubtypeInfo> biometricSubtypeInfos = getSubRecords();
-    for (IrisBiometricSubtypeInfo biometricSubtypeInfo: biometricSubtypeInfos) {
-      dataLength += biometricSubtypeInfo.getRecordLength();
-    }
-
-    int recordLength = headerLength + dataLength;
+    int recordLength = (int)getRecordLength();
 
     /* Iris Record Header (45) */
 
@@ -573,6 +568,26 @@ public class IrisInfo extends AbstractListInfo<IrisBiometricSubtypeInfo> impleme
     return sbh;
   }
 
+  /**
+   * Returns the length of the encoded iris record, including the iris record header.
+   * This is the number of bytes written by {@link #writeObject(OutputStream)}.
+   *
+   * @return the record length
+   *
+   * @since 0.8.4
+   */
+  public long getRecordLength() {
+    long headerLength = 45;
+
+    long dataLength = 0;
+    List<IrisBiometricSubtypeInfo> biometricSubtypeInfos = getSubRecords();
+    for (IrisBiometricSubtypeInfo biometricSubtypeInfo: biometricSubtypeInfos) {
+      dataLength += biometricSubtypeInfo.getRecordLength();
+    }
+
+    return headerLength + dataLength;
+  }
+
   @Override
   public int hashCode() {
     final int prime = 31;
@@ -23,6 +23,7 @@
 package org.jmrtd.lds.iso39794;
 
 import java.io.IOException;
+import java.io.OutputStream;
 import java.io.Serializable;
 import java.util.logging.Level;
 import java.util.logging.Logger;
@@ -35,6 +36,9 @@ abstract class Block implements Serializable {
 
   protected static final Logger LOGGER = Logger.getLogger("org.jmrtd.lds.iso39794");
 
+  /** The length of the DER encoding, or {@code 0} if not computed yet. */
+  private transient volatile int encodedLength;
+
   abstract ASN1Encodable getASN1Object();
 
   public byte[] getEncoded() {
@@ -46,6 +50,51 @@ abstract class Block implements Serializable {
     }
   }
 
+  /**
+   * Writes the DER encoding of this block to a stream,
+   * without first encoding it to a byte array.
+   *
+   * @param outputStream the stream to write to
+   *
+   * @throws IOException on error writing to the stream
+   *
+   * @since 0.8.4
+   */
+  public void writeObject(OutputStream outputStream) throws IOException {
+    getDERElement().writeTo(outputStream);
+  }
+
+  /**
+   * Returns the length of the DER encoding of this block.
+   * Blocks are not modified after construction, so the length is only computed once.
+   *
+   * @return the length of the encoding
+   *
+   * @throws IOException on error encoding this block
+   *
+   * @since 0.8.4
+   */
+  public int getEncodedLength() throws IOException {
+    int result = encodedLength;
+    if (result == 0) {
+      result = getDERElement().getEncodedLength();
+      encodedLength = result;
+    }
+    return result;
+  }
+
+  /**
+   * Returns the DER encoding of this block as an element that can be written to a stream.
+   * Blocks holding images override this, so that the images are written without being copied.
+   *
+   * @return the encoding
+   *
+   * @throws IOException on error encoding this block
+   */
+  DERElement getDERElement() throws IOException {
+    return DERElement.encode(getASN1Object());
+  }
+
   @Override
   public abstract int hashCode();
 
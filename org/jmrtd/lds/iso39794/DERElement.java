@@ -0,0 +1,278 @@
+/*
+ * JMRTD - A Java API for accessing machine readable travel documents.
+ *
+ * Copyright (C) 2006 - 2026  The JMRTD team
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA
+ *
+ * $Id: $
+ */
+
+package org.jmrtd.lds.iso39794;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+import org.bouncycastle.asn1.ASN1Encodable;
+import org.bouncycastle.asn1.ASN1Encoding;
+import org.bouncycastle.asn1.DERTaggedObject;
+
+import net.sf.scuba.tlv.TLVUtil;
+
+/**
+ * The DER encoding of a block, or of an element inside a block, that can be
+ * written to a stream without copying large values, such as images, into
+ * ASN.1 objects. An element is either encoded using Bouncy Castle, or is a
+ * primitive value that is referenced in the array that holds it, or is
+ * constructed from such elements. The length of the encoding is computed
+ * when the element is created.
+ *
+ * @author The JMRTD team (info@jmrtd.org)
+ *
+ * @version $Revision: $
+ *
+ * @since 0.8.4
+ */
+final class DERElement {
+
+  private static final int OCTET_STRING_TAG = 0x04;
+
+  private static final int SEQUENCE_TAG = 0x30;
+
+  private static final int APPLICATION_TAG = 0x40;
+
+  private static final int CONTEXT_SPECIFIC_TAG = 0x80;
+
+  private static final int CONSTRUCTED_TAG = 0x20;
+
+  /** The tag, or {@code -1} if the bytes are the complete encoding. */
+  private final int tag;
+
+  private final byte[] bytes;
+  private final int offset;
+  private final int length;
+
+  /** The nested elements, or {@code null} if this is not a constructed element. */
+  private final List<DERElement> elements;
+
+  private final int encodedLength;
+
+  private DERElement(int tag, byte[] bytes, int offset, int length, List<DERElement> elements) throws IOException {
+    this.tag = tag;
+    this.bytes = bytes;
+    this.offset = offset;
+    this.length = length;
+    this.elements = elements;
+    if (tag < 0) {
+      this.encodedLength = length;
+    } else {
+      long valueLength = getValueLength();
+      long result = 1 + TLVUtil.getLengthAsBytes((int)Math.min(valueLength, Integer.MAX_VALUE)).length + valueLength;
+      if (result > Integer.MAX_VALUE) {
+        throw new IOException("Element too long, length " + result);
+      }
+      this.encodedLength = (int)result;
+    }
+  }
+
+  /**
+   * Encodes an ASN.1 object.
+   *
+   * @param object the object
+   *
+   * @return the encoded element
+   *
+   * @throws IOException on error encoding the object
+   */
+  static DERElement encode(ASN1Encodable object) throws IOException {
+    byte[] encoded = object.toASN1Primitive().getEncoded(ASN1Encoding.DER);
+    return new DERElement(-1, encoded, 0, encoded.length, null);
+  }
+
+  /**
+   * Creates an octet string with a value that is referenced, not copied.
+   *
+   * @param bytes the array holding the value
+   * @param offset the offset of the value
+   * @param length the length of the value
+   *
+   * @return the element
+   *
+   * @throws IOException if there is no value
+   */
+  static DERElement octetString(byte[] bytes, int offset, int length) throws IOException {
+    if (bytes == null) {
+      throw new IOException("No value for octet string");
+    }
+    return new DERElement(OCTET_STRING_TAG, bytes, offset, length, null);
+  }
+
+  /**
+   * Creates a sequence of the encodings of some blocks, as {@link ISO39794Util#encodeBlocks(List)} does.
+   *
+   * @param blocks the blocks
+   *
+   * @return the element
+   *
+   * @throws IOException on error encoding the blocks
+   */
+  static DERElement sequenceOf(List<? extends Block> blocks) throws IOException {
+    List<DERElement> elements = new ArrayList<DERElement>(blocks.size());
+    for (Block block: blocks) {
+      if (block != null) {
+        elements.add(block.getDERElement());
+      }
+    }
+    return new DERElement(SEQUENCE_TAG, null, 0, 0, elements);
+  }
+
+  /**
+   * Creates a sequence of implicitly tagged elements, as {@link org.jmrtd.ASN1Util#encodeTaggedObjects(Map)} does.
+   *
+   * @param taggedObjects the ASN.1 objects, indexed by tag number
+   * @param taggedElements the elements that are not ASN.1 objects, indexed by tag number
+   *
+   * @return the element
+   *
+   * @throws IOException on error encoding an object
+   */
+  static DERElement sequence(Map<Integer, ASN1Encodable> taggedObjects, Map<Integer, DERElement> taggedElements) throws IOException {
+    return new DERElement(SEQUENCE_TAG, null, 0, 0, getTaggedElements(taggedObjects, taggedElements));
+  }
+
+  /**
+   * Creates a sequence of implicitly tagged elements, implicitly tagged with an application tag.
+   *
+   * @param applicationTagNo the application tag number
+   * @param taggedObjects the ASN.1 objects, indexed by tag number
+   * @param taggedElements the elements that are not ASN.1 objects, indexed by tag number
+   *
+   * @return the element
+   *
+   * @throws IOException on error encoding an object
+   */
+  static DERElement applicationSequence(int applicationTagNo, Map<Integer, ASN1Encodable> taggedObjects, Map<Integer, DERElement> taggedElements) throws IOException {
+    return new DERElement(APPLICATION_TAG | CONSTRUCTED_TAG | checkTagNo(applicationTagNo), null, 0, 0, getTaggedElements(taggedObjects, taggedElements));
+  }
+
+  /**
+   * Returns the length of the encoding, including tag and length.
+   *
+   * @return the length of the encoding
+   */
+  int getEncodedLength() {
+    return encodedLength;
+  }
+
+  /**
+   * Writes the encoding to a stream.
+   *
+   * @param outputStream the stream to write to
+   *
+   * @throws IOException on error writing to the stream
+   */
+  void writeTo(OutputStream outputStream) throws IOException {
+    if (tag < 0) {
+      outputStream.write(bytes, offset, length);
+      return;
+    }
+
+    outputStream.write(tag);
+    outputStream.write(TLVUtil.getLengthAsBytes((int)getValueLength()));
+    if (elements == null) {
+      outputStream.write(bytes, offset, length);
+    } else {
+      for (DERElement element: elements) {
+        element.writeTo(outputStream);
+      }
+    }
+  }
+
+  /* ONLY PRIVATE METHODS BELOW */
+
+  /**
+   * Returns this element, implicitly tagged with a context specific tag.
+   *
+   * @param tagNo the tag number
+   *
+   * @return the tagged element
+   *
+   * @throws IOException if this element was encoded using Bouncy Castle
+   */
+  private DERElement withTagNo(int tagNo) throws IOException {
+    if (tag < 0) {
+      throw new IOException("Cannot tag encoded element");
+    }
+    int newTag = CONTEXT_SPECIFIC_TAG | (tag & CONSTRUCTED_TAG) | checkTagNo(tagNo);
+    return new DERElement(newTag, bytes, offset, length, elements);
+  }
+
+  /**
+   * Encodes the ASN.1 objects and tags the elements, ordered by tag number.
+   *
+   * @param taggedObjects the ASN.1 objects, indexed by tag number
+   * @param taggedElements the elements that are not ASN.1 objects, indexed by tag number
+   *
+   * @return the tagged elements
+   *
+   * @throws IOException on error encoding an object
+   */
+  private static List<DERElement> getTaggedElements(Map<Integer, ASN1Encodable> taggedObjects, Map<Integer, DERElement> taggedElements) throws IOException {
+    SortedMap<Integer, DERElement> sortedElements = new TreeMap<Integer, DERElement>();
+    for (Map.Entry<Integer, ASN1Encodable> entry: taggedObjects.entrySet()) {
+      ASN1Encodable object = entry.getValue();
+      if (object != null) {
+        sortedElements.put(entry.getKey(), encode(new DERTaggedObject(false, entry.getKey(), object)));
+      }
+    }
+    for (Map.Entry<Integer, DERElement> entry: taggedElements.entrySet()) {
+      DERElement element = entry.getValue();
+      if (element != null) {
+        sortedElements.put(entry.getKey(), element.withTagNo(entry.getKey()));
+      }
+    }
+    return new ArrayList<DERElement>(sortedElements.values());
+  }
+
+  private long getValueLength() {
+    if (elements == null) {
+      return length;
+    }
+    long result = 0;
+    for (DERElement element: elements) {
+      result += element.getEncodedLength();
+    }
+    return result;
+  }
+
+  /**
+   * Checks that a tag number fits in a single byte tag.
+   *
+   * @param tagNo the tag number
+   *
+   * @return the tag number
+   */
+  private static int checkTagNo(int tagNo) {
+    if (tagNo < 0 || tagNo >= 0x1F) {
+      throw new IllegalArgumentException("Unsupported tag number " + tagNo);
+    }
+    return tagNo;
+  }
+}
@@ -37,6 +37,7 @@ package org.jmrtd.lds.iso39794;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -45,7 +46,6 @@ import java.util.SortedMap;
 import java.util.TreeMap;
 
 import org.bouncycastle.asn1.ASN1Encodable;
-import org.bouncycastle.asn1.ASN1Sequence;
 import org.bouncycastle.asn1.BERTags;
 import org.bouncycastle.asn1.DERTaggedObject;
 import org.jmrtd.ASN1Util;
@@ -81,19 +81,17 @@ public class FaceImageDataBlock extends Block implements BiometricDataBlock {
   }
 
   public FaceImageDataBlock(StandardBiometricHeader sbh, InputStream inputStream) throws IOException {
-    this(sbh, ASN1Util.readASN1Object(inputStream));
+    this(sbh, TaggedElements.read(inputStream, BERTags.APPLICATION, 5));
   }
 
   FaceImageDataBlock(StandardBiometricHeader sbh, ASN1Encodable asn1Encodable) {
-    this.sbh = sbh;
-    asn1Encodable = ASN1Util.checkTag(asn1Encodable, BERTags.APPLICATION, 5);
-    if (!(asn1Encodable instanceof ASN1Sequence)) {
-      throw new IllegalArgumentException("Cannot decode!");
-    }
+    this(sbh, TaggedElements.getInstance(ASN1Util.checkTag(asn1Encodable, BERTags.APPLICATION, 5)));
+  }
 
-    Map<Integer, ASN1Encodable> taggedObjects = ASN1Util.decodeTaggedObjects(asn1Encodable);
-    versionBlock = new VersionBlock(taggedObjects.get(0));
-    representationBlocks = FaceImageRepresentationBlock.decodeRepresentationBlocks(taggedObjects.get(1));
+  private FaceImageDataBlock(StandardBiometricHeader sbh, TaggedElements taggedElements) {
+    this.sbh = sbh;
+    versionBlock = new VersionBlock(taggedElements.get(0));
+    representationBlocks = FaceImageRepresentationBlock.decodeRepresentationBlocks(taggedElements, 1);
   }
 
   public VersionBlock getVersionBlock() {
@@ -163,4 +161,13 @@ public class FaceImageDataBlock extends Block implements BiometricDataBlock {
     taggedObjects.put(1, ISO39794Util.encodeBlocks(representationBlocks));
     return  new DERTaggedObject(false, BERTags.APPLICATION, 0x05, ASN1Util.encodeTaggedObjects(taggedObjects));
   }
+
+  @Override
+  DERElement getDERElement() throws IOException {
+    /* NOTE: The images in the representation blocks are written without copying them into ASN.1 objects. */
+    Map<Integer, ASN1Encodable> taggedObjects = new HashMap<Integer, ASN1Encodable>();
+    taggedObjects.put(0, versionBlock.getASN1Object());
+    return DERElement.applicationSequence(0x05, taggedObjects,
+        Collections.singletonMap(1, DERElement.sequenceOf(representationBlocks)));
+  }
 }
@@ -0,0 +1,667 @@
+/*
+ * JMRTD - A Java API for accessing machine readable travel documents.
+ *
+ * Copyright (C) 2006 - 2026  The JMRTD team
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA
+ *
+ * $Id: $
+ */
+
+package org.jmrtd.lds.iso39794;
+
+import java.io.IOException;
+import java.io.Serializable;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.jmrtd.io.TLVCursor;
+import org.jmrtd.lds.iso39794.FaceImageLandmarkKind.AnthropometricLandmarkNameCode;
+import org.jmrtd.lds.iso39794.FaceImageLandmarkKind.AnthropometricLandmarkPointIdCode;
+import org.jmrtd.lds.iso39794.FaceImageLandmarkKind.AnthropometricLandmarkPointNameCode;
+import org.jmrtd.lds.iso39794.FaceImageLandmarkKind.MPEGFeaturePointCode;
+
+/**
+ * The landmark blocks of a face image representation, stored in primitive arrays
+ * rather than as {@link FaceImageLandmarkBlock} objects with nested kind and
+ * coordinate blocks.
+ *
+ * Each landmark has a kind type (one of the {@code LANDMARK_KIND_} constants) and a code,
+ * which together identify the {@link FaceImageLandmarkKind}, and a coordinate type
+ * (one of the {@code COORDINATES_} constants) and up to three coordinates.
+ * Texture image coordinates are stored as x (u) and y (v).
+ *
+ * @author The JMRTD team (info@jmrtd.org)
+ *
+ * @version $Revision: $
+ *
+ * @since 0.8.4
+ */
+public class FaceImageLandmarkArray implements Serializable {
+
+  private static final long serialVersionUID = -2994035185406524838L;
+
+  /** The kind of landmark is absent or not supported. */
+  public static final int LANDMARK_KIND_UNKNOWN = -1;
+
+  /** The landmark is an {@link MPEGFeaturePointCode}. */
+  public static final int LANDMARK_KIND_MPEG4_FEATURE_POINT = 0;
+
+  /** The landmark is an {@link AnthropometricLandmarkNameCode}. */
+  public static final int LANDMARK_KIND_ANTHROPOMETRIC_NAME = 1;
+
+  /** The landmark is an {@link AnthropometricLandmarkPointNameCode}. */
+  public static final int LANDMARK_KIND_ANTHROPOMETRIC_POINT_NAME = 2;
+
+  /** The landmark is an {@link AnthropometricLandmarkPointIdCode}. */
+  public static final int LANDMARK_KIND_ANTHROPOMETRIC_POINT_ID = 3;
+
+  /** The coordinates are absent or not supported. */
+  public static final int COORDINATES_NONE = -1;
+
+  /** The coordinates are a {@link CoordinateCartesian2DUnsignedShortBlock}. */
+  public static final int COORDINATES_CARTESIAN_2D = 0;
+
+  /** The coordinates are a {@link FaceImageCoordinateTextureImageBlock}. */
+  public static final int COORDINATES_TEXTURE_IMAGE = 1;
+
+  /** The coordinates are a {@link CoordinateCartesian3DUnsignedShortBlock}. */
+  public static final int COORDINATES_CARTESIAN_3D = 2;
+
+  private byte[] kindTypes;
+
+  private int[] codes;
+
+  private byte[] coordinateTypes;
+
+  /* The x-, y-, and z-coordinate of each landmark. */
+  private int[] coordinates;
+
+  private FaceImageLandmarkArray(int size) {
+    this.kindTypes = new byte[size];
+    this.codes = new int[size];
+    this.coordinateTypes = new byte[size];
+    this.coordinates = new int[3 * size];
+    Arrays.fill(kindTypes, (byte)LANDMARK_KIND_UNKNOWN);
+    Arrays.fill(coordinateTypes, (byte)COORDINATES_NONE);
+  }
+
+  /**
+   * Returns the number of landmarks.
+   *
+   * @return the number of landmarks
+   */
+  public int size() {
+    return kindTypes.length;
+  }
+
+  /**
+   * Returns the type of the kind of a landmark.
+   *
+   * @param index the index of the landmark
+   *
+   * @return one of the {@code LANDMARK_KIND_} constants
+   */
+  public int getLandmarkKindType(int index) {
+    return kindTypes[index];
+  }
+
+  /**
+   * Returns the code of the kind of a landmark.
+   *
+   * @param index the index of the landmark
+   *
+   * @return the code, to be interpreted according to the {@link #getLandmarkKindType(int) kind type}
+   */
+  public int getLandmarkCode(int index) {
+    return codes[index];
+  }
+
+  /**
+   * Returns the kind of a landmark.
+   *
+   * @param index the index of the landmark
+   *
+   * @return the kind, or {@code null} if unknown
+   */
+  public FaceImageLandmarkKind getLandmarkKind(int index) {
+    switch (kindTypes[index]) {
+      case LANDMARK_KIND_MPEG4_FEATURE_POINT:
+        return MPEGFeaturePointCode.fromCode(codes[index]);
+      case LANDMARK_KIND_ANTHROPOMETRIC_NAME:
+        return AnthropometricLandmarkNameCode.fromCode(codes[index]);
+      case LANDMARK_KIND_ANTHROPOMETRIC_POINT_NAME:
+        return AnthropometricLandmarkPointNameCode.fromCode(codes[index]);
+      case LANDMARK_KIND_ANTHROPOMETRIC_POINT_ID:
+        return AnthropometricLandmarkPointIdCode.fromCode(codes[index]);
+      default:
+        return null;
+    }
+  }
+
+  /**
+   * Returns the type of the coordinates of a landmark.
+   *
+   * @param index the index of the landmark
+   *
+   * @return one of the {@code COORDINATES_} constants
+   */
+  public int getCoordinateType(int index) {
+    return coordinateTypes[index];
+  }
+
+  /**
+   * Returns the X-coordinate (or U-coordinate for texture image coordinates) of a landmark.
+   *
+   * @param index the index of the landmark
+   *
+   * @return the X-coordinate, or {@code 0} if the landmark has no coordinates
+   */
+  public int getX(int index) {
+    return coordinates[3 * index];
+  }
+
+  /**
+   * Returns the Y-coordinate (or V-coordinate for texture image coordinates) of a landmark.
+   *
+   * @param index the index of the landmark
+   *
+   * @return the Y-coordinate, or {@code 0} if the landmark has no coordinates
+   */
+  public int getY(int index) {
+    return coordinates[3 * index + 1];
+  }
+
+  /**
+   * Returns the Z-coordinate of a landmark.
+   *
+   * @param index the index of the landmark
+   *
+   * @return the Z-coordinate, or {@code 0} if the landmark has no 3D coordinates
+   */
+  public int getZ(int index) {
+    return coordinates[3 * index + 2];
+  }
+
+  /**
+   * Copies the coordinates of all landmarks to an array, as consecutive
+   * (x, y, z) triples. Missing coordinates are copied as {@code 0}.
+   *
+   * @param destination the array to copy to, with room for {@code 3 * size()} values
+   * @param offset the offset in {@code destination} of the first X-coordinate
+   */
+  public void getCoordinates(float[] destination, int offset) {
+    if (offset < 0 || destination.length - offset < coordinates.length) {
+      throw new IllegalArgumentException("No room for " + coordinates.length + " coordinates at offset " + offset);
+    }
+    for (int i = 0; i < coordinates.length; i++) {
+      destination[offset + i] = coordinates[i];
+    }
+  }
+
+  /**
+   * Creates a landmark block object for each of the landmarks.
+   *
+   * @return the landmark blocks
+   */
+  public List<FaceImageLandmarkBlock> toLandmarkBlocks() {
+    List<FaceImageLandmarkBlock> result = new ArrayList<FaceImageLandmarkBlock>(size());
+    for (int i = 0; i < size(); i++) {
+      result.add(new FaceImageLandmarkBlock(getLandmarkKind(i), getLandmarkCoordinates(i)));
+    }
+    return result;
+  }
+
+  @Override
+  public int hashCode() {
+    final int prime = 31;
+    int result = 1;
+    result = prime * result + Arrays.hashCode(kindTypes);
+    result = prime * result + Arrays.hashCode(codes);
+    result = prime * result + Arrays.hashCode(coordinateTypes);
+    result = prime * result + Arrays.hashCode(coordinates);
+    return result;
+  }
+
+  @Override
+  public boolean equals(Object obj) {
+    if (this == obj) {
+      return true;
+    }
+    if (obj == null) {
+      return false;
+    }
+    if (getClass() != obj.getClass()) {
+      return false;
+    }
+
+    FaceImageLandmarkArray other = (FaceImageLandmarkArray)obj;
+    return Arrays.equals(kindTypes, other.kindTypes)
+        && Arrays.equals(codes, other.codes)
+        && Arrays.equals(coordinateTypes, other.coordinateTypes)
+        && Arrays.equals(coordinates, other.coordinates);
+  }
+
+  @Override
+  public String toString() {
+    StringBuilder result = new StringBuilder();
+    result.append("FaceImageLandmarkArray [");
+    for (int i = 0; i < size(); i++) {
+      if (i > 0) {
+        result.append(", ");
+      }
+      result.append("(").append(getLandmarkKind(i)).append(": ");
+      switch (coordinateTypes[i]) {
+        case COORDINATES_CARTESIAN_2D:
+        case COORDINATES_TEXTURE_IMAGE:
+          result.append(getX(i)).append(", ").append(getY(i));
+          break;
+        case COORDINATES_CARTESIAN_3D:
+          result.append(getX(i)).append(", ").append(getY(i)).append(", ").append(getZ(i));
+          break;
+        default:
+          result.append("-");
+          break;
+      }
+      result.append(")");
+    }
+    result.append("]");
+    return result.toString();
+  }
+
+  /* PACKAGE */
+
+  //  LandmarkBlocks ::= SEQUENCE SIZE(1..MAX) OF LandmarkBlock
+  //
+  //  LandmarkBlock ::= SEQUENCE {
+  //    landmarkKind [0] LandmarkKind,
+  //    landmarkCoordinates [1] LandmarkCoordinates OPTIONAL,
+  //    ...
+  //  }
+
+  /**
+   * Decodes the contents of an encoded {@code LandmarkBlocks} element, or of a single
+   * {@code LandmarkBlock}, as {@link FaceImageLandmarkBlock#decodeLandmarkBlocks(org.bouncycastle.asn1.ASN1Encodable)} does.
+   *
+   * @param bytes the encoded bytes
+   * @param offset the offset of the contents
+   * @param length the length of the contents
+   *
+   * @return the landmarks, or {@code null} if the landmarks cannot be represented as
+   *         primitive values, in which case the landmark blocks should be decoded as objects
+   */
+  static FaceImageLandmarkArray decodeLandmarkBlocks(byte[] bytes, int offset, int length) {
+    try {
+      TLVCursor cursor = new TLVCursor(bytes, offset, length);
+      int sequenceCount = 0;
+      int elementCount = 0;
+      while (cursor.next()) {
+        elementCount++;
+        if (cursor.getTag() == 0x30) {
+          sequenceCount++;
+        }
+      }
+
+      cursor.reset(bytes, offset, length);
+      if (elementCount > 0 && sequenceCount == elementCount) {
+        FaceImageLandmarkArray result = new FaceImageLandmarkArray(sequenceCount);
+        for (int i = 0; cursor.next(); i++) {
+          cursor.descend();
+          if (!result.decodeLandmarkBlock(cursor, i)) {
+            return null;
+          }
+          cursor.ascend();
+        }
+        return result;
+      } else if (sequenceCount == 0) {
+        FaceImageLandmarkArray result = new FaceImageLandmarkArray(1);
+        return result.decodeLandmarkBlock(cursor, 0) ? result : null;
+      }
+    } catch (IOException ioe) {
+      /* NOTE: Leave reporting malformed contents to the object decoder. */
+    }
+
+    return null;
+  }
+
+  /**
+   * Creates a landmark array from landmark block objects.
+   *
+   * @param landmarkBlocks the landmark blocks
+   *
+   * @return the landmarks, or {@code null} if the landmarks cannot be represented as primitive values
+   */
+  static FaceImageLandmarkArray fromLandmarkBlocks(List<FaceImageLandmarkBlock> landmarkBlocks) {
+    FaceImageLandmarkArray result = new FaceImageLandmarkArray(landmarkBlocks.size());
+    for (int i = 0; i < landmarkBlocks.size(); i++) {
+      FaceImageLandmarkBlock landmarkBlock = landmarkBlocks.get(i);
+      if (landmarkBlock == null) {
+        return null;
+      }
+
+      FaceImageLandmarkKind landmarkKind = landmarkBlock.getLandmarkKind();
+      if (landmarkKind instanceof MPEGFeaturePointCode) {
+        result.kindTypes[i] = LANDMARK_KIND_MPEG4_FEATURE_POINT;
+      } else if (landmarkKind instanceof AnthropometricLandmarkNameCode) {
+        result.kindTypes[i] = LANDMARK_KIND_ANTHROPOMETRIC_NAME;
+      } else if (landmarkKind instanceof AnthropometricLandmarkPointNameCode) {
+        result.kindTypes[i] = LANDMARK_KIND_ANTHROPOMETRIC_POINT_NAME;
+      } else if (landmarkKind instanceof AnthropometricLandmarkPointIdCode) {
+        result.kindTypes[i] = LANDMARK_KIND_ANTHROPOMETRIC_POINT_ID;
+      } else if (landmarkKind != null) {
+        return null;
+      }
+      if (landmarkKind != null) {
+        result.codes[i] = landmarkKind.getCode();
+      }
+
+      FaceImageLandmarkCoordinates landmarkCoordinates = landmarkBlock.getLandmarkCoordinates();
+      if (landmarkCoordinates instanceof CoordinateCartesian2DUnsignedShortBlock) {
+        CoordinateCartesian2DUnsignedShortBlock coordinates2D = (CoordinateCartesian2DUnsignedShortBlock)landmarkCoordinates;
+        result.setCoordinates(i, COORDINATES_CARTESIAN_2D, coordinates2D.getX(), coordinates2D.getY(), 0);
+      } else if (landmarkCoordinates instanceof FaceImageCoordinateTextureImageBlock) {
+        FaceImageCoordinateTextureImageBlock textureCoordinates = (FaceImageCoordinateTextureImageBlock)landmarkCoordinates;
+        BigInteger u = textureCoordinates.getUInPixel();
+        BigInteger v = textureCoordinates.getVInPixel();
+        if (u == null || v == null || u.bitLength() > 31 || v.bitLength() > 31) {
+          return null;
+        }
+        result.setCoordinates(i, COORDINATES_TEXTURE_IMAGE, u.intValue(), v.intValue(), 0);
+      } else if (landmarkCoordinates instanceof CoordinateCartesian3DUnsignedShortBlock) {
+        CoordinateCartesian3DUnsignedShortBlock coordinates3D = (CoordinateCartesian3DUnsignedShortBlock)landmarkCoordinates;
+        result.setCoordinates(i, COORDINATES_CARTESIAN_3D, coordinates3D.getX(), coordinates3D.getY(), coordinates3D.getZ());
+      } else if (landmarkCoordinates != null) {
+        return null;
+      }
+    }
+
+    return result;
+  }
+
+  /* PRIVATE */
+
+  private FaceImageLandmarkCoordinates getLandmarkCoordinates(int index) {
+    switch (coordinateTypes[index]) {
+      case COORDINATES_CARTESIAN_2D:
+        return new CoordinateCartesian2DUnsignedShortBlock(getX(index), getY(index));
+      case COORDINATES_TEXTURE_IMAGE:
+        return new FaceImageCoordinateTextureImageBlock(BigInteger.valueOf(getX(index)), BigInteger.valueOf(getY(index)));
+      case COORDINATES_CARTESIAN_3D:
+        return new CoordinateCartesian3DUnsignedShortBlock(getX(index), getY(index), getZ(index));
+      default:
+        return null;
+    }
+  }
+
+  private void setCoordinates(int index, int coordinateType, int x, int y, int z) {
+    coordinateTypes[index] = (byte)coordinateType;
+    coordinates[3 * index] = x;
+    coordinates[3 * index + 1] = y;
+    coordinates[3 * index + 2] = z;
+  }
+
+  /**
+   * Decodes the tagged elements of a landmark block at the current level of the cursor.
+   *
+   * @param cursor the cursor, positioned before the first element of the landmark block
+   * @param index the index of the landmark
+   *
+   * @return whether the landmark could be decoded
+   *
+   * @throws IOException if the encoding is not well-formed
+   */
+  private boolean decodeLandmarkBlock(TLVCursor cursor, int index) throws IOException {
+    while (cursor.next()) {
+      int tagNo = getTagNo(cursor);
+      if (tagNo == 0) {
+        cursor.descend();
+        decodeLandmarkKind(cursor, index);
+        cursor.ascend();
+      } else if (tagNo == 1) {
+        cursor.descend();
+        boolean isDecoded = decodeLandmarkCoordinates(cursor, index);
+        cursor.ascend();
+        if (!isDecoded) {
+          return false;
+        }
+      }
+    }
+    return true;
+  }
+
+  //  LandmarkKind ::= CHOICE {
+  //    base [0] LandmarkKindBase,
+  //    extensionBlock [1] LandmarkKindExtensionBlock
+  //  }
+  //
+  //  LandmarkKindBase ::= CHOICE {
+  //    mpeg4FeaturePoint [0] MPEG4FeaturePoint,
+  //    anthropometricLandmark [1] AnthropometricLandmark
+  //  }
+
+  private void decodeLandmarkKind(TLVCursor cursor, int index) throws IOException {
+    if (!findConstructed(cursor, 0)) {
+      return;
+    }
+
+    cursor.descend();
+    while (cursor.next()) {
+      int tagNo = getTagNo(cursor);
+      if (tagNo == 0 && cursor.isConstructed()) {
+        cursor.descend();
+        decodeCode(cursor, index, LANDMARK_KIND_MPEG4_FEATURE_POINT);
+        cursor.ascend();
+        break;
+      } else if (tagNo == 1 && cursor.isConstructed()) {
+        cursor.descend();
+        if (findConstructed(cursor, 0)) {
+          cursor.descend();
+          while (cursor.next()) {
+            int anthropometricTagNo = getTagNo(cursor);
+            if (anthropometricTagNo >= 0 && anthropometricTagNo <= 2 && cursor.isConstructed()) {
+              cursor.descend();
+              decodeCode(cursor, index, LANDMARK_KIND_ANTHROPOMETRIC_NAME + anthropometricTagNo);
+              cursor.ascend();
+              break;
+            }
+          }
+          cursor.ascend();
+        }
+        cursor.ascend();
+        break;
+      }
+    }
+    cursor.ascend();
+  }
+
+  /**
+   * Decodes a code with extension block fallback, as {@link ISO39794Util#decodeCodeFromChoiceExtensionBlockFallback(org.bouncycastle.asn1.ASN1Encodable)} does.
+   * The kind type of the landmark remains unknown if there is no code.
+   *
+   * @param cursor the cursor, positioned before the elements of the choice
+   * @param index the index of the landmark
+   * @param kindType the kind type of the landmark
+   *
+   * @throws IOException if the encoding is not well-formed
+   */
+  private void decodeCode(TLVCursor cursor, int index, int kindType) throws IOException {
+    while (cursor.next()) {
+      int tagNo = getTagNo(cursor);
+      if (tagNo == 0 && !cursor.isConstructed()) {
+        setCode(cursor, index, kindType);
+        return;
+      } else if (tagNo == 1 && cursor.isConstructed()) {
+        cursor.descend();
+        if (findPrimitive(cursor, 0)) {
+          setCode(cursor, index, kindType);
+        }
+        cursor.ascend();
+        return;
+      }
+    }
+  }
+
+  private void setCode(TLVCursor cursor, int index, int kindType) {
+    if (cursor.getLength() == 0) {
+      return;
+    }
+    kindTypes[index] = (byte)kindType;
+    codes[index] = decodeInt(cursor);
+  }
+
+  //  LandmarkCoordinates ::= CHOICE {
+  //    base [0] LandmarkCoordinatesBase,
+  //    extensionBlock [1] LandmarkCoordinatesExtensionBlock
+  //  }
+  //
+  //  LandmarkCoordinatesBase ::= CHOICE {
+  //    coordinateCartesian2DBlock [0] CoordinateCartesian2DUnsignedShortBlock,
+  //    coordinateTextureImageBlock [1] CoordinateTextureImageBlock,
+  //    coordinateCartesian3DBlock [2] CoordinateCartesian3DUnsignedShortBlock
+  //  }
+
+  private boolean decodeLandmarkCoordinates(TLVCursor cursor, int index) throws IOException {
+    if (!findConstructed(cursor, 0)) {
+      return true;
+    }
+
+    cursor.descend();
+    int coordinateType = COORDINATES_NONE;
+    while (cursor.next()) {
+      int tagNo = getTagNo(cursor);
+      if (tagNo >= 0 && tagNo <= 2) {
+        coordinateType = tagNo;
+        break;
+      }
+    }
+    if (coordinateType == COORDINATES_NONE) {
+      cursor.ascend();
+      return true;
+    }
+    if (!cursor.isConstructed()) {
+      return false;
+    }
+
+    int coordinateCount = coordinateType == COORDINATES_CARTESIAN_3D ? 3 : 2;
+    boolean isExact = coordinateType == COORDINATES_TEXTURE_IMAGE;
+    int foundMask = 0;
+    cursor.descend();
+    while (cursor.next()) {
+      int tagNo = getTagNo(cursor);
+      if (tagNo < 0 || tagNo >= coordinateCount) {
+        continue;
+      }
+      if (cursor.isConstructed() || cursor.getLength() == 0 || (isExact && !isInt(cursor))) {
+        return false;
+      }
+      coordinates[3 * index + tagNo] = decodeInt(cursor);
+      foundMask |= 1 << tagNo;
+    }
+    cursor.ascend();
+    cursor.ascend();
+    if (foundMask != (1 << coordinateCount) - 1) {
+      return false;
+    }
+    coordinateTypes[index] = (byte)coordinateType;
+    return true;
+  }
+
+  /**
+   * Moves the cursor to the first element at the current level with the given tag number.
+   *
+   * @param cursor the cursor
+   * @param tagNo the tag number
+   *
+   * @return whether a constructed element with the tag number was found
+   *
+   * @throws IOException if the encoding is not well-formed
+   */
+  private static boolean findConstructed(TLVCursor cursor, int tagNo) throws IOException {
+    while (cursor.next()) {
+      if (getTagNo(cursor) == tagNo) {
+        return cursor.isConstructed();
+      }
+    }
+    return false;
+  }
+
+  private static boolean findPrimitive(TLVCursor cursor, int tagNo) throws IOException {
+    while (cursor.next()) {
+      if (getTagNo(cursor) == tagNo) {
+        return !cursor.isConstructed();
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Returns the tag number of the current element, if it is a tagged element with a low tag number.
+   *
+   * @param cursor the cursor
+   *
+   * @return the tag number, or {@code -1}
+   */
+  private static int getTagNo(TLVCursor cursor) {
+    int tag = cursor.getTag();
+    if (tag > 0xFF || (tag & 0xC0) == 0x00 || (tag & 0x1F) == 0x1F) {
+      return -1;
+    }
+    return tag & 0x1F;
+  }
+
+  /**
+   * Decodes the value of the current element as a signed integer, keeping the
+   * least significant 32 bits like {@link BigInteger#intValue()} does.
+   *
+   * @param cursor the cursor
+   *
+   * @return the integer
+   */
+  private static int decodeInt(TLVCursor cursor) {
+    byte[] bytes = cursor.getBytes();
+    int offset = cursor.getValueOffset();
+    int length = cursor.getLength();
+    int result = bytes[offset] < 0 ? -1 : 0;
+    for (int i = Math.max(0, length - 4); i < length; i++) {
+      result = (result << 8) | (bytes[offset + i] & 0xFF);
+    }
+    return result;
+  }
+
+  /**
+   * Whether the value of the current element is a signed integer that fits in 32 bits.
+   *
+   * @param cursor the cursor
+   *
+   * @return whether the value fits in an {@code int}
+   */
+  private static boolean isInt(TLVCursor cursor) {
+    byte[] bytes = cursor.getBytes();
+    int offset = cursor.getValueOffset();
+    int length = cursor.getLength();
+    if (length <= 4) {
+      return true;
+    }
+    int signByte = bytes[offset + length - 4] < 0 ? 0xFF : 0x00;
+    for (int i = 0; i < length - 4; i++) {
+      if ((bytes[offset + i] & 0xFF) != signByte) {
+        return false;
+      }
+    }
+    return true;
+  }
+}
@@ -386,7 +386,7 @@ public interface FaceImageLandmarkKind {
         // MPEG feature point case...
         return MPEGFeaturePointCode.fromCode(ISO39794Util.decodeCodeFromChoiceExtensionBlockFallback(baseTaggedObjects.get(0)));
       } else if (baseTaggedObjects.containsKey(1)) {
-        decodeAnthropometricLandmark(baseTaggedObjects.get(1));
+        return decodeAnthropometricLandmark(baseTaggedObjects.get(1));
       }
     }
 
@@ -36,16 +36,14 @@
 package org.jmrtd.lds.iso39794;
 
 import java.io.ByteArrayInputStream;
+import java.io.IOException;
 import java.io.InputStream;
-import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Objects;
 
 import org.bouncycastle.asn1.ASN1Encodable;
-import org.bouncycastle.asn1.ASN1OctetString;
-import org.bouncycastle.asn1.ASN1Sequence;
-import org.bouncycastle.asn1.ASN1TaggedObject;
 import org.bouncycastle.asn1.DEROctetString;
 import org.jmrtd.ASN1Util;
 import org.jmrtd.lds.iso39794.FaceImageInformation2DBlock.ImageDataFormatCode;
@@ -55,6 +53,8 @@ public class FaceImageRepresentation2DBlock extends Block {
   private static final long serialVersionUID = 1942286473160393593L;
 
   private byte[] representationData2DBytes;
+  private int representationData2DOffset;
+  private int representationData2DLength;
 
   private FaceImageInformation2DBlock imageInformation2DBlock;
 
@@ -63,6 +63,8 @@ public class FaceImageRepresentation2DBlock extends Block {
   public FaceImageRepresentation2DBlock(byte[] representationData2DBytes,
       FaceImageInformation2DBlock imageInformation2DBlock, FaceImageCaptureDevice2DBlock captureDevice2DBlock) {
     this.representationData2DBytes = representationData2DBytes;
+    this.representationData2DOffset = 0;
+    this.representationData2DLength = representationData2DBytes == null ? 0 : representationData2DBytes.length;
     this.imageInformation2DBlock = imageInformation2DBlock;
     this.captureDevice2DBlock = captureDevice2DBlock;
   }
@@ -75,20 +77,22 @@ public class FaceImageRepresentation2DBlock extends Block {
   //  }
 
   FaceImageRepresentation2DBlock(ASN1Encodable asn1Encodable) {
-    if (!(asn1Encodable instanceof ASN1Sequence) && !(asn1Encodable instanceof ASN1TaggedObject)) {
-      throw new IllegalArgumentException("Cannot decode!");
-    }
+    this(TaggedElements.getInstance(asn1Encodable));
+  }
 
-    Map<Integer, ASN1Encodable> taggedObjects = ASN1Util.decodeTaggedObjects(asn1Encodable);
-    representationData2DBytes = ASN1OctetString.getInstance(taggedObjects.get(0)).getOctets();
-    imageInformation2DBlock = new FaceImageInformation2DBlock(taggedObjects.get(1));
-    if (taggedObjects.containsKey(2)) {
-      captureDevice2DBlock = new FaceImageCaptureDevice2DBlock(taggedObjects.get(2));
+  /* NOTE: The image is not copied, it refers to the encoded bytes. */
+  FaceImageRepresentation2DBlock(TaggedElements taggedElements) {
+    representationData2DBytes = taggedElements.getBytes();
+    representationData2DOffset = taggedElements.getValueOffset(0);
+    representationData2DLength = taggedElements.getLength(0);
+    imageInformation2DBlock = new FaceImageInformation2DBlock(taggedElements.get(1));
+    if (taggedElements.contains(2)) {
+      captureDevice2DBlock = new FaceImageCaptureDevice2DBlock(taggedElements.get(2));
     }
   }
 
   public long getRepresentationData2DInputLength() {
-    return representationData2DBytes == null ? 0 : representationData2DBytes.length;
+    return representationData2DBytes == null ? 0 : representationData2DLength;
   }
 
   public String getRepresentationData2DInputMimeType() {
@@ -96,7 +100,7 @@ public class FaceImageRepresentation2DBlock extends Block {
   }
 
   public InputStream getRepresentationData2DInputStream() {
-    return new ByteArrayInputStream(representationData2DBytes);
+    return new ByteArrayInputStream(representationData2DBytes, representationData2DOffset, representationData2DLength);
   }
 
   public FaceImageInformation2DBlock getImageInformation2DBlock() {
@@ -111,7 +115,7 @@ public class FaceImageRepresentation2DBlock extends Block {
   public int hashCode() {
     final int prime = 31;
     int result = 1;
-    result = prime * result + Arrays.hashCode(representationData2DBytes);
+    result = prime * result + ISO39794Util.hashCode(representationData2DBytes, representationData2DOffset, representationData2DLength);
     result = prime * result + Objects.hash(captureDevice2DBlock, imageInformation2DBlock);
     return result;
   }
@@ -131,13 +135,14 @@ public class FaceImageRepresentation2DBlock extends Block {
     FaceImageRepresentation2DBlock other = (FaceImageRepresentation2DBlock) obj;
     return Objects.equals(captureDevice2DBlock, other.captureDevice2DBlock)
         && Objects.equals(imageInformation2DBlock, other.imageInformation2DBlock)
-        && Arrays.equals(representationData2DBytes, other.representationData2DBytes);
+        && ISO39794Util.equals(representationData2DBytes, representationData2DOffset, representationData2DLength,
+            other.representationData2DBytes, other.representationData2DOffset, other.representationData2DLength);
   }
 
   @Override
   public String toString() {
     return "FaceImageRepresentation2DBlock ["
-        + "representationData2DBytes: " + (representationData2DBytes == null ? "-" : representationData2DBytes.length)
+        + "representationData2DBytes: " + (representationData2DBytes == null ? "-" : representationData2DLength)
         + ", imageInformation2DBlock: " + imageInformation2DBlock
         + ", captureDevice2DBlock: " + captureDevice2DBlock
         + "]";
@@ -147,12 +152,29 @@ public class FaceImageRepresentation2DBlock extends Block {
 
   @Override
   ASN1Encodable getASN1Object() {
+    Map<Integer, ASN1Encodable> taggedObjects = getTaggedObjectsWithoutImage();
+    taggedObjects.put(0, new DEROctetString(ISO39794Util.getBytes(representationData2DBytes, representationData2DOffset, representationData2DLength)));
+    return ASN1Util.encodeTaggedObjects(taggedObjects);
+  }
+
+  @Override
+  DERElement getDERElement() throws IOException {
+    /* NOTE: The image is written from the array holding it, without copying it into an ASN.1 object. */
+    return DERElement.sequence(getTaggedObjectsWithoutImage(),
+        Collections.singletonMap(0, DERElement.octetString(representationData2DBytes, representationData2DOffset, representationData2DLength)));
+  }
+
+  /**
+   * Returns the elements of this block, except for the image.
+   *
+   * @return the elements, indexed by tag number
+   */
+  private Map<Integer, ASN1Encodable> getTaggedObjectsWithoutImage() {
     Map<Integer, ASN1Encodable> taggedObjects = new HashMap<Integer, ASN1Encodable>();
-    taggedObjects.put(0, new DEROctetString(representationData2DBytes));
     taggedObjects.put(1, imageInformation2DBlock.getASN1Object());
     if (captureDevice2DBlock != null) {
       taggedObjects.put(2, captureDevice2DBlock.getASN1Object());
     }
-    return ASN1Util.encodeTaggedObjects(taggedObjects);
+    return taggedObjects;
   }
 }
@@ -35,9 +35,11 @@
 
 package org.jmrtd.lds.iso39794;
 
+import java.io.IOException;
 import java.io.InputStream;
 import java.math.BigInteger;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -71,6 +73,9 @@ public class FaceImageRepresentationBlock extends Block implements ImageInfo {
 
   private List<FaceImageLandmarkBlock> landmarkBlocks;
 
+  /* Decoded landmarks, from which landmarkBlocks is created on demand. */
+  private FaceImageLandmarkArray landmarkArray;
+
   public FaceImageRepresentationBlock(BigInteger representationId,
       FaceImageRepresentation2DBlock imageRepresentation2DBlock, DateTimeBlock captureDateTimeBlock,
       List<QualityBlock> qualityBlocks, List<PADDataBlock> padDataBlocks, BigInteger sessionId, BigInteger derivedFrom,
@@ -103,32 +108,39 @@ public class FaceImageRepresentationBlock extends Block implements ImageInfo {
   //  }
 
   FaceImageRepresentationBlock(ASN1Encodable asn1Encodable) {
-    Map<Integer, ASN1Encodable> taggedObjects = ASN1Util.decodeTaggedObjects(asn1Encodable);
-    representationId = ASN1Util.decodeBigInteger(taggedObjects.get(0));
-    imageRepresentation2DBlock = decodeImageRepresentation2DBlock(taggedObjects.get(1));
-    if (taggedObjects.containsKey(2))  {
-      captureDateTimeBlock = new DateTimeBlock(taggedObjects.get(2));
+    this(TaggedElements.getInstance(asn1Encodable));
+  }
+
+  FaceImageRepresentationBlock(TaggedElements taggedElements) {
+    representationId = taggedElements.getBigInteger(0);
+    imageRepresentation2DBlock = decodeImageRepresentation2DBlock(taggedElements.getTaggedElements(1));
+    if (taggedElements.contains(2))  {
+      captureDateTimeBlock = new DateTimeBlock(taggedElements.get(2));
     }
-    if (taggedObjects.containsKey(3)) {
-      qualityBlocks = QualityBlock.decodeQualityBlocks(taggedObjects.get(3));
+    if (taggedElements.contains(3)) {
+      qualityBlocks = QualityBlock.decodeQualityBlocks(taggedElements.get(3));
     }
-    if (taggedObjects.containsKey(4)) {
-      padDataBlocks = PADDataBlock.decodePADDataBlocks(taggedObjects.get(4));
+    if (taggedElements.contains(4)) {
+      padDataBlocks = PADDataBlock.decodePADDataBlocks(taggedElements.get(4));
     }
-    if (taggedObjects.containsKey(5)) {
-      sessionId = ASN1Util.decodeBigInteger(taggedObjects.get(5));
+    if (taggedElements.contains(5)) {
+      sessionId = taggedElements.getBigInteger(5);
     }
-    if (taggedObjects.containsKey(6)) {
-      derivedFrom = ASN1Util.decodeBigInteger(taggedObjects.get(6));
+    if (taggedElements.contains(6)) {
+      derivedFrom = taggedElements.getBigInteger(6);
     }
-    if (taggedObjects.containsKey(7)) {
-      captureDeviceBlock = new FaceImageCaptureDeviceBlock(taggedObjects.get(7));
+    if (taggedElements.contains(7)) {
+      captureDeviceBlock = new FaceImageCaptureDeviceBlock(taggedElements.get(7));
     }
-    if (taggedObjects.containsKey(8)) {
-      identityMetadataBlock = new FaceImageIdentityMetadataBlock(taggedObjects.get(8));
+    if (taggedElements.contains(8)) {
+      identityMetadataBlock = new FaceImageIdentityMetadataBlock(taggedElements.get(8));
     }
-    if (taggedObjects.containsKey(9)) {
-      landmarkBlocks = FaceImageLandmarkBlock.decodeLandmarkBlocks(taggedObjects.get(9));
+    if (taggedElements.contains(9)) {
+      landmarkArray = FaceImageLandmarkArray.decodeLandmarkBlocks(taggedElements.getBytes(),
+          taggedElements.getContentsOffset(9), taggedElements.getContentsLength(9));
+      if (landmarkArray == null) {
+        landmarkBlocks = FaceImageLandmarkBlock.decodeLandmarkBlocks(taggedElements.get(9));
+      }
     }
   }
 
@@ -144,10 +156,28 @@ public class FaceImageRepresentationBlock extends Block implements ImageInfo {
     return identityMetadataBlock;
   }
 
-  public List<FaceImageLandmarkBlock> getLandmarkBlocks() {
+  public synchronized List<FaceImageLandmarkBlock> getLandmarkBlocks() {
+    if (landmarkBlocks == null && landmarkArray != null) {
+      landmarkBlocks = landmarkArray.toLandmarkBlocks();
+    }
     return landmarkBlocks;
   }
 
+  /**
+   * Returns the landmarks, without creating objects per landmark.
+   *
+   * @return the landmarks, or {@code null} if there are no landmark blocks, or if
+   *         some landmark cannot be represented by primitive values
+   *
+   * @since 0.8.4
+   */
+  public synchronized FaceImageLandmarkArray getLandmarkArray() {
+    if (landmarkArray == null && landmarkBlocks != null) {
+      landmarkArray = FaceImageLandmarkArray.fromLandmarkBlocks(landmarkBlocks);
+    }
+    return landmarkArray;
+  }
+
   public FaceImageCaptureDeviceBlock getCaptureDeviceBlock() {
     return captureDeviceBlock;
   }
@@ -175,7 +205,7 @@ public class FaceImageRepresentationBlock extends Block implements ImageInfo {
   @Override
   public int hashCode() {
     return Objects.hash(captureDateTimeBlock, captureDeviceBlock, derivedFrom, identityMetadataBlock,
-        imageRepresentation2DBlock, landmarkBlocks, padDataBlocks, qualityBlocks, representationId, sessionId);
+        imageRepresentation2DBlock, getLandmarkBlocks(), padDataBlocks, qualityBlocks, representationId, sessionId);
   }
 
   @Override
@@ -196,7 +226,7 @@ public class FaceImageRepresentationBlock extends Block implements ImageInfo {
         && Objects.equals(derivedFrom, other.derivedFrom)
         && Objects.equals(identityMetadataBlock, other.identityMetadataBlock)
         && Objects.equals(imageRepresentation2DBlock, other.imageRepresentation2DBlock)
-        && Objects.equals(landmarkBlocks, other.landmarkBlocks) && Objects.equals(padDataBlocks, other.padDataBlocks)
+        && Objects.equals(getLandmarkBlocks(), other.getLandmarkBlocks()) && Objects.equals(padDataBlocks, other.padDataBlocks)
         && Objects.equals(qualityBlocks, other.qualityBlocks)
         && Objects.equals(representationId, other.representationId) && Objects.equals(sessionId, other.sessionId);
   }
@@ -213,7 +243,7 @@ public class FaceImageRepresentationBlock extends Block implements ImageInfo {
         + ", derivedFrom: " + derivedFrom
         + ", captureDeviceBlock: " + captureDeviceBlock
         + ", identityMetadataBlock: " + identityMetadataBlock
-        + ", landmarkBlocks: " + landmarkBlocks
+        + ", landmarkBlocks: " + getLandmarkBlocks()
         + "]";
   }
 
@@ -288,47 +318,29 @@ public class FaceImageRepresentationBlock extends Block implements ImageInfo {
 
   @Override
   ASN1Encodable getASN1Object() {
-    Map<Integer, ASN1Encodable> taggedObjects = new HashMap<Integer, ASN1Encodable>();
-    taggedObjects.put(0, ASN1Util.encodeBigInteger(representationId));
+    Map<Integer, ASN1Encodable> taggedObjects = getTaggedObjectsWithoutImage();
     taggedObjects.put(1, encodeImageRepresentation2DBlock(imageRepresentation2DBlock));
-    if (captureDateTimeBlock != null) {
-      taggedObjects.put(2, captureDateTimeBlock.getASN1Object());
-    }
-    if (qualityBlocks != null) {
-      taggedObjects.put(3, ISO39794Util.encodeBlocks(qualityBlocks));
-    }
-    if (padDataBlocks != null) {
-      taggedObjects.put(4, ISO39794Util.encodeBlocks(padDataBlocks));
-    }
-    if (sessionId != null) {
-      taggedObjects.put(5, ASN1Util.encodeBigInteger(sessionId));
-    }
-    if (derivedFrom != null) {
-      taggedObjects.put(6, ASN1Util.encodeBigInteger(derivedFrom));
-    }
-    if (captureDeviceBlock != null) {
-      taggedObjects.put(7, captureDeviceBlock.getASN1Object());
-    }
-    if (identityMetadataBlock != null) {
-      taggedObjects.put(8, identityMetadataBlock.getASN1Object());
-    }
-    if (landmarkBlocks != null) {
-      taggedObjects.put(9, ISO39794Util.encodeBlocks(landmarkBlocks));
-    }
     return ASN1Util.encodeTaggedObjects(taggedObjects);
   }
 
+  @Override
+  DERElement getDERElement() throws IOException {
+    return DERElement.sequence(getTaggedObjectsWithoutImage(),
+        Collections.singletonMap(1, getImageRepresentation2DBlockDERElement(imageRepresentation2DBlock)));
+  }
+
+
   // RepresentationBlocks ::= SEQUENCE SIZE (1) OF RepresentationBlock
 
-  static List<FaceImageRepresentationBlock> decodeRepresentationBlocks(ASN1Encodable asn1Encodable) {
+  static List<FaceImageRepresentationBlock> decodeRepresentationBlocks(TaggedElements taggedElements, int tagNo) {
     List<FaceImageRepresentationBlock> blocks = new ArrayList<FaceImageRepresentationBlock>();
-    if (ASN1Util.isSequenceOfSequences(asn1Encodable)) {
-      List<ASN1Encodable> blockASN1Objects = ASN1Util.list(asn1Encodable);
-      for (ASN1Encodable blockASN1Object: blockASN1Objects) {
-        blocks.add(new FaceImageRepresentationBlock(blockASN1Object));
+    if (taggedElements.isSequenceOfSequences(tagNo)) {
+      List<TaggedElements> blockElements = taggedElements.getSequenceOf(tagNo);
+      for (TaggedElements blockElement: blockElements) {
+        blocks.add(new FaceImageRepresentationBlock(blockElement));
       }
     } else {
-      blocks.add(new FaceImageRepresentationBlock(asn1Encodable));
+      blocks.add(new FaceImageRepresentationBlock(taggedElements.getTaggedElements(tagNo)));
     }
 
     return blocks;
@@ -349,12 +361,11 @@ public class FaceImageRepresentationBlock extends Block implements ImageInfo {
   //    ...
   //  }
 
-  private static FaceImageRepresentation2DBlock decodeImageRepresentation2DBlock(ASN1Encodable asn1Encodable) {
-    Map<Integer, ASN1Encodable> taggedObjects = ASN1Util.decodeTaggedObjects(asn1Encodable);
-    if (taggedObjects.containsKey(0)) {
-      Map<Integer, ASN1Encodable> baseTaggedObjects = ASN1Util.decodeTaggedObjects(taggedObjects.get(0));
-      if (baseTaggedObjects.containsKey(0)) {
-        return new FaceImageRepresentation2DBlock(baseTaggedObjects.get(0));
+  private static FaceImageRepresentation2DBlock decodeImageRepresentation2DBlock(TaggedElements taggedElements) {
+    if (taggedElements.contains(0)) {
+      TaggedElements baseTaggedElements = taggedElements.getTaggedElements(0);
+      if (baseTaggedElements.contains(0)) {
+        return new FaceImageRepresentation2DBlock(baseTaggedElements.getTaggedElements(0));
       }
 
       /* NOTE: Not supporting [1] ShapeRepresentation3DBlock... */
@@ -371,4 +382,56 @@ public class FaceImageRepresentationBlock extends Block implements ImageInfo {
     taggedObjects.put(0, ASN1Util.encodeTaggedObjects(baseTaggedObjects));
     return ASN1Util.encodeTaggedObjects(taggedObjects);
   }
+
+  /**
+   * Returns the encoding of the image representation, as {@link #encodeImageRepresentation2DBlock(FaceImageRepresentation2DBlock)}
+   * does, without copying the image.
+   *
+   * @param faceImageRepresentation2DBlock the image representation
+   *
+   * @return the encoding
+   *
+   * @throws IOException on error encoding the image representation
+   */
+  private static DERElement getImageRepresentation2DBlockDERElement(FaceImageRepresentation2DBlock faceImageRepresentation2DBlock) throws IOException {
+    Map<Integer, ASN1Encodable> noTaggedObjects = Collections.emptyMap();
+    DERElement baseElement = DERElement.sequence(noTaggedObjects, Collections.singletonMap(0, faceImageRepresentation2DBlock.getDERElement()));
+    return DERElement.sequence(noTaggedObjects, Collections.singletonMap(0, baseElement));
+  }
+
+  /**
+   * Returns the elements of this block, except for the image representation.
+   *
+   * @return the elements, indexed by tag number
+   */
+  private Map<Integer, ASN1Encodable> getTaggedObjectsWithoutImage() {
+    Map<Integer, ASN1Encodable> taggedObjects = new HashMap<Integer, ASN1Encodable>();
+    taggedObjects.put(0, ASN1Util.encodeBigInteger(representationId));
+    if (captureDateTimeBlock != null) {
+      taggedObjects.put(2, captureDateTimeBlock.getASN1Object());
+    }
+    if (qualityBlocks != null) {
+      taggedObjects.put(3, ISO39794Util.encodeBlocks(qualityBlocks));
+    }
+    if (padDataBlocks != null) {
+      taggedObjects.put(4, ISO39794Util.encodeBlocks(padDataBlocks));
+    }
+    if (sessionId != null) {
+      taggedObjects.put(5, ASN1Util.encodeBigInteger(sessionId));
+    }
+    if (derivedFrom != null) {
+      taggedObjects.put(6, ASN1Util.encodeBigInteger(derivedFrom));
+    }
+    if (captureDeviceBlock != null) {
+      taggedObjects.put(7, captureDeviceBlock.getASN1Object());
+    }
+    if (identityMetadataBlock != null) {
+      taggedObjects.put(8, identityMetadataBlock.getASN1Object());
+    }
+    List<FaceImageLandmarkBlock> landmarkBlocks = getLandmarkBlocks();
+    if (landmarkBlocks != null) {
+      taggedObjects.put(9, ISO39794Util.encodeBlocks(landmarkBlocks));
+    }
+    return taggedObjects;
+  }
 }
@@ -37,6 +37,7 @@ package org.jmrtd.lds.iso39794;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -45,7 +46,6 @@ import java.util.SortedMap;
 import java.util.TreeMap;
 
 import org.bouncycastle.asn1.ASN1Encodable;
-import org.bouncycastle.asn1.ASN1Sequence;
 import org.bouncycastle.asn1.BERTags;
 import org.bouncycastle.asn1.DERTaggedObject;
 import org.jmrtd.ASN1Util;
@@ -76,7 +76,7 @@ public class FingerImageDataBlock extends Block implements BiometricDataBlock {
   }
 
   public FingerImageDataBlock(StandardBiometricHeader sbh, InputStream inputStream) throws IOException {
-    this(sbh, ASN1Util.readASN1Object(inputStream));
+    this(sbh, TaggedElements.read(inputStream, BERTags.APPLICATION, 4));
   }
 
   //  FingerImageDataBlock ::= [APPLICATION 4] SEQUENCE {
@@ -86,15 +86,13 @@ public class FingerImageDataBlock extends Block implements BiometricDataBlock {
   //  }
 
   FingerImageDataBlock(StandardBiometricHeader sbh, ASN1Encodable asn1Encodable) {
-    this.sbh = sbh;
-    asn1Encodable = ASN1Util.checkTag(asn1Encodable, BERTags.APPLICATION, 4);
-    if (!(asn1Encodable instanceof ASN1Sequence)) {
-      throw new IllegalArgumentException("Cannot decode!");
-    }
+    this(sbh, TaggedElements.getInstance(ASN1Util.checkTag(asn1Encodable, BERTags.APPLICATION, 4)));
+  }
 
-    Map<Integer, ASN1Encodable> taggedObjects = ASN1Util.decodeTaggedObjects(asn1Encodable);
-    versionBlock = new VersionBlock(taggedObjects.get(0));
-    representationBlocks = FingerImageRepresentationBlock.decodeRepresentationBlocks(taggedObjects.get(1));
+  private FingerImageDataBlock(StandardBiometricHeader sbh, TaggedElements taggedElements) {
+    this.sbh = sbh;
+    versionBlock = new VersionBlock(taggedElements.get(0));
+    representationBlocks = FingerImageRepresentationBlock.decodeRepresentationBlocks(taggedElements, 1);
   }
 
   public VersionBlock getVersionBlock() {
@@ -170,6 +168,15 @@ public class FingerImageDataBlock extends Block implements BiometricDataBlock {
     return  new DERTaggedObject(false, BERTags.APPLICATION, 0x04, ASN1Util.encodeTaggedObjects(taggedObjects));
   }
 
+  @Override
+  DERElement getDERElement() throws IOException {
+    /* NOTE: The images in the representation blocks are written without copying them into ASN.1 objects. */
+    Map<Integer, ASN1Encodable> taggedObjects = new HashMap<Integer, ASN1Encodable>();
+    taggedObjects.put(0, versionBlock.getASN1Object());
+    return DERElement.applicationSequence(0x04, taggedObjects,
+        Collections.singletonMap(1, DERElement.sequenceOf(representationBlocks)));
+  }
+
   /* PRIVATE */
 
   /**
@@ -36,9 +36,9 @@
 package org.jmrtd.lds.iso39794;
 
 import java.io.ByteArrayInputStream;
+import java.io.IOException;
 import java.io.InputStream;
 import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
@@ -46,7 +46,6 @@ import java.util.Map;
 import java.util.Objects;
 
 import org.bouncycastle.asn1.ASN1Encodable;
-import org.bouncycastle.asn1.ASN1OctetString;
 import org.bouncycastle.asn1.ASN1Sequence;
 import org.bouncycastle.asn1.ASN1VisibleString;
 import org.bouncycastle.asn1.DEROctetString;
@@ -146,6 +145,8 @@ public class FingerImageRepresentationBlock extends Block implements ImageInfo {
   private PADDataBlock padDataBlock;
 
   private byte[] imageData;
+  private int imageDataOffset;
+  private int imageDataLength;
 
   private List<String> commentBlocks;
 
@@ -174,6 +175,8 @@ public class FingerImageRepresentationBlock extends Block implements ImageInfo {
     this.annotationBlocks = annotationBlocks;
     this.padDataBlock = padDataBlock;
     this.imageData = imageData;
+    this.imageDataOffset = 0;
+    this.imageDataLength = imageData == null ? 0 : imageData.length;
     this.commentBlocks = commentBlocks;
     this.vendorSpecificDataBlocks = vendorSpecificDataBlocks;
   }
@@ -200,52 +203,55 @@ public class FingerImageRepresentationBlock extends Block implements ImageInfo {
   //  }
 
   FingerImageRepresentationBlock(ASN1Encodable asn1Encodable) {
-    if (asn1Encodable == null) {
-      throw new IllegalArgumentException("Cannot decode!");
-    }
-    Map<Integer, ASN1Encodable> taggedObjects = ASN1Util.decodeTaggedObjects(asn1Encodable);
-    position = FingerImagePositionCode.fromCode(ISO39794Util.decodeCodeFromChoiceExtensionBlockFallback(taggedObjects.get(0)));
-    impression = ImpressionCode.fromCode(ISO39794Util.decodeCodeFromChoiceExtensionBlockFallback(taggedObjects.get(1)));
-    imageDataFormat = ImageDataFormatCode.fromCode(ISO39794Util.decodeCodeFromChoiceExtensionBlockFallback(taggedObjects.get(2)));
-    imageData = (ASN1OctetString.getInstance(taggedObjects.get(3))).getOctets();
-    if (taggedObjects.containsKey(4)) {
-      captureDateTimeBlock = new DateTimeBlock(taggedObjects.get(4));
+    this(TaggedElements.getInstance(asn1Encodable));
+  }
+
+  /* NOTE: The image is not copied, it refers to the encoded bytes. */
+  FingerImageRepresentationBlock(TaggedElements taggedElements) {
+    position = FingerImagePositionCode.fromCode(ISO39794Util.decodeCodeFromChoiceExtensionBlockFallback(taggedElements.get(0)));
+    impression = ImpressionCode.fromCode(ISO39794Util.decodeCodeFromChoiceExtensionBlockFallback(taggedElements.get(1)));
+    imageDataFormat = ImageDataFormatCode.fromCode(ISO39794Util.decodeCodeFromChoiceExtensionBlockFallback(taggedElements.get(2)));
+    imageData = taggedElements.getBytes();
+    imageDataOffset = taggedElements.getValueOffset(3);
+    imageDataLength = taggedElements.getLength(3);
+    if (taggedElements.contains(4)) {
+      captureDateTimeBlock = new DateTimeBlock(taggedElements.get(4));
     }
-    if (taggedObjects.containsKey(5)) {
-      captureDeviceBlock = new FingerImageCaptureDeviceBlock(taggedObjects.get(5));
+    if (taggedElements.contains(5)) {
+      captureDeviceBlock = new FingerImageCaptureDeviceBlock(taggedElements.get(5));
     }
-    if (taggedObjects.containsKey(6)) {
-      qualityBlocks = QualityBlock.decodeQualityBlocks(taggedObjects.get(6));
+    if (taggedElements.contains(6)) {
+      qualityBlocks = QualityBlock.decodeQualityBlocks(taggedElements.get(6));
     }
-    if (taggedObjects.containsKey(7)) {
-      spatialSamplingRateBlock = new FingerImageSpatialSamplingRateBlock(taggedObjects.get(7));
+    if (taggedElements.contains(7)) {
+      spatialSamplingRateBlock = new FingerImageSpatialSamplingRateBlock(taggedElements.get(7));
     }
-    if (taggedObjects.containsKey(8)) {
-      isPositionComputedByCaptureSystem = ASN1Util.decodeBoolean(taggedObjects.get(8));
+    if (taggedElements.contains(8)) {
+      isPositionComputedByCaptureSystem = ASN1Util.decodeBoolean(taggedElements.get(8));
     }
-    if (taggedObjects.containsKey(9)) {
-      fingerRotation = ASN1Util.decodeInt(taggedObjects.get(9));
+    if (taggedElements.contains(9)) {
+      fingerRotation = taggedElements.getInt(9);
     }
-    if (taggedObjects.containsKey(10)) {
-      isImageRotatedToVertical = ASN1Util.decodeBoolean(taggedObjects.get(10));
+    if (taggedElements.contains(10)) {
+      isImageRotatedToVertical = ASN1Util.decodeBoolean(taggedElements.get(10));
     }
-    if (taggedObjects.containsKey(11)) {
-      isImageHasBeenLossilyCompressed = ASN1Util.decodeBoolean(taggedObjects.get(11));
+    if (taggedElements.contains(11)) {
+      isImageHasBeenLossilyCompressed = ASN1Util.decodeBoolean(taggedElements.get(11));
     }
-    if (taggedObjects.containsKey(12)) {
-      segmentationBlocks = FingerImageSegmentationBlock.decodeFingerImageSegmentationBlocks(taggedObjects.get(12));
+    if (taggedElements.contains(12)) {
+      segmentationBlocks = FingerImageSegmentationBlock.decodeFingerImageSegmentationBlocks(taggedElements.get(12));
     }
-    if (taggedObjects.containsKey(13)) {
-      annotationBlocks = FingerImageAnnotationBlock.decodeFingerImageAnnotationBlocks(taggedObjects.get(13));
+    if (taggedElements.contains(13)) {
+      annotationBlocks = FingerImageAnnotationBlock.decodeFingerImageAnnotationBlocks(taggedElements.get(13));
     }
-    if (taggedObjects.containsKey(14)) {
-      padDataBlock = new PADDataBlock(taggedObjects.get(14));
+    if (taggedElements.contains(14)) {
+      padDataBlock = new PADDataBlock(taggedElements.get(14));
     }
-    if (taggedObjects.containsKey(15)) {
-      commentBlocks = decodeCommentBlocks(taggedObjects.get(15));
+    if (taggedElements.contains(15)) {
+      commentBlocks = decodeCommentBlocks(taggedElements.get(15));
     }
-    if (taggedObjects.containsKey(16)) {
-      vendorSpecificDataBlocks = ExtendedDataBlock.decodeExtendedDataBlocks(taggedObjects.get(16));
+    if (taggedElements.contains(16)) {
+      vendorSpecificDataBlocks = ExtendedDataBlock.decodeExtendedDataBlocks(taggedElements.get(16));
     }
   }
 
@@ -314,14 +320,14 @@ public class FingerImageRepresentationBlock extends Block implements ImageInfo {
   }
 
   public byte[] geImageData() {
-    return imageData;
+    return ISO39794Util.getBytes(imageData, imageDataOffset, imageDataLength);
   }
 
   @Override
   public int hashCode() {
     final int prime = 31;
     int result = 1;
-    result = prime * result + Arrays.hashCode(imageData);
+    result = prime * result + ISO39794Util.hashCode(imageData, imageDataOffset, imageDataLength);
     result = prime * result + Objects.hash(annotationBlocks, captureDateTimeBlock, captureDeviceBlock, commentBlocks,
         fingerRotation, imageDataFormat, impression, isImageHasBeenLossilyCompressed, isImageRotatedToVertical,
         isPositionComputedByCaptureSystem, padDataBlock, position, qualityBlocks, segmentationBlocks,
@@ -346,7 +352,8 @@ public class FingerImageRepresentationBlock extends Block implements ImageInfo {
         && Objects.equals(captureDateTimeBlock, other.captureDateTimeBlock)
         && Objects.equals(captureDeviceBlock, other.captureDeviceBlock)
         && Objects.equals(commentBlocks, other.commentBlocks) && Objects.equals(fingerRotation, other.fingerRotation)
-        && Arrays.equals(imageData, other.imageData) && imageDataFormat == other.imageDataFormat
+        && ISO39794Util.equals(imageData, imageDataOffset, imageDataLength, other.imageData, other.imageDataOffset, other.imageDataLength)
+        && imageDataFormat == other.imageDataFormat
         && impression == other.impression
         && Objects.equals(isImageHasBeenLossilyCompressed, other.isImageHasBeenLossilyCompressed)
         && Objects.equals(isImageRotatedToVertical, other.isImageRotatedToVertical)
@@ -375,7 +382,7 @@ public class FingerImageRepresentationBlock extends Block implements ImageInfo {
         + ", segmentationBlocks: " + segmentationBlocks
         + ", annotationBlocks: " + annotationBlocks
         + ", padDataBlock: " + padDataBlock
-        + ", imageData: " + imageData.length
+        + ", imageData: " + imageDataLength
         + ", commentBlocks: " + commentBlocks
         + ", vendorSpecificDataBlocks: " + vendorSpecificDataBlocks
         + "]";
@@ -411,12 +418,12 @@ public class FingerImageRepresentationBlock extends Block implements ImageInfo {
 
   @Override
   public int getImageLength() {
-    return imageData.length;
+    return imageDataLength;
   }
 
   @Override
   public InputStream getImageInputStream() {
-    return new ByteArrayInputStream(imageData);
+    return new ByteArrayInputStream(imageData, imageDataOffset, imageDataLength);
   }
 
   /* PACKAGE */
@@ -432,62 +439,28 @@ public class FingerImageRepresentationBlock extends Block implements ImageInfo {
 
   @Override
   ASN1Encodable getASN1Object() {
-    Map<Integer, ASN1Encodable> taggedObjects = new HashMap<Integer, ASN1Encodable>();
-    taggedObjects.put(0, ISO39794Util.encodeCodeAsChoiceExtensionBlockFallback(position.getCode()));
-    taggedObjects.put(1, ISO39794Util.encodeCodeAsChoiceExtensionBlockFallback(impression.getCode()));
-    taggedObjects.put(2, ISO39794Util.encodeCodeAsChoiceExtensionBlockFallback(imageDataFormat.getCode()));
-    taggedObjects.put(3, new DEROctetString(imageData));
-    if (captureDateTimeBlock != null) {
-      taggedObjects.put(4, captureDateTimeBlock.getASN1Object());
-    }
-    if (captureDeviceBlock != null) {
-      taggedObjects.put(5, captureDeviceBlock.getASN1Object());
-    }
-    if (qualityBlocks != null) {
-      taggedObjects.put(6, ISO39794Util.encodeBlocks(qualityBlocks));
-    }
-    if (spatialSamplingRateBlock != null) {
-      taggedObjects.put(7, spatialSamplingRateBlock.getASN1Object());
-    }
-    if (isPositionComputedByCaptureSystem != null) {
-      taggedObjects.put(8, ASN1Util.encodeBoolean(isPositionComputedByCaptureSystem));
-    }
-    if (fingerRotation != null) {
-      taggedObjects.put(9, ASN1Util.encodeInt(fingerRotation));
-    }
-    if (isImageRotatedToVertical != null) {
-      taggedObjects.put(10, ASN1Util.encodeBoolean(isImageRotatedToVertical));
-    }
-    if (isImageHasBeenLossilyCompressed != null) {
-      taggedObjects.put(11, ASN1Util.encodeBoolean(isImageHasBeenLossilyCompressed));
-    }
-    if (segmentationBlocks != null) {
-      taggedObjects.put(12, ISO39794Util.encodeBlocks(segmentationBlocks));
-    }
-    if (annotationBlocks != null) {
-      taggedObjects.put(13, ISO39794Util.encodeBlocks(annotationBlocks));
-    }
-    if (padDataBlock != null) {
-      taggedObjects.put(14, padDataBlock.getASN1Object());
-    }
-    if (commentBlocks != null) {
-      taggedObjects.put(15, encodeCommentBlocks(commentBlocks));
-    }
-    if (vendorSpecificDataBlocks != null) {
-      taggedObjects.put(16, ISO39794Util.encodeBlocks(vendorSpecificDataBlocks));
-    }
+    Map<Integer, ASN1Encodable> taggedObjects = getTaggedObjectsWithoutImage();
+    taggedObjects.put(3, new DEROctetString(ISO39794Util.getBytes(imageData, imageDataOffset, imageDataLength)));
     return ASN1Util.encodeTaggedObjects(taggedObjects);
   }
 
-  static List<FingerImageRepresentationBlock> decodeRepresentationBlocks(ASN1Encodable asn1Encodable) {
+  @Override
+  DERElement getDERElement() throws IOException {
+    /* NOTE: The image is written from the array holding it, without copying it into an ASN.1 object. */
+    return DERElement.sequence(getTaggedObjectsWithoutImage(),
+        Collections.singletonMap(3, DERElement.octetString(imageData, imageDataOffset, imageDataLength)));
+  }
+
+
+  static List<FingerImageRepresentationBlock> decodeRepresentationBlocks(TaggedElements taggedElements, int tagNo) {
     List<FingerImageRepresentationBlock> blocks = new ArrayList<FingerImageRepresentationBlock>();
-    if (ASN1Util.isSequenceOfSequences(asn1Encodable)) {
-      List<ASN1Encodable> blockASN1Objects = ASN1Util.list(asn1Encodable);
-      for (ASN1Encodable blockASN1Object: blockASN1Objects) {
-        blocks.add(new FingerImageRepresentationBlock(blockASN1Object));
+    if (taggedElements.isSequenceOfSequences(tagNo)) {
+      List<TaggedElements> blockElements = taggedElements.getSequenceOf(tagNo);
+      for (TaggedElements blockElement: blockElements) {
+        blocks.add(new FingerImageRepresentationBlock(blockElement));
       }
     } else {
-      blocks.add(new FingerImageRepresentationBlock(asn1Encodable));
+      blocks.add(new FingerImageRepresentationBlock(taggedElements.getTaggedElements(tagNo)));
     }
 
     return blocks;
@@ -596,4 +569,56 @@ public class FingerImageRepresentationBlock extends Block implements ImageInfo {
       return CBEFFInfo.BIOMETRIC_SUBTYPE_NONE;
     }
   }
+
+  /**
+   * Returns the elements of this block, except for the image.
+   *
+   * @return the elements, indexed by tag number
+   */
+  private Map<Integer, ASN1Encodable> getTaggedObjectsWithoutImage() {
+    Map<Integer, ASN1Encodable> taggedObjects = new HashMap<Integer, ASN1Encodable>();
+    taggedObjects.put(0, ISO39794Util.encodeCodeAsChoiceExtensionBlockFallback(position.getCode()));
+    taggedObjects.put(1, ISO39794Util.encodeCodeAsChoiceExtensionBlockFallback(impression.getCode()));
+    taggedObjects.put(2, ISO39794Util.encodeCodeAsChoiceExtensionBlockFallback(imageDataFormat.getCode()));
+    if (captureDateTimeBlock != null) {
+      taggedObjects.put(4, captureDateTimeBlock.getASN1Object());
+    }
+    if (captureDeviceBlock != null) {
+      taggedObjects.put(5, captureDeviceBlock.getASN1Object());
+    }
+    if (qualityBlocks != null) {
+      taggedObjects.put(6, ISO39794Util.encodeBlocks(qualityBlocks));
+    }
+    if (spatialSamplingRateBlock != null) {
+      taggedObjects.put(7, spatialSamplingRateBlock.getASN1Object());
+    }
+    if (isPositionComputedByCaptureSystem != null) {
+      taggedObjects.put(8, ASN1Util.encodeBoolean(isPositionComputedByCaptureSystem));
+    }
+    if (fingerRotation != null) {
+      taggedObjects.put(9, ASN1Util.encodeInt(fingerRotation));
+    }
+    if (isImageRotatedToVertical != null) {
+      taggedObjects.put(10, ASN1Util.encodeBoolean(isImageRotatedToVertical));
+    }
+    if (isImageHasBeenLossilyCompressed != null) {
+      taggedObjects.put(11, ASN1Util.encodeBoolean(isImageHasBeenLossilyCompressed));
+    }
+    if (segmentationBlocks != null) {
+      taggedObjects.put(12, ISO39794Util.encodeBlocks(segmentationBlocks));
+    }
+    if (annotationBlocks != null) {
+      taggedObjects.put(13, ISO39794Util.encodeBlocks(annotationBlocks));
+    }
+    if (padDataBlock != null) {
+      taggedObjects.put(14, padDataBlock.getASN1Object());
+    }
+    if (commentBlocks != null) {
+      taggedObjects.put(15, encodeCommentBlocks(commentBlocks));
+    }
+    if (vendorSpecificDataBlocks != null) {
+      taggedObjects.put(16, ISO39794Util.encodeBlocks(vendorSpecificDataBlocks));
+    }
+    return taggedObjects;
+  }
 }
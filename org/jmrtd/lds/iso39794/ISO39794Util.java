@@ -23,6 +23,7 @@
 package org.jmrtd.lds.iso39794;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -91,4 +92,68 @@ class ISO39794Util {
     }
     return new DERSequence(asn1Objects.toArray(new ASN1Encodable[0]));
   }
+
+  /**
+   * Compares two ranges of byte arrays, like {@link java.util.Arrays#equals(byte[], byte[])} does for arrays.
+   *
+   * @param bytes the first array
+   * @param offset the offset in the first array
+   * @param length the length of the first range
+   * @param otherBytes the second array
+   * @param otherOffset the offset in the second array
+   * @param otherLength the length of the second range
+   *
+   * @return whether the ranges have equal contents, or both arrays are {@code null}
+   */
+  static boolean equals(byte[] bytes, int offset, int length, byte[] otherBytes, int otherOffset, int otherLength) {
+    if (bytes == null || otherBytes == null) {
+      return bytes == otherBytes;
+    }
+    if (length != otherLength) {
+      return false;
+    }
+    for (int i = 0; i < length; i++) {
+      if (bytes[offset + i] != otherBytes[otherOffset + i]) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Computes a hash code for a range of a byte array, consistent with
+   * {@link java.util.Arrays#hashCode(byte[])} for a complete array.
+   *
+   * @param bytes the array
+   * @param offset the offset
+   * @param length the length
+   *
+   * @return the hash code
+   */
+  static int hashCode(byte[] bytes, int offset, int length) {
+    if (bytes == null) {
+      return 0;
+    }
+    int result = 1;
+    for (int i = offset; i < offset + length; i++) {
+      result = 31 * result + bytes[i];
+    }
+    return result;
+  }
+
+  /**
+   * Returns the bytes in a range of a byte array.
+   *
+   * @param bytes the array
+   * @param offset the offset
+   * @param length the length
+   *
+   * @return the array itself if the range covers it, otherwise a copy of the range
+   */
+  static byte[] getBytes(byte[] bytes, int offset, int length) {
+    if (bytes == null || (offset == 0 && length == bytes.length)) {
+      return bytes;
+    }
+    return Arrays.copyOfRange(bytes, offset, offset + length);
+  }
 }
@@ -37,6 +37,7 @@ package org.jmrtd.lds.iso39794;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -45,7 +46,6 @@ import java.util.SortedMap;
 import java.util.TreeMap;
 
 import org.bouncycastle.asn1.ASN1Encodable;
-import org.bouncycastle.asn1.ASN1Sequence;
 import org.bouncycastle.asn1.BERTags;
 import org.bouncycastle.asn1.DERTaggedObject;
 import org.jmrtd.ASN1Util;
@@ -69,7 +69,7 @@ public class IrisImageDataBlock extends Block implements BiometricDataBlock {
   }
 
   public IrisImageDataBlock(StandardBiometricHeader sbh, InputStream inputStream) throws IOException {
-    this(sbh, ASN1Util.readASN1Object(inputStream));
+    this(sbh, TaggedElements.read(inputStream, BERTags.APPLICATION, 6));
   }
 
   //  IrisImageDataBlock ::= [APPLICATION 6] SEQUENCE {
@@ -79,17 +79,13 @@ public class IrisImageDataBlock extends Block implements BiometricDataBlock {
   //  }
 
   IrisImageDataBlock(StandardBiometricHeader sbh, ASN1Encodable asn1Encodable) {
-    this.sbh = sbh;
-    asn1Encodable = ASN1Util.checkTag(asn1Encodable, BERTags.APPLICATION, 6);
-    if (!(asn1Encodable instanceof ASN1Sequence)) {
-      throw new IllegalArgumentException("Cannot decode!");
-    }
-
-    Map<Integer, ASN1Encodable> taggedObjects = ASN1Util.decodeTaggedObjects(asn1Encodable);
-
-    versionBlock = new VersionBlock(taggedObjects.get(0));
+    this(sbh, TaggedElements.getInstance(ASN1Util.checkTag(asn1Encodable, BERTags.APPLICATION, 6)));
+  }
 
-    representationBlocks = IrisImageRepresentationBlock.decodeRepresentationBlocks(taggedObjects.get(1));
+  private IrisImageDataBlock(StandardBiometricHeader sbh, TaggedElements taggedElements) {
+    this.sbh = sbh;
+    versionBlock = new VersionBlock(taggedElements.get(0));
+    representationBlocks = IrisImageRepresentationBlock.decodeRepresentationBlocks(taggedElements, 1);
   }
 
   public VersionBlock getVersionBlock() {
@@ -165,6 +161,15 @@ public class IrisImageDataBlock extends Block implements BiometricDataBlock {
     return  new DERTaggedObject(false, BERTags.APPLICATION, 0x06, ASN1Util.encodeTaggedObjects(taggedObjects));
   }
 
+  @Override
+  DERElement getDERElement() throws IOException {
+    /* NOTE: The images in the representation blocks are written without copying them into ASN.1 objects. */
+    Map<Integer, ASN1Encodable> taggedObjects = new HashMap<Integer, ASN1Encodable>();
+    taggedObjects.put(0, versionBlock.getASN1Object());
+    return DERElement.applicationSequence(0x06, taggedObjects,
+        Collections.singletonMap(1, DERElement.sequenceOf(representationBlocks)));
+  }
+
   /* PRIVATE */
 
   /**
@@ -36,16 +36,16 @@
 package org.jmrtd.lds.iso39794;
 
 import java.io.ByteArrayInputStream;
+import java.io.IOException;
 import java.io.InputStream;
 import java.util.ArrayList;
-import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 
 import org.bouncycastle.asn1.ASN1Encodable;
-import org.bouncycastle.asn1.ASN1OctetString;
 import org.bouncycastle.asn1.DEROctetString;
 import org.jmrtd.ASN1Util;
 import org.jmrtd.lds.ImageInfo;
@@ -274,6 +274,8 @@ public class IrisImageRepresentationBlock extends Block implements ImageInfo {
   private CompressionHistoryCode compressionHistoryCode;
 
   private byte[] imageData;
+  private int imageDataOffset;
+  private int imageDataLength;
 
   /** INTEGER (2..65533), is null iff rangingErrorCode is not null. */
   private Integer range;
@@ -312,34 +314,37 @@ public class IrisImageRepresentationBlock extends Block implements ImageInfo {
   //  }
 
   public IrisImageRepresentationBlock(ASN1Encodable asn1Encodable) {
-    if (asn1Encodable == null) {
-      throw new IllegalArgumentException("Cannot decode!");
-    }
-    Map<Integer, ASN1Encodable> taggedObjects = ASN1Util.decodeTaggedObjects(asn1Encodable);
-    eyeLabelCode = EyeLabelCode.fromCode(ASN1Util.decodeInt(taggedObjects.get(0)));
-    irisImageKind = IrisImageKindCode.fromCode(ISO39794Util.decodeCodeFromChoiceExtensionBlockFallback(taggedObjects.get(1)));
-    bitDepth = ASN1Util.decodeInt(taggedObjects.get(2));
-    imageDataFormatCode = ImageDataFormatCode.fromCode(ISO39794Util.decodeCodeFromChoiceExtensionBlockFallback(taggedObjects.get(3)));
-    horizontalOrientationCode =  HorizontalOrientationCode.fromCode(ASN1Util.decodeInt(taggedObjects.get(4)));
-    verticalOrientationCode =  VerticalOrientationCode.fromCode(ASN1Util.decodeInt(taggedObjects.get(5)));
-    compressionHistoryCode =  CompressionHistoryCode.fromCode(ASN1Util.decodeInt(taggedObjects.get(6)));
-    decodeRangeOrError(taggedObjects.get(7));
-    captureDateTimeBlock = new DateTimeBlock(taggedObjects.get(8));
-    imageData = (ASN1OctetString.getInstance(taggedObjects.get(9))).getOctets();
-    if (taggedObjects.containsKey(10)) {
-      captureDeviceBlock = new IrisImageCaptureDeviceBlock(taggedObjects.get(10));
+    this(TaggedElements.getInstance(asn1Encodable));
+  }
+
+  /* NOTE: The image is not copied, it refers to the encoded bytes. */
+  IrisImageRepresentationBlock(TaggedElements taggedElements) {
+    eyeLabelCode = EyeLabelCode.fromCode(taggedElements.getInt(0));
+    irisImageKind = IrisImageKindCode.fromCode(ISO39794Util.decodeCodeFromChoiceExtensionBlockFallback(taggedElements.get(1)));
+    bitDepth = taggedElements.getInt(2);
+    imageDataFormatCode = ImageDataFormatCode.fromCode(ISO39794Util.decodeCodeFromChoiceExtensionBlockFallback(taggedElements.get(3)));
+    horizontalOrientationCode =  HorizontalOrientationCode.fromCode(taggedElements.getInt(4));
+    verticalOrientationCode =  VerticalOrientationCode.fromCode(taggedElements.getInt(5));
+    compressionHistoryCode =  CompressionHistoryCode.fromCode(taggedElements.getInt(6));
+    decodeRangeOrError(taggedElements.get(7));
+    captureDateTimeBlock = new DateTimeBlock(taggedElements.get(8));
+    imageData = taggedElements.getBytes();
+    imageDataOffset = taggedElements.getValueOffset(9);
+    imageDataLength = taggedElements.getLength(9);
+    if (taggedElements.contains(10)) {
+      captureDeviceBlock = new IrisImageCaptureDeviceBlock(taggedElements.get(10));
     }
-    if (taggedObjects.containsKey(11)) {
-      qualityBlocks = QualityBlock.decodeQualityBlocks(taggedObjects.get(11));
+    if (taggedElements.contains(11)) {
+      qualityBlocks = QualityBlock.decodeQualityBlocks(taggedElements.get(11));
     }
-    if (taggedObjects.containsKey(12)) {
-      rollAngleBlock = new RollAngleBlock(taggedObjects.get(12));
+    if (taggedElements.contains(12)) {
+      rollAngleBlock = new RollAngleBlock(taggedElements.get(12));
     }
-    if (taggedObjects.containsKey(13)) {
-      localisationBlock = new IrisImageLocalisationBlock(taggedObjects.get(13));
+    if (taggedElements.contains(13)) {
+      localisationBlock = new IrisImageLocalisationBlock(taggedElements.get(13));
     }
-    if (taggedObjects.containsKey(14)) {
-      padDataBlock = new PADDataBlock(taggedObjects.get(14));
+    if (taggedElements.contains(14)) {
+      padDataBlock = new PADDataBlock(taggedElements.get(14));
     }
   }
 
@@ -377,7 +382,7 @@ public class IrisImageRepresentationBlock extends Block implements ImageInfo {
   }
 
   public byte[] geImageData() {
-    return imageData;
+    return ISO39794Util.getBytes(imageData, imageDataOffset, imageDataLength);
   }
 
   public IrisImageCaptureDeviceBlock getCaptureDeviceBlock() {
@@ -406,7 +411,7 @@ public class IrisImageRepresentationBlock extends Block implements ImageInfo {
   public int hashCode() {
     final int prime = 31;
     int result = 1;
-    result = prime * result + Arrays.hashCode(imageData);
+    result = prime * result + ISO39794Util.hashCode(imageData, imageDataOffset, imageDataLength);
     result = prime * result + Objects.hash(bitDepth, captureDateTimeBlock, captureDeviceBlock, compressionHistoryCode,
         eyeLabelCode, horizontalOrientationCode, imageDataFormatCode, irisImageKind, localisationBlock, padDataBlock,
         qualityBlocks, range, rangingErrorCode, rollAngleBlock, verticalOrientationCode);
@@ -429,7 +434,8 @@ public class IrisImageRepresentationBlock extends Block implements ImageInfo {
     return bitDepth == other.bitDepth && Objects.equals(captureDateTimeBlock, other.captureDateTimeBlock)
         && Objects.equals(captureDeviceBlock, other.captureDeviceBlock)
         && compressionHistoryCode == other.compressionHistoryCode && eyeLabelCode == other.eyeLabelCode
-        && horizontalOrientationCode == other.horizontalOrientationCode && Arrays.equals(imageData, other.imageData)
+        && horizontalOrientationCode == other.horizontalOrientationCode
+        && ISO39794Util.equals(imageData, imageDataOffset, imageDataLength, other.imageData, other.imageDataOffset, other.imageDataLength)
         && imageDataFormatCode == other.imageDataFormatCode && irisImageKind == other.irisImageKind
         && Objects.equals(localisationBlock, other.localisationBlock)
         && Objects.equals(padDataBlock, other.padDataBlock) && Objects.equals(qualityBlocks, other.qualityBlocks)
@@ -448,7 +454,7 @@ public class IrisImageRepresentationBlock extends Block implements ImageInfo {
         + ", horizontalOrientationCode: " + horizontalOrientationCode
         + ", verticalOrientationCode: " + verticalOrientationCode
         + ", compressionHistoryCode: " + compressionHistoryCode
-        + ", imageData: " + (imageData != null ? "null" : imageData.length)
+        + ", imageData: " + (imageData != null ? "null" : imageDataLength)
         + ", range: " + (range != null ? range : rangingErrorCode)
         + ", captureDateTimeBlock: " + captureDateTimeBlock
         + ", captureDeviceBlock: " + captureDeviceBlock
@@ -490,58 +496,38 @@ public class IrisImageRepresentationBlock extends Block implements ImageInfo {
 
   @Override
   public int getImageLength() {
-    return imageData == null ? 0 : imageData.length;
+    return imageData == null ? 0 : imageDataLength;
   }
 
   @Override
   public InputStream getImageInputStream() {
-    return new ByteArrayInputStream(imageData);
+    return new ByteArrayInputStream(imageData, imageDataOffset, imageDataLength);
   }
 
   @Override
   ASN1Encodable getASN1Object() {
-    Map<Integer, ASN1Encodable> taggedObjects = new HashMap<Integer, ASN1Encodable>();
-    taggedObjects.put(0, ASN1Util.encodeInt(eyeLabelCode.getCode()));
-    taggedObjects.put(1, ISO39794Util.encodeCodeAsChoiceExtensionBlockFallback(irisImageKind.getCode()));
-    taggedObjects.put(2, ASN1Util.encodeInt(bitDepth));
-    taggedObjects.put(3, ISO39794Util.encodeCodeAsChoiceExtensionBlockFallback(imageDataFormatCode.getCode()));
-    taggedObjects.put(4, ASN1Util.encodeInt(horizontalOrientationCode.getCode()));
-    taggedObjects.put(5, ASN1Util.encodeInt(verticalOrientationCode.getCode()));
-    taggedObjects.put(6, ASN1Util.encodeInt(compressionHistoryCode.getCode()));
-    if (range != null) {
-      taggedObjects.put(7, ASN1Util.encodeInt(range));
-    } else if (rangingErrorCode != null) {
-      taggedObjects.put(7, ASN1Util.encodeInt(rangingErrorCode.getCode()));
-    }
-    taggedObjects.put(8, captureDateTimeBlock.getASN1Object());
-    taggedObjects.put(9, new DEROctetString(imageData));
-    if (captureDeviceBlock != null) {
-      taggedObjects.put(10, captureDeviceBlock.getASN1Object());
-    }
-    if (qualityBlocks != null) {
-      taggedObjects.put(10, ISO39794Util.encodeBlocks(qualityBlocks));
-    }
-    if (rollAngleBlock != null) {
-      taggedObjects.put(12, rollAngleBlock.getASN1Object());
-    }
-    if (localisationBlock != null) {
-      taggedObjects.put(13, localisationBlock.getASN1Object());
-    }
-    if (padDataBlock != null) {
-      taggedObjects.put(14, padDataBlock.getASN1Object());
-    }
+    Map<Integer, ASN1Encodable> taggedObjects = getTaggedObjectsWithoutImage();
+    taggedObjects.put(9, new DEROctetString(ISO39794Util.getBytes(imageData, imageDataOffset, imageDataLength)));
     return ASN1Util.encodeTaggedObjects(taggedObjects);
   }
 
-  static List<IrisImageRepresentationBlock> decodeRepresentationBlocks(ASN1Encodable asn1Encodable) {
+  @Override
+  DERElement getDERElement() throws IOException {
+    /* NOTE: The image is written from the array holding it, without copying it into an ASN.1 object. */
+    return DERElement.sequence(getTaggedObjectsWithoutImage(),
+        Collections.singletonMap(9, DERElement.octetString(imageData, imageDataOffset, imageDataLength)));
+  }
+
+
+  static List<IrisImageRepresentationBlock> decodeRepresentationBlocks(TaggedElements taggedElements, int tagNo) {
     List<IrisImageRepresentationBlock> result = new ArrayList<IrisImageRepresentationBlock>();
-    if (ASN1Util.isSequenceOfSequences(asn1Encodable)) {
-      List<ASN1Encodable> representationBlockASN1Objects = ASN1Util.list(asn1Encodable);
-      for (ASN1Encodable representationBlockASN1Object: representationBlockASN1Objects) {
-        result.add(new IrisImageRepresentationBlock(representationBlockASN1Object));
+    if (taggedElements.isSequenceOfSequences(tagNo)) {
+      List<TaggedElements> representationBlockElements = taggedElements.getSequenceOf(tagNo);
+      for (TaggedElements representationBlockElement: representationBlockElements) {
+        result.add(new IrisImageRepresentationBlock(representationBlockElement));
       }
     } else {
-      result.add(new IrisImageRepresentationBlock(asn1Encodable));
+      result.add(new IrisImageRepresentationBlock(taggedElements.getTaggedElements(tagNo)));
     }
 
     return result;
@@ -567,4 +553,42 @@ public class IrisImageRepresentationBlock extends Block implements ImageInfo {
       rangingErrorCode = RangingErrorCode.fromCode(ASN1Util.decodeInt(taggedObjects.get(1)));
     }
   }
+
+  /**
+   * Returns the elements of this block, except for the image.
+   *
+   * @return the elements, indexed by tag number
+   */
+  private Map<Integer, ASN1Encodable> getTaggedObjectsWithoutImage() {
+    Map<Integer, ASN1Encodable> taggedObjects = new HashMap<Integer, ASN1Encodable>();
+    taggedObjects.put(0, ASN1Util.encodeInt(eyeLabelCode.getCode()));
+    taggedObjects.put(1, ISO39794Util.encodeCodeAsChoiceExtensionBlockFallback(irisImageKind.getCode()));
+    taggedObjects.put(2, ASN1Util.encodeInt(bitDepth));
+    taggedObjects.put(3, ISO39794Util.encodeCodeAsChoiceExtensionBlockFallback(imageDataFormatCode.getCode()));
+    taggedObjects.put(4, ASN1Util.encodeInt(horizontalOrientationCode.getCode()));
+    taggedObjects.put(5, ASN1Util.encodeInt(verticalOrientationCode.getCode()));
+    taggedObjects.put(6, ASN1Util.encodeInt(compressionHistoryCode.getCode()));
+    if (range != null) {
+      taggedObjects.put(7, ASN1Util.encodeInt(range));
+    } else if (rangingErrorCode != null) {
+      taggedObjects.put(7, ASN1Util.encodeInt(rangingErrorCode.getCode()));
+    }
+    taggedObjects.put(8, captureDateTimeBlock.getASN1Object());
+    if (captureDeviceBlock != null) {
+      taggedObjects.put(10, captureDeviceBlock.getASN1Object());
+    }
+    if (qualityBlocks != null) {
+      taggedObjects.put(10, ISO39794Util.encodeBlocks(qualityBlocks));
+    }
+    if (rollAngleBlock != null) {
+      taggedObjects.put(12, rollAngleBlock.getASN1Object());
+    }
+    if (localisationBlock != null) {
+      taggedObjects.put(13, localisationBlock.getASN1Object());
+    }
+    if (padDataBlock != null) {
+      taggedObjects.put(14, padDataBlock.getASN1Object());
+    }
+    return taggedObjects;
+  }
 }
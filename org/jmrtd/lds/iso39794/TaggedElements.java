@@ -0,0 +1,458 @@
+/*
+ * JMRTD - A Java API for accessing machine readable travel documents.
+ *
+ * Copyright (C) 2006 - 2026  The JMRTD team
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA
+ *
+ * $Id: $
+ */
+
+package org.jmrtd.lds.iso39794;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.logging.Logger;
+
+import org.bouncycastle.asn1.ASN1Encodable;
+import org.bouncycastle.asn1.ASN1Encoding;
+import org.bouncycastle.asn1.ASN1InputStream;
+import org.bouncycastle.asn1.ASN1Sequence;
+import org.bouncycastle.asn1.ASN1TaggedObject;
+import org.jmrtd.ASN1Util;
+import org.jmrtd.io.TLVCursor;
+
+/**
+ * The tagged elements of a DER encoded SEQUENCE, located by tag number
+ * in the encoded bytes, without first building an ASN.1 object tree.
+ *
+ * This is the streaming counterpart of {@link ASN1Util#decodeTaggedObjects(ASN1Encodable)}.
+ * Large values, such as image data, can be referenced by offset and length in the
+ * encoded bytes, small nested blocks are decoded on demand from their own encoding.
+ *
+ * @author The JMRTD team (info@jmrtd.org)
+ *
+ * @version $Revision: $
+ *
+ * @since 0.8.4
+ */
+final class TaggedElements {
+
+  private static final Logger LOGGER = Logger.getLogger("org.jmrtd.lds.iso39794");
+
+  /* Tag numbers in the 39794 schemas are small, higher (extension) tag numbers are skipped. */
+  private static final int MAX_TAG_NO = 31;
+
+  /* The maximum number of bytes in a tag and length, as supported by this class. */
+  private static final int MAX_HEADER_LENGTH = 9;
+
+  private static final int SEQUENCE_TAG = 0x30;
+
+  private final byte[] bytes;
+
+  /* Per tag number, the offset of the element, or -1 if absent. */
+  private final int[] offsets;
+  private final int[] valueOffsets;
+  private final int[] lengths;
+
+  /**
+   * Locates the tagged elements in the contents of a constructed element.
+   *
+   * @param bytes the encoded bytes
+   * @param offset the offset of the contents
+   * @param length the length of the contents
+   *
+   * @throws IOException if the contents are not well-formed
+   */
+  private TaggedElements(byte[] bytes, int offset, int length) throws IOException {
+    this.bytes = bytes;
+    this.offsets = new int[MAX_TAG_NO];
+    this.valueOffsets = new int[MAX_TAG_NO];
+    this.lengths = new int[MAX_TAG_NO];
+    Arrays.fill(offsets, -1);
+
+    TLVCursor cursor = new TLVCursor(bytes, offset, length);
+    while (cursor.next()) {
+      int elementOffset = cursor.getOffset();
+      if ((bytes[elementOffset] & 0xC0) == 0x00) {
+        LOGGER.warning("Not a tagged object. Skipping " + Integer.toHexString(cursor.getTag()));
+        continue;
+      }
+      int tagNo = getTagNo(bytes, elementOffset);
+      if (tagNo >= MAX_TAG_NO) {
+        LOGGER.fine("Skipping tag number " + tagNo);
+        continue;
+      }
+      if (offsets[tagNo] >= 0) {
+        LOGGER.warning("Double key " + tagNo);
+      }
+      offsets[tagNo] = elementOffset;
+      valueOffsets[tagNo] = cursor.getValueOffset();
+      lengths[tagNo] = cursor.getLength();
+    }
+  }
+
+  /**
+   * Reads a constructed element with the given tag from a stream, and locates its tagged elements.
+   * The bytes of the element are read into a single array, which is referenced by the result.
+   *
+   * @param inputStream the stream to read from
+   * @param tagClass the expected tag class, for instance {@code BERTags.APPLICATION}
+   * @param tagNo the expected tag number
+   *
+   * @return the tagged elements
+   *
+   * @throws IOException on error reading from the stream, or if the element is not well-formed
+   */
+  static TaggedElements read(InputStream inputStream, int tagClass, int tagNo) throws IOException {
+    byte[] header = new byte[MAX_HEADER_LENGTH];
+    int headerLength = 0;
+    int b = readByte(inputStream);
+    header[headerLength++] = (byte)b;
+    if ((b & 0x1F) == 0x1F) {
+      do {
+        b = readByte(inputStream);
+        header[headerLength++] = (byte)b;
+      } while ((b & 0x80) != 0 && headerLength < 4);
+    }
+
+    b = readByte(inputStream);
+    header[headerLength++] = (byte)b;
+    int length = b;
+    if (b > 0x80 && b <= 0x84) {
+      length = 0;
+      for (int i = 0; i < (b & 0x7F); i++) {
+        int lengthByte = readByte(inputStream);
+        header[headerLength++] = (byte)lengthByte;
+        length = (length << 8) | lengthByte;
+      }
+    } else if (b >= 0x80) {
+      length = -1;
+    }
+    if (length < 0) {
+      /* Indefinite or unsupported length, let the ASN.1 parser deal with it. */
+      InputStream asn1InputStream = new SequenceInputStream(new ByteArrayInputStream(header, 0, headerLength), inputStream);
+      return getInstance(ASN1Util.checkTag(ASN1Util.readASN1Object(asn1InputStream), tagClass, tagNo));
+    }
+
+    int elementTagClass = header[0] & 0xC0;
+    int elementTagNo = getTagNo(header, 0);
+    if (elementTagClass != tagClass && elementTagNo != tagNo) {
+      throw new IllegalArgumentException("Expected [" + tagClass + " " + tagNo + "], found [" + elementTagClass + " " + elementTagNo + "]");
+    }
+    if ((header[0] & 0x20) == 0) {
+      throw new IllegalArgumentException("Cannot decode!");
+    }
+
+    byte[] bytes = new byte[headerLength + length];
+    System.arraycopy(header, 0, bytes, 0, headerLength);
+    new DataInputStream(inputStream).readFully(bytes, headerLength, length);
+    return new TaggedElements(bytes, headerLength, length);
+  }
+
+  /**
+   * Locates the tagged elements of an ASN.1 object. This encodes the object.
+   * A tagged object, rather than a sequence, is interpreted as a sequence with a
+   * single element, like {@link ASN1Util#decodeTaggedObjects(ASN1Encodable)} does.
+   *
+   * @param asn1Encodable a sequence of tagged objects, or a tagged object
+   *
+   * @return the tagged elements
+   */
+  static TaggedElements getInstance(ASN1Encodable asn1Encodable) {
+    if (!(asn1Encodable instanceof ASN1Sequence) && !(asn1Encodable instanceof ASN1TaggedObject)) {
+      throw new IllegalArgumentException("Cannot decode!");
+    }
+
+    try {
+      byte[] encoded = asn1Encodable.toASN1Primitive().getEncoded(ASN1Encoding.DER);
+      if (asn1Encodable instanceof ASN1TaggedObject) {
+        return new TaggedElements(encoded, 0, encoded.length);
+      }
+      TLVCursor cursor = new TLVCursor(encoded);
+      cursor.next();
+      return new TaggedElements(encoded, cursor.getValueOffset(), cursor.getLength());
+    } catch (IOException ioe) {
+      throw new IllegalArgumentException("Cannot decode!", ioe);
+    }
+  }
+
+  /**
+   * Returns the encoded bytes that the offsets refer to.
+   *
+   * @return the encoded bytes, not a copy
+   */
+  byte[] getBytes() {
+    return bytes;
+  }
+
+  /**
+   * Whether an element with the given tag number is present.
+   *
+   * @param tagNo the tag number
+   *
+   * @return whether the element is present
+   */
+  boolean contains(int tagNo) {
+    return tagNo >= 0 && tagNo < MAX_TAG_NO && offsets[tagNo] >= 0;
+  }
+
+  /**
+   * Returns the offset of the value of a primitive element in the encoded bytes.
+   *
+   * @param tagNo the tag number
+   *
+   * @return the offset of the value
+   */
+  int getValueOffset(int tagNo) {
+    checkPrimitive(tagNo);
+    return valueOffsets[tagNo];
+  }
+
+  /**
+   * Returns the length of the value of a primitive element.
+   *
+   * @param tagNo the tag number
+   *
+   * @return the length of the value
+   */
+  int getLength(int tagNo) {
+    checkPrimitive(tagNo);
+    return lengths[tagNo];
+  }
+
+  /**
+   * Returns the offset of the contents of a constructed element in the encoded bytes.
+   *
+   * @param tagNo the tag number
+   *
+   * @return the offset of the contents
+   */
+  int getContentsOffset(int tagNo) {
+    checkConstructed(tagNo);
+    return valueOffsets[tagNo];
+  }
+
+  /**
+   * Returns the length of the contents of a constructed element.
+   *
+   * @param tagNo the tag number
+   *
+   * @return the length of the contents
+   */
+  int getContentsLength(int tagNo) {
+    checkConstructed(tagNo);
+    return lengths[tagNo];
+  }
+
+  /**
+   * Decodes the base object of an element, as {@link ASN1Util#decodeTaggedObjects(ASN1Encodable)} would.
+   * Only the bytes of this element are parsed.
+   *
+   * @param tagNo the tag number
+   *
+   * @return the base object, or {@code null} if the element is not present
+   */
+  ASN1Encodable get(int tagNo) {
+    if (!contains(tagNo)) {
+      return null;
+    }
+
+    int offset = offsets[tagNo];
+    int length = valueOffsets[tagNo] + lengths[tagNo] - offset;
+    ASN1InputStream asn1InputStream = new ASN1InputStream(new ByteArrayInputStream(bytes, offset, length), length);
+    try {
+      return ASN1TaggedObject.getInstance(asn1InputStream.readObject()).getBaseObject();
+    } catch (IOException ioe) {
+      throw new IllegalArgumentException("Cannot decode [" + tagNo + "]", ioe);
+    }
+  }
+
+  /**
+   * Decodes a primitive element containing an integer.
+   *
+   * @param tagNo the tag number
+   *
+   * @return the integer
+   */
+  BigInteger getBigInteger(int tagNo) {
+    if (!contains(tagNo) || lengths[tagNo] == 0) {
+      throw new NumberFormatException("Could not parse integer");
+    }
+    if (isConstructed(tagNo)) {
+      return ASN1Util.decodeBigInteger(get(tagNo));
+    }
+    return new BigInteger(Arrays.copyOfRange(bytes, valueOffsets[tagNo], valueOffsets[tagNo] + lengths[tagNo]));
+  }
+
+  /**
+   * Decodes a primitive element containing an integer.
+   *
+   * @param tagNo the tag number
+   *
+   * @return the integer
+   */
+  int getInt(int tagNo) {
+    return getBigInteger(tagNo).intValue();
+  }
+
+  /**
+   * Locates the tagged elements in the contents of a constructed element.
+   *
+   * @param tagNo the tag number of the constructed element
+   *
+   * @return the tagged elements
+   */
+  TaggedElements getTaggedElements(int tagNo) {
+    checkConstructed(tagNo);
+    try {
+      return new TaggedElements(bytes, valueOffsets[tagNo], lengths[tagNo]);
+    } catch (IOException ioe) {
+      throw new IllegalArgumentException("Cannot decode [" + tagNo + "]", ioe);
+    }
+  }
+
+  /**
+   * Checks whether the contents of a constructed element consist of sequences only,
+   * like {@link ASN1Util#isSequenceOfSequences(ASN1Encodable)}.
+   *
+   * @param tagNo the tag number of the element
+   *
+   * @return a boolean indicating whether the element is constructed and contains only sequences
+   */
+  boolean isSequenceOfSequences(int tagNo) {
+    if (!contains(tagNo) || !isConstructed(tagNo)) {
+      return false;
+    }
+    try {
+      TLVCursor cursor = new TLVCursor(bytes, valueOffsets[tagNo], lengths[tagNo]);
+      while (cursor.next()) {
+        if (cursor.getTag() != SEQUENCE_TAG) {
+          return false;
+        }
+      }
+      return true;
+    } catch (IOException ioe) {
+      throw new IllegalArgumentException("Cannot decode [" + tagNo + "]", ioe);
+    }
+  }
+
+  /**
+   * Locates the tagged elements of each of the sequences in the contents of a constructed element,
+   * which is typically an implicitly tagged {@code SEQUENCE OF} blocks.
+   *
+   * @param tagNo the tag number of the constructed element
+   *
+   * @return a list with the tagged elements of each sequence
+   */
+  List<TaggedElements> getSequenceOf(int tagNo) {
+    checkConstructed(tagNo);
+    try {
+      List<TaggedElements> result = new ArrayList<TaggedElements>();
+      TLVCursor cursor = new TLVCursor(bytes, valueOffsets[tagNo], lengths[tagNo]);
+      while (cursor.next()) {
+        if (cursor.getTag() != SEQUENCE_TAG) {
+          throw new IllegalArgumentException("Expected a sequence in [" + tagNo + "], found " + Integer.toHexString(cursor.getTag()));
+        }
+        result.add(new TaggedElements(bytes, cursor.getValueOffset(), cursor.getLength()));
+      }
+      return result;
+    } catch (IOException ioe) {
+      throw new IllegalArgumentException("Cannot decode [" + tagNo + "]", ioe);
+    }
+  }
+
+  @Override
+  public String toString() {
+    StringBuilder result = new StringBuilder();
+    result.append("TaggedElements [");
+    boolean isFirst = true;
+    for (int tagNo = 0; tagNo < MAX_TAG_NO; tagNo++) {
+      if (offsets[tagNo] < 0) {
+        continue;
+      }
+      if (!isFirst) {
+        result.append(", ");
+      }
+      isFirst = false;
+      result.append(tagNo).append(": ").append(lengths[tagNo]);
+    }
+    result.append("]");
+    return result.toString();
+  }
+
+  /* PRIVATE */
+
+  private boolean isConstructed(int tagNo) {
+    return (bytes[offsets[tagNo]] & 0x20) != 0;
+  }
+
+  private void checkPrimitive(int tagNo) {
+    if (!contains(tagNo)) {
+      throw new IllegalArgumentException("Missing [" + tagNo + "]");
+    }
+    if (isConstructed(tagNo)) {
+      throw new IllegalArgumentException("Expected primitive encoding for [" + tagNo + "]");
+    }
+  }
+
+  private void checkConstructed(int tagNo) {
+    if (!contains(tagNo)) {
+      throw new IllegalArgumentException("Missing [" + tagNo + "]");
+    }
+    if (!isConstructed(tagNo)) {
+      throw new IllegalArgumentException("Expected constructed encoding for [" + tagNo + "]");
+    }
+  }
+
+  /**
+   * Returns the tag number of the element at the given offset.
+   *
+   * @param bytes the encoded bytes
+   * @param offset the offset of the element
+   *
+   * @return the tag number
+   */
+  private static int getTagNo(byte[] bytes, int offset) {
+    int tagNo = bytes[offset] & 0x1F;
+    if (tagNo != 0x1F) {
+      return tagNo;
+    }
+
+    tagNo = 0;
+    int b;
+    do {
+      b = bytes[++offset] & 0xFF;
+      tagNo = (tagNo << 7) | (b & 0x7F);
+    } while ((b & 0x80) != 0);
+    return tagNo;
+  }
+
+  private static int readByte(InputStream inputStream) throws IOException {
+    int b = inputStream.read();
+    if (b < 0) {
+      throw new EOFException("Unexpected end of stream");
+    }
+    return b;
+  }
+}
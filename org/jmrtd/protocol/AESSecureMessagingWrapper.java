@@ -30,11 +30,11 @@ import java.security.GeneralSecurityException;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
-import javax.crypto.Cipher;
 import javax.crypto.SecretKey;
 import javax.crypto.spec.IvParameterSpec;
 
-import org.jmrtd.Util;
+import org.jmrtd.crypto.CryptoBackend;
+import org.jmrtd.crypto.JCACryptoBackend;
 
 /**
  * An AES secure messaging wrapper for APDUs. Based on TR-SAC.
@@ -49,7 +49,7 @@ public class AESSecureMessagingWrapper extends SecureMessagingWrapper implements
 
   private static final Logger LOGGER = Logger.getLogger("org.jmrtd");
 
-  private transient Cipher sscIVCipher;
+  private transient CryptoBackend.BlockCipher sscIVCipher;
 
   /**
    * Constructs a secure messaging wrapper based on the secure messaging
@@ -75,7 +75,8 @@ public class AESSecureMessagingWrapper extends SecureMessagingWrapper implements
    * @throws GeneralSecurityException when the available JCE providers cannot provide the necessary cryptographic primitives
    */
   public AESSecureMessagingWrapper(AESSecureMessagingWrapper wrapper) throws GeneralSecurityException {
-    this(wrapper.getEncryptionKey(), wrapper.getMACKey(), wrapper.getMaxTranceiveLength(), wrapper.shouldCheckMAC(), wrapper.getSendSequenceCounter());
+    this(wrapper.getEncryptionKey(), wrapper.getMACKey(), wrapper.getMaxTranceiveLength(), wrapper.shouldCheckMAC(), wrapper.getSendSequenceCounter(),
+        wrapper.getCryptoBackend() == null ? new JCACryptoBackend() : wrapper.getCryptoBackend());
   }
 
   /**
@@ -92,8 +93,29 @@ public class AESSecureMessagingWrapper extends SecureMessagingWrapper implements
    * @throws GeneralSecurityException when the available JCE providers cannot provide the necessary cryptographic primitives
    */
   public AESSecureMessagingWrapper(SecretKey ksEnc, SecretKey ksMac, int maxTranceiveLength, boolean shouldCheckMAC, long ssc) throws GeneralSecurityException {
-    super(ksEnc, ksMac, "AES/CBC/NoPadding", "AESCMAC", maxTranceiveLength, shouldCheckMAC, ssc);
-    sscIVCipher = Util.getCipher("AES/ECB/NoPadding", Cipher.ENCRYPT_MODE, ksEnc);
+    this(ksEnc, ksMac, maxTranceiveLength, shouldCheckMAC, ssc, new JCACryptoBackend());
+  }
+
+  /**
+   * Constructs a secure messaging wrapper based on the secure messaging
+   * session keys and the initial value of the send sequence counter,
+   * using the given crypto backend.
+   *
+   * @param ksEnc the session key for encryption
+   * @param ksMac the session key for macs
+   * @param maxTranceiveLength the maximum tranceive length, typical values are 256 or 65536
+   * @param shouldCheckMAC a boolean indicating whether this wrapper will check the MAC in wrapped response APDUs
+   * @param ssc the initial value of the send sequence counter
+   * @param cryptoBackend the crypto backend
+   *
+   * @throws GeneralSecurityException when the crypto backend cannot provide the necessary cryptographic primitives
+   *
+   * @since 0.8.4
+   */
+  public AESSecureMessagingWrapper(SecretKey ksEnc, SecretKey ksMac, int maxTranceiveLength, boolean shouldCheckMAC, long ssc, CryptoBackend cryptoBackend) throws GeneralSecurityException {
+    super(ksEnc, ksMac, "AES/CBC/NoPadding", "AESCMAC", maxTranceiveLength, shouldCheckMAC, ssc, cryptoBackend);
+    sscIVCipher = cryptoBackend.getBlockCipher("AES/ECB/NoPadding");
+    sscIVCipher.init(true, ksEnc, null);
   }
 
   /**
@@ -197,7 +219,8 @@ public class AESSecureMessagingWrapper extends SecureMessagingWrapper implements
    */
   @Override
   protected IvParameterSpec getIV() throws GeneralSecurityException {
-    byte[] encryptedSSC = sscIVCipher.doFinal(getEncodedSendSequenceCounter());
+    byte[] encodedSSC = getEncodedSendSequenceCounter();
+    byte[] encryptedSSC = sscIVCipher.doFinal(encodedSSC, 0, encodedSSC.length);
     return new IvParameterSpec(encryptedSSC);
   }
 }
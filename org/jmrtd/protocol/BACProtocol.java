@@ -32,7 +32,10 @@ import org.jmrtd.APDULevelBACCapable;
 import org.jmrtd.AccessKeySpec;
 import org.jmrtd.BACKeySpec;
 import org.jmrtd.CardServiceProtocolException;
+import org.jmrtd.PassportService;
 import org.jmrtd.Util;
+import org.jmrtd.crypto.CryptoBackend;
+import org.jmrtd.crypto.JCACryptoBackend;
 
 import net.sf.scuba.smartcards.CardServiceException;
 
@@ -55,6 +58,8 @@ public class BACProtocol {
 
   private boolean shouldCheckMAC;
 
+  private CryptoBackend cryptoBackend;
+
   /**
    * Constructs a BAC protocol instance.
    *
@@ -65,10 +70,27 @@ public class BACProtocol {
    *        checking on response APDUs
    */
   public BACProtocol(APDULevelBACCapable service, int maxTranceiveLength, boolean shouldCheckMAC) {
+    this(service, maxTranceiveLength, shouldCheckMAC, new JCACryptoBackend());
+  }
+
+  /**
+   * Constructs a BAC protocol instance.
+   *
+   * @param service the service to send APDUs
+   * @param maxTranceiveLength the maximal tranceive length (on responses to {@code READ BINARY})
+   *        to use in the resulting secure messaging channel
+   * @param shouldCheckMAC whether the resulting secure messaging channel should apply strict MAC
+   *        checking on response APDUs
+   * @param cryptoBackend the crypto backend for the resulting secure messaging channel
+   *
+   * @since 0.8.4
+   */
+  public BACProtocol(APDULevelBACCapable service, int maxTranceiveLength, boolean shouldCheckMAC, CryptoBackend cryptoBackend) {
     this.service = service;
     this.maxTranceiveLength = maxTranceiveLength;
     this.shouldCheckMAC = shouldCheckMAC;
     this.random = new SecureRandom();
+    this.cryptoBackend = cryptoBackend;
   }
 
   /**
@@ -85,8 +107,8 @@ public class BACProtocol {
   public BACResult doBAC(AccessKeySpec bacKey) throws CardServiceException {
     try {
       byte[] keySeed = bacKey.getKey();
-      SecretKey kEnc = Util.deriveKey(keySeed, Util.ENC_MODE);
-      SecretKey kMac = Util.deriveKey(keySeed, Util.MAC_MODE);
+      SecretKey kEnc = Util.deriveKey(keySeed, "DESede", 128, null, Util.ENC_MODE, PassportService.NO_PACE_KEY_REFERENCE, cryptoBackend);
+      SecretKey kMac = Util.deriveKey(keySeed, "DESede", 128, null, Util.MAC_MODE, PassportService.NO_PACE_KEY_REFERENCE, cryptoBackend);
 
       SecureMessagingWrapper wrapper = doBACStep(kEnc, kMac);
       return new BACResult(bacKey, wrapper);
@@ -148,11 +170,11 @@ public class BACProtocol {
     for (int i = 0; i < 16; i++) {
       keySeed[i] = (byte) ((kIFD[i] & 0xFF) ^ (kICC[i] & 0xFF));
     }
-    SecretKey ksEnc = Util.deriveKey(keySeed, Util.ENC_MODE);
-    SecretKey ksMac = Util.deriveKey(keySeed, Util.MAC_MODE);
+    SecretKey ksEnc = Util.deriveKey(keySeed, "DESede", 128, null, Util.ENC_MODE, PassportService.NO_PACE_KEY_REFERENCE, cryptoBackend);
+    SecretKey ksMac = Util.deriveKey(keySeed, "DESede", 128, null, Util.MAC_MODE, PassportService.NO_PACE_KEY_REFERENCE, cryptoBackend);
     long ssc = computeSendSequenceCounter(rndICC, rndIFD);
 
-    return new DESedeSecureMessagingWrapper(ksEnc, ksMac, maxTranceiveLength, shouldCheckMAC, ssc);
+    return new DESedeSecureMessagingWrapper(ksEnc, ksMac, maxTranceiveLength, shouldCheckMAC, ssc, cryptoBackend);
   }
 
   /**
@@ -33,6 +33,9 @@ import java.util.logging.Logger;
 import javax.crypto.SecretKey;
 import javax.crypto.spec.IvParameterSpec;
 
+import org.jmrtd.crypto.CryptoBackend;
+import org.jmrtd.crypto.JCACryptoBackend;
+
 /**
  * Secure messaging wrapper for APDUs.
  * Initially based on Section E.3 of ICAO-TR-PKI.
@@ -109,7 +112,8 @@ public class DESedeSecureMessagingWrapper extends SecureMessagingWrapper impleme
    * @throws GeneralSecurityException when the available JCE providers cannot provide the necessary cryptographic primitives
    */
   public DESedeSecureMessagingWrapper(DESedeSecureMessagingWrapper wrapper) throws GeneralSecurityException {
-    this(wrapper.getEncryptionKey(), wrapper.getMACKey(), wrapper.getMaxTranceiveLength(), wrapper.shouldCheckMAC(), wrapper.getSendSequenceCounter());
+    this(wrapper.getEncryptionKey(), wrapper.getMACKey(), wrapper.getMaxTranceiveLength(), wrapper.shouldCheckMAC(), wrapper.getSendSequenceCounter(),
+        wrapper.getCryptoBackend() == null ? new JCACryptoBackend() : wrapper.getCryptoBackend());
   }
 
   /**
@@ -126,7 +130,27 @@ public class DESedeSecureMessagingWrapper extends SecureMessagingWrapper impleme
    * @throws GeneralSecurityException when the available JCE providers cannot provide the necessary cryptographic primitives
    */
   public DESedeSecureMessagingWrapper(SecretKey ksEnc, SecretKey ksMac, int maxTranceiveLength, boolean shouldCheckMAC, long ssc) throws GeneralSecurityException {
-    super(ksEnc, ksMac, "DESede/CBC/NoPadding", "ISO9797Alg3Mac", maxTranceiveLength, shouldCheckMAC, ssc);
+    this(ksEnc, ksMac, maxTranceiveLength, shouldCheckMAC, ssc, new JCACryptoBackend());
+  }
+
+  /**
+   * Constructs a secure messaging wrapper based on the secure messaging
+   * session keys and the initial value of the send sequence counter,
+   * using the given crypto backend.
+   *
+   * @param ksEnc the session key for encryption
+   * @param ksMac the session key for macs
+   * @param maxTranceiveLength the maximum tranceive length, typical values are 256 or 65536
+   * @param shouldCheckMAC a boolean indicating whether this wrapper will check the MAC in wrapped response APDUs
+   * @param ssc the initial value of the send sequence counter
+   * @param cryptoBackend the crypto backend
+   *
+   * @throws GeneralSecurityException when the crypto backend cannot provide the necessary cryptographic primitives
+   *
+   * @since 0.8.4
+   */
+  public DESedeSecureMessagingWrapper(SecretKey ksEnc, SecretKey ksMac, int maxTranceiveLength, boolean shouldCheckMAC, long ssc, CryptoBackend cryptoBackend) throws GeneralSecurityException {
+    super(ksEnc, ksMac, "DESede/CBC/NoPadding", "ISO9797Alg3Mac", maxTranceiveLength, shouldCheckMAC, ssc, cryptoBackend);
   }
 
   /**
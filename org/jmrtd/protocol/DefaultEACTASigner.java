@@ -0,0 +1,151 @@
+/*
+ * JMRTD - A Java API for accessing machine readable travel documents.
+ *
+ * Copyright (C) 2006 - 2026  The JMRTD team
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA
+ *
+ * $Id: $
+ */
+
+package org.jmrtd.protocol;
+
+import java.io.IOException;
+import java.security.GeneralSecurityException;
+import java.security.PrivateKey;
+import java.security.Provider;
+import java.security.Signature;
+import java.security.SignatureException;
+import java.security.interfaces.ECPrivateKey;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+import org.jmrtd.Util;
+import org.jmrtd.crypto.CryptoBackend;
+
+/**
+ * The default, JCA based, Terminal Authentication signer.
+ *
+ * Initialized {@code Signature} instances are kept per signature algorithm
+ * and reused across sessions, as long as the terminal key stays the same.
+ *
+ * @author The JMRTD team (info@jmrtd.org)
+ *
+ * @version $Revision: $
+ *
+ * @since 0.8.4
+ */
+public class DefaultEACTASigner implements EACTASigner {
+
+  private static final Provider BC_PROVIDER = Util.getBouncyCastleProvider();
+
+  private final ConcurrentHashMap<String, Queue<InitializedSignature>> signatures;
+
+  private final CryptoBackend cryptoBackend;
+
+  /**
+   * Creates a signer.
+   */
+  public DefaultEACTASigner() {
+    this(null);
+  }
+
+  /**
+   * Creates a signer which uses the given crypto backend instead of reusing
+   * initialized JCA {@code Signature} instances.
+   *
+   * @param cryptoBackend the crypto backend, or {@code null} to use JCA {@code Signature} instances
+   */
+  public DefaultEACTASigner(CryptoBackend cryptoBackend) {
+    this.signatures = new ConcurrentHashMap<String, Queue<InitializedSignature>>();
+    this.cryptoBackend = cryptoBackend;
+  }
+
+  @Override
+  public byte[] sign(String signatureAlgorithm, PrivateKey terminalKey, byte[] dataToBeSigned) throws GeneralSecurityException {
+    if (signatureAlgorithm == null) {
+      throw new IllegalArgumentException("Signature algorithm cannot be null");
+    }
+
+    if (cryptoBackend != null) {
+      byte[] signedData = cryptoBackend.sign(signatureAlgorithm, null, terminalKey, dataToBeSigned);
+      return signatureAlgorithm.toUpperCase().endsWith("ECDSA") ? toRawECDSASignature(signedData, terminalKey) : signedData;
+    }
+
+    Queue<InitializedSignature> queue = signatures.get(signatureAlgorithm);
+    if (queue == null) {
+      Queue<InitializedSignature> newQueue = new ConcurrentLinkedQueue<InitializedSignature>();
+      queue = signatures.putIfAbsent(signatureAlgorithm, newQueue);
+      if (queue == null) {
+        queue = newQueue;
+      }
+    }
+
+    InitializedSignature initializedSignature = queue.poll();
+    if (initializedSignature == null) {
+      initializedSignature = new InitializedSignature(Signature.getInstance(signatureAlgorithm, BC_PROVIDER));
+    }
+
+    /* NOTE: If signing fails the instance may be in an undefined state, so it is not put back. */
+    if (initializedSignature.key != terminalKey) {
+      initializedSignature.signature.initSign(terminalKey);
+      initializedSignature.key = terminalKey;
+    }
+    initializedSignature.signature.update(dataToBeSigned);
+    byte[] signedData = initializedSignature.signature.sign();
+    queue.offer(initializedSignature);
+
+    if (signatureAlgorithm.toUpperCase().endsWith("ECDSA")) {
+      return toRawECDSASignature(signedData, terminalKey);
+    }
+
+    return signedData;
+  }
+
+  /**
+   * Returns the size in bytes of the raw ECDSA signature components, as used
+   * for EAC 1.11 ECDSA signatures.
+   *
+   * @param terminalKey an EC private key
+   *
+   * @return the component size
+   */
+  static int getRawECDSAComponentSize(PrivateKey terminalKey) {
+    return (int)Math.ceil(((ECPrivateKey)terminalKey).getParams().getCurve().getField().getFieldSize() / 8.0); //TODO: Interop Ispra 20170925
+  }
+
+  private static byte[] toRawECDSASignature(byte[] signedData, PrivateKey terminalKey) throws SignatureException {
+    try {
+      return Util.getRawECDSASignature(signedData, getRawECDSAComponentSize(terminalKey));
+    } catch (IOException ioe) {
+      throw new SignatureException("Could not decode ECDSA signature", ioe);
+    }
+  }
+
+  /**
+   * A signature instance together with the key it was initialized with.
+   */
+  private static class InitializedSignature {
+
+    private final Signature signature;
+
+    private PrivateKey key;
+
+    public InitializedSignature(Signature signature) {
+      this.signature = signature;
+    }
+  }
+}
@@ -0,0 +1,89 @@
+/*
+ * JMRTD - A Java API for accessing machine readable travel documents.
+ *
+ * Copyright (C) 2006 - 2026  The JMRTD team
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA
+ *
+ * $Id: $
+ */
+
+package org.jmrtd.protocol;
+
+import java.math.BigInteger;
+import java.security.spec.AlgorithmParameterSpec;
+import java.security.spec.ECFieldFp;
+import java.security.spec.ECParameterSpec;
+import java.security.spec.EllipticCurve;
+import java.util.Arrays;
+
+import javax.crypto.spec.DHParameterSpec;
+
+/**
+ * Identifies a set of DH or EC domain parameters by value, since the JCE parameter
+ * specifications do not implement {@code equals}.
+ *
+ * @author The JMRTD team (info@jmrtd.org)
+ *
+ * @version $Revision: $
+ *
+ * @since 0.8.4
+ */
+class DomainParameterKey {
+
+  private final BigInteger[] values;
+
+  /**
+   * Creates a key for the given domain parameters.
+   *
+   * @param params either DH or prime field EC domain parameters
+   */
+  public DomainParameterKey(AlgorithmParameterSpec params) {
+    if (params instanceof ECParameterSpec) {
+      ECParameterSpec ecParams = (ECParameterSpec)params;
+      EllipticCurve curve = ecParams.getCurve();
+      if (!(curve.getField() instanceof ECFieldFp)) {
+        throw new IllegalArgumentException("Unsupported field " + curve.getField().getClass().getCanonicalName());
+      }
+      this.values = new BigInteger[] {
+          ((ECFieldFp)curve.getField()).getP(), curve.getA(), curve.getB(),
+          ecParams.getGenerator().getAffineX(), ecParams.getGenerator().getAffineY(),
+          ecParams.getOrder(), BigInteger.valueOf(ecParams.getCofactor())
+      };
+    } else if (params instanceof DHParameterSpec) {
+      DHParameterSpec dhParams = (DHParameterSpec)params;
+      this.values = new BigInteger[] { dhParams.getP(), dhParams.getG(), BigInteger.valueOf(dhParams.getL()) };
+    } else {
+      throw new IllegalArgumentException("Unsupported parameters " + (params == null ? "null" : params.getClass().getCanonicalName()));
+    }
+  }
+
+  @Override
+  public int hashCode() {
+    return Arrays.hashCode(values);
+  }
+
+  @Override
+  public boolean equals(Object other) {
+    if (other == this) {
+      return true;
+    }
+    if (other == null || !other.getClass().equals(getClass())) {
+      return false;
+    }
+
+    return Arrays.equals(values, ((DomainParameterKey)other).values);
+  }
+}
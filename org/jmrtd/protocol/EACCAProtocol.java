@@ -27,7 +27,6 @@ import java.security.GeneralSecurityException;
 import java.security.InvalidKeyException;
 import java.security.KeyPair;
 import java.security.KeyPairGenerator;
-import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 import java.security.PrivateKey;
 import java.security.Provider;
@@ -44,7 +43,10 @@ import javax.crypto.interfaces.DHPublicKey;
 
 import org.jmrtd.APDULevelEACCACapable;
 import org.jmrtd.CardServiceProtocolException;
+import org.jmrtd.PassportService;
 import org.jmrtd.Util;
+import org.jmrtd.crypto.CryptoBackend;
+import org.jmrtd.crypto.JCACryptoBackend;
 import org.jmrtd.lds.ChipAuthenticationInfo;
 import org.jmrtd.lds.SecurityInfo;
 
@@ -76,6 +78,10 @@ public class EACCAProtocol {
 
   private boolean shouldCheckMAC;
 
+  private EphemeralKeyPairPool ephemeralKeyPairPool;
+
+  private CryptoBackend cryptoBackend;
+
   /**
    * Constructs a protocol instance.
    *
@@ -87,10 +93,53 @@ public class EACCAProtocol {
    *        checking on response APDUs
    */
   public EACCAProtocol(APDULevelEACCACapable service, SecureMessagingWrapper wrapper, int maxTranceiveLength, boolean shouldCheckMAC) {
+    this(service, wrapper, maxTranceiveLength, shouldCheckMAC, null);
+  }
+
+  /**
+   * Constructs a protocol instance which takes the inspection system's ephemeral key pair from a pool.
+   *
+   * @param service the card service
+   * @param wrapper the existing secure messaging wrapper
+   * @param maxTranceiveLength the maximal tranceive length (on responses to {@code READ BINARY})
+   *        to use in the resulting secure messaging channel
+   * @param shouldCheckMAC whether the resulting secure messaging channel should apply strict MAC
+   *        checking on response APDUs
+   * @param ephemeralKeyPairPool the pool of precomputed key pairs, or {@code null} to generate key pairs on demand
+   *
+   * @since 0.8.4
+   */
+  public EACCAProtocol(APDULevelEACCACapable service, SecureMessagingWrapper wrapper, int maxTranceiveLength, boolean shouldCheckMAC,
+      EphemeralKeyPairPool ephemeralKeyPairPool) {
+    this(service, wrapper, maxTranceiveLength, shouldCheckMAC, ephemeralKeyPairPool, new JCACryptoBackend());
+  }
+
+  /**
+   * Constructs a protocol instance which uses the given crypto backend for key agreement
+   * and for the resulting secure messaging channel.
+   *
+   * @param service the card service
+   * @param wrapper the existing secure messaging wrapper
+   * @param maxTranceiveLength the maximal tranceive length (on responses to {@code READ BINARY})
+   *        to use in the resulting secure messaging channel
+   * @param shouldCheckMAC whether the resulting secure messaging channel should apply strict MAC
+   *        checking on response APDUs
+   * @param ephemeralKeyPairPool the pool of precomputed key pairs, or {@code null} to generate key pairs on demand
+   * @param cryptoBackend the crypto backend
+   *
+   * @since 0.8.4
+   */
+  public EACCAProtocol(APDULevelEACCACapable service, SecureMessagingWrapper wrapper, int maxTranceiveLength, boolean shouldCheckMAC,
+      EphemeralKeyPairPool ephemeralKeyPairPool, CryptoBackend cryptoBackend) {
+    if (cryptoBackend == null) {
+      throw new IllegalArgumentException("Crypto backend cannot be null");
+    }
     this.service = service;
     this.wrapper = wrapper;
     this.maxTranceiveLength = maxTranceiveLength;
     this.shouldCheckMAC = shouldCheckMAC;
+    this.ephemeralKeyPairPool = ephemeralKeyPairPool;
+    this.cryptoBackend = cryptoBackend;
   }
 
   /**
@@ -141,19 +190,24 @@ public class EACCAProtocol {
       }
 
       /* Generate the inspection system's ephemeral key pair. */
-      KeyPairGenerator keyPairGenerator = KeyPairGenerator.getInstance(agreementAlg, BC_PROVIDER);
-      keyPairGenerator.initialize(params);
-      KeyPair pcdKeyPair = keyPairGenerator.generateKeyPair();
+      KeyPair pcdKeyPair = null;
+      if (ephemeralKeyPairPool != null) {
+        pcdKeyPair = ephemeralKeyPairPool.take(agreementAlg, params);
+      } else {
+        KeyPairGenerator keyPairGenerator = KeyPairGenerator.getInstance(agreementAlg, BC_PROVIDER);
+        keyPairGenerator.initialize(params);
+        pcdKeyPair = keyPairGenerator.generateKeyPair();
+      }
       PublicKey pcdPublicKey = pcdKeyPair.getPublic();
       PrivateKey pcdPrivateKey = pcdKeyPair.getPrivate();
 
       sendPublicKey(service, wrapper, oid, keyId, pcdPublicKey);
 
-      byte[] keyHash = getKeyHash(agreementAlg, pcdPublicKey);
+      byte[] keyHash = getKeyHash(agreementAlg, pcdPublicKey, cryptoBackend);
 
-      byte[] sharedSecret = computeSharedSecret(agreementAlg, piccPublicKey, pcdPrivateKey);
+      byte[] sharedSecret = cryptoBackend.generateSecret(agreementAlg, pcdPrivateKey, piccPublicKey);
 
-      wrapper = restartSecureMessaging(oid, sharedSecret, maxTranceiveLength, shouldCheckMAC);
+      wrapper = restartSecureMessaging(oid, sharedSecret, maxTranceiveLength, shouldCheckMAC, cryptoBackend);
 
       return new EACCAResult(keyId, piccPublicKey, keyHash, pcdPublicKey, pcdPrivateKey, wrapper);
     } catch (GeneralSecurityException e) {
@@ -240,17 +294,36 @@ public class EACCAProtocol {
    * @throws GeneralSecurityException on error
    */
   public static SecureMessagingWrapper restartSecureMessaging(String oid, byte[] sharedSecret, int maxTranceiveLength, boolean shouldCheckMAC) throws GeneralSecurityException {
+    return restartSecureMessaging(oid, sharedSecret, maxTranceiveLength, shouldCheckMAC, new JCACryptoBackend());
+  }
+
+  /**
+   * Restarts secure messaging based on the shared secret, using the given crypto backend.
+   *
+   * @param oid the Chip Authentication object identifier
+   * @param sharedSecret the shared secret
+   * @param maxTranceiveLength the maximum APDU tranceive length
+   * @param shouldCheckMAC whether to check MAC
+   * @param cryptoBackend the crypto backend for the secure messaging wrapper
+   *
+   * @return the secure messaging wrapper
+   *
+   * @throws GeneralSecurityException on error
+   *
+   * @since 0.8.4
+   */
+  public static SecureMessagingWrapper restartSecureMessaging(String oid, byte[] sharedSecret, int maxTranceiveLength, boolean shouldCheckMAC, CryptoBackend cryptoBackend) throws GeneralSecurityException {
     String cipherAlg = ChipAuthenticationInfo.toCipherAlgorithm(oid);
     int keyLength = ChipAuthenticationInfo.toKeyLength(oid);
 
     /* Start secure messaging. */
-    SecretKey ksEnc = Util.deriveKey(sharedSecret, cipherAlg, keyLength, Util.ENC_MODE);
-    SecretKey ksMac = Util.deriveKey(sharedSecret, cipherAlg, keyLength, Util.MAC_MODE);
+    SecretKey ksEnc = Util.deriveKey(sharedSecret, cipherAlg, keyLength, null, Util.ENC_MODE, PassportService.NO_PACE_KEY_REFERENCE, cryptoBackend);
+    SecretKey ksMac = Util.deriveKey(sharedSecret, cipherAlg, keyLength, null, Util.MAC_MODE, PassportService.NO_PACE_KEY_REFERENCE, cryptoBackend);
 
     if (cipherAlg.startsWith("DESede")) {
-      return new DESedeSecureMessagingWrapper(ksEnc, ksMac, maxTranceiveLength, shouldCheckMAC, 0L);
+      return new DESedeSecureMessagingWrapper(ksEnc, ksMac, maxTranceiveLength, shouldCheckMAC, 0L, cryptoBackend);
     } else if (cipherAlg.startsWith("AES")) {
-      return new AESSecureMessagingWrapper(ksEnc, ksMac, maxTranceiveLength, shouldCheckMAC, 0L);
+      return new AESSecureMessagingWrapper(ksEnc, ksMac, maxTranceiveLength, shouldCheckMAC, 0L, cryptoBackend);
     } else {
       throw new IllegalStateException("Unsupported cipher algorithm " + cipherAlg);
     }
@@ -276,10 +349,33 @@ public class EACCAProtocol {
    * @throws NoSuchAlgorithmException on error
    */
   public static byte[] getKeyHash(String agreementAlg, PublicKey pcdPublicKey) throws NoSuchAlgorithmException {
+    try {
+      return getKeyHash(agreementAlg, pcdPublicKey, new JCACryptoBackend());
+    } catch (NoSuchAlgorithmException nsae) {
+      throw nsae;
+    } catch (GeneralSecurityException gse) {
+      throw new NoSuchAlgorithmException("Could not compute key hash", gse);
+    }
+  }
+
+  /**
+   * Returns the key hash which will be used as input for Terminal Authentication,
+   * using the given crypto backend to compute the hash.
+   *
+   * @param agreementAlg the agreement algorithm, either {@code "DH"} or {@code "ECDH"}
+   * @param pcdPublicKey the inspection system's public key
+   * @param cryptoBackend the crypto backend
+   *
+   * @return the key hash
+   *
+   * @throws GeneralSecurityException on error
+   *
+   * @since 0.8.4
+   */
+  public static byte[] getKeyHash(String agreementAlg, PublicKey pcdPublicKey, CryptoBackend cryptoBackend) throws GeneralSecurityException {
     if ("DH".equals(agreementAlg) || pcdPublicKey instanceof DHPublicKey) {
       /* TODO: this is probably wrong, what should be hashed? */
-      MessageDigest md = MessageDigest.getInstance("SHA-1");
-      return md.digest(getKeyData(agreementAlg, pcdPublicKey));
+      return cryptoBackend.digest("SHA-1", getKeyData(agreementAlg, pcdPublicKey));
     } else if ("ECDH".equals(agreementAlg) || pcdPublicKey instanceof ECPublicKey) {
       org.bouncycastle.jce.interfaces.ECPublicKey pcdECPublicKey = (org.bouncycastle.jce.interfaces.ECPublicKey)pcdPublicKey;
       byte[] t = Util.i2os(pcdECPublicKey.getQ().getAffineXCoord().toBigInteger());
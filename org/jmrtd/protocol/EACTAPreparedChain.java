@@ -0,0 +1,320 @@
+/*
+ * JMRTD - A Java API for accessing machine readable travel documents.
+ *
+ * Copyright (C) 2006 - 2026  The JMRTD team
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA
+ *
+ * $Id: $
+ */
+
+package org.jmrtd.protocol;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.security.GeneralSecurityException;
+import java.security.cert.CertificateException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+
+import org.jmrtd.cert.CVCAuthorizationTemplate.Role;
+import org.jmrtd.cert.CVCPrincipal;
+import org.jmrtd.cert.CardVerifiableCertificate;
+
+import net.sf.scuba.tlv.TLVOutputStream;
+import net.sf.scuba.tlv.TLVUtil;
+
+/**
+ * A terminal certificate chain for EAC Terminal Authentication of which the
+ * command payloads ({@code MSE:Set DST}, {@code PSO:Verify Certificate}, and
+ * {@code MSE:Set AT}) have been encoded once, so that the chain can be sent
+ * to many documents without re-encoding the certificates.
+ *
+ * A prepared chain is immutable and can be shared between threads.
+ * Once {@link #isValid(Date)} returns {@code false}, a chain with renewed
+ * certificates should be prepared.
+ *
+ * @author The JMRTD team (info@jmrtd.org)
+ *
+ * @version $Revision: $
+ *
+ * @since 0.8.4
+ */
+public final class EACTAPreparedChain {
+
+  private static final int TAG_CVCERTIFICATE_SIGNATURE = 0x5F37;
+
+  private static final int TAG_PUBLIC_KEY_REFERENCE = 0x83;
+
+  private final CVCPrincipal caReference;
+
+  private final List<CardVerifiableCertificate> certificates;
+
+  private final CardVerifiableCertificate terminalCertificate;
+
+  private final String signatureAlgorithm;
+
+  private final byte[][] setDSTData;
+
+  private final byte[][] certificateBodyData;
+
+  private final byte[][] certificateSignatureData;
+
+  private final byte[] setATData;
+
+  private final Date notBefore;
+
+  private final Date notAfter;
+
+  private EACTAPreparedChain(CVCPrincipal caReference, List<CardVerifiableCertificate> certificates) throws GeneralSecurityException, IOException {
+    this.caReference = caReference;
+    this.certificates = Collections.unmodifiableList(new ArrayList<CardVerifiableCertificate>(certificates));
+    this.terminalCertificate = certificates.get(certificates.size() - 1);
+
+    this.signatureAlgorithm = terminalCertificate.getSigAlgName();
+    if (signatureAlgorithm == null) {
+      throw new CertificateException("Could not determine signature algorithm for terminal certificate " + terminalCertificate.getHolderReference().getName());
+    }
+
+    int count = certificates.size();
+    this.setDSTData = new byte[count][];
+    this.certificateBodyData = new byte[count][];
+    this.certificateSignatureData = new byte[count][];
+    Date latestNotBefore = null;
+    Date earliestNotAfter = null;
+    for (int i = 0; i < count; i++) {
+      CardVerifiableCertificate certificate = certificates.get(i);
+      setDSTData[i] = TLVUtil.wrapDO(TAG_PUBLIC_KEY_REFERENCE, certificate.getAuthorityReference().getName().getBytes("ISO-8859-1"));
+
+      /* Cert body is already in TLV format. */
+      certificateBodyData[i] = certificate.getCertBodyData();
+
+      /* Signature not yet in TLV format, prefix it with tag and length. */
+      ByteArrayOutputStream sigOut = new ByteArrayOutputStream();
+      TLVOutputStream tlvSigOut = new TLVOutputStream(sigOut);
+      tlvSigOut.writeTag(TAG_CVCERTIFICATE_SIGNATURE);
+      tlvSigOut.writeValue(certificate.getSignature());
+      tlvSigOut.close();
+      certificateSignatureData[i] = sigOut.toByteArray();
+
+      Date certificateNotBefore = certificate.getNotBefore();
+      if (certificateNotBefore != null && (latestNotBefore == null || certificateNotBefore.after(latestNotBefore))) {
+        latestNotBefore = certificateNotBefore;
+      }
+      Date certificateNotAfter = certificate.getNotAfter();
+      if (certificateNotAfter != null && (earliestNotAfter == null || certificateNotAfter.before(earliestNotAfter))) {
+        earliestNotAfter = certificateNotAfter;
+      }
+    }
+    this.notBefore = latestNotBefore;
+    this.notAfter = earliestNotAfter;
+
+    this.setATData = TLVUtil.wrapDO(TAG_PUBLIC_KEY_REFERENCE, terminalCertificate.getHolderReference().getName().getBytes("ISO-8859-1"));
+  }
+
+  /**
+   * Checks the terminal certificate chain and encodes the command payloads.
+   * A leading CVCA certificate is checked against the CA reference and is not sent to the ICC.
+   * The last certificate should be an inspection system certificate.
+   *
+   * @param caReference the expected CVCA reference, or {@code null} to derive it from the chain
+   * @param terminalCertificates the terminal certificate chain, issuer before subject
+   *
+   * @return the prepared chain
+   *
+   * @throws GeneralSecurityException if the chain is not acceptable or cannot be encoded
+   */
+  public static EACTAPreparedChain prepare(CVCPrincipal caReference, List<CardVerifiableCertificate> terminalCertificates) throws GeneralSecurityException {
+    if (terminalCertificates == null || terminalCertificates.isEmpty()) {
+      throw new IllegalArgumentException("Need at least 1 certificate to perform TA, found: " + terminalCertificates);
+    }
+
+    /*
+     * FIXME: check that terminalCertificates holds a (inverted, i.e. issuer before
+     * subject) chain.
+     */
+
+    List<CardVerifiableCertificate> certificates = new ArrayList<CardVerifiableCertificate>(terminalCertificates);
+
+    /*
+     * Check if first cert is/has the expected CVCA, and remove it from chain if it
+     * is the CVCA.
+     */
+    CardVerifiableCertificate firstCert = certificates.get(0);
+    Role firstCertRole = firstCert.getAuthorizationTemplate().getRole();
+    if (Role.CVCA.equals(firstCertRole)) {
+      CVCPrincipal firstCertHolderReference = firstCert.getHolderReference();
+      if (caReference != null && !caReference.equals(firstCertHolderReference)) {
+        throw new CertificateException("First certificate holds wrong authority, found \""
+            + firstCertHolderReference.getName() + "\", expected \"" + caReference.getName() + "\"");
+      }
+      if (caReference == null) {
+        caReference = firstCertHolderReference;
+      }
+      certificates.remove(0);
+    }
+    CVCPrincipal firstCertAuthorityReference = firstCert.getAuthorityReference();
+    if (caReference != null && !caReference.equals(firstCertAuthorityReference)) {
+      throw new CertificateException("First certificate not signed by expected CA, found "
+          + firstCertAuthorityReference.getName() + ", expected " + caReference.getName());
+    }
+    if (caReference == null) {
+      caReference = firstCertAuthorityReference;
+    }
+
+    if (certificates.isEmpty()) {
+      throw new CertificateException("Chain holds no certificates besides the CVCA certificate");
+    }
+
+    /* Check if the last cert is an IS cert. */
+    CardVerifiableCertificate lastCert = certificates.get(certificates.size() - 1);
+    Role lastCertRole = lastCert.getAuthorizationTemplate().getRole();
+    if (!Role.IS.equals(lastCertRole)) {
+      throw new CertificateException("Last certificate in chain (" + lastCert.getHolderReference().getName()
+          + ") does not have role IS, but has role " + lastCertRole);
+    }
+
+    try {
+      return new EACTAPreparedChain(caReference, certificates);
+    } catch (IOException ioe) {
+      throw new CertificateException("Could not encode terminal certificate chain", ioe);
+    }
+  }
+
+  /**
+   * Returns the CVCA reference.
+   *
+   * @return the CVCA reference
+   */
+  public CVCPrincipal getCAReference() {
+    return caReference;
+  }
+
+  /**
+   * Returns the certificates that are sent to the ICC, i.e. without a leading CVCA certificate.
+   *
+   * @return an unmodifiable list of certificates
+   */
+  public List<CardVerifiableCertificate> getCertificates() {
+    return certificates;
+  }
+
+  /**
+   * Returns the inspection system certificate.
+   *
+   * @return the last certificate in the chain
+   */
+  public CardVerifiableCertificate getTerminalCertificate() {
+    return terminalCertificate;
+  }
+
+  /**
+   * Returns the signature algorithm of the inspection system certificate.
+   *
+   * @return the signature algorithm
+   */
+  public String getSignatureAlgorithm() {
+    return signatureAlgorithm;
+  }
+
+  /**
+   * Returns the start of the period in which all certificates in the chain are valid.
+   *
+   * @return a date, or {@code null} if unknown
+   */
+  public Date getNotBefore() {
+    return notBefore == null ? null : new Date(notBefore.getTime());
+  }
+
+  /**
+   * Returns the end of the period in which all certificates in the chain are valid.
+   *
+   * @return a date, or {@code null} if unknown
+   */
+  public Date getNotAfter() {
+    return notAfter == null ? null : new Date(notAfter.getTime());
+  }
+
+  /**
+   * Whether all certificates in the chain are valid at the given date.
+   *
+   * @param date the date
+   *
+   * @return a boolean
+   */
+  public boolean isValid(Date date) {
+    if (notBefore != null && date.before(notBefore)) {
+      return false;
+    }
+
+    /* NOTE: Effective and expiration dates in CV certificates have day precision, the expiration day is included. */
+    return notAfter == null || date.getTime() < notAfter.getTime() + 24L * 60L * 60L * 1000L;
+  }
+
+  /**
+   * Returns the number of certificates sent to the ICC.
+   *
+   * @return the number of certificates
+   */
+  int getCertificateCount() {
+    return setDSTData.length;
+  }
+
+  /**
+   * Returns the {@code MSE:Set DST} data for the certificate at the given index.
+   *
+   * @param index the index of the certificate
+   *
+   * @return the authority reference, wrapped in a public key reference data object
+   */
+  byte[] getSetDSTData(int index) {
+    return setDSTData[index];
+  }
+
+  /**
+   * Returns the certificate body for the {@code PSO:Verify Certificate} command
+   * for the certificate at the given index.
+   *
+   * @param index the index of the certificate
+   *
+   * @return the encoded certificate body
+   */
+  byte[] getCertificateBodyData(int index) {
+    return certificateBodyData[index];
+  }
+
+  /**
+   * Returns the signature for the {@code PSO:Verify Certificate} command
+   * for the certificate at the given index.
+   *
+   * @param index the index of the certificate
+   *
+   * @return the signature, wrapped in a signature data object
+   */
+  byte[] getCertificateSignatureData(int index) {
+    return certificateSignatureData[index];
+  }
+
+  /**
+   * Returns the {@code MSE:Set AT} data.
+   *
+   * @return the holder reference of the inspection system certificate, wrapped in a public key reference data object
+   */
+  byte[] getSetATData() {
+    return setATData;
+  }
+}
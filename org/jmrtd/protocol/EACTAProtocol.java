@@ -24,13 +24,13 @@ package org.jmrtd.protocol;
 
 import java.io.ByteArrayOutputStream;
 import java.io.UnsupportedEncodingException;
+import java.security.GeneralSecurityException;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 import java.security.PrivateKey;
-import java.security.Provider;
 import java.security.PublicKey;
-import java.security.Signature;
 import java.security.interfaces.ECPublicKey;
+import java.util.Date;
 import java.util.List;
 import java.util.logging.Level;
 import java.util.logging.Logger;
@@ -40,14 +40,11 @@ import javax.crypto.interfaces.DHPublicKey;
 import org.jmrtd.APDULevelEACTACapable;
 import org.jmrtd.CardServiceProtocolException;
 import org.jmrtd.Util;
-import org.jmrtd.cert.CVCAuthorizationTemplate.Role;
 import org.jmrtd.cert.CVCPrincipal;
 import org.jmrtd.cert.CardVerifiableCertificate;
 import org.jmrtd.lds.icao.MRZInfo;
 
 import net.sf.scuba.smartcards.CardServiceException;
-import net.sf.scuba.tlv.TLVOutputStream;
-import net.sf.scuba.tlv.TLVUtil;
 
 /**
  * The EAC Terminal Authentication protocol.
@@ -62,14 +59,12 @@ public class EACTAProtocol {
 
   private static final Logger LOGGER = Logger.getLogger("org.jmrtd.protocol");
 
-  private static final int TAG_CVCERTIFICATE_SIGNATURE = 0x5F37;
-
-  private static final Provider BC_PROVIDER = Util.getBouncyCastleProvider();
-
   private APDULevelEACTACapable service;
 
   private SecureMessagingWrapper wrapper;
 
+  private EACTASigner signer;
+
   /**
    * Creates a protocol instance.
    *
@@ -77,8 +72,25 @@ public class EACTAProtocol {
    * @param wrapper the secure messaging wrapper
    */
   public EACTAProtocol(APDULevelEACTACapable service, SecureMessagingWrapper wrapper) {
+    this(service, wrapper, new DefaultEACTASigner());
+  }
+
+  /**
+   * Creates a protocol instance.
+   *
+   * @param service the card service for APDU communication
+   * @param wrapper the secure messaging wrapper
+   * @param signer the signer used for signing the challenge in step 5
+   *
+   * @since 0.8.4
+   */
+  public EACTAProtocol(APDULevelEACTACapable service, SecureMessagingWrapper wrapper, EACTASigner signer) {
+    if (signer == null) {
+      throw new IllegalArgumentException("Signer cannot be null");
+    }
     this.service = service;
     this.wrapper = wrapper;
+    this.signer = signer;
   }
 
   /*
@@ -165,11 +177,143 @@ public class EACTAProtocol {
    */
   public synchronized EACTAResult doTA(CVCPrincipal caReference, List<CardVerifiableCertificate> terminalCertificates,
       PrivateKey terminalKey, String taAlg, EACCAResult chipAuthenticationResult, byte[] idPICC) throws CardServiceException {
+    EACTAPreparedChain preparedChain = null;
     try {
-      if (terminalCertificates == null || terminalCertificates.isEmpty()) {
-        throw new IllegalArgumentException("Need at least 1 certificate to perform TA, found: " + terminalCertificates);
-      }
+      preparedChain = EACTAPreparedChain.prepare(caReference, terminalCertificates);
+    } catch (GeneralSecurityException gse) {
+      throw new CardServiceException(gse.getMessage(), gse);
+    } catch (RuntimeException re) {
+      throw new CardServiceException("Unexpected exception", re);
+    }
+
+    /* The validity period of the chain is left to the ICC. */
+    return sendTA(preparedChain, terminalKey, chipAuthenticationResult, idPICC);
+  }
+
+  /**
+   * Executes the Terminal Authentication protocol using a terminal certificate chain
+   * that was prepared before.
+   *
+   * @param preparedChain the prepared terminal certificate chain
+   * @param terminalKey the inspection system's private key
+   * @param chipAuthenticationResult the result of the Chip Authentication protocol execution
+   * @param paceResult the PACE result from which the chip key hash will be derived
+   *
+   * @return the result of Terminal Authentication
+   *
+   * @throws CardServiceException on error
+   *
+   * @since 0.8.4
+   */
+  public synchronized EACTAResult doTA(EACTAPreparedChain preparedChain, PrivateKey terminalKey,
+      EACCAResult chipAuthenticationResult, PACEResult paceResult) throws CardServiceException {
+    try {
+      byte[] idPICC = deriveIdentifier(paceResult.getPICCPublicKey());
+      return doTA(preparedChain, terminalKey, chipAuthenticationResult, idPICC);
+    } catch (NoSuchAlgorithmException e) {
+      throw new CardServiceException("No such algorithm", e);
+    }
+  }
+
+  /**
+   * Executes the Terminal Authentication protocol using a terminal certificate chain
+   * that was prepared before. A chain that is used outside its validity period is sent
+   * as is, whether it is accepted is up to the ICC.
+   *
+   * @param preparedChain the prepared terminal certificate chain
+   * @param terminalKey the inspection system's private key
+   * @param chipAuthenticationResult the result of the Chip Authentication protocol execution
+   * @param idPICC the chip identifier
+   *
+   * @return the result of Terminal Authentication
+   *
+   * @throws CardServiceException on error
+   *
+   * @since 0.8.4
+   */
+  public synchronized EACTAResult doTA(EACTAPreparedChain preparedChain, PrivateKey terminalKey,
+      EACCAResult chipAuthenticationResult, byte[] idPICC) throws CardServiceException {
+    if (preparedChain == null) {
+      throw new IllegalArgumentException("Need a terminal certificate chain to perform TA");
+    }
+
+    if (!preparedChain.isValid(new Date())) {
+      /* NOTE: Preparing the chain again would not make it valid. Send it as is, and leave it to the ICC to accept it. */
+      LOGGER.fine("Terminal certificate chain valid from " + preparedChain.getNotBefore() + " to " + preparedChain.getNotAfter()
+          + " is used outside its validity period");
+    }
+
+    return sendTA(preparedChain, terminalKey, chipAuthenticationResult, idPICC);
+  }
 
+  /**
+   * Derives a chip identifier from the document number (BAC MRZ based case).
+   *
+   * @param documentNumber the document number that was used for primary access control (typically BAC)
+   *
+   * @return the chip identifier
+   */
+  public static byte[] deriveIdentifier(String documentNumber) {
+    if (documentNumber == null) {
+      return null;
+    }
+    int documentNumberLength = documentNumber.length();
+    byte[] idPICC = new byte[documentNumberLength + 1];
+    try {
+      System.arraycopy(documentNumber.getBytes("ISO-8859-1"), 0, idPICC, 0, documentNumberLength);
+      idPICC[documentNumberLength] = (byte)MRZInfo.checkDigit(documentNumber);
+      return idPICC;
+    } catch (UnsupportedEncodingException e) {
+      /* NOTE: Never happens, ISO-8859-1 is always supported. */
+      throw new IllegalStateException("Unsupported encoding", e);
+    }
+  }
+
+  /**
+   * Derives a chip identifier from a PACE result (PACE case).
+   *
+   * @param publicKey the PACE result
+   *
+   * @return the chip identifier
+   *
+   * @throws NoSuchAlgorithmException on error
+   */
+  public static byte[] deriveIdentifier(PublicKey publicKey) throws NoSuchAlgorithmException {
+    if (publicKey == null) {
+      return null;
+    }
+    String publicKeyAlg = publicKey.getAlgorithm();
+    if ("DH".equals(publicKeyAlg) || publicKey instanceof DHPublicKey) {
+      /* TODO: this is probably wrong, what should be hashed? */
+      MessageDigest md = MessageDigest.getInstance("SHA-1");
+      DHPublicKey dhPublicKey = (DHPublicKey)publicKey;
+      return md.digest(Util.i2os(dhPublicKey.getY()));
+    } else if ("ECDH".equals(publicKeyAlg) || publicKey instanceof ECPublicKey) {
+      org.bouncycastle.jce.interfaces.ECPublicKey piccECPublicKey = (org.bouncycastle.jce.interfaces.ECPublicKey)publicKey;
+      byte[] t = Util.i2os(piccECPublicKey.getQ().getAffineXCoord().toBigInteger());
+      return Util.alignKeyDataToSize(t, (int)Math.ceil(piccECPublicKey.getParameters().getCurve().getFieldSize() / 8.0)); // TODO: Interop Ispra for SecP521r1 20170925.
+    }
+
+    throw new NoSuchAlgorithmException("Unsupported agreement algorithm " + publicKeyAlg);
+  }
+
+  /* ONLY PRIVATE METHODS BELOW */
+
+  /**
+   * Sends a prepared terminal certificate chain to the ICC and authenticates the terminal.
+   *
+   * @param preparedChain the prepared terminal certificate chain
+   * @param terminalKey the inspection system's private key
+   * @param chipAuthenticationResult the result of the Chip Authentication protocol execution
+   * @param idPICC the chip identifier
+   *
+   * @return the result of Terminal Authentication
+   *
+   * @throws CardServiceException on error
+   */
+  private EACTAResult sendTA(EACTAPreparedChain preparedChain, PrivateKey terminalKey,
+      EACCAResult chipAuthenticationResult, byte[] idPICC) throws CardServiceException {
+    try {
       if (chipAuthenticationResult == null) {
         throw new IllegalArgumentException("Could not get EAC-CA key hash");
       }
@@ -179,77 +323,22 @@ public class EACTAProtocol {
         throw new IllegalArgumentException("Could nnot get EAC-CA key hash");
       }
 
-      /*
-       * FIXME: check that terminalCertificates holds a (inverted, i.e. issuer before
-       * subject) chain.
-       */
-
-      /*
-       * Check if first cert is/has the expected CVCA, and remove it from chain if it
-       * is the CVCA.
-       */
-      CardVerifiableCertificate firstCert = terminalCertificates.get(0);
-      Role firstCertRole = firstCert.getAuthorizationTemplate().getRole();
-      if (Role.CVCA.equals(firstCertRole)) {
-        CVCPrincipal firstCertHolderReference = firstCert.getHolderReference();
-        if (caReference != null && !caReference.equals(firstCertHolderReference)) {
-          throw new CardServiceException("First certificate holds wrong authority, found \""
-              + firstCertHolderReference.getName() + "\", expected \"" + caReference.getName() + "\"");
-        }
-        if (caReference == null) {
-          caReference = firstCertHolderReference;
-        }
-        terminalCertificates.remove(0);
-      }
-      CVCPrincipal firstCertAuthorityReference = firstCert.getAuthorityReference();
-      if (caReference != null && !caReference.equals(firstCertAuthorityReference)) {
-        throw new CardServiceException("First certificate not signed by expected CA, found "
-            + firstCertAuthorityReference.getName() + ", expected " + caReference.getName());
-      }
-      if (caReference == null) {
-        caReference = firstCertAuthorityReference;
-      }
-
-      /* Check if the last cert is an IS cert. */
-      CardVerifiableCertificate lastCert = terminalCertificates.get(terminalCertificates.size() - 1);
-      Role lastCertRole = lastCert.getAuthorizationTemplate().getRole();
-      if (!Role.IS.equals(lastCertRole)) {
-        throw new CardServiceException("Last certificate in chain (" + lastCert.getHolderReference().getName()
-            + ") does not have role IS, but has role " + lastCertRole);
-      }
-      CardVerifiableCertificate terminalCert = lastCert;
-
       /* Have the MRTD check our chain. */
-      for (CardVerifiableCertificate cert: terminalCertificates) {
+      for (int i = 0; i < preparedChain.getCertificateCount(); i++) {
         try {
-          CVCPrincipal authorityReference = cert.getAuthorityReference();
-
           /* Step 1: MSE:SetDST */
           /*
            * Manage Security Environment: Set for verification: Digital Signature
            * Template, indicate authority of cert to check.
            */
-          byte[] authorityRefBytes = TLVUtil.wrapDO(0x83, authorityReference.getName().getBytes("ISO-8859-1"));
-          service.sendMSESetDST(wrapper, authorityRefBytes);
+          service.sendMSESetDST(wrapper, preparedChain.getSetDSTData(i));
         } catch (Exception e) {
           throw new CardServiceProtocolException("Exception in MSE:SetDST", 1, e);
         }
 
         try {
-          /* Cert body is already in TLV format. */
-          byte[] body = cert.getCertBodyData();
-
-          /* Signature not yet in TLV format, prefix it with tag and length. */
-          byte[] signature = cert.getSignature();
-          ByteArrayOutputStream sigOut = new ByteArrayOutputStream();
-          TLVOutputStream tlvSigOut = new TLVOutputStream(sigOut);
-          tlvSigOut.writeTag(TAG_CVCERTIFICATE_SIGNATURE);
-          tlvSigOut.writeValue(signature);
-          tlvSigOut.close();
-          signature = sigOut.toByteArray();
-
           /* Step 2: PSO:Verify Certificate */
-          service.sendPSOExtendedLengthMode(wrapper, body, signature);
+          service.sendPSOExtendedLengthMode(wrapper, preparedChain.getCertificateBodyData(i), preparedChain.getCertificateSignatureData(i));
         } catch (Exception e) {
           /* FIXME: Does this mean we failed to authenticate? -- MO */
           throw new CardServiceProtocolException("Exception", 2, e);
@@ -262,13 +351,11 @@ public class EACTAProtocol {
 
       /* Step 3: MSE Set AT */
       try {
-        CVCPrincipal holderRef = terminalCert.getHolderReference();
-        byte[] holderRefBytes = TLVUtil.wrapDO(0x83, holderRef.getName().getBytes("ISO-8859-1"));
         /*
          * Manage Security Environment: Set for external authentication: Authentication
          * Template
          */
-        service.sendMSESetATExtAuth(wrapper, holderRefBytes);
+        service.sendMSESetATExtAuth(wrapper, preparedChain.getSetATData());
       } catch (Exception e) {
         throw new CardServiceProtocolException("Exception in MSE Set AT", 3, e);
       }
@@ -290,21 +377,10 @@ public class EACTAProtocol {
         dtbs.close();
         byte[] dtbsBytes = dtbs.toByteArray();
 
-        String sigAlg = terminalCert.getSigAlgName();
-        if (sigAlg == null) {
-          throw new IllegalStateException("Could not determine signature algorithm for terminal certificate " + terminalCert.getHolderReference().getName());
-        }
-        Signature sig = Signature.getInstance(sigAlg, BC_PROVIDER);
-        sig.initSign(terminalKey);
-        sig.update(dtbsBytes);
-        byte[] signedData = sig.sign();
-        if (sigAlg.toUpperCase().endsWith("ECDSA")) {
-          int keySize = (int)Math.ceil(((org.bouncycastle.jce.interfaces.ECPrivateKey)terminalKey).getParameters().getCurve().getFieldSize() / 8.0); //TODO: Interop Ispra 20170925
-          signedData = Util.getRawECDSASignature(signedData, keySize);
-        }
+        byte[] signedData = signer.sign(preparedChain.getSignatureAlgorithm(), terminalKey, dtbsBytes);
 
         service.sendMutualAuthenticate(wrapper, signedData);
-        return new EACTAResult(chipAuthenticationResult, caReference, terminalCertificates, terminalKey, null, rPICC);
+        return new EACTAResult(chipAuthenticationResult, preparedChain.getCAReference(), preparedChain.getCertificates(), terminalKey, null, rPICC);
       } catch (Exception e) {
         LOGGER.log(Level.WARNING, "Exception", e);
         throw new CardServiceProtocolException("Exception in External Authenticate", 5, e);
@@ -315,56 +391,4 @@ public class EACTAProtocol {
       throw new CardServiceException("Unexpected exception", e);
     }
   }
-
-  /**
-   * Derives a chip identifier from the document number (BAC MRZ based case).
-   *
-   * @param documentNumber the document number that was used for primary access control (typically BAC)
-   *
-   * @return the chip identifier
-   */
-  public static byte[] deriveIdentifier(String documentNumber) {
-    if (documentNumber == null) {
-      return null;
-    }
-    int documentNumberLength = documentNumber.length();
-    byte[] idPICC = new byte[documentNumberLength + 1];
-    try {
-      System.arraycopy(documentNumber.getBytes("ISO-8859-1"), 0, idPICC, 0, documentNumberLength);
-      idPICC[documentNumberLength] = (byte)MRZInfo.checkDigit(documentNumber);
-      return idPICC;
-    } catch (UnsupportedEncodingException e) {
-      /* NOTE: Never happens, ISO-8859-1 is always supported. */
-      throw new IllegalStateException("Unsupported encoding", e);
-    }
-  }
-
-  /**
-   * Derives a chip identifier from a PACE result (PACE case).
-   *
-   * @param publicKey the PACE result
-   *
-   * @return the chip identifier
-   *
-   * @throws NoSuchAlgorithmException on error
-   */
-  public static byte[] deriveIdentifier(PublicKey publicKey) throws NoSuchAlgorithmException {
-    if (publicKey == null) {
-      return null;
-    }
-    String publicKeyAlg = publicKey.getAlgorithm();
-    if ("DH".equals(publicKeyAlg) || publicKey instanceof DHPublicKey) {
-      /* TODO: this is probably wrong, what should be hashed? */
-      MessageDigest md = MessageDigest.getInstance("SHA-1");
-      DHPublicKey dhPublicKey = (DHPublicKey)publicKey;
-      return md.digest(Util.i2os(dhPublicKey.getY()));
-    } else if ("ECDH".equals(publicKeyAlg) || publicKey instanceof ECPublicKey) {
-      org.bouncycastle.jce.interfaces.ECPublicKey piccECPublicKey = (org.bouncycastle.jce.interfaces.ECPublicKey)publicKey;
-      byte[] t = Util.i2os(piccECPublicKey.getQ().getAffineXCoord().toBigInteger());
-      return Util.alignKeyDataToSize(t, (int)Math.ceil(piccECPublicKey.getParameters().getCurve().getFieldSize() / 8.0)); // TODO: Interop Ispra for SecP521r1 20170925.
-    }
-
-    throw new NoSuchAlgorithmException("Unsupported agreement algorithm " + publicKeyAlg);
-  }
 }
-
@@ -0,0 +1,55 @@
+/*
+ * JMRTD - A Java API for accessing machine readable travel documents.
+ *
+ * Copyright (C) 2006 - 2026  The JMRTD team
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA
+ *
+ * $Id: $
+ */
+
+package org.jmrtd.protocol;
+
+import java.security.GeneralSecurityException;
+import java.security.PrivateKey;
+
+/**
+ * Computes the terminal's signature over the challenge in step 5
+ * ({@code EXTERNAL AUTHENTICATE}) of EAC Terminal Authentication.
+ *
+ * Implementations must be safe for use by multiple threads.
+ *
+ * @author The JMRTD team (info@jmrtd.org)
+ *
+ * @version $Revision: $
+ *
+ * @since 0.8.4
+ */
+public interface EACTASigner {
+
+  /**
+   * Signs the data to be signed ({@code ID_PICC || r_PICC || H(PK_PCD)})
+   * with the terminal's private key.
+   *
+   * @param signatureAlgorithm the signature algorithm of the terminal certificate, for example {@code "SHA256withECDSA"}
+   * @param terminalKey the terminal's private key
+   * @param dataToBeSigned the data to be signed
+   *
+   * @return the signature, in the format expected by the ICC (i.e. plain, not DER encoded, for ECDSA)
+   *
+   * @throws GeneralSecurityException on error
+   */
+  byte[] sign(String signatureAlgorithm, PrivateKey terminalKey, byte[] dataToBeSigned) throws GeneralSecurityException;
+}
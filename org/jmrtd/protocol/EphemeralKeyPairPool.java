@@ -0,0 +1,293 @@
+/*
+ * JMRTD - A Java API for accessing machine readable travel documents.
+ *
+ * Copyright (C) 2006 - 2026  The JMRTD team
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA
+ *
+ * $Id: $
+ */
+
+package org.jmrtd.protocol;
+
+import java.security.GeneralSecurityException;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.PrivateKey;
+import java.security.Provider;
+import java.security.spec.AlgorithmParameterSpec;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.security.auth.DestroyFailedException;
+import javax.security.auth.Destroyable;
+
+import org.jmrtd.Util;
+
+/**
+ * A pool of single-use ephemeral key pairs, per set of domain parameters,
+ * which is refilled in the background.
+ *
+ * Domain parameters are typically known before the card interaction starts
+ * (from {@code EF.CardAccess} for PACE, from {@code DG14} for Chip Authentication).
+ * Registering them with {@link #register(String, AlgorithmParameterSpec)} allows
+ * the protocols to take a precomputed key pair instead of generating one while the
+ * card is waiting.
+ *
+ * Key pairs are handed out at most once. Key pairs for parameter sets that were
+ * not registered (such as the mapped ephemeral parameters in PACE step 3) are
+ * generated on the calling thread.
+ *
+ * @author The JMRTD team (info@jmrtd.org)
+ *
+ * @version $Revision: $
+ *
+ * @since 0.8.4
+ */
+public class EphemeralKeyPairPool {
+
+  private static final Logger LOGGER = Logger.getLogger("org.jmrtd");
+
+  private static final Provider BC_PROVIDER = Util.getBouncyCastleProvider();
+
+  /** The default number of key pairs kept ready per parameter set. */
+  public static final int DEFAULT_CAPACITY = 8;
+
+  private final int capacity;
+
+  private final ExecutorService refillExecutor;
+
+  private final ConcurrentHashMap<DomainParameterKey, Slot> slots;
+
+  /**
+   * Creates a pool with the default capacity, refilled by a single daemon thread.
+   */
+  public EphemeralKeyPairPool() {
+    this(DEFAULT_CAPACITY);
+  }
+
+  /**
+   * Creates a pool, refilled by a single daemon thread.
+   *
+   * @param capacity the number of key pairs to keep ready per parameter set
+   */
+  public EphemeralKeyPairPool(int capacity) {
+    this(capacity, Executors.newSingleThreadExecutor(new ThreadFactory() {
+      @Override
+      public Thread newThread(Runnable runnable) {
+        Thread thread = new Thread(runnable, "jmrtd-ephemeral-key-pair-pool");
+        thread.setDaemon(true);
+        thread.setPriority(Thread.MIN_PRIORITY);
+        return thread;
+      }
+    }));
+  }
+
+  /**
+   * Creates a pool.
+   *
+   * @param capacity the number of key pairs to keep ready per parameter set
+   * @param refillExecutor the executor used for generating key pairs in the background
+   */
+  public EphemeralKeyPairPool(int capacity, ExecutorService refillExecutor) {
+    if (capacity <= 0) {
+      throw new IllegalArgumentException("Capacity should be positive, found " + capacity);
+    }
+    if (refillExecutor == null) {
+      throw new IllegalArgumentException("Executor cannot be null");
+    }
+    this.capacity = capacity;
+    this.refillExecutor = refillExecutor;
+    this.slots = new ConcurrentHashMap<DomainParameterKey, Slot>();
+  }
+
+  /**
+   * Registers a set of domain parameters and schedules the generation of key pairs for it.
+   * Registering the same parameters more than once has no further effect.
+   *
+   * @param agreementAlg the agreement algorithm, either {@code "DH"} or {@code "ECDH"}
+   * @param params the domain parameters
+   */
+  public void register(String agreementAlg, AlgorithmParameterSpec params) {
+    DomainParameterKey key = new DomainParameterKey(params);
+    Slot slot = slots.get(key);
+    if (slot == null) {
+      Slot newSlot = new Slot(agreementAlg, params);
+      slot = slots.putIfAbsent(key, newSlot);
+      if (slot == null) {
+        slot = newSlot;
+      }
+    }
+    scheduleRefill(slot);
+  }
+
+  /**
+   * Takes a fresh key pair for the given domain parameters.
+   * If no precomputed key pair is available, one is generated on the calling thread.
+   * The caller is the sole owner of the returned key pair.
+   *
+   * @param agreementAlg the agreement algorithm, either {@code "DH"} or {@code "ECDH"}
+   * @param params the domain parameters
+   *
+   * @return a key pair that was never handed out before
+   *
+   * @throws GeneralSecurityException if key pair generation fails
+   */
+  public KeyPair take(String agreementAlg, AlgorithmParameterSpec params) throws GeneralSecurityException {
+    Slot slot = slots.get(new DomainParameterKey(params));
+    if (slot == null) {
+      return generateKeyPair(agreementAlg, params);
+    }
+
+    KeyPair keyPair = slot.keyPairs.poll();
+    scheduleRefill(slot);
+    if (keyPair == null) {
+      LOGGER.fine("Ephemeral key pair pool exhausted for " + agreementAlg + ", generating key pair inline");
+      return slot.generateKeyPair();
+    }
+
+    return keyPair;
+  }
+
+  /**
+   * Returns the number of key pairs that are currently ready for the given domain parameters.
+   *
+   * @param agreementAlg the agreement algorithm, either {@code "DH"} or {@code "ECDH"}
+   * @param params the domain parameters
+   *
+   * @return the number of available key pairs
+   */
+  public int getAvailableCount(String agreementAlg, AlgorithmParameterSpec params) {
+    Slot slot = slots.get(new DomainParameterKey(params));
+    return slot == null ? 0 : slot.keyPairs.size();
+  }
+
+  /**
+   * Discards all key pairs that have not been handed out and forgets all registered parameters.
+   */
+  public void clear() {
+    for (Slot slot: slots.values()) {
+      slot.discard();
+    }
+    slots.clear();
+  }
+
+  /**
+   * Discards all pooled key pairs and stops background generation.
+   */
+  public void shutdown() {
+    refillExecutor.shutdownNow();
+    clear();
+  }
+
+  private void scheduleRefill(final Slot slot) {
+    if (slot.keyPairs.size() >= capacity || !slot.isRefillScheduled.compareAndSet(false, true)) {
+      return;
+    }
+
+    try {
+      refillExecutor.execute(new Runnable() {
+        @Override
+        public void run() {
+          boolean isFilled = false;
+          try {
+            while (slot.keyPairs.size() < capacity && !Thread.currentThread().isInterrupted()) {
+              slot.keyPairs.offer(slot.generateKeyPair());
+            }
+            isFilled = !Thread.currentThread().isInterrupted();
+          } catch (GeneralSecurityException gse) {
+            LOGGER.log(Level.WARNING, "Could not generate ephemeral key pair", gse);
+          } finally {
+            slot.isRefillScheduled.set(false);
+          }
+
+          /* A take between the last size check and clearing the flag did not schedule a refill. */
+          if (isFilled) {
+            scheduleRefill(slot);
+          }
+        }
+      });
+    } catch (RejectedExecutionException ree) {
+      slot.isRefillScheduled.set(false);
+      LOGGER.log(Level.FINE, "Ephemeral key pair refill rejected", ree);
+    }
+  }
+
+  private static KeyPair generateKeyPair(String agreementAlg, AlgorithmParameterSpec params) throws GeneralSecurityException {
+    KeyPairGenerator keyPairGenerator = KeyPairGenerator.getInstance(agreementAlg, BC_PROVIDER);
+    keyPairGenerator.initialize(params);
+    return keyPairGenerator.generateKeyPair();
+  }
+
+  /**
+   * Destroys the private key of a key pair, if the provider supports it.
+   *
+   * @param keyPair the key pair
+   */
+  private static void destroy(KeyPair keyPair) {
+    PrivateKey privateKey = keyPair.getPrivate();
+    if (!(privateKey instanceof Destroyable) || ((Destroyable)privateKey).isDestroyed()) {
+      return;
+    }
+
+    try {
+      ((Destroyable)privateKey).destroy();
+    } catch (DestroyFailedException dfe) {
+      /* NOTE: Most providers do not support this, the reference is dropped anyway. */
+      LOGGER.log(Level.FINEST, "Could not destroy private key", dfe);
+    }
+  }
+
+  /**
+   * The key pairs for a single set of domain parameters.
+   */
+  private static class Slot {
+
+    private final String agreementAlg;
+
+    private final AlgorithmParameterSpec params;
+
+    private final BlockingQueue<KeyPair> keyPairs;
+
+    private final AtomicBoolean isRefillScheduled;
+
+    public Slot(String agreementAlg, AlgorithmParameterSpec params) {
+      this.agreementAlg = agreementAlg;
+      this.params = params;
+      this.keyPairs = new LinkedBlockingQueue<KeyPair>();
+      this.isRefillScheduled = new AtomicBoolean(false);
+    }
+
+    public KeyPair generateKeyPair() throws GeneralSecurityException {
+      return EphemeralKeyPairPool.generateKeyPair(agreementAlg, params);
+    }
+
+    public void discard() {
+      KeyPair keyPair = keyPairs.poll();
+      while (keyPair != null) {
+        destroy(keyPair);
+        keyPair = keyPairs.poll();
+      }
+    }
+  }
+}
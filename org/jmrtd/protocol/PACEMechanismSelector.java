@@ -0,0 +1,352 @@
+/*
+ * JMRTD - A Java API for accessing machine readable travel documents.
+ *
+ * Copyright (C) 2006 - 2026  The JMRTD team
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA
+ *
+ * $Id: $
+ */
+
+package org.jmrtd.protocol;
+
+import java.math.BigInteger;
+import java.security.spec.AlgorithmParameterSpec;
+import java.security.spec.ECParameterSpec;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.BiFunction;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.crypto.spec.DHParameterSpec;
+
+import org.jmrtd.AbstractMRTDCardService;
+import org.jmrtd.AccessKeySpec;
+import org.jmrtd.lds.CardAccessFile;
+import org.jmrtd.lds.PACEDomainParameterInfo;
+import org.jmrtd.lds.PACEInfo;
+import org.jmrtd.lds.PACEInfo.DHCParameterSpec;
+import org.jmrtd.lds.PACEInfo.MappingType;
+import org.jmrtd.lds.SecurityInfo;
+
+import net.sf.scuba.smartcards.CardServiceException;
+
+/**
+ * Selects the PACE mechanism to use from the ones offered by the chip in {@code EF.CardAccess},
+ * based on the (terminal side) cost of each mechanism.
+ *
+ * Costs are modelled from the mapping type, the size of the group, and the cipher.
+ * Once a mechanism has been executed by this selector, its measured average duration
+ * is used instead. Modelled costs of mechanisms that were not measured yet are converted
+ * to durations at the rate observed for the measured mechanisms.
+ * If a mechanism fails, the next cheapest mechanism is tried.
+ *
+ * @author The JMRTD team (info@jmrtd.org)
+ *
+ * @version $Revision: $
+ *
+ * @since 0.8.4
+ */
+public class PACEMechanismSelector {
+
+  private static final Logger LOGGER = Logger.getLogger("org.jmrtd.protocol");
+
+  /** Weight of a new measurement in the average duration of a mechanism. */
+  private static final double MEASUREMENT_WEIGHT = 0.2;
+
+  private double chipAuthenticationCost;
+
+  private ConcurrentHashMap<String, Double> measuredDurations;
+
+  /**
+   * Creates a selector which models the cost of separate Chip Authentication,
+   * that is avoided by PACE-CAM, as 3 EC point multiplications on a 256-bit curve.
+   */
+  public PACEMechanismSelector() {
+    this(3.0);
+  }
+
+  /**
+   * Creates a selector.
+   *
+   * @param chipAuthenticationCost the modelled cost of the separate Chip Authentication that
+   *        is no longer needed when PACE-CAM is used, in units of EC point multiplications on
+   *        a 256-bit curve, or {@code 0} if Chip Authentication is not performed anyway
+   */
+  public PACEMechanismSelector(double chipAuthenticationCost) {
+    this.chipAuthenticationCost = chipAuthenticationCost;
+    this.measuredDurations = new ConcurrentHashMap<String, Double>();
+  }
+
+  /**
+   * Ranks the PACE mechanisms in the given security infos, cheapest first.
+   * Mechanisms that are not acceptable, or for which no domain parameters can be determined,
+   * are left out. Mechanisms of equal cost keep the order in which the chip lists them.
+   *
+   * @param securityInfos the security infos, typically from {@code EF.CardAccess}
+   *
+   * @return a list of PACE infos, cheapest first
+   */
+  public List<PACEInfo> rank(Collection<SecurityInfo> securityInfos) {
+    final List<PACEInfo> paceInfos = new ArrayList<PACEInfo>();
+    final List<Double> modelledCosts = new ArrayList<Double>();
+    for (SecurityInfo securityInfo: securityInfos) {
+      if (!(securityInfo instanceof PACEInfo)) {
+        continue;
+      }
+
+      PACEInfo paceInfo = (PACEInfo)securityInfo;
+      AlgorithmParameterSpec params = getParameters(paceInfo, securityInfos);
+      if (params == null || !isAcceptable(paceInfo, params)) {
+        LOGGER.fine("Skipping PACE mechanism " + paceInfo.getProtocolOIDString());
+        continue;
+      }
+
+      paceInfos.add(paceInfo);
+      modelledCosts.add(getModelledCost(paceInfo.getObjectIdentifier(), params));
+    }
+
+    /*
+     * Measured mechanisms are ranked by their average duration, the others by their modelled cost,
+     * converted to milliseconds at the rate observed for the measured mechanisms.
+     */
+    int count = paceInfos.size();
+    Double[] measuredCosts = new Double[count];
+    double measuredSum = 0.0;
+    double modelledSum = 0.0;
+    for (int i = 0; i < count; i++) {
+      measuredCosts[i] = measuredDurations.get(toMechanismKey(paceInfos.get(i)));
+      if (measuredCosts[i] != null && modelledCosts.get(i) > 0.0) {
+        measuredSum += measuredCosts[i];
+        modelledSum += modelledCosts.get(i);
+      }
+    }
+    boolean isCalibrated = measuredSum > 0.0 && modelledSum > 0.0;
+    double millisPerUnit = isCalibrated ? measuredSum / modelledSum : 1.0;
+    final List<Double> costs = new ArrayList<Double>(count);
+    for (int i = 0; i < count; i++) {
+      costs.add(isCalibrated && measuredCosts[i] != null ? measuredCosts[i] : millisPerUnit * modelledCosts.get(i));
+    }
+
+    List<Integer> indices = new ArrayList<Integer>(paceInfos.size());
+    for (int i = 0; i < paceInfos.size(); i++) {
+      indices.add(i);
+    }
+    /* NOTE: Collections.sort is stable. */
+    Collections.sort(indices, new Comparator<Integer>() {
+      @Override
+      public int compare(Integer i, Integer j) {
+        return Double.compare(costs.get(i), costs.get(j));
+      }
+    });
+
+    List<PACEInfo> result = new ArrayList<PACEInfo>(indices.size());
+    for (int index: indices) {
+      result.add(paceInfos.get(index));
+    }
+    return result;
+  }
+
+  /**
+   * Executes PACE with the cheapest acceptable mechanism offered in {@code EF.CardAccess},
+   * falling back to the next cheapest mechanism if it fails.
+   *
+   * @param service the card service
+   * @param accessKey the MRZ or CAN based access key
+   * @param cardAccessFile the contents of {@code EF.CardAccess}
+   *
+   * @return the PACE result of the first mechanism that succeeded
+   *
+   * @throws CardServiceException if no mechanism is offered, or if all mechanisms failed
+   */
+  public PACEResult doPACE(AbstractMRTDCardService service, AccessKeySpec accessKey, CardAccessFile cardAccessFile) throws CardServiceException {
+    return doPACE(service, accessKey, cardAccessFile.getSecurityInfos());
+  }
+
+  /**
+   * Executes PACE with the cheapest acceptable mechanism offered in the given security infos,
+   * falling back to the next cheapest mechanism if it fails.
+   *
+   * @param service the card service
+   * @param accessKey the MRZ or CAN based access key
+   * @param securityInfos the security infos, typically from {@code EF.CardAccess}
+   *
+   * @return the PACE result of the first mechanism that succeeded
+   *
+   * @throws CardServiceException if no mechanism is offered, or if all mechanisms failed,
+   *         in which case the exception of the last attempt is thrown
+   */
+  public PACEResult doPACE(AbstractMRTDCardService service, AccessKeySpec accessKey, Collection<SecurityInfo> securityInfos) throws CardServiceException {
+    List<PACEInfo> paceInfos = rank(securityInfos);
+    if (paceInfos.isEmpty()) {
+      throw new CardServiceException("No acceptable PACE mechanism offered");
+    }
+
+    CardServiceException lastException = null;
+    for (PACEInfo paceInfo: paceInfos) {
+      String oid = paceInfo.getObjectIdentifier();
+      BigInteger parameterId = paceInfo.getParameterId();
+      AlgorithmParameterSpec params = getParameters(paceInfo, securityInfos);
+      try {
+        long start = System.nanoTime();
+        PACEResult result = service.doPACE(accessKey, oid, params, parameterId);
+        recordDuration(paceInfo, System.nanoTime() - start);
+        return result;
+      } catch (CardServiceException cse) {
+        LOGGER.log(Level.WARNING, "PACE with " + paceInfo.getProtocolOIDString() + " failed, trying next mechanism", cse);
+        lastException = cse;
+      }
+    }
+
+    throw lastException;
+  }
+
+  /**
+   * Records the duration of a PACE execution with the given mechanism.
+   *
+   * @param paceInfo the mechanism
+   * @param durationInNanos the duration
+   */
+  public void recordDuration(PACEInfo paceInfo, long durationInNanos) {
+    measuredDurations.merge(toMechanismKey(paceInfo), durationInNanos / 1000000.0, new BiFunction<Double, Double, Double>() {
+      @Override
+      public Double apply(Double average, Double duration) {
+        return (1.0 - MEASUREMENT_WEIGHT) * average + MEASUREMENT_WEIGHT * duration;
+      }
+    });
+  }
+
+  /**
+   * Returns the average measured duration of PACE with the given mechanism.
+   *
+   * @param paceInfo the mechanism
+   *
+   * @return the duration in milliseconds, or {@code null} if not measured yet
+   */
+  public Double getMeasuredDuration(PACEInfo paceInfo) {
+    return measuredDurations.get(toMechanismKey(paceInfo));
+  }
+
+  /**
+   * Whether the given mechanism may be used. The default implementation accepts
+   * all mechanisms supported by this library. Subclasses can restrict this,
+   * for instance to rule out 3DES or small groups.
+   *
+   * @param paceInfo the mechanism
+   * @param params the domain parameters
+   *
+   * @return a boolean
+   */
+  protected boolean isAcceptable(PACEInfo paceInfo, AlgorithmParameterSpec params) {
+    return true;
+  }
+
+  /**
+   * Models the terminal side cost of PACE with the given mechanism, in units
+   * of EC point multiplications on a 256-bit curve.
+   *
+   * @param oid the PACE object identifier
+   * @param params the domain parameters
+   *
+   * @return the modelled cost
+   */
+  protected double getModelledCost(String oid, AlgorithmParameterSpec params) {
+    MappingType mappingType = PACEInfo.toMappingType(oid);
+    String cipherAlg = PACEInfo.toCipherAlgorithm(oid);
+
+    double operationCost = getGroupOperationCost(params);
+
+    /*
+     * GM: mapping key pair, mapping agreement, mapped generator, ephemeral key pair, key agreement.
+     * IM: mapped generator (pseudo random function and point encoding), ephemeral key pair, key agreement.
+     */
+    double cost = MappingType.IM.equals(mappingType) ? 3.0 * operationCost : 5.0 * operationCost;
+    if (MappingType.CAM.equals(mappingType)) {
+      /* NOTE: Checking the chip authentication data costs about one more operation, but saves Chip Authentication. */
+      cost += operationCost - chipAuthenticationCost;
+    }
+    if ("DESede".equals(cipherAlg)) {
+      cost += 0.1;
+    }
+
+    return cost;
+  }
+
+  /**
+   * Estimates the cost of a single scalar multiplication or modular exponentiation
+   * in the group, relative to an EC point multiplication on a 256-bit curve.
+   *
+   * @param params the domain parameters
+   *
+   * @return the relative cost
+   */
+  private static double getGroupOperationCost(AlgorithmParameterSpec params) {
+    if (params instanceof ECParameterSpec) {
+      double fieldSize = ((ECParameterSpec)params).getCurve().getField().getFieldSize();
+      return Math.pow(fieldSize / 256.0, 2.0);
+    } else if (params instanceof DHParameterSpec) {
+      DHParameterSpec dhParams = (DHParameterSpec)params;
+      double modulusSize = dhParams.getP().bitLength();
+      double exponentSize = params instanceof DHCParameterSpec ? ((DHCParameterSpec)params).getQ().bitLength() : modulusSize / 2.0;
+
+      /* NOTE: A 2048-bit modular exponentiation with a 224-bit exponent is about 6 times as expensive. */
+      return 6.0 * Math.pow(modulusSize / 2048.0, 2.0) * (exponentSize / 224.0);
+    }
+
+    throw new IllegalArgumentException("Unsupported parameters " + params.getClass().getCanonicalName());
+  }
+
+  /**
+   * Determines the domain parameters for a PACE info, either standardized, or
+   * from a matching PACE domain parameter info.
+   *
+   * @param paceInfo the PACE info
+   * @param securityInfos the other security infos
+   *
+   * @return the domain parameters, or {@code null} if these cannot be determined
+   */
+  private static AlgorithmParameterSpec getParameters(PACEInfo paceInfo, Collection<SecurityInfo> securityInfos) {
+    BigInteger parameterId = paceInfo.getParameterId();
+    try {
+      PACEInfo.toMappingType(paceInfo.getObjectIdentifier());
+      if (parameterId != null && parameterId.compareTo(BigInteger.valueOf(31)) <= 0) {
+        return PACEInfo.toParameterSpec(parameterId);
+      }
+
+      for (SecurityInfo securityInfo: securityInfos) {
+        if (!(securityInfo instanceof PACEDomainParameterInfo)) {
+          continue;
+        }
+        PACEDomainParameterInfo domainParameterInfo = (PACEDomainParameterInfo)securityInfo;
+        if (parameterId == null || parameterId.equals(domainParameterInfo.getParameterId())) {
+          return domainParameterInfo.getParameters();
+        }
+      }
+    } catch (RuntimeException re) {
+      LOGGER.log(Level.FINE, "Could not determine domain parameters for " + paceInfo.getProtocolOIDString(), re);
+    }
+
+    return null;
+  }
+
+  private static String toMechanismKey(PACEInfo paceInfo) {
+    return paceInfo.getObjectIdentifier() + "/" + paceInfo.getParameterId();
+  }
+}
@@ -53,7 +53,6 @@ import java.util.logging.Level;
 import java.util.logging.Logger;
 
 import javax.crypto.Cipher;
-import javax.crypto.KeyAgreement;
 import javax.crypto.Mac;
 import javax.crypto.SecretKey;
 import javax.crypto.interfaces.DHPrivateKey;
@@ -72,6 +71,8 @@ import org.jmrtd.PACEKeySpec;
 import org.jmrtd.PACESecretKeySpec;
 import org.jmrtd.PassportService;
 import org.jmrtd.Util;
+import org.jmrtd.crypto.CryptoBackend;
+import org.jmrtd.crypto.JCACryptoBackend;
 import org.jmrtd.lds.PACEInfo;
 import org.jmrtd.lds.PACEInfo.DHCParameterSpec;
 import org.jmrtd.lds.PACEInfo.MappingType;
@@ -147,6 +148,10 @@ public class PACEProtocol {
 
   private Random random;
 
+  private EphemeralKeyPairPool ephemeralKeyPairPool;
+
+  private CryptoBackend cryptoBackend;
+
   /**
    * Constructs a PACE protocol instance.
    * The max tranceive lengths used during PACE protocol execution will be set to 256.
@@ -180,12 +185,61 @@ public class PACEProtocol {
   public PACEProtocol(APDULevelPACECapable service, SecureMessagingWrapper wrapper,
       int maxTranceiveLengthForProtocol,
       int maxTranceiveLengthForSecureMessaging, boolean shouldCheckMAC) {
+    this(service, wrapper, maxTranceiveLengthForProtocol, maxTranceiveLengthForSecureMessaging, shouldCheckMAC, null);
+  }
+
+  /**
+   * Constructs a PACE protocol instance which takes its PCD side key pairs from a pool.
+   *
+   * @param service the service for sending APDUs
+   * @param wrapper the already established secure messaging channel (or {@code null})
+   * @param maxTranceiveLengthForProtocol the maximal tranceive length PACE during protocol execution, {@code 256} or {@code 65536}
+   * @param maxTranceiveLengthForSecureMessaging the maximal tranceive length (on responses to {@code READ BINARY})
+   *        to use in the resulting secure messaging channel
+   * @param shouldCheckMAC whether the resulting secure messaging channel should apply strict MAC
+   *        checking on response APDUs
+   * @param ephemeralKeyPairPool the pool of precomputed key pairs, or {@code null} to generate key pairs on demand
+   *
+   * @since 0.8.4
+   */
+  public PACEProtocol(APDULevelPACECapable service, SecureMessagingWrapper wrapper,
+      int maxTranceiveLengthForProtocol,
+      int maxTranceiveLengthForSecureMessaging, boolean shouldCheckMAC,
+      EphemeralKeyPairPool ephemeralKeyPairPool) {
+    this(service, wrapper, maxTranceiveLengthForProtocol, maxTranceiveLengthForSecureMessaging, shouldCheckMAC, ephemeralKeyPairPool, new JCACryptoBackend());
+  }
+
+  /**
+   * Constructs a PACE protocol instance which uses the given crypto backend for key agreement,
+   * mapping, authentication tokens, and the resulting secure messaging channel.
+   *
+   * @param service the service for sending APDUs
+   * @param wrapper the already established secure messaging channel (or {@code null})
+   * @param maxTranceiveLengthForProtocol the maximal tranceive length PACE during protocol execution, {@code 256} or {@code 65536}
+   * @param maxTranceiveLengthForSecureMessaging the maximal tranceive length (on responses to {@code READ BINARY})
+   *        to use in the resulting secure messaging channel
+   * @param shouldCheckMAC whether the resulting secure messaging channel should apply strict MAC
+   *        checking on response APDUs
+   * @param ephemeralKeyPairPool the pool of precomputed key pairs, or {@code null} to generate key pairs on demand
+   * @param cryptoBackend the crypto backend
+   *
+   * @since 0.8.4
+   */
+  public PACEProtocol(APDULevelPACECapable service, SecureMessagingWrapper wrapper,
+      int maxTranceiveLengthForProtocol,
+      int maxTranceiveLengthForSecureMessaging, boolean shouldCheckMAC,
+      EphemeralKeyPairPool ephemeralKeyPairPool, CryptoBackend cryptoBackend) {
+    if (cryptoBackend == null) {
+      throw new IllegalArgumentException("Crypto backend cannot be null");
+    }
     this.service = service;
     this.wrapper = wrapper;
     this.maxTranceiveLengthForProtocol = maxTranceiveLengthForProtocol;
     this.maxTranceiveLengthForSecureMessaging = maxTranceiveLengthForSecureMessaging;
     this.shouldCheckMAC = shouldCheckMAC;
     this.random = new SecureRandom();
+    this.ephemeralKeyPairPool = ephemeralKeyPairPool;
+    this.cryptoBackend = cryptoBackend;
   }
 
   /**
@@ -202,7 +256,7 @@ public class PACEProtocol {
    */
   public PACEResult doPACE(AccessKeySpec accessKey, String oid, AlgorithmParameterSpec staticParameters, BigInteger parameterId) throws CardServiceException {
     try {
-      return doPACE(accessKey, deriveStaticPACEKey(accessKey, oid), oid, staticParameters, parameterId);
+      return doPACE(accessKey, deriveStaticPACEKey(accessKey, oid, cryptoBackend), oid, staticParameters, parameterId);
     } catch (GeneralSecurityException gse) {
       throw new CardServiceProtocolException("PCD side error in key derivation step", 0, gse);
     }
@@ -307,8 +361,8 @@ public class PACEProtocol {
     SecretKey encKey = null;
     SecretKey macKey = null;
     try {
-      encKey = Util.deriveKey(sharedSecretBytes, cipherAlg, keyLength, Util.ENC_MODE);
-      macKey = Util.deriveKey(sharedSecretBytes, cipherAlg, keyLength, Util.MAC_MODE);
+      encKey = Util.deriveKey(sharedSecretBytes, cipherAlg, keyLength, null, Util.ENC_MODE, PassportService.NO_PACE_KEY_REFERENCE, cryptoBackend);
+      macKey = Util.deriveKey(sharedSecretBytes, cipherAlg, keyLength, null, Util.MAC_MODE, PassportService.NO_PACE_KEY_REFERENCE, cryptoBackend);
     } catch (GeneralSecurityException gse) {
       throw new CardServiceProtocolException("Security exception during secure messaging key derivation", 3, gse);
     }
@@ -334,9 +388,9 @@ public class PACEProtocol {
     try {
       long ssc = wrapper == null ? 0L : wrapper.getSendSequenceCounter();
       if (cipherAlg.startsWith("DESede")) {
-        wrapper = new DESedeSecureMessagingWrapper(encKey, macKey, maxTranceiveLengthForSecureMessaging, shouldCheckMAC, 0L);
+        wrapper = new DESedeSecureMessagingWrapper(encKey, macKey, maxTranceiveLengthForSecureMessaging, shouldCheckMAC, 0L, cryptoBackend);
       } else if (cipherAlg.startsWith("AES")) {
-        wrapper = new AESSecureMessagingWrapper(encKey, macKey, maxTranceiveLengthForSecureMessaging, shouldCheckMAC, ssc);
+        wrapper = new AESSecureMessagingWrapper(encKey, macKey, maxTranceiveLengthForSecureMessaging, shouldCheckMAC, ssc, cryptoBackend);
       } else {
         LOGGER.warning("Unsupported cipher algorithm " + cipherAlg);
       }
@@ -352,9 +406,9 @@ public class PACEProtocol {
 
       /* Decrypt A_PICC to recover CA_PICC. */
       try {
-        Cipher decryptCipher = Cipher.getInstance("AES/CBC/NoPadding");
-        decryptCipher.init(Cipher.DECRYPT_MODE, encKey, new IvParameterSpec(IV_FOR_PACE_CAM_DECRYPTION));
-        byte[] paddedChipAuthenticationData = decryptCipher.doFinal(encryptedChipAuthenticationData);
+        CryptoBackend.BlockCipher decryptCipher = cryptoBackend.getBlockCipher("AES/CBC/NoPadding");
+        decryptCipher.init(false, encKey, IV_FOR_PACE_CAM_DECRYPTION);
+        byte[] paddedChipAuthenticationData = decryptCipher.doFinal(encryptedChipAuthenticationData, 0, encryptedChipAuthenticationData.length);
         chipAuthenticationData = Util.unpad(paddedChipAuthenticationData);
       } catch (GeneralSecurityException gse) {
         LOGGER.log(Level.WARNING, "Could not decrypt Chip Authentication data", gse);
@@ -463,9 +517,8 @@ public class PACEProtocol {
    */
   public PACEGMMappingResult doPACEStep2GM(String agreementAlg, AlgorithmParameterSpec params, byte[] piccNonce) throws CardServiceProtocolException {
     try {
-      KeyPairGenerator keyPairGenerator = KeyPairGenerator.getInstance(agreementAlg, BC_PROVIDER);
-      keyPairGenerator.initialize(params);
-      KeyPair pcdMappingKeyPair = keyPairGenerator.generateKeyPair();
+      /* NOTE: The static parameters are known in advance, so the mapping key pair can come from the pool. */
+      KeyPair pcdMappingKeyPair = generateKeyPair(agreementAlg, params);
       PublicKey pcdMappingPublicKey = pcdMappingKeyPair.getPublic();
       PrivateKey pcdMappingPrivateKey = pcdMappingKeyPair.getPrivate();
 
@@ -482,13 +535,10 @@ public class PACEProtocol {
         PACEGMWithECDHAgreement mappingAgreement = new PACEGMWithECDHAgreement();
         mappingAgreement.init(pcdMappingPrivateKey);
         ECPoint mappingSharedSecretPoint = mappingAgreement.doPhase(piccMappingPublicKey);
-        AlgorithmParameterSpec ephemeralParameters = mapNonceGMWithECDH(piccNonce, mappingSharedSecretPoint, (ECParameterSpec)params);
+        AlgorithmParameterSpec ephemeralParameters = mapNonceGMWithECDH(piccNonce, mappingSharedSecretPoint, (ECParameterSpec)params, cryptoBackend);
         return new PACEGMWithECDHMappingResult(params, piccNonce, piccMappingPublicKey, pcdMappingKeyPair, mappingSharedSecretPoint, ephemeralParameters);
       } else if ("DH".equals(agreementAlg)) {
-        KeyAgreement mappingAgreement = KeyAgreement.getInstance(agreementAlg);
-        mappingAgreement.init(pcdMappingPrivateKey);
-        mappingAgreement.doPhase(piccMappingPublicKey, true);
-        byte[] mappingSharedSecretBytes = mappingAgreement.generateSecret();
+        byte[] mappingSharedSecretBytes = cryptoBackend.generateSecret(agreementAlg, pcdMappingPrivateKey, piccMappingPublicKey);
         AlgorithmParameterSpec ephemeralParameters = mapNonceGMWithDH(piccNonce, Util.os2i(mappingSharedSecretBytes), (DHParameterSpec)params);
         return new PACEGMWithDHMappingResult(params, piccNonce, piccMappingPublicKey, pcdMappingKeyPair, mappingSharedSecretBytes, ephemeralParameters);
       } else {
@@ -575,9 +625,7 @@ public class PACEProtocol {
    */
   public KeyPair doPACEStep3GenerateKeyPair(String agreementAlg, AlgorithmParameterSpec ephemeralParams) throws CardServiceProtocolException {
     try {
-      KeyPairGenerator keyPairGenerator = KeyPairGenerator.getInstance(agreementAlg, BC_PROVIDER);
-      keyPairGenerator.initialize(ephemeralParams);
-      return keyPairGenerator.generateKeyPair();
+      return generateKeyPair(agreementAlg, ephemeralParams);
     } catch (GeneralSecurityException gse) {
       throw new CardServiceProtocolException("PCD side error during generation of PCD key pair", 3, gse);
     }
@@ -633,10 +681,7 @@ public class PACEProtocol {
    */
   public byte[] doPACEStep3KeyAgreement(String agreementAlg, PrivateKey pcdPrivateKey, PublicKey piccPublicKey) throws CardServiceProtocolException {
     try {
-      KeyAgreement keyAgreement = KeyAgreement.getInstance(agreementAlg, BC_PROVIDER);
-      keyAgreement.init(pcdPrivateKey);
-      keyAgreement.doPhase(updateParameterSpec(piccPublicKey, pcdPrivateKey), true);
-      return keyAgreement.generateSecret();
+      return cryptoBackend.generateSecret(agreementAlg, pcdPrivateKey, updateParameterSpec(piccPublicKey, pcdPrivateKey));
     } catch (Exception e) {
       throw new CardServiceProtocolException("PCD side error during key agreement", 3, e);
     }
@@ -666,7 +711,7 @@ public class PACEProtocol {
    */
   public byte[] doPACEStep4(String oid, MappingType mappingType, KeyPair pcdKeyPair, PublicKey piccPublicKey, SecretKey macKey) throws CardServiceException {
     try {
-      byte[] pcdToken = generateAuthenticationToken(oid, macKey, piccPublicKey);
+      byte[] pcdToken = generateAuthenticationToken(oid, macKey, piccPublicKey, cryptoBackend);
       byte[] step4Data = TLVUtil.wrapDO(0x85, pcdToken);
       byte[] step4Response = service.sendGeneralAuthenticate(wrapper, step4Data, 256, true);
       TLVInputStream step4ResponseInputStream = new TLVInputStream(new ByteArrayInputStream(step4Response));
@@ -678,7 +723,7 @@ public class PACEProtocol {
         /* int piccTokenLength = */ step4ResponseInputStream.readLength();
         byte[] piccToken = step4ResponseInputStream.readValue();
 
-        byte[] expectedPICCToken = generateAuthenticationToken(oid, macKey, pcdKeyPair.getPublic());
+        byte[] expectedPICCToken = generateAuthenticationToken(oid, macKey, pcdKeyPair.getPublic(), cryptoBackend);
         if (!Arrays.equals(expectedPICCToken, piccToken)) {
           throw new GeneralSecurityException("PICC authentication token mismatch"
               + ", expectedPICCToken = " + Hex.bytesToHexString(expectedPICCToken)
@@ -720,6 +765,23 @@ public class PACEProtocol {
    * @throws GeneralSecurityException on error
    */
   public static SecretKey deriveStaticPACEKey(AccessKeySpec accessKey, String oid) throws GeneralSecurityException {
+    return deriveStaticPACEKey(accessKey, oid, new JCACryptoBackend());
+  }
+
+  /**
+   * Derives the static key K_pi, using the given crypto backend to compute the hash.
+   *
+   * @param accessKey the key material from the MRZ
+   * @param oid the PACE object identifier is needed to determine the cipher algorithm and the key length
+   * @param cryptoBackend the crypto backend
+   *
+   * @return the derived key
+   *
+   * @throws GeneralSecurityException on error
+   *
+   * @since 0.8.4
+   */
+  public static SecretKey deriveStaticPACEKey(AccessKeySpec accessKey, String oid, CryptoBackend cryptoBackend) throws GeneralSecurityException {
     String cipherAlg  = PACEInfo.toCipherAlgorithm(oid); /* Either DESede or AES. */
     int keyLength = PACEInfo.toKeyLength(oid); /* Of the enc cipher. Either 128, 192, or 256. */
     byte[] keySeed = computeKeySeedForPACE(accessKey);
@@ -729,7 +791,7 @@ public class PACEProtocol {
       paceKeyReference = ((PACEKeySpec)accessKey).getKeyReference();
     }
 
-    return Util.deriveKey(keySeed, cipherAlg, keyLength, null, Util.PACE_MODE, paceKeyReference);
+    return Util.deriveKey(keySeed, cipherAlg, keyLength, null, Util.PACE_MODE, paceKeyReference, cryptoBackend);
   }
 
   /**
@@ -790,6 +852,24 @@ public class PACEProtocol {
    * @return the new parameters
    */
   public static ECParameterSpec mapNonceGMWithECDH(byte[] nonceS, ECPoint sharedSecretPointH, ECParameterSpec staticParameters) {
+    return mapNonceGMWithECDH(nonceS, sharedSecretPointH, staticParameters, new JCACryptoBackend());
+  }
+
+  /**
+   * Maps the nonce  for the ECDH case
+   * using Generic Mapping to get new parameters
+   * (notably a new generator), using the given crypto backend for the point arithmetic.
+   *
+   * @param nonceS the nonce received from the PICC
+   * @param sharedSecretPointH the shared secret
+   * @param staticParameters the static parameters
+   * @param cryptoBackend the crypto backend
+   *
+   * @return the new parameters
+   *
+   * @since 0.8.4
+   */
+  public static ECParameterSpec mapNonceGMWithECDH(byte[] nonceS, ECPoint sharedSecretPointH, ECParameterSpec staticParameters, CryptoBackend cryptoBackend) {
     /*
      * D~ = (p, a, b, G~, n, h) where G~ = [s]G + H
      */
@@ -801,7 +881,7 @@ public class PACEProtocol {
     BigInteger p = field.getP();
     BigInteger order = staticParameters.getOrder();
     int cofactor = staticParameters.getCofactor();
-    ECPoint ephemeralGenerator = Util.add(Util.multiply(Util.os2i(nonceS), generator, staticParameters), sharedSecretPointH, staticParameters);
+    ECPoint ephemeralGenerator = cryptoBackend.multiplyAndAdd(Util.os2i(nonceS), generator, sharedSecretPointH, staticParameters);
     if (!Util.toBouncyCastleECPoint(ephemeralGenerator, staticParameters).isValid()) {
       LOGGER.info("ephemeralGenerator is not a valid point");
     }
@@ -1100,6 +1180,34 @@ public class PACEProtocol {
     return generateAuthenticationToken(oid, mac, publicKey);
   }
 
+  /**
+   * Generates an authentication token, using the given crypto backend for the MAC operation.
+   *
+   * @param oid the object identifier as indicated in MSE Set AT
+   * @param macKey the KS MAC key derived from the key agreement
+   * @param publicKey the received public key
+   * @param cryptoBackend the crypto backend
+   *
+   * @return the authentication code
+   *
+   * @throws GeneralSecurityException on error while performing the MAC operation
+   *
+   * @since 0.8.4
+   */
+  public static byte[] generateAuthenticationToken(String oid, SecretKey macKey, PublicKey publicKey, CryptoBackend cryptoBackend) throws GeneralSecurityException {
+    String cipherAlg = PACEInfo.toCipherAlgorithm(oid);
+    String macAlg = inferMACAlgorithmFromCipherAlgorithm(cipherAlg);
+    CryptoBackend.MAC mac = cryptoBackend.getMAC(macAlg);
+    mac.init(macKey);
+    byte[] encodedPublicKeyDataObject = encodePublicKeyDataObject(oid, publicKey);
+    byte[] maccedPublicKeyDataObject = mac.doFinal(encodedPublicKeyDataObject, 0, encodedPublicKeyDataObject.length);
+
+    /* Output length needs to be 64 bits, copy first 8 bytes. */
+    byte[] authenticationToken = new byte[8];
+    System.arraycopy(maccedPublicKeyDataObject, 0, authenticationToken, 0, authenticationToken.length);
+    return authenticationToken;
+  }
+
   /**
    * Computes a key seed given a card access number (CAN).
    *
@@ -1364,6 +1472,26 @@ public class PACEProtocol {
     return Util.computeKeySeed(documentNumber, dateOfBirth, dateOfExpiry, "SHA-1", false);
   }
 
+  /**
+   * Generates a PCD side key pair, taking it from the pool if one was configured.
+   *
+   * @param agreementAlg the agreement algorithm, either {@code "DH"} or {@code "ECDH"}
+   * @param params the domain parameters
+   *
+   * @return a fresh key pair
+   *
+   * @throws GeneralSecurityException on error
+   */
+  private KeyPair generateKeyPair(String agreementAlg, AlgorithmParameterSpec params) throws GeneralSecurityException {
+    if (ephemeralKeyPairPool != null) {
+      return ephemeralKeyPairPool.take(agreementAlg, params);
+    }
+
+    KeyPairGenerator keyPairGenerator = KeyPairGenerator.getInstance(agreementAlg, BC_PROVIDER);
+    keyPairGenerator.initialize(params);
+    return keyPairGenerator.generateKeyPair();
+  }
+
   /**
    * Compares two keys, taking into account that an exception might
    * be thrown doing so. Returns {@code false} if an exception is thrown.
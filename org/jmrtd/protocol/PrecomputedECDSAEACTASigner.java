@@ -0,0 +1,302 @@
+/*
+ * JMRTD - A Java API for accessing machine readable travel documents.
+ *
+ * Copyright (C) 2006 - 2026  The JMRTD team
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA
+ *
+ * $Id: $
+ */
+
+package org.jmrtd.protocol;
+
+import java.math.BigInteger;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.PrivateKey;
+import java.security.SecureRandom;
+import java.security.interfaces.ECPrivateKey;
+import java.security.spec.ECParameterSpec;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.bouncycastle.crypto.params.ECDomainParameters;
+import org.bouncycastle.math.ec.ECMultiplier;
+import org.bouncycastle.math.ec.ECPoint;
+import org.bouncycastle.math.ec.FixedPointCombMultiplier;
+import org.bouncycastle.util.BigIntegers;
+import org.jmrtd.Util;
+
+/**
+ * A Terminal Authentication signer which splits ECDSA into an offline and an online phase.
+ *
+ * The offline phase, which runs in the background, chooses the per-signature secret {@code k}
+ * and computes {@code r = (k * G).x mod n} and {@code k^-1 mod n}. Since these values only depend
+ * on the domain parameters, they can be computed before the terminal key and the challenge are known.
+ * The online phase, which runs while the ICC is waiting, then only computes
+ * {@code s = k^-1 * (e + d * r) mod n}.
+ *
+ * Every precomputed value is used for at most one signature.
+ * Signature algorithms other than ECDSA are delegated to a {@link DefaultEACTASigner}.
+ *
+ * @author The JMRTD team (info@jmrtd.org)
+ *
+ * @version $Revision: $
+ *
+ * @since 0.8.4
+ */
+public class PrecomputedECDSAEACTASigner implements EACTASigner {
+
+  private static final Logger LOGGER = Logger.getLogger("org.jmrtd.protocol");
+
+  /** The default number of precomputed values kept ready per curve. */
+  public static final int DEFAULT_CAPACITY = 16;
+
+  private final int capacity;
+
+  private final ExecutorService precomputationExecutor;
+
+  private final SecureRandom random;
+
+  private final EACTASigner fallbackSigner;
+
+  private final ConcurrentHashMap<DomainParameterKey, Curve> curves;
+
+  /**
+   * Creates a signer with the default capacity, precomputing on a single daemon thread.
+   */
+  public PrecomputedECDSAEACTASigner() {
+    this(DEFAULT_CAPACITY);
+  }
+
+  /**
+   * Creates a signer, precomputing on a single daemon thread.
+   *
+   * @param capacity the number of precomputed values to keep ready per curve
+   */
+  public PrecomputedECDSAEACTASigner(int capacity) {
+    this(capacity, Executors.newSingleThreadExecutor(new ThreadFactory() {
+      @Override
+      public Thread newThread(Runnable runnable) {
+        Thread thread = new Thread(runnable, "jmrtd-ecdsa-precomputation");
+        thread.setDaemon(true);
+        thread.setPriority(Thread.MIN_PRIORITY);
+        return thread;
+      }
+    }));
+  }
+
+  /**
+   * Creates a signer.
+   *
+   * @param capacity the number of precomputed values to keep ready per curve
+   * @param precomputationExecutor the executor used for the offline phase
+   */
+  public PrecomputedECDSAEACTASigner(int capacity, ExecutorService precomputationExecutor) {
+    if (capacity <= 0) {
+      throw new IllegalArgumentException("Capacity should be positive, found " + capacity);
+    }
+    if (precomputationExecutor == null) {
+      throw new IllegalArgumentException("Executor cannot be null");
+    }
+    this.capacity = capacity;
+    this.precomputationExecutor = precomputationExecutor;
+    this.random = new SecureRandom();
+    this.fallbackSigner = new DefaultEACTASigner();
+    this.curves = new ConcurrentHashMap<DomainParameterKey, Curve>();
+  }
+
+  /**
+   * Starts the offline phase for the curve of the given terminal key,
+   * so that the first Terminal Authentication using that key does not have to wait for it.
+   *
+   * @param terminalKey the terminal's EC private key
+   */
+  public void register(ECPrivateKey terminalKey) {
+    getCurve(terminalKey.getParams());
+  }
+
+  @Override
+  public byte[] sign(String signatureAlgorithm, PrivateKey terminalKey, byte[] dataToBeSigned) throws GeneralSecurityException {
+    if (signatureAlgorithm == null) {
+      throw new IllegalArgumentException("Signature algorithm cannot be null");
+    }
+    if (!signatureAlgorithm.toUpperCase().endsWith("WITHECDSA") || !(terminalKey instanceof ECPrivateKey)) {
+      return fallbackSigner.sign(signatureAlgorithm, terminalKey, dataToBeSigned);
+    }
+
+    ECPrivateKey ecTerminalKey = (ECPrivateKey)terminalKey;
+    Curve curve = getCurve(ecTerminalKey.getParams());
+    BigInteger n = curve.domainParameters.getN();
+
+    MessageDigest digest = Util.getMessageDigest(Util.inferDigestAlgorithmFromSignatureAlgorithm(signatureAlgorithm));
+    BigInteger e = calculateE(n, digest.digest(dataToBeSigned));
+    BigInteger d = ecTerminalKey.getS();
+
+    BigInteger r = null;
+    BigInteger s = null;
+    do {
+      BigInteger[] precomputed = curve.take();
+      BigInteger kInverse = precomputed[0];
+      r = precomputed[1];
+      s = kInverse.multiply(e.add(d.multiply(r))).mod(n);
+    } while (s.signum() == 0);
+
+    int componentSize = DefaultEACTASigner.getRawECDSAComponentSize(terminalKey);
+    byte[] signature = new byte[2 * componentSize];
+    System.arraycopy(Util.i2os(r, componentSize), 0, signature, 0, componentSize);
+    System.arraycopy(Util.i2os(s, componentSize), 0, signature, componentSize, componentSize);
+    return signature;
+  }
+
+  /**
+   * Stops the offline phase and discards all precomputed values.
+   */
+  public void shutdown() {
+    precomputationExecutor.shutdownNow();
+    for (Curve curve: curves.values()) {
+      curve.precomputed.clear();
+    }
+    curves.clear();
+  }
+
+  private Curve getCurve(ECParameterSpec params) {
+    DomainParameterKey key = new DomainParameterKey(params);
+    Curve curve = curves.get(key);
+    if (curve == null) {
+      Curve newCurve = new Curve(Util.toBouncyECDomainParameters(params));
+      curve = curves.putIfAbsent(key, newCurve);
+      if (curve == null) {
+        curve = newCurve;
+      }
+    }
+    schedulePrecomputation(curve);
+    return curve;
+  }
+
+  private void schedulePrecomputation(final Curve curve) {
+    if (curve.precomputed.size() >= capacity || !curve.isPrecomputationScheduled.compareAndSet(false, true)) {
+      return;
+    }
+
+    try {
+      precomputationExecutor.execute(new Runnable() {
+        @Override
+        public void run() {
+          boolean isFilled = false;
+          try {
+            while (curve.precomputed.size() < capacity && !Thread.currentThread().isInterrupted()) {
+              curve.precomputed.offer(curve.precompute());
+            }
+            isFilled = !Thread.currentThread().isInterrupted();
+          } catch (RuntimeException re) {
+            LOGGER.log(Level.WARNING, "Could not precompute ECDSA values", re);
+          } finally {
+            curve.isPrecomputationScheduled.set(false);
+          }
+
+          /* A take between the last size check and clearing the flag did not schedule a precomputation. */
+          if (isFilled) {
+            schedulePrecomputation(curve);
+          }
+        }
+      });
+    } catch (RejectedExecutionException ree) {
+      curve.isPrecomputationScheduled.set(false);
+      LOGGER.log(Level.FINE, "ECDSA precomputation rejected", ree);
+    }
+  }
+
+  /**
+   * Converts the hash to an integer, as in SEC 1 section 4.1.3, step 5,
+   * using only the leftmost bits if the hash is longer than the order.
+   *
+   * @param n the order of the base point
+   * @param hash the hash of the message
+   *
+   * @return the integer {@code e}
+   */
+  private static BigInteger calculateE(BigInteger n, byte[] hash) {
+    int orderBitLength = n.bitLength();
+    int hashBitLength = hash.length * 8;
+    BigInteger e = new BigInteger(1, hash);
+    if (orderBitLength < hashBitLength) {
+      e = e.shiftRight(hashBitLength - orderBitLength);
+    }
+    return e;
+  }
+
+  /**
+   * The precomputed values for a single curve.
+   */
+  private class Curve {
+
+    private final ECDomainParameters domainParameters;
+
+    private final ECMultiplier multiplier;
+
+    /* Pairs of k^-1 mod n and r. */
+    private final BlockingQueue<BigInteger[]> precomputed;
+
+    private final AtomicBoolean isPrecomputationScheduled;
+
+    public Curve(ECDomainParameters domainParameters) {
+      this.domainParameters = domainParameters;
+      this.multiplier = new FixedPointCombMultiplier();
+      this.precomputed = new LinkedBlockingQueue<BigInteger[]>();
+      this.isPrecomputationScheduled = new AtomicBoolean(false);
+    }
+
+    /**
+     * Takes a precomputed pair, computing one inline if none are available.
+     *
+     * @return a pair consisting of {@code k^-1 mod n} and {@code r}
+     */
+    public BigInteger[] take() {
+      BigInteger[] result = precomputed.poll();
+      schedulePrecomputation(this);
+      if (result == null) {
+        LOGGER.fine("No precomputed ECDSA values available, computing inline");
+        return precompute();
+      }
+      return result;
+    }
+
+    /**
+     * The offline phase of ECDSA.
+     *
+     * @return a pair consisting of {@code k^-1 mod n} and {@code r}
+     */
+    public BigInteger[] precompute() {
+      BigInteger n = domainParameters.getN();
+      while (true) {
+        BigInteger k = BigIntegers.createRandomInRange(BigInteger.ONE, n.subtract(BigInteger.ONE), random);
+        ECPoint p = multiplier.multiply(domainParameters.getG(), k).normalize();
+        BigInteger r = p.getAffineXCoord().toBigInteger().mod(n);
+        if (r.signum() != 0) {
+          return new BigInteger[] { k.modInverse(n), r };
+        }
+      }
+    }
+  }
+}
@@ -33,12 +33,12 @@ import java.util.Arrays;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
-import javax.crypto.Cipher;
-import javax.crypto.Mac;
 import javax.crypto.SecretKey;
 import javax.crypto.spec.IvParameterSpec;
 
 import org.jmrtd.Util;
+import org.jmrtd.crypto.CryptoBackend;
+import org.jmrtd.crypto.JCACryptoBackend;
 
 import net.sf.scuba.smartcards.APDUWrapper;
 import net.sf.scuba.smartcards.CommandAPDU;
@@ -65,8 +65,9 @@ public abstract class SecureMessagingWrapper implements Serializable, APDUWrappe
 
   private long ssc;
 
-  private transient Cipher cipher;
-  private transient Mac mac;
+  private transient CryptoBackend cryptoBackend;
+  private transient CryptoBackend.BlockCipher cipher;
+  private transient CryptoBackend.MAC mac;
 
   private SecretKey ksEnc;
   private SecretKey ksMac;
@@ -86,6 +87,32 @@ public abstract class SecureMessagingWrapper implements Serializable, APDUWrappe
    * @throws GeneralSecurityException when the available JCE providers cannot provide the necessary cryptographic primitives
    */
   protected SecureMessagingWrapper(SecretKey ksEnc, SecretKey ksMac, String cipherAlg, String macAlg, int maxTranceiveLength, boolean shouldCheckMAC, long ssc) throws GeneralSecurityException {
+    this(ksEnc, ksMac, cipherAlg, macAlg, maxTranceiveLength, shouldCheckMAC, ssc, new JCACryptoBackend());
+  }
+
+  /**
+   * Constructs a secure messaging wrapper based on the secure messaging
+   * session keys and the initial value of the send sequence counter,
+   * using the given crypto backend for encryption and message authentication.
+   *
+   * @param ksEnc the session key for encryption
+   * @param ksMac the session key for message authenticity
+   * @param cipherAlg the mnemonic Java string describing the cipher algorithm
+   * @param macAlg the mnemonic Java string describing the message authenticity checking algorithm
+   * @param maxTranceiveLength the maximum tranceive length, typical values are 256 or 65536
+   * @param shouldCheckMAC a boolean indicating whether this wrapper will check the MAC in wrapped response APDUs
+   * @param ssc the initial value of the send sequence counter
+   * @param cryptoBackend the crypto backend
+   *
+   * @throws GeneralSecurityException when the crypto backend cannot provide the necessary cryptographic primitives
+   *
+   * @since 0.8.4
+   */
+  protected SecureMessagingWrapper(SecretKey ksEnc, SecretKey ksMac, String cipherAlg, String macAlg, int maxTranceiveLength, boolean shouldCheckMAC, long ssc, CryptoBackend cryptoBackend) throws GeneralSecurityException {
+    if (cryptoBackend == null) {
+      throw new IllegalArgumentException("Crypto backend cannot be null");
+    }
+
     this.maxTranceiveLength = maxTranceiveLength;
     this.shouldCheckMAC = shouldCheckMAC;
 
@@ -93,8 +120,9 @@ public abstract class SecureMessagingWrapper implements Serializable, APDUWrappe
     this.ksMac = ksMac;
     this.ssc = ssc;
 
-    this.cipher = Util.getCipher(cipherAlg);
-    this.mac = Util.getMac(macAlg);
+    this.cryptoBackend = cryptoBackend;
+    this.cipher = cryptoBackend.getBlockCipher(cipherAlg);
+    this.mac = cryptoBackend.getMAC(macAlg);
   }
 
   /**
@@ -132,6 +160,17 @@ public abstract class SecureMessagingWrapper implements Serializable, APDUWrappe
     return ssc;
   }
 
+  /**
+   * Returns the crypto backend used by this wrapper.
+   *
+   * @return the crypto backend
+   *
+   * @since 0.8.4
+   */
+  public CryptoBackend getCryptoBackend() {
+    return cryptoBackend;
+  }
+
   /**
    * Returns the shared key for encrypting APDU payloads.
    *
@@ -233,7 +272,8 @@ public abstract class SecureMessagingWrapper implements Serializable, APDUWrappe
       dataOutputStream.flush();
       dataOutputStream.close();
       mac.init(ksMac);
-      byte[] cc2 = mac.doFinal(byteArrayOutputStream.toByteArray());
+      byte[] macInput = byteArrayOutputStream.toByteArray();
+      byte[] cc2 = mac.doFinal(macInput, 0, macInput.length);
 
       if (cc2.length > 8 && cc.length == 8) {
         byte[] newCC2 = new byte[8];
@@ -319,8 +359,8 @@ public abstract class SecureMessagingWrapper implements Serializable, APDUWrappe
         byte[] data = Util.pad(commandAPDU.getData(), getPadLength());
 
         /* Re-initialize cipher, this time with IV based on SSC. */
-        cipher.init(Cipher.ENCRYPT_MODE, ksEnc, getIV());
-        byte[] ciphertext = cipher.doFinal(data);
+        cipher.init(true, ksEnc, getIV().getIV());
+        byte[] ciphertext = cipher.doFinal(data, 0, data.length);
 
         byteArrayOutputStream.reset();
         byteArrayOutputStream.write(hasDO85 ? (byte)0x85 : (byte)0x87);
@@ -341,7 +381,7 @@ public abstract class SecureMessagingWrapper implements Serializable, APDUWrappe
 
       /* Compute cryptographic checksum... */
       mac.init(ksMac);
-      byte[] cc = mac.doFinal(n);
+      byte[] cc = mac.doFinal(n, 0, n.length);
       int ccLength = cc.length;
       if (ccLength != 8) {
         ccLength = 8;
@@ -399,7 +439,7 @@ public abstract class SecureMessagingWrapper implements Serializable, APDUWrappe
     if (rapdu == null || rapdu.length < 2) {
       throw new IllegalArgumentException("Invalid response APDU");
     }
-    cipher.init(Cipher.DECRYPT_MODE, ksEnc, getIV());
+    cipher.init(false, ksEnc, getIV().getIV());
 
     byte[] data = new byte[0];
     byte[] cc = null;
@@ -502,7 +542,7 @@ public abstract class SecureMessagingWrapper implements Serializable, APDUWrappe
     /* Read, decrypt, unpad the data... */
     byte[] ciphertext = new byte[length];
     inputStream.readFully(ciphertext);
-    byte[] paddedData = cipher.doFinal(ciphertext);
+    byte[] paddedData = cipher.doFinal(ciphertext, 0, ciphertext.length);
     return Util.unpad(paddedData);
   }
 